@@ -0,0 +1,64 @@
+package com.lizy.loganalysishelper.entity;
+
+import com.lizy.loganalysishelper.util.BenchmarkFixtures;
+import com.lizy.loganalysishelper.util.MessageStorageMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ConversationSession：满3轮会话的上下文拼接，以及追加消息后的截取最近3轮
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConversationSessionBenchmark {
+    // 与ConversationMemoryManager默认配置一致
+    private static final int STORAGE_MIN_CHARS = 512;
+
+    // 单条AI回答的大致UTF-8字节数
+    @Param({"2048", "8192"})
+    private int answerBytes;
+
+    @Param({"HEAP", "COMPRESSED"})
+    private MessageStorageMode storageMode;
+
+    private ConversationSession session;
+    private ConversationMessage userMessage;
+    private ConversationMessage assistantMessage;
+
+    @Setup
+    public void setup() {
+        userMessage = ConversationMessage.user(BenchmarkFixtures.stackTrace(30));
+        assistantMessage = ConversationMessage.assistant(BenchmarkFixtures.markdown(answerBytes, 11L));
+        userMessage.store(storageMode, STORAGE_MIN_CHARS);
+        assistantMessage.store(storageMode, STORAGE_MIN_CHARS);
+        session = new ConversationSession();
+        session.setSessionId("SESSION_BENCH");
+        for (int round = 0; round < 3; round++) {
+            session.addMessage(userMessage);
+            session.addMessage(assistantMessage);
+        }
+    }
+
+    @Benchmark
+    public String buildContextText() {
+        return session.buildContextText();
+    }
+
+    /**
+     * 会话已满3轮，每次追加都会触发截取
+     */
+    @Benchmark
+    public int addMessage() {
+        session.addMessage(userMessage);
+        return session.getMessageHistory().size();
+    }
+}
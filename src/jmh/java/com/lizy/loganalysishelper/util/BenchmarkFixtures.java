@@ -0,0 +1,99 @@
+package com.lizy.loganalysishelper.util;
+
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * 基准测试公共数据与工具（固定随机种子，保证各次运行输入一致）
+ */
+public final class BenchmarkFixtures {
+
+    private static final String[] HEADINGS = {
+            "### 1. 异常类型与核心原因", "### 2. 问题定位", "### 3. 解决方案", "### 4. 预防建议"
+    };
+    private static final String[] SENTENCES = {
+            "该异常发生在`OrderService.createOrder`方法中，调用方传入的参数未做非空校验。",
+            "根据调用栈，问题出现在业务代码第128行，框架层帧可以忽略。",
+            "Caused by 链路显示底层是数据库连接池耗尽，HikariCP 等待超时后抛出 SQLTransientConnectionException。",
+            "建议在  Controller  层增加参数校验，并为下游调用设置合理的超时时间。",
+            "可以通过 `-XX:+HeapDumpOnOutOfMemoryError` 保留现场，再用 MAT 分析大对象。",
+            "The NullPointerException is thrown because the  returned  Optional was unwrapped without a presence check.",
+            "检查 `application.yml` 中 spring.datasource.hikari.maximum-pool-size 是否与并发量匹配。",
+    };
+    private static final String CODE_BLOCK = "```java\n"
+            + "public Order createOrder(OrderRequest request) {\n"
+            + "    Objects.requireNonNull(request, \"request\");\n"
+            + "    User user = userRepository.findById(request.getUserId())\n"
+            + "            .orElseThrow(() -> new IllegalArgumentException(\"用户不存在\"));\n"
+            + "    return orderRepository.save(Order.of(user, request.getItems()));\n"
+            + "}\n"
+            + "```\n";
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * 生成近似指定UTF-8字节数的大模型Markdown回答（含多余空行与连续空格，贴近真实输出）
+     */
+    public static String markdown(int targetBytes, long seed) {
+        Random random = new Random(seed);
+        StringBuilder builder = new StringBuilder(targetBytes);
+        int section = 0;
+        while (utf8Length(builder) < targetBytes) {
+            builder.append(HEADINGS[section++ % HEADINGS.length]).append("\n\n");
+            int items = 2 + random.nextInt(4);
+            for (int i = 0; i < items; i++) {
+                builder.append(random.nextBoolean() ? "- " : (i + 1) + ". ")
+                        .append(SENTENCES[random.nextInt(SENTENCES.length)]).append('\n');
+            }
+            if (random.nextInt(3) == 0) {
+                builder.append('\n').append(CODE_BLOCK);
+            }
+            // 大模型输出中常见的多余空行
+            builder.append(random.nextBoolean() ? "\n\n\n" : "\n\n");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 典型的带Caused by的Java异常日志
+     */
+    public static String stackTrace(int frames) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("java.lang.IllegalStateException: Failed to create order\n");
+        for (int i = 0; i < frames; i++) {
+            builder.append("\tat org.springframework.web.servlet.FrameworkServlet.service(FrameworkServlet.java:")
+                    .append(800 + i).append(")\n");
+        }
+        builder.append("\tat com.example.order.OrderService.createOrder(OrderService.java:128)\n");
+        builder.append("Caused by: java.sql.SQLTransientConnectionException: HikariPool-1 - Connection is not available\n");
+        builder.append("\tat com.zaxxer.hikari.pool.HikariPool.getConnection(HikariPool.java:213)\n");
+        builder.append("\t... ").append(frames).append(" more\n");
+        return builder.toString();
+    }
+
+    /**
+     * 为未经Spring装配的组件注入字段（@Value/@Autowired字段）
+     */
+    public static void setField(Object target, String name, Object value) {
+        Class<?> type = target.getClass();
+        while (type != null) {
+            try {
+                Field field = type.getDeclaredField(name);
+                field.setAccessible(true);
+                field.set(target, value);
+                return;
+            } catch (NoSuchFieldException e) {
+                type = type.getSuperclass();
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("无法设置字段：" + name, e);
+            }
+        }
+        throw new IllegalArgumentException("字段不存在：" + name);
+    }
+
+    private static int utf8Length(CharSequence text) {
+        return text.toString().getBytes(StandardCharsets.UTF_8).length;
+    }
+}
@@ -0,0 +1,44 @@
+package com.lizy.loganalysishelper.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * QwenApiUtil.optimizeResponse：2~20KB大模型Markdown回答的空白清理
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OptimizeResponseBenchmark {
+
+    @Param({"2048", "8192", "20480"})
+    private int responseBytes;
+
+    private QwenApiUtil qwenApiUtil;
+    private String response;
+
+    @Setup
+    public void setup() {
+        qwenApiUtil = new QwenApiUtil();
+        response = BenchmarkFixtures.markdown(responseBytes, 42L);
+    }
+
+    @TearDown
+    public void tearDown() {
+        qwenApiUtil.shutdown();
+    }
+
+    @Benchmark
+    public String optimizeResponse() {
+        return qwenApiUtil.optimizeResponse(response);
+    }
+}
@@ -0,0 +1,116 @@
+package com.lizy.loganalysishelper.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 大模型请求/响应编解码：模板渲染+buildQwenRequest构建JSON请求体（含写出到网络缓冲区），parseQwenResponse解析output.text
+ * 多MB输入关注 gc.alloc.rate.norm（每次操作分配字节数）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class QwenCodecBenchmark {
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+    private static final PromptTemplate FOLLOW_TEMPLATE = PromptTemplate.compile(
+            "你是资深Java开发专家，基于上述历史对话上下文，回答用户的当前追问：\n用户当前追问：%s\n强制要求：回答仅聚焦当前问题");
+    private static final String CONTEXT = "【历史对话上下文】\n用户：java.lang.IllegalStateException\nAI分析：## 错误原因\n连接池耗尽\n【当前分析请求】\n";
+
+    // Prompt与回答的大致UTF-8字节数
+    @Param({"2048", "20480", "1048576"})
+    private int payloadBytes;
+
+    private QwenApiUtil qwenApiUtil;
+    private QwenApiUtil.AnalysisContext context;
+    private String input;
+    private Request request;
+    private byte[] responseJson;
+
+    @Setup
+    public void setup() throws IOException {
+        qwenApiUtil = new QwenApiUtil();
+        BenchmarkFixtures.setField(qwenApiUtil, "apiUrl",
+                "https://dashscope.aliyuncs.com/api/v1/services/aigc/text-generation/generation");
+        BenchmarkFixtures.setField(qwenApiUtil, "apiKey", "sk-benchmark");
+        AnalysisMetrics analysisMetrics = new AnalysisMetrics();
+        BenchmarkFixtures.setField(analysisMetrics, "registry", new SimpleMeterRegistry());
+        BenchmarkFixtures.setField(qwenApiUtil, "analysisMetrics", analysisMetrics);
+
+        context = qwenApiUtil.newContext();
+        context.setModel("qwen-turbo");
+        String stackTrace = BenchmarkFixtures.stackTrace(40);
+        StringBuilder inputBuilder = new StringBuilder(payloadBytes);
+        while (inputBuilder.length() < payloadBytes) {
+            inputBuilder.append(stackTrace);
+        }
+        input = inputBuilder.toString();
+        request = new Request.Builder().url("http://localhost/generation").build();
+
+        // DashScope text-generation 的典型响应结构
+        Map<String, Object> output = new LinkedHashMap<>();
+        output.put("finish_reason", "stop");
+        output.put("text", BenchmarkFixtures.markdown(payloadBytes, 7L));
+        Map<String, Object> usage = new LinkedHashMap<>();
+        usage.put("total_tokens", 2400);
+        usage.put("output_tokens", 900);
+        usage.put("input_tokens", 1500);
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("output", output);
+        body.put("usage", usage);
+        body.put("request_id", "b2c1f3a4-5d6e-7f80-9a1b-2c3d4e5f6a7b");
+        responseJson = new ObjectMapper().writeValueAsBytes(body);
+    }
+
+    @TearDown
+    public void tearDown() {
+        qwenApiUtil.shutdown();
+    }
+
+    /**
+     * 渲染追问模板、拼接上下文、构建请求，计算长度并把请求体写入缓冲区（对应OkHttp发送请求）
+     */
+    @Benchmark
+    public long buildQwenRequest() throws IOException {
+        PromptText prompt = FOLLOW_TEMPLATE.render(input).prepend(CONTEXT);
+        Request built = qwenApiUtil.buildQwenRequest("qwen-turbo", prompt);
+        // OkHttp发送时先取Content-Length再写出请求体
+        built.body().contentLength();
+        Buffer sink = new Buffer();
+        built.body().writeTo(sink);
+        long size = sink.size();
+        sink.clear();
+        return size;
+    }
+
+    @Benchmark
+    public String parseQwenResponse() throws IOException {
+        Response response = new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .message("OK")
+                .body(ResponseBody.create(JSON, responseJson))
+                .build();
+        return qwenApiUtil.parseQwenResponse(response, context);
+    }
+}
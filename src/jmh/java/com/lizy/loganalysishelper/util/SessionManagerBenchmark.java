@@ -0,0 +1,70 @@
+package com.lizy.loganalysishelper.util;
+
+import com.lizy.loganalysishelper.entity.ConversationSession;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ConversationMemoryManager.getOrCreateSession：会话已满容量时的多线程争用
+ * keySpaceFactor=1：会话ID都在容量内，全部命中；keySpaceFactor=2：约一半未命中，每次未命中都会淘汰最久未访问会话
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(8)
+public class SessionManagerBenchmark {
+
+    @Param({"10000"})
+    private int maxSessionCount;
+
+    @Param({"1", "2"})
+    private int keySpaceFactor;
+
+    private ConversationMemoryManager manager;
+    // 预先生成会话ID，避免测量中包含字符串拼接
+    private String[] sessionIds;
+
+    @Setup
+    public void setup() {
+        manager = new ConversationMemoryManager();
+        BenchmarkFixtures.setField(manager, "expireMinutes", 30L);
+        BenchmarkFixtures.setField(manager, "maxSessionCount", maxSessionCount);
+        BenchmarkFixtures.setField(manager, "maxSessionBytes", 256L * 1024 * 1024);
+        BenchmarkFixtures.setField(manager, "tickMs", 1000L);
+        BenchmarkFixtures.setField(manager, "storageMode", MessageStorageMode.COMPRESSED);
+        BenchmarkFixtures.setField(manager, "storageMinChars", 512);
+        BenchmarkFixtures.setField(manager, "sessionStore", new NoopSessionStore());
+        manager.init();
+
+        sessionIds = new String[maxSessionCount * keySpaceFactor];
+        for (int i = 0; i < sessionIds.length; i++) {
+            sessionIds[i] = "SESSION_BENCH_" + i;
+        }
+        // 预热到满容量
+        for (int i = 0; i < maxSessionCount; i++) {
+            manager.getOrCreateSession(sessionIds[i]);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    @Benchmark
+    public ConversationSession getOrCreateSession() {
+        String sessionId = sessionIds[ThreadLocalRandom.current().nextInt(sessionIds.length)];
+        return manager.getOrCreateSession(sessionId);
+    }
+}
@@ -0,0 +1,212 @@
+package com.lizy.loganalysishelper.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 本地模拟的DashScope文本生成接口（压测用，不消耗真实API额度）
+ * 1. 延迟：基础延迟 + 均匀抖动，按比例注入长尾（基础延迟×倍数）
+ * 2. 错误：按比例返回指定状态码（默认503，429时附带Retry-After）
+ * 3. 流式：请求头X-DashScope-SSE: enable时按SSE分片增量输出，延迟均摊到各分片之间
+ */
+public class FakeDashScopeServer {
+    public static final String PATH = "/api/v1/services/aigc/text-generation/generation";
+
+    private static final String ANSWER_TEMPLATE = "## 错误原因\n"
+            + "java.lang.IllegalStateException：OrderService.createOrder(OrderService.java:128) 获取数据库连接超时，连接池已耗尽。\n"
+            + "## 解决方案（分步骤，附带可直接运行的代码示例）\n"
+            + "1. 定位文件：com/example/order/OrderService.java:128\n"
+            + "2. 代码修复：缩短事务范围，并为连接池设置合理的最大连接数与超时：\n"
+            + "```java\n"
+            + "HikariConfig config = new HikariConfig();\n"
+            + "config.setMaximumPoolSize(32);        // 按并发量调整\n"
+            + "config.setConnectionTimeout(3000);    // 获取连接超时\n"
+            + "```\n"
+            + "3. 验证方法：压测确认连接等待时间下降且不再出现超时\n"
+            + "## 预防措施\n"
+            + "1. 避免在事务内调用外部HTTP服务\n"
+            + "2. 对连接池活跃数与等待数建立监控告警\n";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final LoadTestOptions options;
+    private final String answer;
+    private final AtomicInteger threadIndex = new AtomicInteger();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong injectedErrors = new AtomicLong();
+    private final AtomicLong streamRequests = new AtomicLong();
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public FakeDashScopeServer(LoadTestOptions options) {
+        this.options = options;
+        StringBuilder builder = new StringBuilder();
+        while (builder.length() < options.getInt("fake.answerChars", 2000)) {
+            builder.append(ANSWER_TEMPLATE);
+        }
+        this.answer = builder.toString();
+    }
+
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        // 每个请求独占线程（模拟延迟期间阻塞），不限制并发
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "fake-dashscope-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext(PATH, this::handle);
+        server.start();
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+
+    public String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + PATH;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("requests", requests.get());
+        stats.put("streamRequests", streamRequests.get());
+        stats.put("injectedErrors", injectedErrors.get());
+        return stats;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                // 连接预热/保温探测：不计入请求数，不模拟延迟
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            requests.incrementAndGet();
+            drain(exchange.getRequestBody());
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long latencyMs = latencyMs(random);
+            if (random.nextDouble() < options.getDouble("fake.errorRate", 0.0)) {
+                injectedErrors.incrementAndGet();
+                sleep(latencyMs / 2);
+                sendError(exchange, options.getInt("fake.errorStatus", 503));
+                return;
+            }
+            boolean stream = "enable".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("X-DashScope-SSE"));
+            if (stream) {
+                streamRequests.incrementAndGet();
+                sendStream(exchange, latencyMs);
+            } else {
+                sleep(latencyMs);
+                byte[] body = objectMapper.writeValueAsBytes(event(answer, answer.length()));
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        } catch (IOException e) {
+            // 客户端取消（对冲/超时）导致写出失败，忽略
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void sendStream(HttpExchange exchange, long latencyMs) throws IOException {
+        int chunks = Math.max(options.getInt("fake.streamChunks", 20), 1);
+        int chunkSize = (answer.length() + chunks - 1) / chunks;
+        long interval = latencyMs / chunks;
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream out = exchange.getResponseBody()) {
+            int emitted = 0;
+            for (int i = 0; emitted < answer.length(); i++) {
+                sleep(interval);
+                int end = Math.min(emitted + chunkSize, answer.length());
+                String piece = answer.substring(emitted, end);
+                emitted = end;
+                String frame = "id:" + (i + 1) + "\nevent:result\n:HTTP_STATUS/200\ndata:"
+                        + objectMapper.writeValueAsString(event(piece, emitted)) + "\n\n";
+                out.write(frame.getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+        }
+    }
+
+    private Map<String, Object> event(String text, int outputChars) {
+        Map<String, Object> output = new LinkedHashMap<>();
+        output.put("finish_reason", "stop");
+        output.put("text", text);
+        Map<String, Object> usage = new LinkedHashMap<>();
+        usage.put("input_tokens", 1200);
+        usage.put("output_tokens", outputChars / 2);
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("output", output);
+        body.put("usage", usage);
+        body.put("request_id", Long.toHexString(ThreadLocalRandom.current().nextLong()));
+        return body;
+    }
+
+    private void sendError(HttpExchange exchange, int status) throws IOException {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("code", status == 429 ? "Throttling" : "InternalError");
+        error.put("message", "injected by fake server");
+        byte[] body = objectMapper.writeValueAsBytes(error);
+        if (status == 429) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private long latencyMs(ThreadLocalRandom random) {
+        long base = options.getLong("fake.latencyMs", 800);
+        long jitter = options.getLong("fake.jitterMs", 400);
+        long latency = base + (jitter > 0 ? random.nextLong(jitter + 1) : 0);
+        if (random.nextDouble() < options.getDouble("fake.tailRatio", 0.0)) {
+            latency = (long) (latency * options.getDouble("fake.tailFactor", 5.0));
+        }
+        return latency;
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[8192];
+        while (in.read(buffer) >= 0) {
+            // 丢弃请求体
+        }
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package com.lizy.loganalysishelper.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 闭环压测客户端：N个客户端线程各自循环发请求，按比例混合首轮分析与追问
+ * 1. 首轮：新会话 + 新异常日志（按distinctTraces取模生成不同调用栈，控制缓存命中率）
+ * 2. 追问：从该客户端已完成首轮的会话中随机选择一个继续提问
+ * 3. 只统计测量窗口内发起的请求（预热期间的请求不计入）
+ */
+public class LoadGenerator {
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+    // 每个客户端保留的可追问会话数
+    private static final int SESSIONS_PER_CLIENT = 64;
+    private static final String[] FOLLOW_UPS = {
+            "为什么连接池会被耗尽？如何确认是哪条SQL占用了连接？",
+            "maximum-pool-size应该设置多大比较合适？",
+            "如果是事务里调用了外部HTTP服务导致的，应该怎么改？",
+            "能给一个连接泄漏检测的配置示例吗？",
+    };
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final String baseUrl;
+    private final String endpoint;
+    private final int clients;
+    private final double followUpRatio;
+    private final int distinctTraces;
+    private final long thinkMs;
+    private final OkHttpClient httpClient;
+
+    private final AtomicLong sessionSequence = new AtomicLong();
+    private final List<Thread> threads = new ArrayList<>();
+    private final List<Recorder> recorders = new ArrayList<>();
+    private volatile boolean running = true;
+    private volatile long measureStartNanos = Long.MAX_VALUE;
+    private volatile long measureEndNanos = Long.MAX_VALUE;
+
+    public LoadGenerator(String baseUrl, LoadTestOptions options) {
+        this.baseUrl = baseUrl;
+        this.endpoint = options.getString("loadtest.endpoint", "sync");
+        this.clients = Math.max(options.getInt("loadtest.clients", 32), 1);
+        this.followUpRatio = options.getDouble("loadtest.followUpRatio", 0.3);
+        this.distinctTraces = Math.max(options.getInt("loadtest.distinctTraces", 100000), 1);
+        this.thinkMs = options.getLong("loadtest.thinkMs", 0);
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(clients * 2);
+        dispatcher.setMaxRequestsPerHost(clients * 2);
+        this.httpClient = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(clients, 5, TimeUnit.MINUTES))
+                .connectTimeout(10, TimeUnit.SECONDS)
+                .readTimeout(5, TimeUnit.MINUTES)
+                .build();
+    }
+
+    public void start() {
+        for (int i = 0; i < clients; i++) {
+            Recorder recorder = new Recorder();
+            recorders.add(recorder);
+            Thread thread = new Thread(() -> runClient(recorder), "loadtest-client-" + (recorders.size()));
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+    }
+
+    /**
+     * 预热结束，开始统计
+     */
+    public void beginMeasurement() {
+        measureStartNanos = System.nanoTime();
+    }
+
+    /**
+     * 结束统计并等待进行中的请求完成
+     */
+    public void stop(long awaitMillis) throws InterruptedException {
+        measureEndNanos = System.nanoTime();
+        running = false;
+        long deadline = System.currentTimeMillis() + awaitMillis;
+        for (Thread thread : threads) {
+            thread.join(Math.max(deadline - System.currentTimeMillis(), 1));
+        }
+        httpClient.dispatcher().executorService().shutdown();
+        httpClient.connectionPool().evictAll();
+    }
+
+    /**
+     * 汇总测量窗口内的吞吐、延迟分位数与结果分布
+     */
+    public Map<String, Object> report() {
+        double seconds = (measureEndNanos - measureStartNanos) / 1e9;
+        Recorder total = new Recorder();
+        for (Recorder recorder : recorders) {
+            synchronized (recorder) {
+                total.merge(recorder);
+            }
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("measuredSeconds", round(seconds));
+        result.put("requests", total.all.size);
+        result.put("throughputRps", round(total.all.size / seconds));
+        result.put("successRps", round(total.success / seconds));
+        result.put("successRatio", total.all.size == 0 ? 0.0 : round((double) total.success / total.all.size));
+        result.put("outcomes", new LinkedHashMap<>(total.outcomes));
+        result.put("latencyMs", total.all.percentiles());
+        result.put("firstRoundLatencyMs", total.firstRound.percentiles());
+        result.put("followUpLatencyMs", total.followUp.percentiles());
+        if ("stream".equals(endpoint)) {
+            result.put("firstTokenMs", total.firstToken.percentiles());
+        }
+        return result;
+    }
+
+    private void runClient(Recorder recorder) {
+        List<String> sessions = new ArrayList<>();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (running) {
+            boolean followUp = !sessions.isEmpty() && random.nextDouble() < followUpRatio;
+            String sessionId;
+            String content;
+            if (followUp) {
+                sessionId = sessions.get(random.nextInt(sessions.size()));
+                content = FOLLOW_UPS[random.nextInt(FOLLOW_UPS.length)];
+            } else {
+                long sequence = sessionSequence.incrementAndGet();
+                sessionId = "LOADTEST_" + sequence;
+                content = stackTrace(sequence % distinctTraces);
+            }
+            long start = System.nanoTime();
+            Outcome outcome = send(sessionId, content, start);
+            long end = System.nanoTime();
+            if (!followUp && outcome.success) {
+                if (sessions.size() >= SESSIONS_PER_CLIENT) {
+                    sessions.remove(random.nextInt(sessions.size()));
+                }
+                sessions.add(sessionId);
+            }
+            if (start >= measureStartNanos && start < measureEndNanos) {
+                synchronized (recorder) {
+                    recorder.record(followUp, outcome, end - start);
+                }
+            }
+            if (thinkMs > 0) {
+                sleep(thinkMs);
+            }
+        }
+    }
+
+    private Outcome send(String sessionId, String content, long start) {
+        Map<String, String> body = new LinkedHashMap<>();
+        body.put("exceptionLog", content);
+        body.put("sessionId", sessionId);
+        String path = "stream".equals(endpoint) ? "/api/log/analyze/stream"
+                : "async".equals(endpoint) ? "/api/log/analyze/async" : "/api/log/analyze";
+        try {
+            Request request = new Request.Builder()
+                    .url(baseUrl + path)
+                    .post(RequestBody.create(JSON, objectMapper.writeValueAsBytes(body)))
+                    .build();
+            try (Response response = httpClient.newCall(request).execute()) {
+                ResponseBody responseBody = response.body();
+                if (responseBody == null) {
+                    return new Outcome(String.valueOf(response.code()), false, -1);
+                }
+                if ("stream".equals(endpoint)) {
+                    return readStream(responseBody.source(), start);
+                }
+                JsonNode json = objectMapper.readTree(responseBody.byteStream());
+                String code = json.path("code").asText(String.valueOf(response.code()));
+                return new Outcome(code, "200".equals(code), -1);
+            }
+        } catch (IOException e) {
+            return new Outcome("io_error", false, -1);
+        }
+    }
+
+    private Outcome readStream(BufferedSource source, long start) throws IOException {
+        long firstToken = -1;
+        String line;
+        while ((line = source.readUtf8Line()) != null) {
+            if (line.startsWith("event:token") && firstToken < 0) {
+                firstToken = System.nanoTime() - start;
+            } else if (line.startsWith("event:done")) {
+                return new Outcome("200", true, firstToken);
+            } else if (line.startsWith("event:error")) {
+                return new Outcome("stream_error", false, firstToken);
+            }
+        }
+        return new Outcome("stream_incomplete", false, firstToken);
+    }
+
+    /**
+     * 带Caused by的异常日志，trace不同则调用栈中的业务包名不同（异常指纹不同）
+     */
+    private static String stackTrace(long trace) {
+        String pkg = "com.example.loadtest." + letters(trace);
+        return "java.lang.IllegalStateException: Failed to create order, requestId=" + trace + "\n"
+                + "\tat " + pkg + ".OrderService.createOrder(OrderService.java:" + (100 + trace % 50) + ")\n"
+                + "\tat " + pkg + ".OrderController.submit(OrderController.java:57)\n"
+                + "\tat sun.reflect.NativeMethodAccessorImpl.invoke0(Native Method)\n"
+                + "\tat org.springframework.web.method.support.InvocableHandlerMethod.doInvoke(InvocableHandlerMethod.java:205)\n"
+                + "\tat org.springframework.web.servlet.mvc.method.annotation.ServletInvocableHandlerMethod.invokeAndHandle(ServletInvocableHandlerMethod.java:117)\n"
+                + "\tat org.springframework.web.servlet.DispatcherServlet.doDispatch(DispatcherServlet.java:1067)\n"
+                + "\tat org.springframework.web.servlet.FrameworkServlet.service(FrameworkServlet.java:883)\n"
+                + "\tat org.apache.catalina.core.ApplicationFilterChain.doFilter(ApplicationFilterChain.java:166)\n"
+                + "Caused by: java.sql.SQLTransientConnectionException: HikariPool-1 - Connection is not available, request timed out after 30000ms.\n"
+                + "\tat com.zaxxer.hikari.pool.HikariPool.createTimeoutException(HikariPool.java:696)\n"
+                + "\tat com.zaxxer.hikari.pool.HikariPool.getConnection(HikariPool.java:197)\n"
+                + "\tat " + pkg + ".OrderRepository.save(OrderRepository.java:42)\n"
+                + "\t... 8 more\n";
+    }
+
+    /**
+     * 数字转为字母序列（异常指纹会忽略数字，区分调用栈只能用字母）
+     */
+    private static String letters(long value) {
+        StringBuilder builder = new StringBuilder();
+        do {
+            builder.append((char) ('a' + value % 26));
+            value /= 26;
+        } while (value > 0);
+        return builder.toString();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    /**
+     * 单次请求结果
+     */
+    private static class Outcome {
+        private final String code;
+        private final boolean success;
+        // 流式首个片段耗时（纳秒），非流式为-1
+        private final long firstTokenNanos;
+
+        Outcome(String code, boolean success, long firstTokenNanos) {
+            this.code = code;
+            this.success = success;
+            this.firstTokenNanos = firstTokenNanos;
+        }
+    }
+
+    /**
+     * 单个客户端的统计（结束后合并计算精确分位数）
+     */
+    private static class Recorder {
+        private final Samples all = new Samples();
+        private final Samples firstRound = new Samples();
+        private final Samples followUp = new Samples();
+        private final Samples firstToken = new Samples();
+        private final Map<String, Long> outcomes = new ConcurrentHashMap<>();
+        private long success;
+
+        void record(boolean isFollowUp, Outcome outcome, long nanos) {
+            all.add(nanos);
+            (isFollowUp ? followUp : firstRound).add(nanos);
+            if (outcome.firstTokenNanos >= 0) {
+                firstToken.add(outcome.firstTokenNanos);
+            }
+            outcomes.merge(outcome.code, 1L, Long::sum);
+            if (outcome.success) {
+                success++;
+            }
+        }
+
+        void merge(Recorder other) {
+            all.addAll(other.all);
+            firstRound.addAll(other.firstRound);
+            followUp.addAll(other.followUp);
+            firstToken.addAll(other.firstToken);
+            for (Map.Entry<String, Long> entry : other.outcomes.entrySet()) {
+                outcomes.merge(entry.getKey(), entry.getValue(), Long::sum);
+            }
+            success += other.success;
+        }
+    }
+
+    /**
+     * 延迟样本（纳秒，原始值全部保留）
+     */
+    private static class Samples {
+        private long[] values = new long[1024];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void addAll(Samples other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.values[i]);
+            }
+        }
+
+        Map<String, Object> percentiles() {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("count", size);
+            if (size == 0) {
+                return result;
+            }
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            long sum = 0;
+            for (long value : sorted) {
+                sum += value;
+            }
+            result.put("mean", toMs(sum / size));
+            result.put("p50", toMs(quantile(sorted, 0.5)));
+            result.put("p90", toMs(quantile(sorted, 0.9)));
+            result.put("p99", toMs(quantile(sorted, 0.99)));
+            result.put("p999", toMs(quantile(sorted, 0.999)));
+            result.put("max", toMs(sorted[size - 1]));
+            return result;
+        }
+
+        private static long quantile(long[] sorted, double q) {
+            int index = (int) Math.ceil(q * sorted.length) - 1;
+            return sorted[Math.min(Math.max(index, 0), sorted.length - 1)];
+        }
+
+        private static double toMs(long nanos) {
+            return Math.round(nanos / 1e4) / 100.0;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.lizy.loganalysishelper.loadtest;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 压测参数（--loadtest.xxx=值 / --fake.xxx=值），其余参数原样传给Spring应用
+ */
+public class LoadTestOptions {
+    private final Map<String, String> values = new LinkedHashMap<>();
+    private final List<String> appArgs = new ArrayList<>();
+
+    public LoadTestOptions(String[] args) {
+        for (String arg : args) {
+            if (arg == null || arg.trim().isEmpty()) {
+                continue;
+            }
+            int eq = arg.indexOf('=');
+            String key = arg.startsWith("--") && eq > 2 ? arg.substring(2, eq) : null;
+            if (key != null && (key.startsWith("loadtest.") || key.startsWith("fake."))) {
+                values.put(key, arg.substring(eq + 1));
+            } else {
+                appArgs.add(arg);
+            }
+        }
+    }
+
+    public int getInt(String key, int defaultValue) {
+        String value = values.get(key);
+        return value == null || value.isEmpty() ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    public long getLong(String key, long defaultValue) {
+        String value = values.get(key);
+        return value == null || value.isEmpty() ? defaultValue : Long.parseLong(value.trim());
+    }
+
+    public double getDouble(String key, double defaultValue) {
+        String value = values.get(key);
+        return value == null || value.isEmpty() ? defaultValue : Double.parseDouble(value.trim());
+    }
+
+    public String getString(String key, String defaultValue) {
+        String value = values.get(key);
+        return value == null || value.isEmpty() ? defaultValue : value.trim();
+    }
+
+    /**
+     * 传给Spring应用的参数
+     */
+    public List<String> appArgs() {
+        return appArgs;
+    }
+
+    /**
+     * 本次生效的压测参数（写入报告，便于复现）
+     */
+    public Map<String, String> values() {
+        return values;
+    }
+}
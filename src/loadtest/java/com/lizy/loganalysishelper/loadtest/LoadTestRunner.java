@@ -0,0 +1,117 @@
+package com.lizy.loganalysishelper.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.lizy.loganalysishelper.LogAnalysisHelperApplication;
+import com.lizy.loganalysishelper.util.ConversationMemoryManager;
+import com.lizy.loganalysishelper.util.QwenHttpClient;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 端到端压测入口：启动模拟DashScope服务 + 本应用（同进程），驱动分析接口并输出报告
+ * 运行：mvn -Ploadtest verify [-Dloadtest.clients=64 -Dloadtest.endpoint=stream -Dfake.errorRate=0.05 ...]
+ * 报告：控制台 + target/loadtest/loadtest-report.json
+ */
+public class LoadTestRunner {
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = new LoadTestOptions(args);
+        File outputDir = new File(options.getString("loadtest.outputDir", "target/loadtest"));
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IllegalStateException("无法创建输出目录：" + outputDir);
+        }
+
+        // 每次运行的异常序列相同，清空上次留下的磁盘缓存，保证首轮都经过上游
+        File cacheDir = new File(outputDir, "analysis-cache");
+        FileSystemUtils.deleteRecursively(cacheDir);
+
+        FakeDashScopeServer fakeServer = new FakeDashScopeServer(options);
+        fakeServer.start();
+
+        // 压测默认参数，用户传入的同名应用参数优先
+        List<String> appArgs = new ArrayList<>(options.appArgs());
+        addDefault(appArgs, "server.port", "0");
+        addDefault(appArgs, "qwen.api-url", fakeServer.url());
+        addDefault(appArgs, "qwen.api-key", "sk-loadtest");
+        addDefault(appArgs, "qwen.session.store.type", "none");
+        addDefault(appArgs, "qwen.cache.disk-dir", cacheDir.getAbsolutePath());
+        // 压测客户端都来自同一地址，不按调用方限速（只保留并发上限与公平排队）
+        addDefault(appArgs, "qwen.scheduler.rate-per-minute", "0");
+        addDefault(appArgs, "spring.main.banner-mode", "off");
+        ConfigurableApplicationContext context;
+        try {
+            context = SpringApplication.run(LogAnalysisHelperApplication.class, appArgs.toArray(new String[0]));
+        } catch (RuntimeException e) {
+            fakeServer.stop();
+            throw e;
+        }
+        int exitCode = 0;
+        try {
+            String port = context.getEnvironment().getProperty("local.server.port");
+            LoadGenerator generator = new LoadGenerator("http://127.0.0.1:" + port, options);
+            ResourceSampler sampler = new ResourceSampler();
+            long warmupSeconds = options.getLong("loadtest.warmupSeconds", 5);
+            long durationSeconds = options.getLong("loadtest.durationSeconds", 30);
+
+            log("预热%d秒，测量%d秒，客户端%d个，接口：%s", warmupSeconds, durationSeconds,
+                    options.getInt("loadtest.clients", 32), options.getString("loadtest.endpoint", "sync"));
+            generator.start();
+            TimeUnit.SECONDS.sleep(warmupSeconds);
+            generator.beginMeasurement();
+            sampler.start(options.getLong("loadtest.sampleMs", 500));
+            TimeUnit.SECONDS.sleep(durationSeconds);
+            generator.stop(TimeUnit.MINUTES.toMillis(2));
+            Map<String, Object> resources = sampler.stop();
+
+            Map<String, Object> load = generator.report();
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("options", options.values());
+            report.put("load", load);
+            report.put("resources", resources);
+            report.put("fakeServer", fakeServer.stats());
+            report.put("upstream", context.getBean(QwenHttpClient.class).stats());
+            report.put("sessions", context.getBean(ConversationMemoryManager.class).stats());
+
+            ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+            File reportFile = new File(outputDir, "loadtest-report.json");
+            objectMapper.writeValue(reportFile, report);
+            System.out.println(objectMapper.writeValueAsString(load));
+            System.out.println(objectMapper.writeValueAsString(resources));
+            log("报告已写入：%s", reportFile.getAbsolutePath());
+
+            double minSuccessRatio = options.getDouble("loadtest.minSuccessRatio", 0.0);
+            double successRatio = (Double) load.get("successRatio");
+            if (successRatio < minSuccessRatio) {
+                log("成功率%.4f低于要求的%.4f", successRatio, minSuccessRatio);
+                exitCode = 1;
+            }
+        } finally {
+            context.getBean(ConversationMemoryManager.class).shutdown();
+            context.close();
+            fakeServer.stop();
+        }
+        System.exit(exitCode);
+    }
+
+    private static void addDefault(List<String> appArgs, String key, String value) {
+        for (String arg : appArgs) {
+            if (arg.startsWith("--" + key + "=")) {
+                return;
+            }
+        }
+        appArgs.add("--" + key + "=" + value);
+    }
+
+    private static void log(String format, Object... args) {
+        System.out.println("[LoadTestRunner] " + String.format(format, args));
+    }
+}
@@ -0,0 +1,127 @@
+package com.lizy.loganalysishelper.loadtest;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 压测期间定时采样线程数与堆内存（应用、模拟服务端与压测客户端同进程，按线程名前缀分组区分）
+ */
+public class ResourceSampler {
+    // 线程名前缀 -> 分组
+    private static final String[][] THREAD_GROUPS = {
+            {"http-nio-", "tomcat"},
+            {"qwen-upstream-", "qwenUpstream"},
+            {"qwen-retry-scheduler", "qwenRetryScheduler"},
+            {"OkHttp", "okhttp"},
+            {"fake-dashscope-", "fakeServer"},
+            {"loadtest-client-", "loadClients"},
+    };
+
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "loadtest-sampler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private long samples;
+    private long threadSum;
+    private int maxThreads;
+    private long heapSum;
+    private long maxHeapUsed;
+    private final Map<String, Integer> maxGroupThreads = new LinkedHashMap<>();
+    private long gcCountStart;
+    private long gcTimeStart;
+
+    public void start(long intervalMs) {
+        threadBean.resetPeakThreadCount();
+        gcCountStart = gcCount();
+        gcTimeStart = gcTimeMs();
+        scheduler.scheduleAtFixedRate(this::sample, 0, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public Map<String, Object> stop() {
+        scheduler.shutdownNow();
+        Map<String, Object> threads = new LinkedHashMap<>();
+        Map<String, Object> heap = new LinkedHashMap<>();
+        Map<String, Object> gc = new LinkedHashMap<>();
+        synchronized (this) {
+            threads.put("avg", samples == 0 ? 0 : threadSum / samples);
+            threads.put("max", maxThreads);
+            threads.put("peak", threadBean.getPeakThreadCount());
+            threads.put("maxByGroup", new LinkedHashMap<>(maxGroupThreads));
+            heap.put("avgUsedMb", samples == 0 ? 0 : toMb(heapSum / samples));
+            heap.put("maxUsedMb", toMb(maxHeapUsed));
+            heap.put("committedMb", toMb(memoryBean.getHeapMemoryUsage().getCommitted()));
+            heap.put("maxMb", toMb(memoryBean.getHeapMemoryUsage().getMax()));
+        }
+        gc.put("count", gcCount() - gcCountStart);
+        gc.put("timeMs", gcTimeMs() - gcTimeStart);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("threads", threads);
+        result.put("heap", heap);
+        result.put("gc", gc);
+        // 压测结束后Full GC，得到存活数据量（会话、缓存等常驻内存）
+        System.gc();
+        heap.put("liveAfterGcMb", toMb(memoryBean.getHeapMemoryUsage().getUsed()));
+        return result;
+    }
+
+    private synchronized void sample() {
+        int threadCount = threadBean.getThreadCount();
+        long heapUsed = memoryBean.getHeapMemoryUsage().getUsed();
+        samples++;
+        threadSum += threadCount;
+        maxThreads = Math.max(maxThreads, threadCount);
+        heapSum += heapUsed;
+        maxHeapUsed = Math.max(maxHeapUsed, heapUsed);
+
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (String[] group : THREAD_GROUPS) {
+            counts.put(group[1], 0);
+        }
+        for (ThreadInfo info : threadBean.getThreadInfo(threadBean.getAllThreadIds(), 0)) {
+            if (info == null) {
+                continue;
+            }
+            for (String[] group : THREAD_GROUPS) {
+                if (info.getThreadName().startsWith(group[0])) {
+                    counts.merge(group[1], 1, Integer::sum);
+                    break;
+                }
+            }
+        }
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            maxGroupThreads.merge(entry.getKey(), entry.getValue(), Math::max);
+        }
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(bean.getCollectionCount(), 0);
+        }
+        return count;
+    }
+
+    private static long gcTimeMs() {
+        long time = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(bean.getCollectionTime(), 0);
+        }
+        return time;
+    }
+
+    private static long toMb(long bytes) {
+        return bytes / (1024 * 1024);
+    }
+}
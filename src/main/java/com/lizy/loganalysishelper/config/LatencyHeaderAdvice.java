@@ -0,0 +1,42 @@
+package com.lizy.loganalysishelper.config;
+
+import com.lizy.loganalysishelper.entity.LogAnalysisResponse;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * 把分析响应中的traceId、分阶段耗时与调用栈精简比例写入响应头（X-Trace-Id / Server-Timing / X-Prompt-Reduction），无需翻日志即可定位瓶颈阶段
+ * 同时覆盖同步接口与异步接口（DeferredResult<ResponseEntity>）
+ */
+@ControllerAdvice
+public class LatencyHeaderAdvice implements ResponseBodyAdvice<Object> {
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        if (body instanceof LogAnalysisResponse) {
+            LogAnalysisResponse analysisResponse = (LogAnalysisResponse) body;
+            if (analysisResponse.getTraceId() != null) {
+                response.getHeaders().set("X-Trace-Id", analysisResponse.getTraceId());
+            }
+            if (analysisResponse.getServerTiming() != null) {
+                response.getHeaders().set("Server-Timing", analysisResponse.getServerTiming());
+            }
+            if (analysisResponse.getPromptReduction() != null) {
+                response.getHeaders().set("X-Prompt-Reduction", analysisResponse.getPromptReduction());
+            }
+        }
+        return body;
+    }
+}
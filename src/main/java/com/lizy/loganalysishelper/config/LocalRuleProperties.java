@@ -0,0 +1,39 @@
+package com.lizy.loganalysishelper.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 本地规则配置（qwen.rules.*）：命中规则的常见异常直接本地作答，不调用大模型
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "qwen.rules")
+public class LocalRuleProperties {
+    // 是否启用本地规则
+    private boolean enabled = true;
+    // 业务代码包前缀（用于判断异常是否发生在自有代码中）
+    private List<String> appPackages = new ArrayList<>();
+    // 规则列表（按顺序匹配，首个命中生效）
+    private List<Rule> items = new ArrayList<>();
+
+    @Data
+    public static class Rule {
+        // 规则名称（日志展示）
+        private String name;
+        // 异常类型正则（整体匹配异常全限定名），匹配异常链中任意一层
+        private String exceptionPattern;
+        // 异常信息正则（可选，部分匹配）
+        private String messagePattern;
+        // 调用栈帧正则（可选，该层异常任意一帧的类名部分匹配即可）
+        private String framePattern;
+        // 是否要求该层异常的栈顶帧位于业务代码包内
+        private boolean topFrameInApp;
+        // 回答模板，支持占位符：{exception} {simpleName} {message} {location} {appLocation} {rootCause}
+        private String answer;
+    }
+}
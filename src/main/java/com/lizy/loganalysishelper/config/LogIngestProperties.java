@@ -0,0 +1,39 @@
+package com.lizy.loganalysishelper.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 日志目录监听配置（qwen.ingest.*）：后台持续读取日志目录中新增的内容，发现新异常即提前分析
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "qwen.ingest")
+public class LogIngestProperties {
+    // 是否启用
+    private boolean enabled = false;
+    // 监听的日志目录（不递归子目录）
+    private List<String> dirs = new ArrayList<>();
+    // 文件名匹配（glob），轮转出的历史文件（如app.log.1）不应匹配
+    private String filePattern = "*.log";
+    // 启动时已存在的文件从末尾开始读（只分析启动之后新写入的异常）
+    private boolean startAtEnd = true;
+    // 无目录事件时也按该间隔检查一次文件（毫秒），兼容不支持原生通知的文件系统
+    private long pollIntervalMs = 1000;
+    // 文件持续该时长没有新内容时，结束正在拼接的异常块（毫秒）
+    private long idleFlushMs = 2000;
+    // 单个异常块最大行数
+    private int maxBlockLines = 300;
+    // 每分钟最多发起的分析数（与交互请求共用大模型额度，需留足余量）
+    private double analysesPerMinute = 30;
+    // 并行分析线程数
+    private int concurrency = 2;
+    // 待分析队列容量，超出时丢弃（仍记录出现次数）
+    private int queueCapacity = 100;
+    // 记录的不同异常数上限，超出淘汰最久未出现的异常
+    private int maxTracked = 1000;
+}
@@ -0,0 +1,155 @@
+package com.lizy.loganalysishelper.config;
+
+import com.lizy.loganalysishelper.util.AnalysisResultCache;
+import com.lizy.loganalysishelper.util.ConversationMemoryManager;
+import com.lizy.loganalysishelper.util.ExceptionFrequencyTracker;
+import com.lizy.loganalysishelper.util.ModelRouter;
+import com.lizy.loganalysishelper.util.QwenHttpClient;
+import com.lizy.loganalysishelper.util.UpstreamConnectionManager;
+import com.lizy.loganalysishelper.util.UpstreamScheduler;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Map;
+
+/**
+ * 把各组件已有的统计量注册为Micrometer指标（只读取计数，不改变组件本身）
+ * 请求分阶段耗时、Prompt/响应大小、token消耗由AnalysisMetrics在请求链路中直接记录
+ */
+@Configuration
+public class MetricsConfig {
+
+    /**
+     * 大模型调用：调用/重试/对冲/失败次数、熔断器状态（0=CLOSED，1=HALF_OPEN，2=OPEN）
+     */
+    @Bean
+    public MeterBinder upstreamMetrics(QwenHttpClient client) {
+        return registry -> {
+            FunctionCounter.builder("qwen.upstream.calls", client, QwenHttpClient::getCalls).register(registry);
+            FunctionCounter.builder("qwen.upstream.retries", client, QwenHttpClient::getRetries).register(registry);
+            FunctionCounter.builder("qwen.upstream.failures", client, QwenHttpClient::getFailures).register(registry);
+            FunctionCounter.builder("qwen.upstream.hedges", client, QwenHttpClient::getHedges).register(registry);
+            FunctionCounter.builder("qwen.upstream.hedge.wins", client, QwenHttpClient::getHedgeWins).register(registry);
+            Gauge.builder("qwen.upstream.circuit.state", client, c -> {
+                switch (c.getCircuitState()) {
+                    case OPEN:
+                        return 2;
+                    case HALF_OPEN:
+                        return 1;
+                    default:
+                        return 0;
+                }
+            }).register(registry);
+        };
+    }
+
+    /**
+     * 大模型连接：连接池连接数/空闲连接数、调度器进行中/排队调用数（排队数大于0说明调度器并发上限已饱和）、连接探测次数
+     */
+    @Bean
+    public MeterBinder connectionMetrics(UpstreamConnectionManager manager) {
+        return registry -> {
+            Gauge.builder("qwen.http.pool.connections", manager, UpstreamConnectionManager::getConnectionCount)
+                    .register(registry);
+            Gauge.builder("qwen.http.pool.idle", manager, UpstreamConnectionManager::getIdleConnectionCount)
+                    .register(registry);
+            Gauge.builder("qwen.http.dispatcher.running", manager, UpstreamConnectionManager::getRunningCalls)
+                    .register(registry);
+            Gauge.builder("qwen.http.dispatcher.queued", manager, UpstreamConnectionManager::getQueuedCalls)
+                    .register(registry);
+            FunctionCounter.builder("qwen.http.probes", manager, UpstreamConnectionManager::getProbes)
+                    .tag("result", "success").register(registry);
+            FunctionCounter.builder("qwen.http.probes", manager, UpstreamConnectionManager::getProbeFailures)
+                    .tag("result", "failure").register(registry);
+        };
+    }
+
+    /**
+     * 大模型调用调度：排队深度、进行中的调用数、按原因统计的排队拒绝次数（排队耗时由AnalysisMetrics记录）
+     */
+    @Bean
+    public MeterBinder schedulerMetrics(UpstreamScheduler scheduler) {
+        return registry -> {
+            Gauge.builder("qwen.scheduler.queue.depth", scheduler, UpstreamScheduler::queueDepth).register(registry);
+            Gauge.builder("qwen.scheduler.in.flight", scheduler, UpstreamScheduler::inFlight).register(registry);
+            for (String reason : new String[]{UpstreamScheduler.REJECT_QUEUE_FULL,
+                    UpstreamScheduler.REJECT_CLIENT_QUEUE_FULL, UpstreamScheduler.REJECT_TIMEOUT}) {
+                FunctionCounter.builder("qwen.scheduler.rejected", scheduler, s -> s.rejectedCount(reason))
+                        .tag("reason", reason).register(registry);
+            }
+        };
+    }
+
+    /**
+     * 会话存储：内存会话数/近似字节数、淘汰与过期次数、持久化存储会话数
+     */
+    @Bean
+    public MeterBinder sessionMetrics(ConversationMemoryManager manager) {
+        return registry -> {
+            Gauge.builder("qwen.session.count", manager, ConversationMemoryManager::sessionCount).register(registry);
+            Gauge.builder("qwen.session.bytes", manager, ConversationMemoryManager::approxBytes)
+                    .baseUnit("bytes").register(registry);
+            Gauge.builder("qwen.session.store.count", manager, ConversationMemoryManager::storeSize).register(registry);
+            FunctionCounter.builder("qwen.session.evictions", manager, ConversationMemoryManager::evictionCount)
+                    .register(registry);
+            FunctionCounter.builder("qwen.session.expirations", manager, ConversationMemoryManager::expirationCount)
+                    .register(registry);
+        };
+    }
+
+    /**
+     * 分析结果缓存命中情况
+     */
+    @Bean
+    public MeterBinder cacheMetrics(AnalysisResultCache cache) {
+        return registry -> {
+            FunctionCounter.builder("qwen.cache.requests", cache, AnalysisResultCache::getMemoryHits)
+                    .tag("result", "memory_hit").register(registry);
+            FunctionCounter.builder("qwen.cache.requests", cache, AnalysisResultCache::getDiskHits)
+                    .tag("result", "disk_hit").register(registry);
+            FunctionCounter.builder("qwen.cache.requests", cache, AnalysisResultCache::getMisses)
+                    .tag("result", "miss").register(registry);
+        };
+    }
+
+    /**
+     * 异常频率统计：记录的异常出现次数（各异常的排行通过/api/log/top查询，不按指纹打标签）
+     */
+    @Bean
+    public MeterBinder frequencyMetrics(ExceptionFrequencyTracker tracker) {
+        return registry -> FunctionCounter.builder("qwen.frequency.recorded", tracker,
+                ExceptionFrequencyTracker::getRecorded).register(registry);
+    }
+
+    /**
+     * 多模型路由：各模型选择/降级/失败次数与近期延迟分位数
+     */
+    @Bean
+    public MeterBinder modelMetrics(ModelRouter router) {
+        return registry -> {
+            for (Map.Entry<String, ModelRouter.ModelStats> entry : router.modelStats().entrySet()) {
+                String model = entry.getKey();
+                ModelRouter.ModelStats stats = entry.getValue();
+                FunctionCounter.builder("qwen.model.selections", stats, ModelRouter.ModelStats::getSelections)
+                        .tag("model", model).register(registry);
+                FunctionCounter.builder("qwen.model.fallbacks", stats, ModelRouter.ModelStats::getFallbacks)
+                        .tag("model", model).register(registry);
+                FunctionCounter.builder("qwen.model.failures", stats, ModelRouter.ModelStats::getFailures)
+                        .tag("model", model).register(registry);
+                Gauge.builder("qwen.model.latency", stats, s -> quantileOrNaN(s, 0.5))
+                        .tag("model", model).tag("quantile", "0.5").baseUnit("milliseconds").register(registry);
+                Gauge.builder("qwen.model.latency", stats, s -> quantileOrNaN(s, 0.95))
+                        .tag("model", model).tag("quantile", "0.95").baseUnit("milliseconds").register(registry);
+            }
+        };
+    }
+
+    // 无样本时导出NaN，避免-1被当作真实延迟
+    private static double quantileOrNaN(ModelRouter.ModelStats stats, double quantile) {
+        long value = stats.getLatency().quantile(quantile);
+        return value < 0 ? Double.NaN : value;
+    }
+}
@@ -0,0 +1,47 @@
+package com.lizy.loganalysishelper.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 多模型路由配置（qwen.router.*）：按输入复杂度选择模型档位，档位延迟超出SLO时降级到其他档位
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "qwen.router")
+public class ModelRouterProperties {
+    // 是否启用路由（关闭时全部使用qwen.model）
+    private boolean enabled = false;
+    // 复杂度评分权重：每个调用栈帧
+    private double frameWeight = 0.05;
+    // 复杂度评分权重：每层Caused by
+    private double causeWeight = 1.0;
+    // 复杂度评分权重：每个Suppressed
+    private double suppressedWeight = 0.5;
+    // 复杂度评分权重：每1000个Prompt token
+    private double kiloTokenWeight = 1.0;
+    // 追问的评分系数（追问只需简短回答，通常可用更轻的模型）
+    private double followUpFactor = 0.5;
+    // 延迟样本数达到该值后才判断是否超出SLO
+    private int sloMinSamples = 10;
+    // 超出SLO的档位仍保留的探测流量比例（让其延迟样本持续更新，恢复后重新接收流量）
+    private double probeRatio = 0.05;
+    // 模型档位（按maxScore从小到大匹配，首个满足的档位生效）
+    private List<Tier> tiers = new ArrayList<>();
+
+    @Data
+    public static class Tier {
+        // 模型名称
+        private String model;
+        // 该档位可承接的最大复杂度评分
+        private double maxScore = Double.MAX_VALUE;
+        // 延迟SLO：近期P95超过该值（毫秒）时降级，0表示不限制
+        private long latencySloMs;
+        // 降级目标模型（为空时降级到下一档位，最后一档降级到上一档位）
+        private String fallback;
+    }
+}
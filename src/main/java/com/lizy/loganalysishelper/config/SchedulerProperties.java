@@ -0,0 +1,45 @@
+package com.lizy.loganalysishelper.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 大模型调用调度配置（qwen.scheduler.*）：按会话加权公平排队，追问优先；配置了配额的调用方按令牌桶限速
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "qwen.scheduler")
+public class SchedulerProperties {
+    // 是否启用（关闭时所有调用直接发往大模型）
+    private boolean enabled = true;
+    // 同时进行中的大模型调用上限（同步/异步/流式合计）
+    private int maxConcurrent = 16;
+    // 排队请求总数上限，超出直接拒绝（429）
+    private int queueCapacity = 256;
+    // 单个调用方最多排队的请求数（防止单个调用方占满队列）
+    private int maxQueuedPerClient = 64;
+    // 最长排队时间（毫秒），超时拒绝（429）
+    private long maxWaitMs = 30000;
+    // 追问的权重（相对首轮分析为1）：同等token数下追问的虚拟完成时间更早，优先发出
+    private double followUpWeight = 4.0;
+    // 调用方默认配额：每分钟调用数（0表示不限速）与突发容量
+    // 默认不限速：未携带X-Client-Id的请求共用anonymous调用方，默认配额会把这部分流量整体限制在该速率
+    private double ratePerMinute = 0;
+    private int burst = 10;
+    // 指定调用方的配额（key为X-Client-Id，未配置的调用方使用默认配额）
+    private Map<String, ClientQuota> clients = new LinkedHashMap<>();
+    // 记录令牌桶的调用方数上限，超出淘汰最久未使用的调用方
+    private int maxClients = 10000;
+
+    @Data
+    public static class ClientQuota {
+        // 每分钟调用数
+        private double ratePerMinute = 60;
+        // 突发容量
+        private int burst = 10;
+    }
+}
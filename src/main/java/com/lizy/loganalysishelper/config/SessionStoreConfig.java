@@ -0,0 +1,41 @@
+package com.lizy.loganalysishelper.config;
+
+import com.lizy.loganalysishelper.util.InMemorySessionStore;
+import com.lizy.loganalysishelper.util.JournalSessionStore;
+import com.lizy.loganalysishelper.util.NoopSessionStore;
+import com.lizy.loganalysishelper.util.SessionStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 会话持久化存储配置（qwen.session.store.type：none/memory/journal）
+ */
+@Configuration
+public class SessionStoreConfig {
+
+    @Bean(destroyMethod = "close")
+    public SessionStore sessionStore(@Value("${qwen.session.store.type:none}") String type,
+                                     @Value("${qwen.session.expire-minutes:30}") long expireMinutes,
+                                     @Value("${qwen.session.store.journal.dir:./data/session-journal}") String journalDir,
+                                     @Value("${qwen.session.store.journal.chunk-mb:64}") long chunkMb,
+                                     @Value("${qwen.session.store.journal.compact-min-mb:16}") long compactMinMb,
+                                     @Value("${qwen.session.store.journal.flush-interval-ms:1000}") long flushIntervalMs,
+                                     @Value("${qwen.session.store.journal.compact-interval-minutes:10}") long compactIntervalMinutes)
+            throws IOException {
+        switch (type.toLowerCase()) {
+            case "journal":
+                return new JournalSessionStore(journalDir, chunkMb, TimeUnit.MINUTES.toMillis(expireMinutes),
+                        compactMinMb, flushIntervalMs, compactIntervalMinutes);
+            case "memory":
+                return new InMemorySessionStore();
+            case "none":
+                return new NoopSessionStore();
+            default:
+                throw new IllegalStateException("不支持的会话存储类型（qwen.session.store.type）：" + type);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.lizy.loganalysishelper.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 调用栈预精简配置（qwen.trace-reduction.*）：构建Prompt前折叠框架帧与递归帧，业务代码包前缀复用qwen.rules.app-packages
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "qwen.trace-reduction")
+public class TraceReductionProperties {
+    // 是否启用
+    private boolean enabled = true;
+    // 框架代码包前缀（连续的框架帧按包归类折叠为一行）
+    private List<String> frameworkPackages = new ArrayList<>();
+    // 折叠摘要中包名保留的层级数（如3：org.springframework.web）
+    private int packageDepth = 3;
+    // 连续框架帧达到该数量才折叠（更短的保留原文）
+    private int minCollapseFrames = 3;
+    // 每段异常（异常首行/Caused by/Suppressed之后）始终保留的栈顶帧数
+    private int keepTopFrames = 2;
+    // 识别递归循环的最大周期（帧数）
+    private int maxCyclePeriod = 32;
+    // 同一帧序列连续重复达到该次数才折叠为一次
+    private int minCycleRepeats = 3;
+}
@@ -0,0 +1,49 @@
+package com.lizy.loganalysishelper.config;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 大模型HTTP客户端配置（同步/异步/流式调用与连接探测共用同一连接池与调度器）
+ * 连接预热、探测与关闭由UpstreamConnectionManager负责
+ */
+@Configuration
+public class UpstreamHttpConfig {
+    private static final Logger log = LoggerFactory.getLogger(UpstreamHttpConfig.class);
+
+    @Bean
+    public OkHttpClient upstreamOkHttpClient(UpstreamHttpProperties properties) {
+        // 异步调用默认每个Host最多5个并发，同步接口也走异步调用，需按配置放开
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(properties.getMaxRequests());
+        dispatcher.setMaxRequestsPerHost(properties.getMaxRequestsPerHost());
+        ConnectionPool connectionPool = new ConnectionPool(properties.getMaxIdleConnections(),
+                properties.getKeepAliveMs(), TimeUnit.MILLISECONDS);
+        OkHttpClient client = new OkHttpClient.Builder()
+                .connectTimeout(properties.getConnectTimeoutMs(), TimeUnit.MILLISECONDS)
+                .readTimeout(properties.getReadTimeoutMs(), TimeUnit.MILLISECONDS)
+                .writeTimeout(properties.getWriteTimeoutMs(), TimeUnit.MILLISECONDS)
+                .retryOnConnectionFailure(true) // 底层连接失败重试
+                .dispatcher(dispatcher)
+                .connectionPool(connectionPool)
+                .protocols(properties.isHttp2()
+                        ? Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1)
+                        : Collections.singletonList(Protocol.HTTP_1_1))
+                .pingInterval(properties.getPingIntervalMs(), TimeUnit.MILLISECONDS)
+                .build();
+        log.info("[UpstreamHttpConfig] HTTP客户端初始化完成，HTTP/2：{}，调度器并发上限：{}/{}（单Host），空闲连接上限：{}，保活：{}ms",
+                properties.isHttp2(), properties.getMaxRequests(), properties.getMaxRequestsPerHost(),
+                properties.getMaxIdleConnections(), properties.getKeepAliveMs());
+        return client;
+    }
+}
@@ -0,0 +1,42 @@
+package com.lizy.loganalysishelper.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 大模型HTTP连接配置（qwen.http.*）：超时、连接池、调度器并发上限、HTTP/2与连接预热
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "qwen.http")
+public class UpstreamHttpProperties {
+    // 连接/读/写超时（毫秒）
+    private long connectTimeoutMs = 30000;
+    private long readTimeoutMs = 60000;
+    private long writeTimeoutMs = 60000;
+    // 连接池最多保留的空闲连接数（HTTP/1.1下每个并发调用占用一个连接，应不小于scheduler.max-concurrent）
+    private int maxIdleConnections = 32;
+    // 空闲连接保留时间（毫秒），超过后关闭
+    private long keepAliveMs = 300000;
+    // 调度器同时进行的调用上限（OkHttp默认64，单Host默认5，超出的调用在调度器内排队）
+    private int maxRequests = 256;
+    private int maxRequestsPerHost = 256;
+    // 是否启用HTTP/2（ALPN协商，服务端不支持时回退HTTP/1.1）：单连接多路复用，并发调用不再各自建连
+    private boolean http2 = true;
+    // HTTP/2 PING间隔（毫秒，0表示关闭）：保持连接活跃并及时发现已断开的连接
+    private long pingIntervalMs = 30000;
+    private Warmup warmup = new Warmup();
+
+    @Data
+    public static class Warmup {
+        // 是否在启动时预建连接并定期探测保温
+        private boolean enabled = true;
+        // 预热连接数（协商为HTTP/2时只需1个连接）
+        private int connections = 4;
+        // 探测间隔（毫秒，0表示只在启动时预热）：有调用进行中时跳过，空闲时发HEAD请求刷新连接的空闲计时
+        private long probeIntervalMs = 60000;
+        // 探测请求超时（毫秒）
+        private long probeTimeoutMs = 5000;
+    }
+}
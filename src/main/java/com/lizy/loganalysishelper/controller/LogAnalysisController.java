@@ -1,31 +1,317 @@
 package com.lizy.loganalysishelper.controller;
 
+import com.lizy.loganalysishelper.entity.BulkAnalysisReport;
+import com.lizy.loganalysishelper.entity.ExceptionFrequency;
+import com.lizy.loganalysishelper.entity.IngestedException;
 import com.lizy.loganalysishelper.entity.LogAnalysisRequest;
 import com.lizy.loganalysishelper.entity.LogAnalysisResponse;
+import com.lizy.loganalysishelper.util.AnalysisResultCache;
+import com.lizy.loganalysishelper.util.AnalysisStreamListener;
+import com.lizy.loganalysishelper.util.BulkLogAnalyzer;
+import com.lizy.loganalysishelper.util.ConversationMemoryManager;
+import com.lizy.loganalysishelper.util.ExceptionFrequencyTracker;
+import com.lizy.loganalysishelper.util.LogDirectoryWatcher;
+import com.lizy.loganalysishelper.util.ModelRouter;
 import com.lizy.loganalysishelper.util.QwenApiUtil;
+import com.lizy.loganalysishelper.util.QwenHttpClient;
+import com.lizy.loganalysishelper.util.SimilarTraceIndex;
+import com.lizy.loganalysishelper.util.UpstreamScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/api/log")
 public class LogAnalysisController {
+    private static final Logger log = LoggerFactory.getLogger(LogAnalysisController.class);
+    // 调用方标识请求头（调度配额按调用方计算）
+    private static final String CLIENT_ID_HEADER = "X-Client-Id";
 
     @Autowired
     private QwenApiUtil qwenApiUtil;
 
+    @Autowired
+    private AnalysisResultCache analysisResultCache;
+
+    @Autowired
+    private BulkLogAnalyzer bulkLogAnalyzer;
+
+    @Autowired
+    private ConversationMemoryManager conversationMemoryManager;
+
+    @Autowired
+    private QwenHttpClient qwenHttpClient;
+
+    @Autowired
+    private ModelRouter modelRouter;
+
+    @Autowired
+    private SimilarTraceIndex similarTraceIndex;
+
+    @Autowired
+    private LogDirectoryWatcher logDirectoryWatcher;
+
+    @Autowired
+    private UpstreamScheduler upstreamScheduler;
+
+    @Autowired
+    private ExceptionFrequencyTracker exceptionFrequencyTracker;
+
+    // SSE连接最长保持时间（毫秒）
+    @Value("${qwen.stream.timeout-ms:180000}")
+    private long streamTimeoutMs;
+
+    // 异步接口最长等待时间（毫秒），超时返回503
+    @Value("${qwen.async.timeout-ms:120000}")
+    private long asyncTimeoutMs;
+
+    // 批量文件分析整体超时（分钟）
+    @Value("${qwen.bulk.timeout-minutes:30}")
+    private long bulkTimeoutMinutes;
+
     /**
      * 智能日志分析接口（支持多轮对话）
-     * 请求体：{"exceptionLog":"日志内容", "sessionId":"会话ID"}
+     * 请求体：{"exceptionLog":"日志内容", "sessionId":"会话ID"}；请求头X-Client-Id（可选）标识调用方，用于调度配额
      */
     @PostMapping("/analyze")
-    public LogAnalysisResponse analyzeLog(@RequestBody LogAnalysisRequest request) {
+    public LogAnalysisResponse analyzeLog(@RequestBody LogAnalysisRequest request, HttpServletRequest servletRequest) {
         if (request.getExceptionLog() == null || request.getExceptionLog().trim().isEmpty()) {
             return LogAnalysisResponse.error(400, "异常日志不能为空");
         }
         // 传递sessionId支持多轮对话
-        return qwenApiUtil.analyzeJavaLog(request.getExceptionLog(), request.getSessionId());
+        return qwenApiUtil.analyzeJavaLog(request.getExceptionLog(), request.getSessionId(), resolveClientId(servletRequest));
+    }
+
+    /**
+     * 异步日志分析接口（不占用Tomcat线程等待大模型）
+     * 请求体同 /analyze；调用并发已满返回HTTP 429，等待超时返回HTTP 503
+     */
+    @PostMapping("/analyze/async")
+    public DeferredResult<ResponseEntity<LogAnalysisResponse>> analyzeLogAsync(@RequestBody LogAnalysisRequest request,
+                                                                               HttpServletRequest servletRequest) {
+        DeferredResult<ResponseEntity<LogAnalysisResponse>> deferredResult = new DeferredResult<>(asyncTimeoutMs,
+                ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .body(LogAnalysisResponse.error(503, "日志分析超时，请稍后重试")));
+        if (request.getExceptionLog() == null || request.getExceptionLog().trim().isEmpty()) {
+            deferredResult.setResult(ResponseEntity.ok(LogAnalysisResponse.error(400, "异常日志不能为空")));
+            return deferredResult;
+        }
+        CompletableFuture<LogAnalysisResponse> future = qwenApiUtil.analyzeJavaLogAsync(
+                request.getExceptionLog(), request.getSessionId(), resolveClientId(servletRequest));
+        future.thenAccept(response -> deferredResult.setResult(toResponseEntity(response)));
+        // 超时取消当前请求的等待；没有其他请求共享同一调用时，一并退出排队/取消上游调用
+        deferredResult.onTimeout(() -> future.cancel(true));
+        return deferredResult;
+    }
+
+    /**
+     * 流式日志分析接口（SSE，逐段推送大模型输出）
+     * 事件：token（增量片段）、done（完整结果）、error（错误信息）
+     */
+    @PostMapping(value = "/analyze/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter analyzeLogStream(@RequestBody LogAnalysisRequest request, HttpServletRequest servletRequest) {
+        SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+        if (request.getExceptionLog() == null || request.getExceptionLog().trim().isEmpty()) {
+            sendAndComplete(emitter, "error", LogAnalysisResponse.error(400, "异常日志不能为空"));
+            return emitter;
+        }
+        Runnable cancel = qwenApiUtil.streamJavaLog(request.getExceptionLog(), request.getSessionId(),
+                resolveClientId(servletRequest), new AnalysisStreamListener() {
+                    @Override
+                    public void onToken(String token) throws IOException {
+                        emitter.send(SseEmitter.event().name("token")
+                                .data(Collections.singletonMap("text", token), MediaType.APPLICATION_JSON));
+                    }
+
+                    @Override
+                    public void onComplete(LogAnalysisResponse response) {
+                        sendAndComplete(emitter, "done", response);
+                    }
+
+                    @Override
+                    public void onError(LogAnalysisResponse response) {
+                        sendAndComplete(emitter, "error", response);
+                    }
+                });
+        // 客户端断开/超时：终止上游调用（部分容器断开时只触发完成回调；正常完成后取消为空操作）
+        emitter.onTimeout(cancel);
+        emitter.onError(e -> cancel.run());
+        emitter.onCompletion(cancel);
+        return emitter;
+    }
+
+    /**
+     * 日志文件批量分析接口（multipart上传，支持gzip压缩）
+     * 流式提取文件中的全部异常，按指纹去重后并行分析，返回汇总报告；等待分析期间不占用Tomcat线程
+     */
+    @PostMapping("/analyze/file")
+    public DeferredResult<ResponseEntity<BulkAnalysisReport>> analyzeLogFile(@RequestParam("file") MultipartFile file,
+                                                                             HttpServletRequest servletRequest)
+            throws IOException {
+        // 超时由BulkLogAnalyzer处理（返回已完成部分），这里只兜底
+        DeferredResult<ResponseEntity<BulkAnalysisReport>> deferredResult = new DeferredResult<>(
+                TimeUnit.MINUTES.toMillis(bulkTimeoutMinutes + 1),
+                ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
+        if (file.isEmpty()) {
+            deferredResult.setResult(ResponseEntity.badRequest().build());
+            return deferredResult;
+        }
+        CompletableFuture<BulkAnalysisReport> future = bulkLogAnalyzer.analyze(file.getInputStream(),
+                file.getOriginalFilename(), resolveClientId(servletRequest));
+        future.whenComplete((report, e) -> deferredResult.setResult(e == null ? ResponseEntity.ok(report)
+                : ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build()));
+        return deferredResult;
+    }
+
+    /**
+     * 分析结果缓存统计（命中/未命中次数）
+     */
+    @GetMapping("/cache/stats")
+    public Map<String, Object> cacheStats() {
+        return analysisResultCache.stats();
+    }
+
+    /**
+     * 相似异常索引统计（条目数、命中/未命中次数、平均候选数）
+     */
+    @GetMapping("/similar/stats")
+    public Map<String, Object> similarStats() {
+        return similarTraceIndex.stats();
+    }
+
+    /**
+     * 大模型调用统计（重试/对冲次数、延迟分位数、熔断器状态、连接池/调度器状态）
+     */
+    @GetMapping("/upstream/stats")
+    public Map<String, Object> upstreamStats() {
+        return qwenHttpClient.stats();
+    }
+
+    /**
+     * 大模型调用调度统计（进行中/排队数、各优先级平均排队耗时、拒绝次数、各调用方排队数）
+     */
+    @GetMapping("/scheduler/stats")
+    public Map<String, Object> schedulerStats() {
+        return upstreamScheduler.stats();
+    }
+
+    /**
+     * 多模型路由统计（各模型选择/降级次数、延迟分位数、SLO状态）
+     */
+    @GetMapping("/router/stats")
+    public Map<String, Object> routerStats() {
+        return modelRouter.stats();
+    }
+
+    /**
+     * 会话存储统计（会话数、近似字节数、淘汰/过期次数）
+     */
+    @GetMapping("/session/stats")
+    public Map<String, Object> sessionStats() {
+        return conversationMemoryManager.stats();
+    }
+
+    /**
+     * 单个会话的消息存储统计（堆内/堆外字节数）
+     */
+    @GetMapping("/session/{sessionId}/stats")
+    public ResponseEntity<Map<String, Object>> sessionStorageStats(@PathVariable String sessionId) {
+        Map<String, Object> stats = conversationMemoryManager.sessionStorageStats(sessionId);
+        return stats == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(stats);
+    }
+
+    /**
+     * 最近5分钟/1小时/1天出现次数最多的异常（估计次数 + 缓存的分析结果）
+     */
+    @GetMapping("/top")
+    public Map<String, List<ExceptionFrequency>> topExceptions(@RequestParam(value = "n", defaultValue = "10") int n) {
+        return exceptionFrequencyTracker.topExceptions(Math.max(n, 1));
+    }
+
+    /**
+     * 异常频率统计（记录次数、各窗口候选占用、计数矩阵内存）
+     */
+    @GetMapping("/top/stats")
+    public Map<String, Object> frequencyStats() {
+        return exceptionFrequencyTracker.stats();
+    }
+
+    /**
+     * 日志目录监听发现的异常（按最近出现时间倒序，含预分析状态与会话ID）
+     */
+    @GetMapping("/ingest/exceptions")
+    public List<IngestedException> ingestedExceptions(@RequestParam(value = "limit", defaultValue = "50") int limit) {
+        return logDirectoryWatcher.recentExceptions(Math.max(limit, 1));
+    }
+
+    /**
+     * 日志目录监听统计（发现/排队/丢弃/分析次数、队列深度）
+     */
+    @GetMapping("/ingest/stats")
+    public Map<String, Object> ingestStats() {
+        return logDirectoryWatcher.stats();
+    }
+
+    /**
+     * 打开某个异常的预分析会话（会话已过期时自动重建），返回的sessionId可直接用于追问
+     */
+    @PostMapping("/ingest/{fingerprint}/session")
+    public ResponseEntity<IngestedException> openIngestedSession(@PathVariable String fingerprint) {
+        IngestedException item = logDirectoryWatcher.openSession(fingerprint);
+        return item == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(item);
+    }
+
+    /**
+     * 调用方标识：优先取X-Client-Id请求头（由网关按API Key注入），缺省时使用客户端地址
+     */
+    private String resolveClientId(HttpServletRequest servletRequest) {
+        String clientId = servletRequest.getHeader(CLIENT_ID_HEADER);
+        if (clientId != null && !clientId.trim().isEmpty()) {
+            return clientId.trim();
+        }
+        return servletRequest.getRemoteAddr();
+    }
+
+    private ResponseEntity<LogAnalysisResponse> toResponseEntity(LogAnalysisResponse response) {
+        // 限流/过载映射为HTTP状态码，便于网关和客户端退避；其余沿用响应体中的code
+        if (response.getCode() == 429) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(response);
+        }
+        if (response.getCode() == 503) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(response);
+        }
+        return ResponseEntity.ok(response);
+    }
+
+    private void sendAndComplete(SseEmitter emitter, String eventName, LogAnalysisResponse response) {
+        try {
+            emitter.send(SseEmitter.event().name(eventName).data(response, MediaType.APPLICATION_JSON));
+            emitter.complete();
+        } catch (IOException | IllegalStateException e) {
+            // 客户端已断开或连接已结束，无需再推送
+            log.debug("[LogAnalysisController] SSE事件推送失败：{}", e.getMessage());
+        }
     }
-}
\ No newline at end of file
+}
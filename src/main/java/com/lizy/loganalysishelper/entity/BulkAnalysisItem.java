@@ -0,0 +1,22 @@
+package com.lizy.loganalysishelper.entity;
+
+import lombok.Data;
+
+/**
+ * 批量分析中单个（去重后）异常的分析结果
+ */
+@Data
+public class BulkAnalysisItem {
+    // 异常指纹
+    private String fingerprint;
+    // 异常类型（首行异常全限定名）
+    private String exceptionType;
+    // 在日志文件中出现的次数
+    private long occurrences;
+    // 首次出现的完整异常块（作为分析样本）
+    private String sample;
+    // 分析使用的会话ID（可继续追问）
+    private String sessionId;
+    // 分析结果
+    private LogAnalysisResponse analysis;
+}
@@ -0,0 +1,27 @@
+package com.lizy.loganalysishelper.entity;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 日志文件批量分析报告
+ */
+@Data
+public class BulkAnalysisReport {
+    // 上传的文件名
+    private String fileName;
+    // 扫描的总行数
+    private long totalLines;
+    // 识别出的异常块总数（含重复）
+    private long totalExceptions;
+    // 去重后的异常数
+    private int distinctExceptions;
+    // 超出去重上限而未分析的异常种类数
+    private int skippedDistinct;
+    // 处理耗时（毫秒）
+    private long costTime;
+    // 各异常分析结果（按出现次数倒序）
+    private List<BulkAnalysisItem> items = new ArrayList<>();
+}
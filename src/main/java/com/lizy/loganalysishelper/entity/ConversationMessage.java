@@ -1,5 +1,8 @@
 package com.lizy.loganalysishelper.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.lizy.loganalysishelper.util.MessageBodyCodec;
+import com.lizy.loganalysishelper.util.MessageStorageMode;
 import lombok.Data;
 import java.util.Date;
 
@@ -8,10 +11,16 @@ import java.util.Date;
  */
 @Data
 public class ConversationMessage {
+    // 字符串对象自身的近似开销
+    private static final int STRING_OVERHEAD_BYTES = 40;
+
     // 角色：user/assistant
     private String role;
-    // 消息内容
+    // 消息内容（堆内原文；以压缩/堆外方式存储后置为null）
     private String content;
+    // 压缩/堆外存储的消息内容
+    @JsonIgnore
+    private MessageBodyCodec.EncodedBody encodedContent;
     // 时间戳
     private Date timestamp;
 
@@ -32,4 +41,50 @@ public class ConversationMessage {
         msg.setTimestamp(new Date());
         return msg;
     }
-}
\ No newline at end of file
+
+    /**
+     * 获取消息内容（压缩/堆外存储时按需还原，不缓存原文）
+     */
+    public String getContent() {
+        if (content == null && encodedContent != null) {
+            return encodedContent.decode();
+        }
+        return content;
+    }
+
+    public void setContent(String content) {
+        this.content = content;
+        this.encodedContent = null;
+    }
+
+    /**
+     * 按存储模式转存消息内容
+     *
+     * @param mode     存储模式
+     * @param minChars 低于该长度的短消息保持堆内原文（编码收益不抵开销）
+     */
+    public void store(MessageStorageMode mode, int minChars) {
+        if (mode == MessageStorageMode.HEAP || content == null || content.length() < minChars) {
+            return;
+        }
+        this.encodedContent = MessageBodyCodec.encode(content, mode);
+        this.content = null;
+    }
+
+    /**
+     * 堆内占用的近似字节数（仅正文）
+     */
+    public long heapBytes() {
+        if (content != null) {
+            return STRING_OVERHEAD_BYTES + content.length() * 2L;
+        }
+        return encodedContent == null ? 0 : encodedContent.heapBytes();
+    }
+
+    /**
+     * 堆外占用字节数（仅正文）
+     */
+    public long offHeapBytes() {
+        return encodedContent == null ? 0 : encodedContent.offHeapBytes();
+    }
+}
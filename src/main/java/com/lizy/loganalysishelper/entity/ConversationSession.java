@@ -1,8 +1,11 @@
 package com.lizy.loganalysishelper.entity;
 
+import com.lizy.loganalysishelper.util.ContextCompactor;
 import lombok.Data;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Date;
 
 /**
@@ -18,6 +21,10 @@ public class ConversationSession {
     private Date lastActiveTime;
     // 最大保留轮数（1轮=用户提问+AI回答）
     private static final int MAX_ROUND = 3;
+    // 会话对象自身的近似开销（对象头、集合、时间戳等）
+    private static final int SESSION_OVERHEAD_BYTES = 256;
+    // 单条消息对象的近似开销
+    private static final int MESSAGE_OVERHEAD_BYTES = 96;
 
     /**
      * 添加消息并自动截取最近3轮
@@ -53,4 +60,44 @@ public class ConversationSession {
         context.append("【当前分析请求】\n");
         return context.toString();
     }
-}
\ No newline at end of file
+
+    /**
+     * 在token预算内构建上下文文本（超出预算时压缩较早轮次：调用栈折叠、回答缩写）
+     *
+     * @param tokenBudget 上下文可用的token预算
+     * @return 压缩结果（含压缩前后token数）
+     */
+    public ContextCompactor.CompactedContext buildCompactedContext(int tokenBudget) {
+        return ContextCompactor.compact(messageHistory, tokenBudget);
+    }
+
+    /**
+     * 估算会话占用的内存字节数（堆内+堆外，用于会话存储按字节限容）
+     */
+    public long estimateBytes() {
+        long bytes = SESSION_OVERHEAD_BYTES;
+        for (ConversationMessage message : messageHistory) {
+            bytes += MESSAGE_OVERHEAD_BYTES + message.heapBytes() + message.offHeapBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * 消息正文存储统计（堆内/堆外字节数）
+     */
+    public Map<String, Object> storageStats() {
+        long heapBytes = 0;
+        long offHeapBytes = 0;
+        for (ConversationMessage message : messageHistory) {
+            heapBytes += message.heapBytes();
+            offHeapBytes += message.offHeapBytes();
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("sessionId", sessionId);
+        stats.put("messageCount", messageHistory.size());
+        stats.put("heapBytes", heapBytes);
+        stats.put("offHeapBytes", offHeapBytes);
+        stats.put("estimatedBytes", estimateBytes());
+        return stats;
+    }
+}
@@ -0,0 +1,18 @@
+package com.lizy.loganalysishelper.entity;
+
+import lombok.Data;
+
+/**
+ * 时间窗口内的高频异常（出现次数为Count-Min Sketch估计值，只会偏大不会偏小）
+ */
+@Data
+public class ExceptionFrequency {
+    // 异常指纹
+    private String fingerprint;
+    // 异常类型全限定名
+    private String exceptionType;
+    // 窗口内估计出现次数
+    private long count;
+    // 缓存的分析结果（未缓存/已过期/由本地规则作答时为null）
+    private String analysis;
+}
@@ -0,0 +1,41 @@
+package com.lizy.loganalysishelper.entity;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+
+import java.util.Date;
+
+/**
+ * 日志目录监听发现的（去重后）异常及其预分析状态
+ */
+@Data
+public class IngestedException {
+    // 状态：排队中 / 分析中 / 已完成 / 失败 / 队列已满被丢弃
+    public static final String QUEUED = "QUEUED";
+    public static final String ANALYZING = "ANALYZING";
+    public static final String DONE = "DONE";
+    public static final String FAILED = "FAILED";
+    public static final String DROPPED = "DROPPED";
+
+    // 异常指纹
+    private String fingerprint;
+    // 异常类型（首行异常全限定名）
+    private String exceptionType;
+    // 首次出现的日志文件
+    private String file;
+    // 出现次数
+    private long occurrences;
+    private Date firstSeen;
+    private Date lastSeen;
+    // 预分析状态
+    private String status;
+    // 预分析使用的会话ID（直接用该会话追问）
+    private String sessionId;
+    // 预分析完成时间
+    private Date analyzedAt;
+    // 失败原因
+    private String error;
+    // 首次出现的完整异常块（分析样本，会话过期后用于重建会话）
+    @JsonIgnore
+    private String sample;
+}
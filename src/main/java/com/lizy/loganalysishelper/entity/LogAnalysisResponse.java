@@ -1,6 +1,7 @@
 // 日志分析响应实体
 package com.lizy.loganalysishelper.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 
 @Data
@@ -11,6 +12,15 @@ public class LogAnalysisResponse {
     private String msg;
     // 分析结果（对应Jupyter迭代3的输出）
     private String analysisResult;
+    // 追踪ID（通过X-Trace-Id响应头返回，不进入响应体）
+    @JsonIgnore
+    private String traceId;
+    // 分阶段耗时（通过Server-Timing响应头返回，不进入响应体）
+    @JsonIgnore
+    private String serverTiming;
+    // 调用栈预精简比例（通过X-Prompt-Reduction响应头返回，不进入响应体）
+    @JsonIgnore
+    private String promptReduction;
 
     // 静态工厂方法：快速构建响应
     public static LogAnalysisResponse success(String analysisResult) {
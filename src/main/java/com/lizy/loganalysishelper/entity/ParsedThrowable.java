@@ -0,0 +1,66 @@
+package com.lizy.loganalysishelper.entity;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 结构化的异常（由异常日志解析得到，包含Caused by链与Suppressed异常）
+ */
+@Data
+public class ParsedThrowable {
+    // 异常类型全限定名
+    private String exceptionType;
+    // 异常信息（可能为null）
+    private String message;
+    // 调用栈帧
+    private List<StackFrame> frames = new ArrayList<>();
+    // "... N more" 省略的帧数
+    private int framesOmitted;
+    // Caused by
+    private ParsedThrowable cause;
+    // Suppressed
+    private List<ParsedThrowable> suppressed = new ArrayList<>();
+
+    /**
+     * 异常链（自身 + 逐层Caused by）
+     */
+    public List<ParsedThrowable> causeChain() {
+        List<ParsedThrowable> chain = new ArrayList<>();
+        for (ParsedThrowable current = this; current != null && chain.size() < 64; current = current.getCause()) {
+            chain.add(current);
+        }
+        return chain;
+    }
+
+    /**
+     * 根因（异常链最末端）
+     */
+    public ParsedThrowable rootCause() {
+        List<ParsedThrowable> chain = causeChain();
+        return chain.get(chain.size() - 1);
+    }
+
+    /**
+     * 异常简单类名
+     */
+    public String simpleName() {
+        int lastDot = exceptionType.lastIndexOf('.');
+        return lastDot < 0 ? exceptionType : exceptionType.substring(lastDot + 1);
+    }
+
+    /**
+     * 异常链中所有帧的总数（含Suppressed）
+     */
+    public int totalFrameCount() {
+        int count = 0;
+        for (ParsedThrowable current : causeChain()) {
+            count += current.getFrames().size();
+            for (ParsedThrowable item : current.getSuppressed()) {
+                count += item.totalFrameCount();
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,29 @@
+package com.lizy.loganalysishelper.entity;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 会话快照（会话持久化/跨实例共享的序列化格式，消息正文为原文）
+ */
+@Data
+public class SessionSnapshot {
+    // 会话ID
+    private String sessionId;
+    // 最后交互时间（毫秒时间戳）
+    private long lastActiveTime;
+    // 对话历史
+    private List<Message> messages = new ArrayList<>();
+
+    @Data
+    public static class Message {
+        // 角色：user/assistant
+        private String role;
+        // 消息内容
+        private String content;
+        // 时间戳（毫秒）
+        private long timestamp;
+    }
+}
@@ -0,0 +1,42 @@
+package com.lizy.loganalysishelper.entity;
+
+import lombok.Data;
+
+/**
+ * 调用栈帧（at com.xx.Foo.bar(Foo.java:12)）
+ */
+@Data
+public class StackFrame {
+    // 类全限定名
+    private String className;
+    // 方法名
+    private String methodName;
+    // 源文件名（Native Method/Unknown Source时为null）
+    private String fileName;
+    // 行号（未知时为-1）
+    private int lineNumber = -1;
+
+    /**
+     * 类所在包名
+     */
+    public String packageName() {
+        int lastDot = className == null ? -1 : className.lastIndexOf('.');
+        return lastDot < 0 ? "" : className.substring(0, lastDot);
+    }
+
+    /**
+     * 可读位置：类名.方法名(文件:行号)
+     */
+    public String toLocation() {
+        StringBuilder location = new StringBuilder(className).append('.').append(methodName).append('(');
+        if (fileName == null) {
+            location.append("Unknown Source");
+        } else {
+            location.append(fileName);
+            if (lineNumber >= 0) {
+                location.append(':').append(lineNumber);
+            }
+        }
+        return location.append(')').toString();
+    }
+}
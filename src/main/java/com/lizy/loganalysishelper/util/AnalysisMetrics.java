@@ -0,0 +1,180 @@
+package com.lizy.loganalysishelper.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 日志分析请求指标（Micrometer，经 /actuator/prometheus 导出）
+ * 1. log.analysis.stage：各阶段耗时直方图（validation/session/rules/cache/similar/reduce/prompt/route/upstream/parse/optimize/persist…）
+ * 2. log.analysis.request：请求总耗时，按模式（sync/async/stream）与响应码区分
+ * 3. Prompt/响应大小与token数分布，大模型实际消耗token计数
+ * 4. 调用栈预精简比例分布与节省的token数
+ * 5. 相似异常索引命中/未命中计数
+ * 6. 大模型调用排队耗时（按追问/首轮区分）
+ * 7. 按Prompt布局（flat/messages）区分的前缀缓存命中token比例与流式首字耗时
+ */
+@Component
+public class AnalysisMetrics {
+    private static final Duration MIN_EXPECTED = Duration.ofNanos(10_000);
+    private static final Duration MAX_EXPECTED = Duration.ofMinutes(2);
+
+    @Autowired
+    private MeterRegistry registry;
+
+    // 按阶段缓存Timer，避免每次记录都走注册表查找
+    private final Map<String, Timer> stageTimers = new ConcurrentHashMap<>();
+
+    /**
+     * 记录一次请求的分阶段耗时与总耗时
+     *
+     * @param mode  调用模式：sync/async/stream
+     * @param code  响应码
+     * @param timer 分阶段耗时
+     */
+    public void recordRequest(String mode, Integer code, StageTimer timer) {
+        for (Map.Entry<String, Long> entry : timer.snapshot().entrySet()) {
+            stageTimer(entry.getKey()).record(entry.getValue(), TimeUnit.NANOSECONDS);
+        }
+        Timer.builder("log.analysis.request")
+                .description("日志分析请求总耗时")
+                .tag("mode", mode)
+                .tag("code", String.valueOf(code))
+                .publishPercentileHistogram()
+                .minimumExpectedValue(MIN_EXPECTED)
+                .maximumExpectedValue(MAX_EXPECTED)
+                .register(registry)
+                .record(timer.elapsedNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录发送给大模型的Prompt大小
+     */
+    public void recordPrompt(String model, int chars, int estimatedTokens) {
+        DistributionSummary.builder("log.analysis.prompt.chars").baseUnit("chars").tag("model", model)
+                .register(registry).record(chars);
+        DistributionSummary.builder("log.analysis.prompt.tokens").description("Prompt估算token数").baseUnit("tokens")
+                .tag("model", model).register(registry).record(estimatedTokens);
+    }
+
+    /**
+     * 记录相似异常索引查询结果
+     */
+    public void recordSimilarLookup(boolean hit) {
+        Counter.builder("log.analysis.similar").description("相似异常索引查询次数")
+                .tag("result", hit ? "hit" : "miss").register(registry).increment();
+    }
+
+    /**
+     * 记录大模型调用排队耗时
+     *
+     * @param priority  优先级：follow_up/first
+     * @param waitNanos 排队耗时（纳秒）
+     */
+    public void recordSchedulerWait(String priority, long waitNanos) {
+        Timer.builder("log.analysis.scheduler.wait")
+                .description("大模型调用排队耗时")
+                .tag("priority", priority)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(MIN_EXPECTED)
+                .maximumExpectedValue(MAX_EXPECTED)
+                .register(registry)
+                .record(waitNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录调用栈预精简效果
+     *
+     * @param originalTokens 精简前估算token数
+     * @param reducedTokens  精简后估算token数
+     */
+    public void recordReduction(int originalTokens, int reducedTokens) {
+        if (originalTokens <= 0) {
+            return;
+        }
+        DistributionSummary.builder("log.analysis.prompt.reduction.ratio").description("调用栈精简后/精简前token比例")
+                .register(registry).record(reducedTokens / (double) originalTokens);
+        Counter.builder("log.analysis.prompt.reduction.saved").description("调用栈精简节省的估算token数")
+                .baseUnit("tokens").register(registry).increment(Math.max(originalTokens - reducedTokens, 0));
+    }
+
+    /**
+     * 记录大模型响应大小
+     */
+    public void recordResponse(String model, int chars) {
+        DistributionSummary.builder("log.analysis.response.chars").baseUnit("chars").tag("model", model)
+                .register(registry).record(chars);
+    }
+
+    /**
+     * 记录大模型返回的实际token消耗（响应usage字段）
+     *
+     * @param cachedTokens 命中服务端前缀缓存的输入token数（包含在inputTokens内）
+     */
+    public void recordUsage(String model, long inputTokens, long outputTokens, long cachedTokens) {
+        if (inputTokens > 0) {
+            Counter.builder("qwen.tokens").baseUnit("tokens").tag("model", model).tag("type", "input")
+                    .register(registry).increment(inputTokens);
+        }
+        if (outputTokens > 0) {
+            Counter.builder("qwen.tokens").baseUnit("tokens").tag("model", model).tag("type", "output")
+                    .register(registry).increment(outputTokens);
+        }
+        if (cachedTokens > 0) {
+            Counter.builder("qwen.tokens").baseUnit("tokens").tag("model", model).tag("type", "cached")
+                    .register(registry).increment(cachedTokens);
+        }
+    }
+
+    /**
+     * 记录输入token中命中服务端前缀缓存的比例
+     *
+     * @param layout       Prompt布局：flat/messages
+     * @param inputTokens  输入token数
+     * @param cachedTokens 命中缓存的输入token数
+     */
+    public void recordPromptCache(String layout, long inputTokens, long cachedTokens) {
+        if (inputTokens <= 0) {
+            return;
+        }
+        DistributionSummary.builder("log.analysis.prompt.cache.ratio").description("输入token中命中服务端前缀缓存的比例")
+                .tag("layout", layout).register(registry).record(cachedTokens / (double) inputTokens);
+    }
+
+    /**
+     * 记录流式调用首字耗时（发起调用到首个增量片段到达）
+     *
+     * @param layout Prompt布局：flat/messages
+     * @param model  模型名称
+     * @param nanos  首字耗时（纳秒）
+     */
+    public void recordFirstToken(String layout, String model, long nanos) {
+        Timer.builder("log.analysis.ttft")
+                .description("流式调用首字耗时")
+                .tag("layout", layout)
+                .tag("model", model)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(MIN_EXPECTED)
+                .maximumExpectedValue(MAX_EXPECTED)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer stageTimer(String stage) {
+        return stageTimers.computeIfAbsent(stage, key -> Timer.builder("log.analysis.stage")
+                .description("日志分析各阶段耗时")
+                .tag("stage", key)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(MIN_EXPECTED)
+                .maximumExpectedValue(MAX_EXPECTED)
+                .register(registry));
+    }
+}
@@ -0,0 +1,329 @@
+package com.lizy.loganalysishelper.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Data;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 分析结果两级缓存（按异常指纹缓存首轮分析结果）
+ * 1. 内存层：有界LRU + TTL，命中耗时微秒级
+ * 2. 磁盘层：每个指纹一个JSON文件，服务重启后依然可用；定期清理过期文件，文件数超出上限时删除最早写入的
+ */
+@Component
+public class AnalysisResultCache {
+    private static final Logger log = LoggerFactory.getLogger(AnalysisResultCache.class);
+
+    @Value("${qwen.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${qwen.cache.memory-max-entries:1000}")
+    private int memoryMaxEntries;
+
+    @Value("${qwen.cache.ttl-minutes:1440}")
+    private long ttlMinutes;
+
+    @Value("${qwen.cache.disk-dir:./data/analysis-cache}")
+    private String diskDir;
+
+    // 磁盘层最大文件数（0表示不限制）
+    @Value("${qwen.cache.disk-max-files:10000}")
+    private int diskMaxFiles;
+
+    // 磁盘层清理间隔（分钟，0表示不定期清理）
+    @Value("${qwen.cache.disk-sweep-minutes:60}")
+    private long diskSweepMinutes;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    // 内存层（accessOrder=true 即LRU顺序，访问需加锁）
+    private Map<String, CacheEntry> memoryCache;
+    private Path diskPath;
+    // 磁盘层定期清理线程
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "analysis-cache-sweep");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 命中统计
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong puts = new AtomicLong();
+    private final AtomicLong diskDeletes = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        final int maxEntries = Math.max(memoryMaxEntries, 1);
+        memoryCache = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        if (!enabled) {
+            log.info("[AnalysisResultCache] 分析结果缓存已关闭");
+            return;
+        }
+        diskPath = Paths.get(diskDir);
+        try {
+            Files.createDirectories(diskPath);
+            log.info("[AnalysisResultCache] 缓存初始化完成，内存容量：{}，TTL：{}分钟，磁盘目录：{}，磁盘最大文件数：{}",
+                    maxEntries, ttlMinutes, diskPath.toAbsolutePath(), diskMaxFiles);
+        } catch (IOException e) {
+            // 磁盘层不可用时仅使用内存层，不影响主流程
+            log.warn("[AnalysisResultCache] 磁盘缓存目录创建失败，仅启用内存缓存：{}", e.getMessage());
+            diskPath = null;
+            return;
+        }
+        // 未再被访问的过期文件不会在读取时删除，需定期清理
+        if (diskSweepMinutes > 0) {
+            sweeper.scheduleWithFixedDelay(this::sweepDisk, diskSweepMinutes, diskSweepMinutes, TimeUnit.MINUTES);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 查询缓存（内存 → 磁盘，磁盘命中后回填内存）
+     *
+     * @param fingerprint 异常指纹
+     * @return 缓存的分析结果，未命中返回null
+     */
+    public String get(String fingerprint) {
+        if (!enabled || fingerprint == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        CacheEntry entry;
+        synchronized (memoryCache) {
+            entry = memoryCache.get(fingerprint);
+            if (entry != null && isExpired(entry, now)) {
+                memoryCache.remove(fingerprint);
+                entry = null;
+            }
+        }
+        if (entry != null) {
+            memoryHits.incrementAndGet();
+            return entry.getResult();
+        }
+        entry = readFromDisk(fingerprint, now);
+        if (entry != null) {
+            diskHits.incrementAndGet();
+            synchronized (memoryCache) {
+                memoryCache.put(fingerprint, entry);
+            }
+            return entry.getResult();
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * 只读查询（不计入命中/未命中统计，磁盘命中不回填内存），用于统计类接口展示分析结果
+     *
+     * @param fingerprint 异常指纹
+     * @return 缓存的分析结果，未命中返回null
+     */
+    public String peek(String fingerprint) {
+        if (!enabled || fingerprint == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        CacheEntry entry;
+        synchronized (memoryCache) {
+            entry = memoryCache.get(fingerprint);
+        }
+        if (entry == null || isExpired(entry, now)) {
+            entry = readFromDisk(fingerprint, now);
+        }
+        return entry == null ? null : entry.getResult();
+    }
+
+    /**
+     * 写入缓存（内存 + 磁盘）
+     *
+     * @param fingerprint 异常指纹
+     * @param result      优化后的分析结果
+     */
+    public void put(String fingerprint, String result) {
+        if (!enabled || fingerprint == null || result == null) {
+            return;
+        }
+        CacheEntry entry = new CacheEntry();
+        entry.setFingerprint(fingerprint);
+        entry.setResult(result);
+        entry.setCreateTime(System.currentTimeMillis());
+        synchronized (memoryCache) {
+            memoryCache.put(fingerprint, entry);
+        }
+        puts.incrementAndGet();
+        writeToDisk(entry);
+    }
+
+    /**
+     * 缓存统计（用于确认缓存节省的大模型调用次数）
+     */
+    public Map<String, Object> stats() {
+        long memory = memoryHits.get();
+        long disk = diskHits.get();
+        long miss = misses.get();
+        long total = memory + disk + miss;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        synchronized (memoryCache) {
+            stats.put("memoryEntries", memoryCache.size());
+        }
+        stats.put("memoryHits", memory);
+        stats.put("diskHits", disk);
+        stats.put("misses", miss);
+        stats.put("puts", puts.get());
+        stats.put("diskDeletes", diskDeletes.get());
+        stats.put("hitRate", total == 0 ? 0.0 : (double) (memory + disk) / total);
+        return stats;
+    }
+
+    public long getMemoryHits() {
+        return memoryHits.get();
+    }
+
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * 清理磁盘层：删除过期文件与残留的临时文件，文件数仍超出上限时按写入时间从早到晚删除
+     * 文件只在写入时整体替换，修改时间即条目创建时间，无需逐个解析JSON
+     */
+    void sweepDisk() {
+        if (diskPath == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long ttlMillis = TimeUnit.MINUTES.toMillis(ttlMinutes);
+        List<Path> files = new ArrayList<>();
+        Map<Path, Long> modifiedTimes = new HashMap<>();
+        int deleted = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(diskPath)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                boolean json = name.endsWith(".json");
+                if (!json && !name.endsWith(".tmp")) {
+                    continue;
+                }
+                long modified = Files.getLastModifiedTime(file).toMillis();
+                // 临时文件正常情况下立即被替换，残留超过TTL说明写入中途失败
+                if (now - modified > ttlMillis) {
+                    deleted += delete(file);
+                } else if (json) {
+                    files.add(file);
+                    modifiedTimes.put(file, modified);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("[AnalysisResultCache] 磁盘缓存清理失败：{}", e.getMessage());
+            return;
+        }
+        if (diskMaxFiles > 0 && files.size() > diskMaxFiles) {
+            files.sort(Comparator.comparing(modifiedTimes::get));
+            for (Path file : files.subList(0, files.size() - diskMaxFiles)) {
+                deleted += delete(file);
+            }
+        }
+        if (deleted > 0) {
+            diskDeletes.addAndGet(deleted);
+            log.info("[AnalysisResultCache] 磁盘缓存清理完成，删除文件：{}个", deleted);
+        }
+    }
+
+    private int delete(Path file) {
+        try {
+            return Files.deleteIfExists(file) ? 1 : 0;
+        } catch (IOException e) {
+            log.warn("[AnalysisResultCache] 磁盘缓存文件删除失败：{}，原因：{}", file.getFileName(), e.getMessage());
+            return 0;
+        }
+    }
+
+    private boolean isExpired(CacheEntry entry, long now) {
+        return now - entry.getCreateTime() > TimeUnit.MINUTES.toMillis(ttlMinutes);
+    }
+
+    private CacheEntry readFromDisk(String fingerprint, long now) {
+        if (diskPath == null) {
+            return null;
+        }
+        Path file = diskPath.resolve(fingerprint + ".json");
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            CacheEntry entry = objectMapper.readValue(file.toFile(), CacheEntry.class);
+            if (isExpired(entry, now)) {
+                Files.deleteIfExists(file);
+                return null;
+            }
+            return entry;
+        } catch (IOException e) {
+            log.warn("[AnalysisResultCache] 磁盘缓存读取失败，指纹：{}，原因：{}", fingerprint, e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeToDisk(CacheEntry entry) {
+        if (diskPath == null) {
+            return;
+        }
+        try {
+            // 先写临时文件再原子替换，避免并发读到半截文件
+            Path tmp = Files.createTempFile(diskPath, entry.getFingerprint(), ".tmp");
+            objectMapper.writeValue(tmp.toFile(), entry);
+            Files.move(tmp, diskPath.resolve(entry.getFingerprint() + ".json"),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("[AnalysisResultCache] 磁盘缓存写入失败，指纹：{}，原因：{}", entry.getFingerprint(), e.getMessage());
+        }
+    }
+
+    /**
+     * 缓存条目（同时作为磁盘JSON格式）
+     */
+    @Data
+    public static class CacheEntry {
+        private String fingerprint;
+        private String result;
+        private long createTime;
+    }
+}
@@ -0,0 +1,33 @@
+package com.lizy.loganalysishelper.util;
+
+import com.lizy.loganalysishelper.entity.LogAnalysisResponse;
+
+import java.io.IOException;
+
+/**
+ * 流式分析监听器（大模型增量输出回调）
+ */
+public interface AnalysisStreamListener {
+
+    /**
+     * 收到一个增量片段
+     *
+     * @param token 新生成的文本片段
+     * @throws IOException 推送失败（如客户端已断开），将终止上游调用
+     */
+    void onToken(String token) throws IOException;
+
+    /**
+     * 分析完成（结果已优化并写入会话）
+     *
+     * @param response 完整的分析响应
+     */
+    void onComplete(LogAnalysisResponse response);
+
+    /**
+     * 分析失败
+     *
+     * @param response 错误响应（含错误码和原因）
+     */
+    void onError(LogAnalysisResponse response);
+}
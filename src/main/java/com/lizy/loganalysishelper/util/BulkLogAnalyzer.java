@@ -0,0 +1,228 @@
+package com.lizy.loganalysishelper.util;
+
+import com.lizy.loganalysishelper.entity.BulkAnalysisItem;
+import com.lizy.loganalysishelper.entity.BulkAnalysisReport;
+import com.lizy.loganalysishelper.entity.LogAnalysisResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 日志文件批量分析器
+ * 1. 流式解析上传的日志文件（自动识别gzip），逐块提取异常，不整体读入内存
+ * 2. 按异常指纹去重并统计出现次数
+ * 3. 按配置的并发度并行分析各个不同的异常（复用指纹缓存与并发合并）
+ * 文件解析在调用线程内完成，分析结果异步返回（不占用Tomcat线程等待），超时返回已完成部分
+ * 每个异常的分析结果保存在各自的Future中，报告基于快照生成，超时后仍在进行的分析不会修改已返回的报告
+ */
+@Component
+public class BulkLogAnalyzer {
+    private static final Logger log = LoggerFactory.getLogger(BulkLogAnalyzer.class);
+    // 会话ID中使用的指纹前缀长度
+    private static final int FINGERPRINT_PREFIX_LENGTH = 16;
+
+    @Value("${qwen.bulk.concurrency:4}")
+    private int concurrency;
+
+    @Value("${qwen.bulk.max-distinct:200}")
+    private int maxDistinct;
+
+    @Value("${qwen.bulk.max-block-lines:300}")
+    private int maxBlockLines;
+
+    @Value("${qwen.bulk.timeout-minutes:30}")
+    private long timeoutMinutes;
+
+    @Autowired
+    private QwenApiUtil qwenApiUtil;
+
+    // 并行分析线程池（固定并发度，控制对大模型的并发压力）
+    private ExecutorService analysisExecutor;
+
+    // 整体超时调度
+    private final ScheduledExecutorService timeoutScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "bulk-analysis-timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger index = new AtomicInteger();
+        analysisExecutor = Executors.newFixedThreadPool(Math.max(concurrency, 1), r -> {
+            Thread thread = new Thread(r, "bulk-analysis-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timeoutScheduler.shutdownNow();
+        analysisExecutor.shutdownNow();
+    }
+
+    /**
+     * 批量分析日志文件
+     *
+     * @param inputStream 日志文件输入流（支持gzip压缩）
+     * @param fileName    文件名（仅用于报告展示）
+     * @param clientId    调用方标识（批量分析消耗该调用方的大模型调用配额）
+     * @return 批量分析报告（全部完成或超时后完成）
+     * @throws IOException 文件读取异常
+     */
+    public CompletableFuture<BulkAnalysisReport> analyze(InputStream inputStream, String fileName, String clientId)
+            throws IOException {
+        long startTime = System.currentTimeMillis();
+        // 同一毫秒内的多次上传不能共用会话（相同异常会被当作追问）
+        String batchId = "BULK_" + startTime + "_" + Long.toHexString(ThreadLocalRandom.current().nextLong());
+
+        // 1. 流式提取异常块并按指纹去重（LinkedHashMap保留首次出现顺序）
+        Map<String, BulkAnalysisItem> distinctItems = new LinkedHashMap<>();
+        int[] skippedDistinct = {0};
+        ExceptionBlockExtractor extractor = new ExceptionBlockExtractor(maxBlockLines, block -> {
+            String fingerprint = ExceptionFingerprint.fingerprint(block);
+            BulkAnalysisItem item = distinctItems.get(fingerprint);
+            if (item != null) {
+                item.setOccurrences(item.getOccurrences() + 1);
+                return;
+            }
+            if (distinctItems.size() >= maxDistinct) {
+                skippedDistinct[0]++;
+                return;
+            }
+            item = new BulkAnalysisItem();
+            item.setFingerprint(fingerprint);
+            item.setExceptionType(extractExceptionType(block));
+            item.setOccurrences(1);
+            item.setSample(block);
+            item.setSessionId(batchId + "_" + fingerprint.substring(0, FINGERPRINT_PREFIX_LENGTH));
+            distinctItems.put(fingerprint, item);
+        });
+        try (InputStream decoded = decodeStream(inputStream);
+             InputStreamReader reader = new InputStreamReader(decoded, StandardCharsets.UTF_8)) {
+            extractor.extract(reader);
+        }
+        log.info("[BulkLogAnalyzer-{}] 文件解析完成：{}，总行数：{}，异常块：{}，去重后：{}，超出上限未分析：{}",
+                batchId, fileName, extractor.getLineCount(), extractor.getBlockCount(),
+                distinctItems.size(), skippedDistinct[0]);
+
+        // 2. 并行分析去重后的异常（超时后尚未开始的分析直接跳过，不再消耗大模型调用配额）
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Map<BulkAnalysisItem, CompletableFuture<LogAnalysisResponse>> analyses = new LinkedHashMap<>();
+        for (BulkAnalysisItem item : distinctItems.values()) {
+            analyses.put(item, CompletableFuture.supplyAsync(() -> cancelled.get() ? null
+                    : qwenApiUtil.analyzeJavaLog(item.getSample(), item.getSessionId(), clientId), analysisExecutor));
+        }
+        CompletableFuture<BulkAnalysisReport> result = new CompletableFuture<>();
+        ScheduledFuture<?> timeout = timeoutScheduler.schedule(() -> {
+            if (!result.isDone()) {
+                log.warn("[BulkLogAnalyzer-{}] 批量分析超时（{}分钟），返回已完成部分", batchId, timeoutMinutes);
+                cancelled.set(true);
+                analyses.values().forEach(future -> future.cancel(false));
+                result.complete(buildReport(batchId, fileName, extractor, analyses, skippedDistinct[0], startTime));
+            }
+        }, timeoutMinutes, TimeUnit.MINUTES);
+        CompletableFuture.allOf(analyses.values().toArray(new CompletableFuture[0])).whenComplete((ignored, e) -> {
+            timeout.cancel(false);
+            // 已超时返回
+            if (result.isDone()) {
+                return;
+            }
+            if (e != null) {
+                log.error("[BulkLogAnalyzer-{}] 批量分析异常：{}", batchId, e.getMessage(), e);
+            }
+            result.complete(buildReport(batchId, fileName, extractor, analyses, skippedDistinct[0], startTime));
+        });
+        return result;
+    }
+
+    /**
+     * 汇总报告（按出现次数倒序）：基于各异常分析结果的快照生成，未完成的异常标记为超时
+     */
+    private BulkAnalysisReport buildReport(String batchId, String fileName, ExceptionBlockExtractor extractor,
+                                           Map<BulkAnalysisItem, CompletableFuture<LogAnalysisResponse>> analyses,
+                                           int skippedDistinct, long startTime) {
+        BulkAnalysisReport report = new BulkAnalysisReport();
+        report.setFileName(fileName);
+        report.setTotalLines(extractor.getLineCount());
+        report.setTotalExceptions(extractor.getBlockCount());
+        report.setDistinctExceptions(analyses.size());
+        report.setSkippedDistinct(skippedDistinct);
+        for (Map.Entry<BulkAnalysisItem, CompletableFuture<LogAnalysisResponse>> entry : analyses.entrySet()) {
+            report.getItems().add(snapshot(entry.getKey(), entry.getValue()));
+        }
+        report.getItems().sort((a, b) -> Long.compare(b.getOccurrences(), a.getOccurrences()));
+        report.setCostTime(System.currentTimeMillis() - startTime);
+        log.info("[BulkLogAnalyzer-{}] 批量分析完成，耗时：{}ms", batchId, report.getCostTime());
+        return report;
+    }
+
+    /**
+     * 单个异常的报告条目（副本，不与仍在进行的分析共享对象）
+     */
+    private BulkAnalysisItem snapshot(BulkAnalysisItem item, CompletableFuture<LogAnalysisResponse> analysis) {
+        LogAnalysisResponse response = null;
+        if (analysis.isDone() && !analysis.isCompletedExceptionally()) {
+            response = analysis.join();
+        } else if (analysis.isCompletedExceptionally() && !analysis.isCancelled()) {
+            Throwable cause = analysis.handle((value, e) -> e.getCause() != null ? e.getCause() : e).join();
+            response = LogAnalysisResponse.error(500, "日志分析异常：" + cause.getMessage());
+        }
+        BulkAnalysisItem copy = new BulkAnalysisItem();
+        copy.setFingerprint(item.getFingerprint());
+        copy.setExceptionType(item.getExceptionType());
+        copy.setOccurrences(item.getOccurrences());
+        copy.setSample(item.getSample());
+        copy.setSessionId(item.getSessionId());
+        copy.setAnalysis(response != null ? response : LogAnalysisResponse.error(503, "分析未完成（批量分析超时）"));
+        return copy;
+    }
+
+    /**
+     * 根据魔数识别gzip压缩，透明解压
+     */
+    private InputStream decodeStream(InputStream inputStream) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(inputStream, 64 * 1024);
+        buffered.mark(2);
+        int first = buffered.read();
+        int second = buffered.read();
+        buffered.reset();
+        if (first == 0x1f && second == 0x8b) {
+            return new GZIPInputStream(buffered, 64 * 1024);
+        }
+        return buffered;
+    }
+
+    private String extractExceptionType(String block) {
+        String header = block.substring(0, block.indexOf('\n') < 0 ? block.length() : block.indexOf('\n'));
+        if (header.startsWith("Exception in thread")) {
+            int typeStart = header.indexOf("\" ");
+            header = typeStart < 0 ? header : header.substring(typeStart + 2);
+        }
+        int colon = header.indexOf(':');
+        return colon < 0 ? header.trim() : header.substring(0, colon).trim();
+    }
+}
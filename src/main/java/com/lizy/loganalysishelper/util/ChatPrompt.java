@@ -0,0 +1,107 @@
+package com.lizy.loganalysishelper.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 多消息Prompt（按顺序的system/user/assistant消息，正文为分段文本，不拼接）
+ * 单条user消息即原扁平Prompt；多消息时前缀（system + 历史消息）在同一会话的后续轮次中逐字节不变，可命中服务端前缀缓存
+ */
+public final class ChatPrompt {
+    public static final String ROLE_SYSTEM = "system";
+    public static final String ROLE_USER = "user";
+    public static final String ROLE_ASSISTANT = "assistant";
+
+    private final List<Message> messages;
+
+    private ChatPrompt(List<Message> messages) {
+        this.messages = Collections.unmodifiableList(messages);
+    }
+
+    /**
+     * 单条user消息（扁平Prompt）
+     */
+    public static ChatPrompt of(PromptText userContent) {
+        return new ChatPrompt(Collections.singletonList(new Message(ROLE_USER, userContent)));
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public List<Message> getMessages() {
+        return messages;
+    }
+
+    /**
+     * 全部消息正文的字符数
+     */
+    public int length() {
+        int length = 0;
+        for (Message message : messages) {
+            length += message.content.length();
+        }
+        return length;
+    }
+
+    /**
+     * 估算token数（逐条统计，不拼接）
+     */
+    public int estimateTokens() {
+        int tokens = 0;
+        for (Message message : messages) {
+            tokens += message.content.estimateTokens();
+        }
+        return tokens;
+    }
+
+    /**
+     * 可复用前缀的字符数（最后一条消息之前的全部消息）
+     */
+    public int prefixLength() {
+        int length = 0;
+        for (int i = 0; i < messages.size() - 1; i++) {
+            length += messages.get(i).content.length();
+        }
+        return length;
+    }
+
+    /**
+     * 单条消息
+     */
+    public static final class Message {
+        private final String role;
+        private final PromptText content;
+
+        Message(String role, PromptText content) {
+            this.role = role;
+            this.content = content;
+        }
+
+        public String getRole() {
+            return role;
+        }
+
+        public PromptText getContent() {
+            return content;
+        }
+    }
+
+    public static final class Builder {
+        private final List<Message> messages = new ArrayList<>();
+
+        public Builder add(String role, PromptText content) {
+            messages.add(new Message(role, content));
+            return this;
+        }
+
+        public Builder add(String role, String content) {
+            return add(role, PromptText.of(content));
+        }
+
+        public ChatPrompt build() {
+            return new ChatPrompt(new ArrayList<>(messages));
+        }
+    }
+}
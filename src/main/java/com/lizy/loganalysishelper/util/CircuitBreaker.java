@@ -0,0 +1,173 @@
+package com.lizy.loganalysishelper.util;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 熔断器（基于最近N次调用结果的滑动窗口）
+ * 1. CLOSED：正常放行，窗口内失败率超过阈值后进入OPEN
+ * 2. OPEN：直接拒绝（快速失败），持续openMillis后进入HALF_OPEN
+ * 3. HALF_OPEN：只放行少量探测请求，全部成功则恢复CLOSED，任一失败重新OPEN
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    // 滑动窗口大小（最近N次调用）
+    private final int windowSize;
+    // 窗口内至少有这么多次调用才计算失败率
+    private final int minimumCalls;
+    // 失败率阈值（0~1）
+    private final double failureRateThreshold;
+    // OPEN状态持续时间（毫秒）
+    private final long openMillis;
+    // HALF_OPEN状态允许的探测请求数
+    private final int halfOpenPermits;
+
+    // 环形窗口：true表示失败
+    private final boolean[] outcomes;
+    private int cursor;
+    private int recorded;
+    private int failures;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int probesIssued;
+    private int probesSucceeded;
+
+    // 统计
+    private long rejected;
+    private long openCount;
+
+    public CircuitBreaker(int windowSize, int minimumCalls, double failureRateThreshold,
+                          long openMillis, int halfOpenPermits) {
+        this.windowSize = Math.max(windowSize, 1);
+        this.minimumCalls = Math.max(Math.min(minimumCalls, this.windowSize), 1);
+        this.failureRateThreshold = failureRateThreshold;
+        this.openMillis = openMillis;
+        this.halfOpenPermits = Math.max(halfOpenPermits, 1);
+        this.outcomes = new boolean[this.windowSize];
+    }
+
+    /**
+     * 申请一次调用许可
+     *
+     * @return false表示熔断中，调用方应快速失败
+     */
+    public synchronized boolean tryAcquire() {
+        long now = System.currentTimeMillis();
+        if (state == State.OPEN) {
+            if (now - openedAt < openMillis) {
+                rejected++;
+                return false;
+            }
+            state = State.HALF_OPEN;
+            probesIssued = 0;
+            probesSucceeded = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (probesIssued >= halfOpenPermits) {
+                rejected++;
+                return false;
+            }
+            probesIssued++;
+        }
+        return true;
+    }
+
+    /**
+     * 记录一次成功调用
+     */
+    public synchronized void recordSuccess() {
+        if (state == State.HALF_OPEN) {
+            probesSucceeded++;
+            if (probesSucceeded >= halfOpenPermits) {
+                transitionToClosed();
+            }
+            return;
+        }
+        record(false);
+    }
+
+    /**
+     * 记录一次失败调用（网络异常/限流/服务端错误）
+     */
+    public synchronized void recordFailure() {
+        if (state == State.HALF_OPEN) {
+            transitionToOpen();
+            return;
+        }
+        record(true);
+        if (state == State.CLOSED && recorded >= minimumCalls
+                && (double) failures / recorded >= failureRateThreshold) {
+            transitionToOpen();
+        }
+    }
+
+    /**
+     * 释放未产生结果的许可（调用被取消，如对冲请求中落败的一方）
+     */
+    public synchronized void release() {
+        if (state == State.HALF_OPEN && probesIssued > probesSucceeded) {
+            probesIssued--;
+        }
+    }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("state", getState());
+        stats.put("windowCalls", recorded);
+        stats.put("windowFailures", failures);
+        stats.put("failureRate", recorded == 0 ? 0.0 : (double) failures / recorded);
+        stats.put("rejected", rejected);
+        stats.put("openCount", openCount);
+        return stats;
+    }
+
+    private void record(boolean failure) {
+        if (recorded == windowSize) {
+            if (outcomes[cursor]) {
+                failures--;
+            }
+        } else {
+            recorded++;
+        }
+        outcomes[cursor] = failure;
+        if (failure) {
+            failures++;
+        }
+        cursor = (cursor + 1) % windowSize;
+    }
+
+    private void transitionToOpen() {
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+        openCount++;
+    }
+
+    private void transitionToClosed() {
+        state = State.CLOSED;
+        cursor = 0;
+        recorded = 0;
+        failures = 0;
+    }
+
+    /**
+     * 熔断中被拒绝的调用
+     */
+    public static class OpenException extends IOException {
+        public OpenException(String message) {
+            super(message);
+        }
+    }
+}
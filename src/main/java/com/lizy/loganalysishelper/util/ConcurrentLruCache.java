@@ -0,0 +1,279 @@
+package com.lizy.loganalysishelper.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * 并发LRU缓存：ConcurrentHashMap负责O(1)查找，双向链表维护访问顺序
+ * 1. get/touch/evict均为O(1)，链表调整只在短临界区内加锁
+ * 2. 同时按条目数与近似字节数两个维度限容，超出时从最久未访问端淘汰
+ * 3. 创建通过computeIfAbsent保证同一key只创建一次
+ *
+ * @param <K> key类型
+ * @param <V> value类型
+ */
+public class ConcurrentLruCache<K, V> {
+    private final Map<K, Node<K, V>> map = new ConcurrentHashMap<>();
+    // 哨兵节点：head.next为最近访问，tail.prev为最久未访问
+    private final Node<K, V> head = new Node<>(null, null);
+    private final Node<K, V> tail = new Node<>(null, null);
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final int maxCount;
+    private final long maxBytes;
+    // 淘汰回调（在锁外执行）
+    private final BiConsumer<K, V> evictionListener;
+
+    private long totalBytes;
+    private long evictionCount;
+
+    /**
+     * @param maxCount         最大条目数
+     * @param maxBytes         最大近似总字节数
+     * @param evictionListener 容量淘汰回调（可为null）
+     */
+    public ConcurrentLruCache(int maxCount, long maxBytes, BiConsumer<K, V> evictionListener) {
+        this.maxCount = Math.max(maxCount, 1);
+        this.maxBytes = Math.max(maxBytes, 1);
+        this.evictionListener = evictionListener;
+        head.next = tail;
+        tail.prev = head;
+    }
+
+    /**
+     * 查询并标记为最近访问
+     */
+    public V get(K key) {
+        Node<K, V> node = map.get(key);
+        if (node == null) {
+            return null;
+        }
+        lock.lock();
+        try {
+            if (node.linked) {
+                moveToHead(node);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return node.value;
+    }
+
+    /**
+     * 查询但不改变访问顺序
+     */
+    public V peek(K key) {
+        Node<K, V> node = map.get(key);
+        return node == null ? null : node.value;
+    }
+
+    /**
+     * 获取或创建（新建条目可能触发容量淘汰，但不会淘汰自身）
+     *
+     * @param key     key
+     * @param factory 创建逻辑
+     * @param weight  新建条目的近似字节数
+     * @return 已存在或新建的value
+     */
+    public V getOrCreate(K key, Function<K, V> factory, long weight) {
+        Node<K, V> existing = map.get(key);
+        if (existing != null) {
+            return get(key);
+        }
+        boolean[] created = {false};
+        Node<K, V> node = map.computeIfAbsent(key, k -> {
+            created[0] = true;
+            Node<K, V> newNode = new Node<>(k, factory.apply(k));
+            newNode.weight = weight;
+            return newNode;
+        });
+        if (!created[0]) {
+            return get(key);
+        }
+        List<Node<K, V>> evicted;
+        lock.lock();
+        try {
+            if (map.get(key) == node && !node.linked) {
+                linkAtHead(node);
+                totalBytes += node.weight;
+            }
+            evicted = evictIfNeeded(node);
+        } finally {
+            lock.unlock();
+        }
+        notifyEvicted(evicted);
+        return node.value;
+    }
+
+    /**
+     * 放入或替换（替换时沿用原节点位置并标记为最近访问）
+     */
+    public void put(K key, V value, long weight) {
+        Node<K, V> newNode = new Node<>(key, value);
+        newNode.weight = weight;
+        List<Node<K, V>> evicted;
+        lock.lock();
+        try {
+            Node<K, V> old = map.put(key, newNode);
+            if (old != null && old.linked) {
+                unlink(old);
+                totalBytes -= old.weight;
+            }
+            linkAtHead(newNode);
+            totalBytes += weight;
+            evicted = evictIfNeeded(newNode);
+        } finally {
+            lock.unlock();
+        }
+        notifyEvicted(evicted);
+    }
+
+    /**
+     * 更新条目的近似字节数（内容增长后调用，可能触发淘汰）
+     */
+    public void updateWeight(K key, long weight) {
+        Node<K, V> node = map.get(key);
+        if (node == null) {
+            return;
+        }
+        List<Node<K, V>> evicted;
+        lock.lock();
+        try {
+            if (!node.linked) {
+                return;
+            }
+            totalBytes += weight - node.weight;
+            node.weight = weight;
+            moveToHead(node);
+            evicted = evictIfNeeded(node);
+        } finally {
+            lock.unlock();
+        }
+        notifyEvicted(evicted);
+    }
+
+    /**
+     * 移除条目
+     *
+     * @return 被移除的value，不存在返回null
+     */
+    public V remove(K key) {
+        lock.lock();
+        try {
+            Node<K, V> node = map.remove(key);
+            if (node == null) {
+                return null;
+            }
+            if (node.linked) {
+                unlink(node);
+                totalBytes -= node.weight;
+            }
+            return node.value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public long totalBytes() {
+        lock.lock();
+        try {
+            return totalBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long evictionCount() {
+        lock.lock();
+        try {
+            return evictionCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 遍历所有条目（弱一致性快照）
+     */
+    public void forEach(BiConsumer<K, V> action) {
+        map.forEach((key, node) -> action.accept(key, node.value));
+    }
+
+    // ========== 以下方法需持有lock ==========
+
+    private List<Node<K, V>> evictIfNeeded(Node<K, V> protectedNode) {
+        List<Node<K, V>> evicted = null;
+        while ((map.size() > maxCount || totalBytes > maxBytes) && tail.prev != head) {
+            Node<K, V> eldest = tail.prev;
+            if (eldest == protectedNode) {
+                // 只剩受保护节点（单条目超过字节上限），不再淘汰
+                break;
+            }
+            unlink(eldest);
+            totalBytes -= eldest.weight;
+            map.remove(eldest.key, eldest);
+            evictionCount++;
+            if (evicted == null) {
+                evicted = new ArrayList<>(2);
+            }
+            evicted.add(eldest);
+        }
+        return evicted;
+    }
+
+    private void linkAtHead(Node<K, V> node) {
+        node.prev = head;
+        node.next = head.next;
+        head.next.prev = node;
+        head.next = node;
+        node.linked = true;
+    }
+
+    private void unlink(Node<K, V> node) {
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        node.prev = null;
+        node.next = null;
+        node.linked = false;
+    }
+
+    private void moveToHead(Node<K, V> node) {
+        if (head.next == node) {
+            return;
+        }
+        unlink(node);
+        linkAtHead(node);
+    }
+
+    private void notifyEvicted(List<Node<K, V>> evicted) {
+        if (evicted == null || evictionListener == null) {
+            return;
+        }
+        for (Node<K, V> node : evicted) {
+            evictionListener.accept(node.key, node.value);
+        }
+    }
+
+    private static final class Node<K, V> {
+        private final K key;
+        private final V value;
+        private long weight;
+        private boolean linked;
+        private Node<K, V> prev;
+        private Node<K, V> next;
+
+        private Node(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
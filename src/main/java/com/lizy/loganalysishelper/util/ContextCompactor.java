@@ -0,0 +1,209 @@
+package com.lizy.loganalysishelper.util;
+
+import com.lizy.loganalysishelper.entity.ConversationMessage;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * 多轮对话上下文压缩器：在token预算内构建上下文文本
+ * 压缩顺序（由轻到重，满足预算即停止）：
+ * 1. 较早轮次：调用栈折叠为关键帧，AI回答缩写为各级标题+首句
+ * 2. 最近一轮同样压缩
+ * 3. 从最早的消息开始整条丢弃
+ * 4. 仍超出时截断剩余文本
+ */
+public final class ContextCompactor {
+    private static final Pattern FRAME_PATTERN = Pattern.compile("^\\s*at\\s.*");
+    private static final Pattern OMITTED_PATTERN = Pattern.compile("^\\s*\\.\\.\\. \\d+ (?:more|common frames omitted)\\s*$");
+    // 每段异常保留的关键帧数
+    private static final int KEY_FRAMES_PER_SECTION = 3;
+    // 回答摘要中每个标题下保留的首句长度
+    private static final int SUMMARY_LINE_CHARS = 80;
+    // 无标题回答/非调用栈提问压缩后的最大长度
+    private static final int PLAIN_TEXT_CHARS = 200;
+    private static final String CONTEXT_HEADER = "【历史对话上下文】\n";
+    private static final String CONTEXT_FOOTER = "【当前分析请求】\n";
+
+    private ContextCompactor() {
+    }
+
+    /**
+     * 在token预算内构建上下文文本
+     *
+     * @param messages    历史消息（按时间顺序）
+     * @param tokenBudget 上下文可用的token预算
+     * @return 压缩结果（含压缩前后token数）
+     */
+    public static CompactedContext compact(List<ConversationMessage> messages, int tokenBudget) {
+        CompactedContext result = new CompactedContext();
+        if (messages.isEmpty()) {
+            result.setText("");
+            return result;
+        }
+        List<String> roles = new ArrayList<>(messages.size());
+        List<String> contents = new ArrayList<>(messages.size());
+        for (ConversationMessage message : messages) {
+            roles.add(message.getRole());
+            contents.add(message.getContent());
+        }
+        String fullText = render(roles, contents, 0);
+        result.setOriginalTokens(TokenEstimator.estimate(fullText));
+        if (result.getOriginalTokens() <= tokenBudget) {
+            result.setText(fullText);
+            result.setCompactedTokens(result.getOriginalTokens());
+            return result;
+        }
+
+        // 1~2. 由旧到新逐条压缩（最近一轮2条消息最后处理）
+        String text = fullText;
+        for (int i = 0; i < contents.size() && TokenEstimator.estimate(text) > tokenBudget; i++) {
+            contents.set(i, compactMessage(roles.get(i), contents.get(i)));
+            text = render(roles, contents, 0);
+        }
+        // 3. 丢弃最早的消息（至少保留最后一条）
+        int from = 0;
+        while (TokenEstimator.estimate(text) > tokenBudget && from < contents.size() - 1) {
+            from++;
+            text = render(roles, contents, from);
+        }
+        // 4. 截断
+        if (TokenEstimator.estimate(text) > tokenBudget) {
+            text = truncateToBudget(text, tokenBudget);
+        }
+        result.setText(text);
+        result.setCompactedTokens(TokenEstimator.estimate(text));
+        return result;
+    }
+
+    /**
+     * 压缩单条消息：用户消息折叠调用栈，AI回答缩写为摘要
+     */
+    static String compactMessage(String role, String content) {
+        if (content == null) {
+            return "";
+        }
+        return "user".equals(role) ? collapseStackTrace(content) : summarizeAnswer(content);
+    }
+
+    /**
+     * 调用栈折叠：保留异常行/Caused by行，每段异常只保留前几个关键帧
+     *
+     * @param content 原始内容
+     * @return 折叠后的内容（不含调用栈时按长度截断）
+     */
+    public static String collapseStackTrace(String content) {
+        String[] lines = content.split("\\r?\\n");
+        StringBuilder collapsed = new StringBuilder();
+        int sectionFrames = 0;
+        int droppedFrames = 0;
+        boolean hasFrames = false;
+        for (String line : lines) {
+            if (FRAME_PATTERN.matcher(line).matches()) {
+                hasFrames = true;
+                if (sectionFrames++ < KEY_FRAMES_PER_SECTION) {
+                    collapsed.append(line).append('\n');
+                } else {
+                    droppedFrames++;
+                }
+                continue;
+            }
+            if (OMITTED_PATTERN.matcher(line).matches()) {
+                continue;
+            }
+            droppedFrames = appendDropped(collapsed, droppedFrames);
+            sectionFrames = 0;
+            if (!line.trim().isEmpty()) {
+                collapsed.append(line).append('\n');
+            }
+        }
+        appendDropped(collapsed, droppedFrames);
+        if (!hasFrames) {
+            return truncate(content, PLAIN_TEXT_CHARS);
+        }
+        return collapsed.toString().trim();
+    }
+
+    /**
+     * 回答摘要：保留各级Markdown标题及标题下的首句
+     *
+     * @param content 原始回答
+     * @return 摘要（无标题时按长度截断）
+     */
+    public static String summarizeAnswer(String content) {
+        String[] lines = content.split("\\r?\\n");
+        StringBuilder summary = new StringBuilder();
+        boolean awaitingFirstLine = false;
+        boolean hasHeader = false;
+        boolean inCodeBlock = false;
+        for (String line : lines) {
+            String trimmed = line.trim();
+            if (trimmed.startsWith("```")) {
+                inCodeBlock = !inCodeBlock;
+                continue;
+            }
+            if (inCodeBlock || trimmed.isEmpty()) {
+                continue;
+            }
+            if (trimmed.startsWith("#")) {
+                hasHeader = true;
+                summary.append(trimmed).append('\n');
+                awaitingFirstLine = true;
+            } else if (awaitingFirstLine) {
+                summary.append(truncate(trimmed, SUMMARY_LINE_CHARS)).append('\n');
+                awaitingFirstLine = false;
+            }
+        }
+        if (!hasHeader) {
+            return truncate(content, PLAIN_TEXT_CHARS);
+        }
+        return summary.toString().trim();
+    }
+
+    private static int appendDropped(StringBuilder collapsed, int droppedFrames) {
+        if (droppedFrames > 0) {
+            collapsed.append("\t... ").append(droppedFrames).append(" frames collapsed\n");
+        }
+        return 0;
+    }
+
+    private static String render(List<String> roles, List<String> contents, int from) {
+        StringBuilder context = new StringBuilder(CONTEXT_HEADER);
+        for (int i = from; i < contents.size(); i++) {
+            String role = "user".equals(roles.get(i)) ? "用户：" : "AI分析：";
+            context.append(role).append(contents.get(i)).append("\n");
+        }
+        context.append(CONTEXT_FOOTER);
+        return context.toString();
+    }
+
+    private static String truncateToBudget(String text, int tokenBudget) {
+        String body = text.substring(CONTEXT_HEADER.length(), text.length() - CONTEXT_FOOTER.length());
+        int overhead = TokenEstimator.estimate(CONTEXT_HEADER) + TokenEstimator.estimate(CONTEXT_FOOTER);
+        int keep = body.length();
+        // 按比例逐步缩短（保留尾部，即最近的内容）
+        while (keep > 0 && TokenEstimator.estimate(body.substring(body.length() - keep)) + overhead > tokenBudget) {
+            keep = keep * 3 / 4;
+        }
+        return CONTEXT_HEADER + "..." + body.substring(body.length() - keep) + CONTEXT_FOOTER;
+    }
+
+    private static String truncate(String content, int maxChars) {
+        return content.length() <= maxChars ? content : content.substring(0, maxChars) + "...";
+    }
+
+    /**
+     * 压缩结果
+     */
+    @Data
+    public static class CompactedContext {
+        // 上下文文本
+        private String text;
+        // 压缩前token数
+        private int originalTokens;
+        // 压缩后token数
+        private int compactedTokens;
+    }
+}
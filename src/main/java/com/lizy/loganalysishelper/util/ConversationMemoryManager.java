@@ -2,32 +2,79 @@ package com.lizy.loganalysishelper.util;
 
 import com.lizy.loganalysishelper.entity.ConversationMessage;
 import com.lizy.loganalysishelper.entity.ConversationSession;
+import com.lizy.loganalysishelper.entity.SessionSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 对话记忆管理器（单例+内存存储+过期清理）
+ * 1. 会话存储：并发LRU，get/touch/淘汰均为O(1)，按会话数与近似字节数双重限容
+ * 2. 过期清理：分层时间轮驱动，每个tick只处理到期槽位，不再全量扫描
+ * 3. 持久化：内存LRU之后接SessionStore，启动时恢复、每次写入保存快照、淘汰后按需加载
  */
 @Component
 public class ConversationMemoryManager {
-    // 线程安全的会话存储
-    private final Map<String, ConversationSession> sessionMap = new ConcurrentHashMap<>();
-    // 会话过期时间（30分钟）
-    private static final long SESSION_EXPIRE_MS = 30 * 60 * 1000L;
+    private static final Logger log = LoggerFactory.getLogger(ConversationMemoryManager.class);
+
+    // 空会话的近似字节数
+    private static final long EMPTY_SESSION_BYTES = new ConversationSession().estimateBytes();
+
+    // 会话过期时间（分钟）
+    @Value("${qwen.session.expire-minutes:30}")
+    private long expireMinutes;
     // 最大会话数（避免内存溢出）
-    private static final int MAX_SESSION_COUNT = 100;
-    // 定时清理线程池
+    @Value("${qwen.session.max-count:10000}")
+    private int maxSessionCount;
+    // 所有会话的近似总字节数上限
+    @Value("${qwen.session.max-bytes:268435456}")
+    private long maxSessionBytes;
+    // 时间轮刻度（毫秒）
+    @Value("${qwen.session.tick-ms:1000}")
+    private long tickMs;
+    // 消息正文存储模式（HEAP/COMPRESSED/OFF_HEAP/COMPRESSED_OFF_HEAP）
+    @Value("${qwen.session.storage.mode:COMPRESSED}")
+    private MessageStorageMode storageMode;
+    // 低于该字符数的短消息保持堆内原文
+    @Value("${qwen.session.storage.min-chars:512}")
+    private int storageMinChars;
+
+    // 会话持久化存储
+    @Autowired
+    private SessionStore sessionStore;
+
+    // 线程安全的会话存储（访问有序）
+    private ConcurrentLruCache<String, ConversationSession> sessionCache;
+    // 会话过期时间轮（会话被访问后不移动定时项，到期时再按最后活跃时间判断是否顺延）
+    private HierarchicalTimerWheel<String> expiryWheel;
+    // 过期清理数
+    private final AtomicLong expiredCount = new AtomicLong();
+    // 定时推进时间轮的线程池
     private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
 
-    public ConversationMemoryManager() {
-        // 每分钟清理一次过期会话
-        scheduler.scheduleAtFixedRate(this::cleanExpiredSessions, 1, 1, TimeUnit.MINUTES);
+    @PostConstruct
+    public void init() {
+        sessionCache = new ConcurrentLruCache<>(maxSessionCount, maxSessionBytes,
+                (sessionId, session) -> log.debug("[ConversationMemoryManager] 会话容量超限，淘汰最久未访问会话：{}", sessionId));
+        expiryWheel = new HierarchicalTimerWheel<>(tickMs, System.currentTimeMillis());
+        restoreSessions();
+        // 每个tick推进一次时间轮，清理到期会话
+        scheduler.scheduleAtFixedRate(this::cleanExpiredSessions, tickMs, tickMs, TimeUnit.MILLISECONDS);
+        log.info("[ConversationMemoryManager] 会话管理器初始化完成，最大会话数：{}，最大字节数：{}，过期时间：{}分钟，消息存储模式：{}",
+                maxSessionCount, maxSessionBytes, expireMinutes, storageMode);
     }
 
     /**
@@ -38,20 +85,33 @@ public class ConversationMemoryManager {
         if (sessionId == null || sessionId.trim().isEmpty()) {
             sessionId = "SESSION_" + System.currentTimeMillis() + "_" + (int) (Math.random() * 1000);
         }
-        // 会话数超限则移除最早会话
-        if (sessionMap.size() >= MAX_SESSION_COUNT) {
-            String oldestSession = sessionMap.entrySet().stream()
-                    .sorted((e1, e2) -> e1.getValue().getLastActiveTime().compareTo(e2.getValue().getLastActiveTime()))
-                    .findFirst().map(Map.Entry::getKey).orElse(null);
-            if (oldestSession != null) sessionMap.remove(oldestSession);
+        ConversationSession cached = sessionCache.get(sessionId);
+        if (cached != null) {
+            return cached;
         }
-        // 创建/获取会话
-        return sessionMap.computeIfAbsent(sessionId, id -> {
+        // 内存未命中：先从持久化存储加载（已被淘汰/其他实例创建的会话），仍没有再新建
+        SessionSnapshot snapshot = sessionStore.load(sessionId);
+        if (snapshot != null && isExpired(snapshot.getLastActiveTime(), System.currentTimeMillis())) {
+            // 已过期但尚未被清理（如其他实例写入、或清理前已被淘汰），按新会话处理并删除旧快照
+            sessionStore.delete(sessionId);
+            expiredCount.incrementAndGet();
+            snapshot = null;
+        }
+        if (snapshot != null) {
+            ConversationSession restored = fromSnapshot(snapshot);
+            return sessionCache.getOrCreate(sessionId, id -> {
+                expiryWheel.schedule(id, restored.getLastActiveTime().getTime() + expireMillis());
+                return restored;
+            }, restored.estimateBytes());
+        }
+        // 创建/获取会话（超限时O(1)淘汰最久未访问会话）
+        return sessionCache.getOrCreate(sessionId, id -> {
             ConversationSession session = new ConversationSession();
             session.setSessionId(id);
             session.setLastActiveTime(new Date());
+            expiryWheel.schedule(id, session.getLastActiveTime().getTime() + expireMillis());
             return session;
-        });
+        }, EMPTY_SESSION_BYTES);
     }
 
     /**
@@ -59,18 +119,185 @@ public class ConversationMemoryManager {
      */
     public void addMessageToSession(String sessionId, ConversationMessage message) {
         ConversationSession session = getOrCreateSession(sessionId);
+        // 正文按配置压缩/移至堆外，仅在构建上下文时还原
+        message.store(storageMode, storageMinChars);
         session.addMessage(message);
-        sessionMap.put(sessionId, session);
+        sessionCache.updateWeight(session.getSessionId(), session.estimateBytes());
+        saveSnapshot(session);
+    }
+
+    /**
+     * 向会话添加一轮对话（用户提问+AI回答），只保存一次快照
+     */
+    public void addRoundToSession(String sessionId, String userContent, String assistantContent) {
+        ConversationSession session = getOrCreateSession(sessionId);
+        ConversationMessage userMessage = ConversationMessage.user(userContent);
+        ConversationMessage assistantMessage = ConversationMessage.assistant(assistantContent);
+        userMessage.store(storageMode, storageMinChars);
+        assistantMessage.store(storageMode, storageMinChars);
+        session.addMessage(userMessage);
+        session.addMessage(assistantMessage);
+        sessionCache.updateWeight(session.getSessionId(), session.estimateBytes());
+        saveSnapshot(session);
+    }
+
+    /**
+     * 保存会话快照；会话在本次请求期间已被过期清理移出内存时重新登记到期时间，避免快照无人清理
+     */
+    private void saveSnapshot(ConversationSession session) {
+        sessionStore.save(toSnapshot(session));
+        if (sessionCache.peek(session.getSessionId()) != session) {
+            expiryWheel.schedule(session.getSessionId(), session.getLastActiveTime().getTime() + expireMillis());
+        }
+    }
+
+    /**
+     * 单个会话的消息存储统计
+     *
+     * @return 会话不存在时返回null
+     */
+    public Map<String, Object> sessionStorageStats(String sessionId) {
+        ConversationSession session = sessionCache.peek(sessionId);
+        if (session == null) {
+            return null;
+        }
+        Map<String, Object> stats = session.storageStats();
+        stats.put("storageMode", storageMode);
+        return stats;
+    }
+
+    /**
+     * 会话存储统计
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("sessionCount", sessionCache.size());
+        stats.put("approxBytes", sessionCache.totalBytes());
+        stats.put("storageMode", storageMode);
+        stats.put("maxSessionCount", maxSessionCount);
+        stats.put("maxBytes", maxSessionBytes);
+        stats.put("evictions", sessionCache.evictionCount());
+        stats.put("expirations", expiredCount.get());
+        stats.put("pendingTimers", expiryWheel.size());
+        stats.put("store", sessionStore.stats());
+        return stats;
+    }
+
+    public int sessionCount() {
+        return sessionCache.size();
+    }
+
+    public long approxBytes() {
+        return sessionCache.totalBytes();
+    }
+
+    public long evictionCount() {
+        return sessionCache.evictionCount();
+    }
+
+    public long expirationCount() {
+        return expiredCount.get();
+    }
+
+    public int storeSize() {
+        return sessionStore.size();
     }
 
     /**
-     * 清理过期会话
+     * 清理过期会话（仅处理时间轮中到期的会话，期间被访问过的会话顺延）
+     * 已被LRU淘汰的会话按持久化存储中的最后活跃时间判断，过期则删除快照，否则按存储的到期时间顺延
      */
     private void cleanExpiredSessions() {
+        try {
+            long now = System.currentTimeMillis();
+            List<String> dueSessionIds = expiryWheel.advance(now);
+            for (String sessionId : dueSessionIds) {
+                ConversationSession session = sessionCache.peek(sessionId);
+                long lastActiveTime;
+                if (session != null) {
+                    lastActiveTime = session.getLastActiveTime().getTime();
+                } else {
+                    SessionSnapshot snapshot = sessionStore.load(sessionId);
+                    if (snapshot == null) {
+                        continue;
+                    }
+                    lastActiveTime = snapshot.getLastActiveTime();
+                }
+                long deadline = lastActiveTime + expireMillis();
+                if (deadline <= now) {
+                    sessionCache.remove(sessionId);
+                    sessionStore.delete(sessionId);
+                    expiredCount.incrementAndGet();
+                } else {
+                    expiryWheel.schedule(sessionId, deadline);
+                }
+            }
+        } catch (RuntimeException e) {
+            // 避免异常导致定时任务终止
+            log.error("[ConversationMemoryManager] 过期会话清理异常：{}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 启动时从持久化存储恢复未过期会话（超出内存容量的部分留在存储中按需加载）
+     */
+    private void restoreSessions() {
         long now = System.currentTimeMillis();
-        sessionMap.entrySet().removeIf(entry ->
-            (now - entry.getValue().getLastActiveTime().getTime()) > SESSION_EXPIRE_MS
-        );
+        int restored = 0;
+        int expired = 0;
+        for (SessionSnapshot snapshot : sessionStore.loadAll().values()) {
+            if (isExpired(snapshot.getLastActiveTime(), now)) {
+                sessionStore.delete(snapshot.getSessionId());
+                expired++;
+                continue;
+            }
+            ConversationSession session = fromSnapshot(snapshot);
+            sessionCache.put(session.getSessionId(), session, session.estimateBytes());
+            expiryWheel.schedule(session.getSessionId(), snapshot.getLastActiveTime() + expireMillis());
+            restored++;
+        }
+        if (restored > 0 || expired > 0) {
+            log.info("[ConversationMemoryManager] 从持久化存储恢复会话：{}个，删除已过期会话：{}个", restored, expired);
+        }
+    }
+
+    private SessionSnapshot toSnapshot(ConversationSession session) {
+        SessionSnapshot snapshot = new SessionSnapshot();
+        snapshot.setSessionId(session.getSessionId());
+        snapshot.setLastActiveTime(session.getLastActiveTime().getTime());
+        List<SessionSnapshot.Message> messages = new ArrayList<>(session.getMessageHistory().size());
+        for (ConversationMessage message : session.getMessageHistory()) {
+            SessionSnapshot.Message item = new SessionSnapshot.Message();
+            item.setRole(message.getRole());
+            item.setContent(message.getContent());
+            item.setTimestamp(message.getTimestamp().getTime());
+            messages.add(item);
+        }
+        snapshot.setMessages(messages);
+        return snapshot;
+    }
+
+    private ConversationSession fromSnapshot(SessionSnapshot snapshot) {
+        ConversationSession session = new ConversationSession();
+        session.setSessionId(snapshot.getSessionId());
+        for (SessionSnapshot.Message item : snapshot.getMessages()) {
+            ConversationMessage message = new ConversationMessage();
+            message.setRole(item.getRole());
+            message.setContent(item.getContent());
+            message.setTimestamp(new Date(item.getTimestamp()));
+            message.store(storageMode, storageMinChars);
+            session.getMessageHistory().add(message);
+        }
+        session.setLastActiveTime(new Date(snapshot.getLastActiveTime()));
+        return session;
+    }
+
+    private boolean isExpired(long lastActiveTime, long now) {
+        return now - lastActiveTime > expireMillis();
+    }
+
+    private long expireMillis() {
+        return TimeUnit.MINUTES.toMillis(expireMinutes);
     }
 
     /**
@@ -79,4 +306,4 @@ public class ConversationMemoryManager {
     public void shutdown() {
         scheduler.shutdown();
     }
-}
\ No newline at end of file
+}
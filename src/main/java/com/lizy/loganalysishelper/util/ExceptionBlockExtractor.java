@@ -0,0 +1,104 @@
+package com.lizy.loganalysishelper.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * 异常块流式提取器：逐行扫描日志，把"异常行 + 调用栈"切分为独立的异常块
+ * 只持有当前正在拼接的异常块，不会把整个文件读入内存（适用于百MB级日志/持续追加的日志）
+ * 非线程安全，每个日志流使用独立实例
+ */
+public class ExceptionBlockExtractor {
+    // 异常首行：行首为异常全限定名（可带"Exception in thread "xxx" "前缀）
+    private static final Pattern HEADER_PATTERN = Pattern.compile(
+            "^(?:Exception in thread \"[^\"]*\" )?(?:[a-zA-Z_$][\\w$]*\\.)+[A-Z][\\w$]*(?:Exception|Error|Throwable)(?::.*)?$");
+    // 调用栈续行：at帧、Caused by、Suppressed、... N more
+    private static final Pattern CONTINUATION_PATTERN = Pattern.compile(
+            "^\\s+at\\s.*|^\\s*(?:Caused by|Suppressed): .*|^\\s*\\.\\.\\. \\d+ (?:more|common frames omitted)\\s*$");
+    private static final Pattern FRAME_PATTERN = Pattern.compile("^\\s+at\\s.*");
+
+    // 单个异常块最大行数（防止超长递归栈撑爆内存/Prompt）
+    private final int maxBlockLines;
+    private final Consumer<String> blockConsumer;
+
+    private StringBuilder currentBlock;
+    private int currentLines;
+    private boolean currentHasFrame;
+    private long lineCount;
+    private long blockCount;
+
+    /**
+     * @param maxBlockLines 单个异常块最大保留行数，超出部分丢弃
+     * @param blockConsumer 异常块回调（每识别出一个完整异常块回调一次）
+     */
+    public ExceptionBlockExtractor(int maxBlockLines, Consumer<String> blockConsumer) {
+        this.maxBlockLines = Math.max(maxBlockLines, 2);
+        this.blockConsumer = blockConsumer;
+    }
+
+    /**
+     * 从Reader流式提取全部异常块（读取结束后自动flush）
+     *
+     * @param reader 日志输入
+     * @throws IOException 读取异常
+     */
+    public void extract(Reader reader) throws IOException {
+        BufferedReader bufferedReader = reader instanceof BufferedReader
+                ? (BufferedReader) reader : new BufferedReader(reader, 64 * 1024);
+        String line;
+        while ((line = bufferedReader.readLine()) != null) {
+            accept(line);
+        }
+        flush();
+    }
+
+    /**
+     * 输入一行日志
+     *
+     * @param line 日志行（不含换行符）
+     */
+    public void accept(String line) {
+        lineCount++;
+        if (currentBlock != null && CONTINUATION_PATTERN.matcher(line).matches()) {
+            if (currentLines < maxBlockLines) {
+                currentBlock.append('\n').append(line);
+                currentLines++;
+            }
+            if (!currentHasFrame && FRAME_PATTERN.matcher(line).matches()) {
+                currentHasFrame = true;
+            }
+            return;
+        }
+        flush();
+        if (HEADER_PATTERN.matcher(line.trim()).matches()) {
+            currentBlock = new StringBuilder(line.trim());
+            currentLines = 1;
+            currentHasFrame = false;
+        }
+    }
+
+    /**
+     * 结束当前异常块（文件读完/长时间无新行时调用）
+     * 没有任何调用栈帧的"异常行"视为普通日志文本，直接丢弃
+     */
+    public void flush() {
+        if (currentBlock != null && currentHasFrame) {
+            blockCount++;
+            blockConsumer.accept(currentBlock.toString());
+        }
+        currentBlock = null;
+        currentLines = 0;
+        currentHasFrame = false;
+    }
+
+    public long getLineCount() {
+        return lineCount;
+    }
+
+    public long getBlockCount() {
+        return blockCount;
+    }
+}
@@ -0,0 +1,118 @@
+package com.lizy.loganalysishelper.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 异常日志指纹工具
+ * 将异常日志归一化为稳定文本（异常类型 + 调用栈帧），再计算SHA-256指纹，
+ * 忽略时间戳、线程名、对象哈希等每次都会变化的噪声，用于缓存/去重
+ */
+public final class ExceptionFingerprint {
+    // 异常类型（全限定名，以Exception/Error/Throwable结尾）
+    private static final Pattern EXCEPTION_TYPE_PATTERN = Pattern.compile(
+            "\\b((?:[a-zA-Z_$][\\w$]*\\.)+[A-Z][\\w$]*(?:Exception|Error|Throwable))\\b");
+    // 调用栈帧：at com.xx.Foo.bar(Foo.java:12)
+    private static final Pattern FRAME_PATTERN = Pattern.compile("^at\\s+([^\\s(]+)\\(([^)]*)\\)");
+    // 动态生成类名中的哈希/序号（Lambda、CGLIB代理、反射访问器）
+    private static final Pattern GENERATED_NAME_PATTERN = Pattern.compile(
+            "\\$\\$Lambda\\$\\d+/(?:0x)?[0-9a-fA-F]+|\\$\\$(EnhancerBySpringCGLIB|FastClassBySpringCGLIB|SpringCGLIB)\\$\\$[0-9a-fA-F]+|GeneratedMethodAccessor\\d+|\\$Proxy\\d+");
+    // 兜底归一化用的噪声：时间戳、线程名、对象哈希、长数字
+    private static final Pattern TIMESTAMP_PATTERN = Pattern.compile(
+            "\\d{4}-\\d{2}-\\d{2}[ T]\\d{2}:\\d{2}:\\d{2}(?:[.,]\\d+)?");
+    private static final Pattern THREAD_PATTERN = Pattern.compile("\\[[^\\]]*(?:thread|exec|pool|nio|http)[^\\]]*\\]|thread \"[^\"]*\"",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern OBJECT_HASH_PATTERN = Pattern.compile("@[0-9a-fA-F]{4,}|0x[0-9a-fA-F]+|\\b\\d{3,}\\b");
+
+    private ExceptionFingerprint() {
+    }
+
+    /**
+     * 归一化异常日志：仅保留异常类型行和调用栈帧（含行号），
+     * 未识别到异常结构时退化为去噪后的全文
+     *
+     * @param exceptionLog 原始异常日志
+     * @return 归一化文本
+     */
+    public static String normalize(String exceptionLog) {
+        if (exceptionLog == null) {
+            return "";
+        }
+        StringBuilder normalized = new StringBuilder(Math.min(exceptionLog.length(), 8192));
+        boolean foundException = false;
+        for (String rawLine : exceptionLog.split("\\r?\\n")) {
+            String line = rawLine.trim();
+            if (line.isEmpty() || line.startsWith("...")) {
+                continue;
+            }
+            Matcher frameMatcher = FRAME_PATTERN.matcher(line);
+            if (frameMatcher.find()) {
+                if (foundException) {
+                    normalized.append("at ")
+                            .append(normalizeGeneratedName(frameMatcher.group(1)))
+                            .append('(').append(frameMatcher.group(2)).append(")\n");
+                }
+                continue;
+            }
+            Matcher typeMatcher = EXCEPTION_TYPE_PATTERN.matcher(line);
+            if (typeMatcher.find()) {
+                foundException = true;
+                if (line.startsWith("Caused by:")) {
+                    normalized.append("Caused by: ");
+                } else if (line.startsWith("Suppressed:")) {
+                    normalized.append("Suppressed: ");
+                }
+                normalized.append(typeMatcher.group(1)).append('\n');
+            }
+        }
+        if (foundException) {
+            return normalized.toString();
+        }
+        // 兜底：非标准格式的日志，去除噪声后压缩空白
+        String text = TIMESTAMP_PATTERN.matcher(exceptionLog).replaceAll("");
+        text = THREAD_PATTERN.matcher(text).replaceAll("");
+        text = OBJECT_HASH_PATTERN.matcher(text).replaceAll("#");
+        return text.replaceAll("\\s+", " ").trim();
+    }
+
+    /**
+     * 计算异常日志指纹（归一化文本的SHA-256十六进制串）
+     *
+     * @param exceptionLog 原始异常日志
+     * @return 64位十六进制指纹
+     */
+    public static String fingerprint(String exceptionLog) {
+        return sha256Hex(normalize(exceptionLog));
+    }
+
+    /**
+     * 去除动态生成类名中的哈希/序号（Lambda、CGLIB代理、反射访问器），使同一代码位置在不同进程中名称一致
+     *
+     * @param name 类名或类名.方法名
+     * @return 归一化后的名称
+     */
+    static String normalizeGeneratedName(String name) {
+        // 绝大多数类名不含生成标记，跳过正则
+        if (name.indexOf('$') < 0 && !name.contains("GeneratedMethodAccessor")) {
+            return name;
+        }
+        return GENERATED_NAME_PATTERN.matcher(name).replaceAll("\\$GEN");
+    }
+
+    private static String sha256Hex(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // JDK必定内置SHA-256
+            throw new IllegalStateException("SHA-256不可用", e);
+        }
+    }
+}
@@ -0,0 +1,393 @@
+package com.lizy.loganalysishelper.util;
+
+import com.lizy.loganalysishelper.entity.ExceptionFrequency;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongSupplier;
+
+/**
+ * 异常频率统计（Count-Min Sketch + 高频候选表，滑动时间窗口，无锁、内存固定）
+ * 1. 窗口：最近5分钟（10片×30秒）、1小时（12片×5分钟）、1天（24片×1小时），每个时间片一个depth×width的计数矩阵，
+ *    时间片过期时整片替换（CAS），不逐个清零计数
+ * 2. 计数：指纹哈希映射到每行一个计数器，原子自增；窗口内估计值 = 各行（窗口内各时间片计数之和）的最小值，只会偏大
+ * 3. 高频候选：每个窗口固定top-k个槽位（哈希、估计值为原子long数组），新指纹估计值超过最小槽位的当前估计值时替换；
+ *    时间片轮换时重新估计全部槽位，已滑出窗口的异常会被逐步替换
+ * 计数矩阵与候选表大小只由配置决定，与请求量无关
+ */
+@Component
+public class ExceptionFrequencyTracker {
+    private static final Logger log = LoggerFactory.getLogger(ExceptionFrequencyTracker.class);
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    // 候选槽位的空值
+    private static final long EMPTY = 0L;
+
+    @Value("${qwen.frequency.enabled:true}")
+    private boolean enabled;
+
+    @Value("${qwen.frequency.depth:4}")
+    private int depth;
+
+    @Value("${qwen.frequency.width:1024}")
+    private int width;
+
+    @Value("${qwen.frequency.top-k:32}")
+    private int topK;
+
+    @Autowired
+    private AnalysisResultCache analysisResultCache;
+
+    private SlidingWindow[] windows;
+    private int mask;
+    private final AtomicLong recorded = new AtomicLong();
+    // 毫秒时钟（测试时替换，验证窗口滑动）
+    private LongSupplier clock = System::currentTimeMillis;
+
+    @PostConstruct
+    public void init() {
+        depth = Math.max(depth, 1);
+        // 宽度取2的幂，下标用位与计算
+        width = Integer.highestOneBit(Math.max(width, 16) - 1) << 1;
+        mask = width - 1;
+        topK = Math.max(topK, 1);
+        windows = new SlidingWindow[]{
+                new SlidingWindow("5m", 30_000L, 10),
+                new SlidingWindow("1h", 300_000L, 12),
+                new SlidingWindow("1d", 3_600_000L, 24)
+        };
+        log.info("[ExceptionFrequencyTracker] 初始化完成，启用：{}，depth：{}，width：{}，top-k：{}，计数矩阵约{}KB",
+                enabled, depth, width, topK, memoryBytes() / 1024);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 记录一次异常出现
+     *
+     * @param fingerprint   异常指纹
+     * @param exceptionType 异常类型全限定名
+     */
+    public void record(String fingerprint, String exceptionType) {
+        if (!enabled || fingerprint == null) {
+            return;
+        }
+        long hash = hash(fingerprint);
+        long now = clock.getAsLong();
+        Label label = null;
+        for (SlidingWindow window : windows) {
+            long estimate = window.add(hash, now);
+            if (!window.contains(hash)) {
+                if (label == null) {
+                    label = new Label(hash, fingerprint, exceptionType);
+                }
+                window.offer(label, estimate, now);
+            } else {
+                window.update(hash, estimate);
+            }
+        }
+        recorded.incrementAndGet();
+    }
+
+    /**
+     * 各时间窗口出现次数最多的异常（附缓存的分析结果，读取缓存不计入命中统计）
+     *
+     * @param limit 每个窗口返回的条数（不超过top-k）
+     * @return key为窗口（5m/1h/1d），value按估计次数倒序
+     */
+    public Map<String, List<ExceptionFrequency>> topExceptions(int limit) {
+        Map<String, List<ExceptionFrequency>> result = new LinkedHashMap<>();
+        Map<String, String> analyses = new HashMap<>();
+        long now = clock.getAsLong();
+        for (SlidingWindow window : windows) {
+            List<ExceptionFrequency> top = window.top(Math.min(limit, topK), now);
+            for (ExceptionFrequency item : top) {
+                String fingerprint = item.getFingerprint();
+                if (!analyses.containsKey(fingerprint)) {
+                    analyses.put(fingerprint, analysisResultCache.peek(fingerprint));
+                }
+                item.setAnalysis(analyses.get(fingerprint));
+            }
+            result.put(window.name, top);
+        }
+        return result;
+    }
+
+    /**
+     * 统计（记录次数、各窗口时间片与候选槽位占用、计数矩阵内存）
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("depth", depth);
+        stats.put("width", width);
+        stats.put("topK", topK);
+        stats.put("recorded", recorded.get());
+        stats.put("memoryBytes", memoryBytes());
+        Map<String, Object> windowStats = new LinkedHashMap<>();
+        for (SlidingWindow window : windows) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("bucketSeconds", window.bucketMillis / 1000);
+            item.put("buckets", window.bucketCount);
+            item.put("candidates", window.occupied());
+            windowStats.put(window.name, item);
+        }
+        stats.put("windows", windowStats);
+        return stats;
+    }
+
+    public long getRecorded() {
+        return recorded.get();
+    }
+
+    // 全部时间片都已分配时的计数矩阵字节数
+    private long memoryBytes() {
+        long buckets = 0;
+        for (SlidingWindow window : windows) {
+            buckets += window.bucketCount;
+        }
+        return buckets * depth * width * 8L;
+    }
+
+    // 每行使用独立混淆后的哈希取列（双重哈希只用到低位，宽度较小时不同指纹易在所有行同时冲突）
+    private int cell(long hash, int row) {
+        return row * width + (int) (mix64(hash + (row + 1) * 0x9E3779B97F4A7C15L) & mask);
+    }
+
+    // FNV-1a + 混淆，0保留为空槽位
+    private static long hash(String fingerprint) {
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < fingerprint.length(); i++) {
+            hash ^= fingerprint.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        hash = mix64(hash);
+        return hash == EMPTY ? 1L : hash;
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+
+    /**
+     * 候选槽位的指纹信息（不可变，槽位替换时整体替换）
+     */
+    private static final class Label {
+        private final long hash;
+        private final String fingerprint;
+        private final String exceptionType;
+
+        Label(long hash, String fingerprint, String exceptionType) {
+            this.hash = hash;
+            this.fingerprint = fingerprint;
+            this.exceptionType = exceptionType;
+        }
+    }
+
+    /**
+     * 单个时间片的计数矩阵（depth行×width列，按行连续存放）
+     */
+    private static final class Bucket {
+        // 时间片序号（时间戳 / 时间片长度）
+        private final long epoch;
+        private final AtomicLongArray counters;
+
+        Bucket(long epoch, int cells) {
+            this.epoch = epoch;
+            this.counters = new AtomicLongArray(cells);
+        }
+    }
+
+    /**
+     * 滑动窗口：环形时间片 + 高频候选表
+     */
+    private final class SlidingWindow {
+        private final String name;
+        private final long bucketMillis;
+        private final int bucketCount;
+        private final AtomicReferenceArray<Bucket> buckets;
+        // 候选槽位：哈希（EMPTY为空）、最近一次估计值、指纹信息
+        private final AtomicLongArray keys;
+        private final AtomicLongArray counts;
+        private final AtomicReferenceArray<Label> labels;
+
+        SlidingWindow(String name, long bucketMillis, int bucketCount) {
+            this.name = name;
+            this.bucketMillis = bucketMillis;
+            this.bucketCount = bucketCount;
+            this.buckets = new AtomicReferenceArray<>(bucketCount);
+            this.keys = new AtomicLongArray(topK);
+            this.counts = new AtomicLongArray(topK);
+            this.labels = new AtomicReferenceArray<>(topK);
+        }
+
+        /**
+         * 计数加一，返回加一后的窗口内估计值
+         */
+        long add(long hash, long now) {
+            long epoch = now / bucketMillis;
+            Bucket bucket = bucketFor(epoch);
+            for (int row = 0; row < depth; row++) {
+                bucket.counters.getAndIncrement(cell(hash, row));
+            }
+            return estimate(hash, epoch);
+        }
+
+        /**
+         * 窗口内估计值：每行先对窗口内各时间片求和，再取各行最小值
+         */
+        long estimate(long hash, long epoch) {
+            long oldest = epoch - bucketCount;
+            long min = Long.MAX_VALUE;
+            for (int row = 0; row < depth; row++) {
+                int cell = cell(hash, row);
+                long sum = 0;
+                for (int i = 0; i < bucketCount; i++) {
+                    Bucket bucket = buckets.get(i);
+                    if (bucket != null && bucket.epoch > oldest && bucket.epoch <= epoch) {
+                        sum += bucket.counters.get(cell);
+                    }
+                }
+                min = Math.min(min, sum);
+            }
+            return min;
+        }
+
+        boolean contains(long hash) {
+            for (int i = 0; i < topK; i++) {
+                if (keys.get(i) == hash) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void update(long hash, long estimate) {
+            for (int i = 0; i < topK; i++) {
+                if (keys.get(i) == hash) {
+                    counts.set(i, estimate);
+                }
+            }
+        }
+
+        /**
+         * 新指纹尝试进入候选表：优先占用空槽位，否则与估计值最小的槽位比较（比较前重新估计该槽位）
+         * 并发下同一指纹可能占用两个槽位，查询时去重
+         */
+        void offer(Label label, long estimate, long now) {
+            int minSlot = -1;
+            long minCount = Long.MAX_VALUE;
+            for (int i = 0; i < topK; i++) {
+                long key = keys.get(i);
+                if (key == EMPTY) {
+                    if (keys.compareAndSet(i, EMPTY, label.hash)) {
+                        labels.set(i, label);
+                        counts.set(i, estimate);
+                        return;
+                    }
+                    continue;
+                }
+                long count = counts.get(i);
+                if (count < minCount) {
+                    minCount = count;
+                    minSlot = i;
+                }
+            }
+            if (minSlot < 0 || estimate <= minCount) {
+                return;
+            }
+            long minKey = keys.get(minSlot);
+            long current = estimate(minKey, now / bucketMillis);
+            counts.set(minSlot, current);
+            if (estimate > current && keys.compareAndSet(minSlot, minKey, label.hash)) {
+                labels.set(minSlot, label);
+                counts.set(minSlot, estimate);
+            }
+        }
+
+        List<ExceptionFrequency> top(int limit, long now) {
+            long epoch = now / bucketMillis;
+            List<ExceptionFrequency> items = new ArrayList<>();
+            Set<String> seen = new HashSet<>();
+            for (int i = 0; i < topK; i++) {
+                long key = keys.get(i);
+                Label label = labels.get(i);
+                // 槽位替换过程中哈希与指纹信息可能暂时不一致，跳过
+                if (key == EMPTY || label == null || label.hash != key || !seen.add(label.fingerprint)) {
+                    continue;
+                }
+                long count = estimate(key, epoch);
+                if (count > 0) {
+                    ExceptionFrequency item = new ExceptionFrequency();
+                    item.setFingerprint(label.fingerprint);
+                    item.setExceptionType(label.exceptionType);
+                    item.setCount(count);
+                    items.add(item);
+                }
+            }
+            items.sort((a, b) -> Long.compare(b.getCount(), a.getCount()));
+            return items.size() > limit ? new ArrayList<>(items.subList(0, limit)) : items;
+        }
+
+        int occupied() {
+            int occupied = 0;
+            for (int i = 0; i < topK; i++) {
+                if (keys.get(i) != EMPTY) {
+                    occupied++;
+                }
+            }
+            return occupied;
+        }
+
+        /**
+         * 取当前时间片，过期时以新时间片替换（竞争失败的线程使用胜出者的时间片），替换后重新估计候选槽位
+         */
+        private Bucket bucketFor(long epoch) {
+            int slot = (int) (epoch % bucketCount);
+            Bucket bucket = buckets.get(slot);
+            while (bucket == null || bucket.epoch < epoch) {
+                Bucket fresh = new Bucket(epoch, depth * width);
+                if (buckets.compareAndSet(slot, bucket, fresh)) {
+                    refreshCandidates(epoch);
+                    return fresh;
+                }
+                bucket = buckets.get(slot);
+            }
+            return bucket;
+        }
+
+        // 已滑出窗口（估计值为0）的候选直接释放槽位（指纹信息留给下一个占用者覆盖，查询时按哈希校验）
+        private void refreshCandidates(long epoch) {
+            for (int i = 0; i < topK; i++) {
+                long key = keys.get(i);
+                if (key == EMPTY) {
+                    continue;
+                }
+                long count = estimate(key, epoch);
+                if (count == 0) {
+                    keys.compareAndSet(i, key, EMPTY);
+                } else {
+                    counts.set(i, count);
+                }
+            }
+        }
+    }
+}
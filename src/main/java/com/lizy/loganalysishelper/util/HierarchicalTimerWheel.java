@@ -0,0 +1,128 @@
+package com.lizy.loganalysishelper.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 分层时间轮：O(1)登记定时任务，推进时只处理到期槽位，无需全量扫描
+ * 共4层、每层64槽，第i层每槽跨度为 tickMs * 64^i；
+ * 高层槽位在低层转完一圈时整体下沉（cascade）到低层重新分配
+ * 线程安全（schedule与advance互斥，均为短临界区）
+ *
+ * @param <K> 定时任务标识类型
+ */
+public class HierarchicalTimerWheel<K> {
+    private static final int LEVELS = 4;
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    // 最大可表示的延迟（tick数），更远的任务先放在最高层，到期后由调用方重新登记
+    private static final long MAX_DELAY_TICKS = (1L << (WHEEL_BITS * LEVELS)) - 1;
+
+    private final long tickMs;
+    // wheels[level][slot] -> 该槽位的任务
+    private final List<List<Entry<K>>> wheels;
+    private long currentTick;
+    private int size;
+
+    /**
+     * @param tickMs  最小时间刻度（毫秒）
+     * @param startMs 起始时间（毫秒）
+     */
+    public HierarchicalTimerWheel(long tickMs, long startMs) {
+        this.tickMs = Math.max(tickMs, 1);
+        this.currentTick = startMs / this.tickMs;
+        this.wheels = new ArrayList<>(LEVELS * WHEEL_SIZE);
+        for (int i = 0; i < LEVELS * WHEEL_SIZE; i++) {
+            wheels.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * 登记定时任务
+     *
+     * @param key        任务标识
+     * @param deadlineMs 到期时间（毫秒时间戳）
+     */
+    public synchronized void schedule(K key, long deadlineMs) {
+        place(new Entry<>(key, deadlineMs), 1);
+        size++;
+    }
+
+    /**
+     * 推进时间轮到指定时间
+     *
+     * @param nowMs 当前时间（毫秒时间戳）
+     * @return 本次到期的任务标识
+     */
+    public synchronized List<K> advance(long nowMs) {
+        List<K> expired = new ArrayList<>();
+        long targetTick = nowMs / tickMs;
+        while (currentTick < targetTick) {
+            currentTick++;
+            // 低层转完一圈时，把上一层对应槽位下沉
+            for (int level = 1; level < LEVELS; level++) {
+                if ((currentTick & ((1L << (WHEEL_BITS * level)) - 1)) != 0) {
+                    break;
+                }
+                int slot = (int) ((currentTick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+                List<Entry<K>> bucket = wheels.get(level * WHEEL_SIZE + slot);
+                if (!bucket.isEmpty()) {
+                    List<Entry<K>> cascaded = new ArrayList<>(bucket);
+                    bucket.clear();
+                    for (Entry<K> entry : cascaded) {
+                        // 恰好在当前tick到期的任务放入当前槽位，随后本轮一并触发
+                        place(entry, 0);
+                    }
+                }
+            }
+            List<Entry<K>> bucket = wheels.get((int) (currentTick & WHEEL_MASK));
+            if (!bucket.isEmpty()) {
+                for (Entry<K> entry : bucket) {
+                    expired.add(entry.key);
+                }
+                size -= bucket.size();
+                bucket.clear();
+            }
+        }
+        return expired;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * 按剩余tick数放入对应层的槽位
+     *
+     * @param minDelay 最小延迟tick数（登记时当前槽位已处理过，为1；下沉时当前槽位尚未处理，为0）
+     */
+    private void place(Entry<K> entry, long minDelay) {
+        long deadlineTick = entry.deadlineMs / tickMs;
+        long delay = deadlineTick - currentTick;
+        if (delay < minDelay) {
+            // 已到期：放到最近一个未处理的tick
+            deadlineTick = currentTick + minDelay;
+            delay = minDelay;
+        } else if (delay > MAX_DELAY_TICKS) {
+            deadlineTick = currentTick + MAX_DELAY_TICKS;
+            delay = MAX_DELAY_TICKS;
+        }
+        int level = 0;
+        while (level < LEVELS - 1 && delay >= (1L << (WHEEL_BITS * (level + 1)))) {
+            level++;
+        }
+        int slot = (int) ((deadlineTick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+        wheels.get(level * WHEEL_SIZE + slot).add(entry);
+    }
+
+    private static final class Entry<K> {
+        private final K key;
+        private final long deadlineMs;
+
+        private Entry(K key, long deadlineMs) {
+            this.key = key;
+            this.deadlineMs = deadlineMs;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.lizy.loganalysishelper.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lizy.loganalysishelper.entity.SessionSnapshot;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 内存KV会话存储（qwen.session.store.type=memory）
+ * 按共享KV后端的语义实现：值以序列化字节存储、读写均为整份快照拷贝，
+ * 多个ConversationMemoryManager实例共用同一个对象即可模拟多副本共享会话，用作外部共享存储的本地替身
+ */
+public class InMemorySessionStore implements SessionStore {
+    private final Map<String, byte[]> values = new ConcurrentHashMap<>();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Override
+    public Map<String, SessionSnapshot> loadAll() {
+        Map<String, SessionSnapshot> snapshots = new HashMap<>(values.size());
+        values.forEach((sessionId, bytes) -> snapshots.put(sessionId, deserialize(bytes)));
+        return snapshots;
+    }
+
+    @Override
+    public SessionSnapshot load(String sessionId) {
+        byte[] bytes = values.get(sessionId);
+        return bytes == null ? null : deserialize(bytes);
+    }
+
+    @Override
+    public void save(SessionSnapshot snapshot) {
+        try {
+            values.put(snapshot.getSessionId(), objectMapper.writeValueAsBytes(snapshot));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void delete(String sessionId) {
+        values.remove(sessionId);
+    }
+
+    @Override
+    public int size() {
+        return values.size();
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        long bytes = 0;
+        for (byte[] value : values.values()) {
+            bytes += value.length;
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("type", "memory");
+        stats.put("sessions", values.size());
+        stats.put("bytes", bytes);
+        return stats;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private SessionSnapshot deserialize(byte[] bytes) {
+        try {
+            return objectMapper.readValue(bytes, SessionSnapshot.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
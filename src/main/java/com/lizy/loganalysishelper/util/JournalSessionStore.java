@@ -0,0 +1,486 @@
+package com.lizy.loganalysishelper.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lizy.loganalysishelper.entity.SessionSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * 追加写日志会话存储（qwen.session.store.type=journal）
+ * 1. 写入：记录追加到内存映射文件（按固定大小分块映射），无系统调用，由后台线程定期force刷盘
+ * 2. 恢复：启动时顺序扫描，校验每条记录CRC，遇到半条记录（进程崩溃时的撕裂写）即截断
+ * 3. 压缩：有效数据占比过低时，把每个会话的最新记录复制到新文件后原子替换（替换前显式释放旧文件的映射）
+ * <p>
+ * 记录格式：[int 正文长度][int CRC32][byte 操作][long 最后活跃时间][short ID长度][ID][JSON快照]
+ * 长度为0表示本块剩余空间为填充，继续读下一块
+ */
+public class JournalSessionStore implements SessionStore {
+    private static final Logger log = LoggerFactory.getLogger(JournalSessionStore.class);
+    private static final String JOURNAL_FILE = "sessions.journal";
+    private static final String COMPACT_FILE = "sessions.journal.compact";
+    private static final byte OP_PUT = 1;
+    private static final byte OP_DELETE = 2;
+    // 记录头：长度4 + CRC4 + 操作1 + 时间8 + ID长度2
+    private static final int HEADER_BYTES = 19;
+    private static final long MB = 1024L * 1024L;
+
+    private final Path dir;
+    private final long chunkBytes;
+    private final long expireMillis;
+    private final long compactMinBytes;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "session-journal");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 以下状态均在this锁内访问
+    private JournalFile journal;
+    // sessionId -> 最新PUT记录位置
+    private final Map<String, RecordRef> index = new HashMap<>();
+    private long liveBytes;
+    private long compactions;
+
+    /**
+     * @param dir                    日志目录
+     * @param chunkMb                映射分块大小（MB），单条记录不能超过该大小
+     * @param expireMillis           会话过期时间（压缩时丢弃已过期会话）
+     * @param compactMinMb           日志达到该大小后才考虑压缩（MB）
+     * @param flushIntervalMs        刷盘间隔（毫秒）
+     * @param compactIntervalMinutes 压缩检查间隔（分钟）
+     */
+    public JournalSessionStore(String dir, long chunkMb, long expireMillis, long compactMinMb,
+                               long flushIntervalMs, long compactIntervalMinutes) throws IOException {
+        this.dir = Paths.get(dir);
+        this.chunkBytes = Math.max(chunkMb, 1) * MB;
+        this.expireMillis = expireMillis;
+        this.compactMinBytes = compactMinMb * MB;
+        Files.createDirectories(this.dir);
+        recover();
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::compactQuietly, compactIntervalMinutes, compactIntervalMinutes, TimeUnit.MINUTES);
+    }
+
+    @Override
+    public synchronized Map<String, SessionSnapshot> loadAll() {
+        Map<String, SessionSnapshot> snapshots = new HashMap<>(index.size());
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, RecordRef> entry : index.entrySet()) {
+            if (now - entry.getValue().lastActiveTime <= expireMillis) {
+                snapshots.put(entry.getKey(), readSnapshot(entry.getValue()));
+            }
+        }
+        return snapshots;
+    }
+
+    @Override
+    public synchronized SessionSnapshot load(String sessionId) {
+        RecordRef ref = index.get(sessionId);
+        return ref == null ? null : readSnapshot(ref);
+    }
+
+    @Override
+    public void save(SessionSnapshot snapshot) {
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(snapshot);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        synchronized (this) {
+            RecordRef ref = append(OP_PUT, snapshot.getSessionId(), snapshot.getLastActiveTime(), json);
+            if (ref != null) {
+                RecordRef old = index.put(snapshot.getSessionId(), ref);
+                liveBytes += ref.length - (old == null ? 0 : old.length);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void delete(String sessionId) {
+        RecordRef old = index.remove(sessionId);
+        if (old != null) {
+            liveBytes -= old.length;
+            append(OP_DELETE, sessionId, System.currentTimeMillis(), new byte[0]);
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        return index.size();
+    }
+
+    @Override
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("type", "journal");
+        stats.put("sessions", index.size());
+        stats.put("journalBytes", journal.end());
+        stats.put("liveBytes", liveBytes);
+        stats.put("compactions", compactions);
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        synchronized (this) {
+            journal.force();
+            journal.close();
+        }
+    }
+
+    /**
+     * 压缩：有效数据不足一半时，只保留每个未过期会话的最新记录
+     */
+    public synchronized void compact() throws IOException {
+        long total = journal.end();
+        if (total < compactMinBytes || liveBytes * 2 > total) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        Path compactPath = dir.resolve(COMPACT_FILE);
+        Files.deleteIfExists(compactPath);
+        Map<String, RecordRef> newIndex = new HashMap<>(index.size());
+        long newLiveBytes = 0;
+        JournalFile compacted = new JournalFile(compactPath, chunkBytes);
+        try {
+            for (Map.Entry<String, RecordRef> entry : index.entrySet()) {
+                RecordRef ref = entry.getValue();
+                if (start - ref.lastActiveTime > expireMillis) {
+                    continue;
+                }
+                RecordRef copied = compacted.appendRaw(journal.read(ref.offset, ref.length), ref.lastActiveTime);
+                newIndex.put(entry.getKey(), copied);
+                newLiveBytes += copied.length;
+            }
+            compacted.force();
+        } finally {
+            compacted.close();
+        }
+        // 替换前必须释放旧文件的映射（部分平台不允许替换仍被映射的文件）
+        journal.close();
+        try {
+            replaceJournal(compactPath, dir.resolve(JOURNAL_FILE));
+        } catch (IOException | RuntimeException e) {
+            // 原日志未被替换：重新打开原日志，索引保持不变
+            log.error("[JournalSessionStore] 日志压缩替换失败，继续使用原日志：{}", e.getMessage(), e);
+            journal = openJournal();
+            Files.deleteIfExists(compactPath);
+            throw e;
+        }
+        try {
+            journal = openJournal();
+        } catch (IOException | RuntimeException e) {
+            // 已替换为压缩后的日志但打开失败：按磁盘上的日志重新恢复索引
+            log.error("[JournalSessionStore] 压缩后的日志打开失败，重新恢复：{}", e.getMessage(), e);
+            index.clear();
+            liveBytes = 0;
+            recover();
+            throw e;
+        }
+        index.clear();
+        index.putAll(newIndex);
+        liveBytes = newLiveBytes;
+        compactions++;
+        log.info("[JournalSessionStore] 日志压缩完成：{}字节 -> {}字节，会话数：{}，耗时：{}ms",
+                total, journal.end(), index.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 用压缩后的文件原子替换日志文件
+     */
+    void replaceJournal(Path source, Path target) throws IOException {
+        Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // ========== 内部实现 ==========
+
+    private JournalFile openJournal() throws IOException {
+        JournalFile file = new JournalFile(dir.resolve(JOURNAL_FILE), chunkBytes);
+        file.recover(null);
+        return file;
+    }
+
+    private synchronized void recover() throws IOException {
+        long start = System.currentTimeMillis();
+        journal = new JournalFile(dir.resolve(JOURNAL_FILE), chunkBytes);
+        int records = journal.recover((op, sessionId, ref) -> {
+            if (op == OP_PUT) {
+                RecordRef old = index.put(sessionId, ref);
+                liveBytes += ref.length - (old == null ? 0 : old.length);
+            } else {
+                RecordRef old = index.remove(sessionId);
+                liveBytes -= old == null ? 0 : old.length;
+            }
+        });
+        log.info("[JournalSessionStore] 会话日志恢复完成，记录数：{}，会话数：{}，日志大小：{}字节，耗时：{}ms",
+                records, index.size(), journal.end(), System.currentTimeMillis() - start);
+    }
+
+    private RecordRef append(byte op, String sessionId, long lastActiveTime, byte[] json) {
+        byte[] id = sessionId.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + id.length + json.length);
+        record.putInt(record.capacity() - HEADER_BYTES)
+                .putInt(0)
+                .put(op)
+                .putLong(lastActiveTime)
+                .putShort((short) id.length)
+                .put(id)
+                .put(json);
+        record.putInt(4, crcOf(record.array()));
+        try {
+            return journal.appendRaw(record.array(), lastActiveTime);
+        } catch (IOException e) {
+            log.error("[JournalSessionStore] 会话日志写入失败，sessionId：{}，原因：{}", sessionId, e.getMessage(), e);
+            return null;
+        }
+    }
+
+    private SessionSnapshot readSnapshot(RecordRef ref) {
+        byte[] record = journal.read(ref.offset, ref.length);
+        int idLength = ByteBuffer.wrap(record, 17, 2).getShort();
+        int jsonOffset = HEADER_BYTES + idLength;
+        try {
+            return objectMapper.readValue(record, jsonOffset, record.length - jsonOffset, SessionSnapshot.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int crcOf(byte[] record) {
+        CRC32 crc = new CRC32();
+        // CRC覆盖操作字节之后的全部内容
+        crc.update(record, 8, record.length - 8);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * 显式释放映射：MappedByteBuffer默认要等GC回收才解除映射，压缩后旧日志的映射会一直占用地址空间，
+     * Windows上文件仍被映射时无法替换/删除。JDK 9+使用Unsafe.invokeCleaner，JDK 8使用DirectBuffer.cleaner()
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner;
+            try {
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            } catch (NoSuchMethodException e) {
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+                return;
+            }
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // 无法显式释放时退回由GC回收
+            log.debug("[JournalSessionStore] 释放日志映射失败，等待GC回收：{}", e.toString());
+        }
+    }
+
+    private void flushQuietly() {
+        synchronized (this) {
+            journal.force();
+        }
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (IOException | RuntimeException e) {
+            log.error("[JournalSessionStore] 日志压缩失败：{}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 记录位置
+     */
+    private static final class RecordRef {
+        private final long offset;
+        private final int length;
+        private final long lastActiveTime;
+
+        private RecordRef(long offset, int length, long lastActiveTime) {
+            this.offset = offset;
+            this.length = length;
+            this.lastActiveTime = lastActiveTime;
+        }
+    }
+
+    private interface RecordVisitor {
+        void visit(byte op, String sessionId, RecordRef ref);
+    }
+
+    /**
+     * 分块内存映射的日志文件（非线程安全，由外层加锁）
+     */
+    private static final class JournalFile {
+        private final RandomAccessFile file;
+        private final FileChannel channel;
+        private final long chunkBytes;
+        private final List<MappedByteBuffer> chunks = new ArrayList<>();
+        // 当前写入块及块内写入位置
+        private MappedByteBuffer current;
+
+        private JournalFile(Path path, long chunkBytes) throws IOException {
+            this.file = new RandomAccessFile(path.toFile(), "rw");
+            this.channel = file.getChannel();
+            this.chunkBytes = chunkBytes;
+        }
+
+        /**
+         * 顺序扫描全部记录，定位写入位置；遇到损坏/撕裂的记录即截断
+         *
+         * @return 有效记录数
+         */
+        private int recover(RecordVisitor visitor) throws IOException {
+            long chunkCount = Math.max(1, (channel.size() + chunkBytes - 1) / chunkBytes);
+            int records = 0;
+            for (long chunkIndex = 0; chunkIndex < chunkCount; chunkIndex++) {
+                MappedByteBuffer chunk = mapChunk(chunkIndex);
+                current = chunk;
+                while (chunk.remaining() >= HEADER_BYTES) {
+                    int position = chunk.position();
+                    int bodyLength = chunk.getInt(position);
+                    if (bodyLength == 0) {
+                        // 本块剩余为填充
+                        break;
+                    }
+                    if (bodyLength < 2 || bodyLength > chunk.remaining() - HEADER_BYTES) {
+                        truncateAt(chunkIndex, position);
+                        return records;
+                    }
+                    byte[] record = new byte[HEADER_BYTES + bodyLength];
+                    chunk.get(record);
+                    if (ByteBuffer.wrap(record).getInt(4) != crcOf(record)) {
+                        log.warn("[JournalSessionStore] 检测到损坏记录（CRC不匹配），位置：{}，截断后续数据",
+                                chunkIndex * chunkBytes + position);
+                        truncateAt(chunkIndex, position);
+                        return records;
+                    }
+                    records++;
+                    if (visitor != null) {
+                        ByteBuffer header = ByteBuffer.wrap(record);
+                        byte op = header.get(8);
+                        long lastActiveTime = header.getLong(9);
+                        int idLength = header.getShort(17);
+                        String sessionId = new String(record, HEADER_BYTES, idLength, StandardCharsets.UTF_8);
+                        visitor.visit(op, sessionId,
+                                new RecordRef(chunkIndex * chunkBytes + position, record.length, lastActiveTime));
+                    }
+                }
+                if (chunk.position() == 0 && chunkIndex < chunkCount - 1) {
+                    // 空块之后不可能还有有效数据（换块后尚未写入即崩溃）
+                    truncateAt(chunkIndex, 0);
+                    return records;
+                }
+            }
+            return records;
+        }
+
+        private RecordRef appendRaw(byte[] record, long lastActiveTime) throws IOException {
+            if (record.length > chunkBytes) {
+                throw new IOException("会话快照过大（" + record.length + "字节），超过日志分块大小");
+            }
+            if (current == null) {
+                current = mapChunk(chunks.size());
+            }
+            if (current.remaining() < record.length) {
+                // 剩余空间保持为0作为填充，换到下一块
+                current = mapChunk(chunks.size());
+            }
+            long offset = (chunks.size() - 1) * chunkBytes + current.position();
+            current.put(record);
+            return new RecordRef(offset, record.length, lastActiveTime);
+        }
+
+        private byte[] read(long offset, int length) {
+            ByteBuffer chunk = chunks.get((int) (offset / chunkBytes)).duplicate();
+            chunk.position((int) (offset % chunkBytes));
+            byte[] record = new byte[length];
+            chunk.get(record);
+            return record;
+        }
+
+        /**
+         * 逻辑末尾（已写入数据的结束位置）
+         */
+        private long end() {
+            return current == null ? 0 : (chunks.size() - 1) * chunkBytes + current.position();
+        }
+
+        private void force() {
+            if (current != null) {
+                current.force();
+            }
+        }
+
+        /**
+         * 关闭文件并释放全部映射（之后不能再读写本对象）
+         */
+        private void close() {
+            try {
+                channel.close();
+                file.close();
+            } catch (IOException e) {
+                log.warn("[JournalSessionStore] 日志文件关闭失败：{}", e.getMessage());
+            }
+            for (MappedByteBuffer chunk : chunks) {
+                unmap(chunk);
+            }
+            chunks.clear();
+            current = null;
+        }
+
+        private MappedByteBuffer mapChunk(long chunkIndex) throws IOException {
+            MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_WRITE, chunkIndex * chunkBytes, chunkBytes);
+            chunks.add(chunk);
+            return chunk;
+        }
+
+        /**
+         * 从指定位置截断：清零本块剩余内容并丢弃之后的块
+         */
+        private void truncateAt(long chunkIndex, int position) throws IOException {
+            MappedByteBuffer chunk = chunks.get((int) chunkIndex);
+            for (int i = position; i < chunkBytes; i++) {
+                chunk.put(i, (byte) 0);
+            }
+            chunk.position(position);
+            current = chunk;
+            while (chunks.size() > chunkIndex + 1) {
+                chunks.remove(chunks.size() - 1);
+            }
+            channel.truncate((chunkIndex + 1) * chunkBytes);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.lizy.loganalysishelper.util;
+
+import java.util.Arrays;
+
+/**
+ * 延迟分位数估算（保留最近N个样本的环形缓冲区）
+ * 分位数按需排序计算，并在新增样本不足refreshEvery个时复用上次结果，避免每次调用都排序
+ */
+public class LatencyTracker {
+    // 最近N个样本（毫秒）
+    private final long[] samples;
+    // 新增多少个样本后重新计算分位数
+    private final int refreshEvery;
+
+    private int cursor;
+    private int size;
+    private long totalCount;
+
+    // 分位数缓存
+    private double cachedQuantile = -1;
+    private long cachedValue = -1;
+    private long cachedAtCount = -1;
+
+    public LatencyTracker(int capacity, int refreshEvery) {
+        this.samples = new long[Math.max(capacity, 1)];
+        this.refreshEvery = Math.max(refreshEvery, 1);
+    }
+
+    public synchronized void record(long latencyMs) {
+        samples[cursor] = latencyMs;
+        cursor = (cursor + 1) % samples.length;
+        if (size < samples.length) {
+            size++;
+        }
+        totalCount++;
+    }
+
+    /**
+     * 计算分位数
+     *
+     * @param quantile 分位点（0~1，如0.95）
+     * @return 分位数延迟（毫秒），无样本时返回-1
+     */
+    public synchronized long quantile(double quantile) {
+        if (size == 0) {
+            return -1;
+        }
+        if (quantile == cachedQuantile && totalCount - cachedAtCount < refreshEvery) {
+            return cachedValue;
+        }
+        long[] sorted = Arrays.copyOf(samples, size);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(quantile * size) - 1;
+        cachedValue = sorted[Math.min(Math.max(index, 0), size - 1)];
+        cachedQuantile = quantile;
+        cachedAtCount = totalCount;
+        return cachedValue;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized long count() {
+        return totalCount;
+    }
+}
@@ -0,0 +1,131 @@
+package com.lizy.loganalysishelper.util;
+
+import com.lizy.loganalysishelper.config.LocalRuleProperties;
+import com.lizy.loganalysishelper.entity.ParsedThrowable;
+import com.lizy.loganalysishelper.entity.StackFrame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * 本地规则引擎：对结构化异常按配置规则匹配，命中时用模板直接生成回答（微秒级），未命中再交给大模型
+ */
+@Component
+public class LocalRuleEngine {
+    private static final Logger log = LoggerFactory.getLogger(LocalRuleEngine.class);
+
+    @Autowired
+    private LocalRuleProperties ruleProperties;
+
+    // 启动时预编译的规则
+    private final List<CompiledRule> compiledRules = new ArrayList<>();
+
+    @PostConstruct
+    public void init() {
+        for (LocalRuleProperties.Rule rule : ruleProperties.getItems()) {
+            if (!StringUtils.hasText(rule.getExceptionPattern()) || !StringUtils.hasText(rule.getAnswer())) {
+                log.warn("[LocalRuleEngine] 规则{}缺少exception-pattern或answer，已忽略", rule.getName());
+                continue;
+            }
+            CompiledRule compiled = new CompiledRule();
+            compiled.rule = rule;
+            compiled.exceptionPattern = Pattern.compile(rule.getExceptionPattern());
+            compiled.messagePattern = StringUtils.hasText(rule.getMessagePattern())
+                    ? Pattern.compile(rule.getMessagePattern()) : null;
+            compiled.framePattern = StringUtils.hasText(rule.getFramePattern())
+                    ? Pattern.compile(rule.getFramePattern()) : null;
+            compiledRules.add(compiled);
+        }
+        log.info("[LocalRuleEngine] 本地规则加载完成，启用：{}，规则数：{}", ruleProperties.isEnabled(), compiledRules.size());
+    }
+
+    /**
+     * 匹配本地规则
+     *
+     * @param parsed 结构化异常
+     * @return 命中时返回本地生成的回答，否则返回null
+     */
+    public String match(ParsedThrowable parsed) {
+        if (!ruleProperties.isEnabled() || parsed == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        for (CompiledRule compiled : compiledRules) {
+            for (ParsedThrowable throwable : parsed.causeChain()) {
+                if (matches(compiled, throwable)) {
+                    String answer = render(compiled.rule.getAnswer(), throwable, parsed);
+                    log.info("[LocalRuleEngine] 命中本地规则：{}，异常：{}，耗时：{}μs",
+                            compiled.rule.getName(), throwable.getExceptionType(), (System.nanoTime() - start) / 1000);
+                    return answer;
+                }
+            }
+        }
+        return null;
+    }
+
+    private boolean matches(CompiledRule compiled, ParsedThrowable throwable) {
+        if (!compiled.exceptionPattern.matcher(throwable.getExceptionType()).matches()) {
+            return false;
+        }
+        if (compiled.messagePattern != null
+                && (throwable.getMessage() == null || !compiled.messagePattern.matcher(throwable.getMessage()).find())) {
+            return false;
+        }
+        if (compiled.rule.isTopFrameInApp()
+                && (throwable.getFrames().isEmpty() || !isAppFrame(throwable.getFrames().get(0)))) {
+            return false;
+        }
+        if (compiled.framePattern != null) {
+            for (StackFrame frame : throwable.getFrames()) {
+                if (compiled.framePattern.matcher(frame.getClassName()).find()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return true;
+    }
+
+    private boolean isAppFrame(StackFrame frame) {
+        for (String appPackage : ruleProperties.getAppPackages()) {
+            if (frame.getClassName().startsWith(appPackage)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String render(String template, ParsedThrowable throwable, ParsedThrowable top) {
+        List<StackFrame> frames = throwable.getFrames();
+        String location = frames.isEmpty() ? "未知位置" : frames.get(0).toLocation();
+        String appLocation = location;
+        for (StackFrame frame : frames) {
+            if (isAppFrame(frame)) {
+                appLocation = frame.toLocation();
+                break;
+            }
+        }
+        return template
+                .replace("{exception}", throwable.getExceptionType())
+                .replace("{simpleName}", throwable.simpleName())
+                .replace("{message}", throwable.getMessage() == null ? "无" : throwable.getMessage())
+                .replace("{location}", location)
+                .replace("{appLocation}", appLocation)
+                .replace("{rootCause}", top.rootCause().getExceptionType())
+                .trim();
+    }
+
+    private static class CompiledRule {
+        private LocalRuleProperties.Rule rule;
+        private Pattern exceptionPattern;
+        private Pattern messagePattern;
+        private Pattern framePattern;
+    }
+}
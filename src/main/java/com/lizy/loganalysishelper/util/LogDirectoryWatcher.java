@@ -0,0 +1,421 @@
+package com.lizy.loganalysishelper.util;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.lizy.loganalysishelper.config.LogIngestProperties;
+import com.lizy.loganalysishelper.entity.IngestedException;
+import com.lizy.loganalysishelper.entity.LogAnalysisResponse;
+import com.lizy.loganalysishelper.entity.ParsedThrowable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 日志目录监听（后台预分析）：WatchService监听配置的日志目录，增量读取新写入的内容，
+ * 发现新的异常（按指纹去重）即排队限速分析，往往在有人来问之前结果已就绪
+ * 1. 监听线程：目录事件只用于及时唤醒，每轮都检查所有文件（兼容事件丢失/OVERFLOW/不支持原生通知的文件系统）
+ *    文件被删除/移走且已读完时移除其读取器（按日期命名轮转时读取器数量不会逐日增长），同名文件重新出现时重新读取
+ * 2. 分析线程：从有界队列取任务，共享限速器控制每分钟分析数，队列满时丢弃（仍记录出现次数）
+ * 3. 会话预置：每个异常使用固定会话ID分析，结果写入会话与指纹缓存，工程师可直接用该会话继续追问
+ */
+@Component
+public class LogDirectoryWatcher {
+    private static final Logger log = LoggerFactory.getLogger(LogDirectoryWatcher.class);
+    // 会话ID中使用的指纹前缀长度
+    private static final int FINGERPRINT_PREFIX_LENGTH = 16;
+    // 调度配额中的调用方标识
+    private static final String CLIENT_ID = "ingest";
+
+    @Autowired
+    private LogIngestProperties properties;
+
+    @Autowired
+    private QwenApiUtil qwenApiUtil;
+
+    @Autowired
+    private ConversationMemoryManager conversationMemoryManager;
+
+    private WatchService watchService;
+    private PathMatcher fileMatcher;
+    private final List<Path> watchedDirs = new ArrayList<>();
+    // 只由监听线程增删（统计接口只读取数量）
+    private final Map<Path, LogFileTailer> tailers = new ConcurrentHashMap<>();
+    private Thread watchThread;
+    private volatile boolean running;
+
+    // 发现的异常（按最近出现排序，超出上限淘汰最久未出现的异常），访问需加锁
+    private final Map<String, IngestedException> exceptions = new LinkedHashMap<>(16, 0.75f, true);
+    private BlockingQueue<IngestedException> analysisQueue;
+    private RateLimiter rateLimiter;
+    private ExecutorService analysisExecutor;
+
+    private final AtomicLong blocks = new AtomicLong();
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong analyzed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!properties.isEnabled()) {
+            log.info("[LogDirectoryWatcher] 日志目录监听未启用");
+            return;
+        }
+        fileMatcher = FileSystems.getDefault().getPathMatcher("glob:" + properties.getFilePattern());
+        watchService = FileSystems.getDefault().newWatchService();
+        for (String dir : properties.getDirs()) {
+            Path path = Paths.get(dir).toAbsolutePath().normalize();
+            if (!Files.isDirectory(path)) {
+                log.warn("[LogDirectoryWatcher] 日志目录不存在，已忽略：{}", path);
+                continue;
+            }
+            path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            watchedDirs.add(path);
+            scanDirectory(path, properties.isStartAtEnd());
+        }
+
+        analysisQueue = new ArrayBlockingQueue<>(Math.max(properties.getQueueCapacity(), 1));
+        rateLimiter = RateLimiter.create(Math.max(properties.getAnalysesPerMinute(), 0.1) / 60.0);
+        int concurrency = Math.max(properties.getConcurrency(), 1);
+        AtomicInteger index = new AtomicInteger();
+        analysisExecutor = Executors.newFixedThreadPool(concurrency, r -> {
+            Thread thread = new Thread(r, "log-ingest-analysis-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        running = true;
+        for (int i = 0; i < concurrency; i++) {
+            analysisExecutor.execute(this::analysisLoop);
+        }
+        watchThread = new Thread(this::watchLoop, "log-ingest-watcher");
+        watchThread.setDaemon(true);
+        watchThread.start();
+        log.info("[LogDirectoryWatcher] 日志目录监听已启动，目录：{}，文件：{}，已有文件数：{}，每分钟最多分析：{}",
+                watchedDirs, properties.getFilePattern(), tailers.size(), properties.getAnalysesPerMinute());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                log.debug("[LogDirectoryWatcher] 关闭WatchService失败：{}", e.getMessage());
+            }
+        }
+        if (watchThread != null) {
+            try {
+                watchThread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (analysisExecutor != null) {
+            analysisExecutor.shutdownNow();
+        }
+        // 监听线程已退出，此后可安全关闭文件
+        tailers.values().forEach(LogFileTailer::close);
+        tailers.clear();
+    }
+
+    /**
+     * 最近发现的异常（按最近出现时间倒序）
+     *
+     * @param limit 最多返回条数
+     */
+    public List<IngestedException> recentExceptions(int limit) {
+        List<IngestedException> result = new ArrayList<>();
+        synchronized (exceptions) {
+            for (IngestedException item : exceptions.values()) {
+                result.add(copyOf(item));
+            }
+        }
+        result.sort((a, b) -> b.getLastSeen().compareTo(a.getLastSeen()));
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    /**
+     * 打开某个异常的预分析会话：会话已过期/被淘汰时用分析样本重建（命中指纹缓存，不再调用大模型）
+     *
+     * @param fingerprint 异常指纹
+     * @return 异常记录；不存在或尚未完成分析时返回null
+     */
+    public IngestedException openSession(String fingerprint) {
+        IngestedException item;
+        synchronized (exceptions) {
+            item = exceptions.get(fingerprint);
+            if (item == null || !IngestedException.DONE.equals(item.getStatus())) {
+                return null;
+            }
+            item = copyOf(item);
+        }
+        if (conversationMemoryManager.getOrCreateSession(item.getSessionId()).getMessageHistory().isEmpty()) {
+            log.info("[LogDirectoryWatcher] 预分析会话已失效，重建会话：{}", item.getSessionId());
+            qwenApiUtil.analyzeJavaLog(item.getSample(), item.getSessionId(), CLIENT_ID);
+        }
+        return item;
+    }
+
+    /**
+     * 监听统计
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", properties.isEnabled());
+        stats.put("dirs", watchedDirs.toString());
+        stats.put("trackedFiles", tailers.size());
+        synchronized (exceptions) {
+            stats.put("distinctExceptions", exceptions.size());
+        }
+        stats.put("blocks", blocks.get());
+        stats.put("queued", queued.get());
+        stats.put("queueDepth", analysisQueue == null ? 0 : analysisQueue.size());
+        stats.put("dropped", dropped.get());
+        stats.put("analyzed", analyzed.get());
+        stats.put("failed", failed.get());
+        return stats;
+    }
+
+    private void watchLoop() {
+        while (running) {
+            try {
+                WatchKey key = watchService.poll(properties.getPollIntervalMs(), TimeUnit.MILLISECONDS);
+                while (key != null) {
+                    handleEvents(key);
+                    key = watchService.poll();
+                }
+                pollTailers();
+            } catch (ClosedWatchServiceException e) {
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                // 单轮异常不影响后续监听
+                log.warn("[LogDirectoryWatcher] 日志目录监听异常：{}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private void handleEvents(WatchKey key) throws IOException {
+        Path dir = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // 事件溢出：重新扫描目录，新发现的文件从末尾开始读
+                scanDirectory(dir, true);
+                continue;
+            }
+            Path file = dir.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && fileMatcher.matches(file.getFileName())
+                    && !tailers.containsKey(file) && !isRotatedFile(file)) {
+                // 新建的文件从头读取
+                track(file, false);
+            }
+            // MODIFY/DELETE及轮转由每轮检查处理（删除的文件读完剩余内容后移除读取器）
+        }
+        key.reset();
+    }
+
+    private void pollTailers() {
+        Iterator<LogFileTailer> iterator = tailers.values().iterator();
+        while (iterator.hasNext()) {
+            LogFileTailer tailer = iterator.next();
+            try {
+                tailer.poll();
+                tailer.flushIfIdle(properties.getIdleFlushMs());
+            } catch (IOException e) {
+                log.warn("[LogDirectoryWatcher] 读取日志文件失败：{}，原因：{}", tailer.getPath(), e.getMessage());
+            }
+            if (tailer.isFileGone()) {
+                tailer.close();
+                iterator.remove();
+                log.info("[LogDirectoryWatcher] 日志文件已删除/移走，停止读取：{}", tailer.getPath());
+            }
+        }
+    }
+
+    private void scanDirectory(Path dir, boolean fromEnd) throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path file : stream) {
+                if (Files.isRegularFile(file) && fileMatcher.matches(file.getFileName()) && !tailers.containsKey(file)) {
+                    track(file, fromEnd);
+                }
+            }
+        }
+    }
+
+    private void track(Path file, boolean fromEnd) {
+        String fileName = file.toString();
+        tailers.put(file, new LogFileTailer(file, fromEnd, properties.getMaxBlockLines(), block -> onBlock(fileName, block)));
+        log.info("[LogDirectoryWatcher] 开始读取日志文件：{}（{}）", file, fromEnd ? "从末尾" : "从头");
+    }
+
+    /**
+     * 文件名匹配规则覆盖轮转文件时（如*.log*），轮转出的旧文件正由原文件的读取器读完，不重复读取
+     */
+    private boolean isRotatedFile(Path file) {
+        try {
+            Object fileKey = Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+            if (fileKey == null) {
+                return false;
+            }
+            for (LogFileTailer tailer : tailers.values()) {
+                if (Objects.equals(fileKey, tailer.getFileKey())) {
+                    return true;
+                }
+            }
+        } catch (IOException e) {
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 发现异常块：已知异常只累加出现次数，新异常排队分析
+     */
+    private void onBlock(String file, String block) {
+        blocks.incrementAndGet();
+        String fingerprint = ExceptionFingerprint.fingerprint(block);
+        Date now = new Date();
+        IngestedException item;
+        synchronized (exceptions) {
+            item = exceptions.get(fingerprint);
+            if (item != null) {
+                item.setOccurrences(item.getOccurrences() + 1);
+                item.setLastSeen(now);
+                // 之前因队列满被丢弃/分析失败的异常再次出现时重新排队
+                if (!IngestedException.DROPPED.equals(item.getStatus()) && !IngestedException.FAILED.equals(item.getStatus())) {
+                    return;
+                }
+            } else {
+                item = new IngestedException();
+                item.setFingerprint(fingerprint);
+                ParsedThrowable parsed = StackTraceParser.parse(block);
+                item.setExceptionType(parsed == null ? null : parsed.getExceptionType());
+                item.setFile(file);
+                item.setOccurrences(1);
+                item.setFirstSeen(now);
+                item.setLastSeen(now);
+                item.setSample(block);
+                item.setSessionId("INGEST_" + fingerprint.substring(0, FINGERPRINT_PREFIX_LENGTH));
+                exceptions.put(fingerprint, item);
+                evictOverflow();
+            }
+            item.setStatus(IngestedException.QUEUED);
+        }
+        if (analysisQueue.offer(item)) {
+            queued.incrementAndGet();
+            log.info("[LogDirectoryWatcher] 发现新异常，已排队分析：{}，文件：{}，指纹：{}", item.getExceptionType(), file, fingerprint);
+        } else {
+            dropped.incrementAndGet();
+            synchronized (exceptions) {
+                item.setStatus(IngestedException.DROPPED);
+            }
+            log.warn("[LogDirectoryWatcher] 待分析队列已满（{}），丢弃：{}", properties.getQueueCapacity(), fingerprint);
+        }
+    }
+
+    private void evictOverflow() {
+        int maxTracked = Math.max(properties.getMaxTracked(), 1);
+        Iterator<Map.Entry<String, IngestedException>> iterator = exceptions.entrySet().iterator();
+        while (exceptions.size() > maxTracked && iterator.hasNext()) {
+            IngestedException eldest = iterator.next().getValue();
+            // 排队/分析中的异常保留到分析结束
+            if (!IngestedException.QUEUED.equals(eldest.getStatus()) && !IngestedException.ANALYZING.equals(eldest.getStatus())) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private void analysisLoop() {
+        while (running) {
+            IngestedException item;
+            try {
+                item = analysisQueue.take();
+                rateLimiter.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            String sample;
+            String sessionId;
+            synchronized (exceptions) {
+                item.setStatus(IngestedException.ANALYZING);
+                sample = item.getSample();
+                sessionId = item.getSessionId();
+            }
+            // 重新排队的异常（此前失败）需要新会话，避免被当作追问
+            if (!conversationMemoryManager.getOrCreateSession(sessionId).getMessageHistory().isEmpty()) {
+                sessionId = sessionId + "_" + System.currentTimeMillis();
+            }
+            LogAnalysisResponse response = qwenApiUtil.analyzeJavaLog(sample, sessionId, CLIENT_ID);
+            synchronized (exceptions) {
+                item.setSessionId(sessionId);
+                if (response.getCode() == 200) {
+                    item.setStatus(IngestedException.DONE);
+                    item.setAnalyzedAt(new Date());
+                    item.setError(null);
+                } else {
+                    item.setStatus(IngestedException.FAILED);
+                    item.setError(response.getMsg());
+                }
+            }
+            if (response.getCode() == 200) {
+                analyzed.incrementAndGet();
+                log.info("[LogDirectoryWatcher] 预分析完成：{}，会话：{}，traceId：{}", item.getFingerprint(), sessionId, response.getTraceId());
+            } else {
+                failed.incrementAndGet();
+                log.warn("[LogDirectoryWatcher] 预分析失败：{}，原因：{}", item.getFingerprint(), response.getMsg());
+            }
+        }
+    }
+
+    private static IngestedException copyOf(IngestedException item) {
+        IngestedException copy = new IngestedException();
+        copy.setFingerprint(item.getFingerprint());
+        copy.setExceptionType(item.getExceptionType());
+        copy.setFile(item.getFile());
+        copy.setOccurrences(item.getOccurrences());
+        copy.setFirstSeen(item.getFirstSeen());
+        copy.setLastSeen(item.getLastSeen());
+        copy.setStatus(item.getStatus());
+        copy.setSessionId(item.getSessionId());
+        copy.setAnalyzedAt(item.getAnalyzedAt());
+        copy.setError(item.getError());
+        copy.setSample(item.getSample());
+        return copy;
+    }
+}
@@ -0,0 +1,251 @@
+package com.lizy.loganalysishelper.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * 单个日志文件的增量读取（类似tail -F）：FileChannel按位置读取新增字节，逐行交给异常块提取器
+ * 1. 轮转（rename后新建同名文件）：文件标识（inode）变化时先读完旧文件剩余内容，再从头读新文件
+ * 2. 截断（copytruncate）：文件变短时从头读取
+ * 3. 半行：未遇到换行的内容保留到下次读取；UTF-8多字节字符跨读取边界时由解码器保留
+ * 4. 删除：文件不存在且旧文件已读完关闭后isFileGone为true，调用方可丢弃该读取器
+ * 非线程安全，由监听线程独占使用
+ */
+public class LogFileTailer {
+    private static final Logger log = LoggerFactory.getLogger(LogFileTailer.class);
+    private static final int READ_BUFFER_BYTES = 64 * 1024;
+    // 单行最大字符数（超出部分丢弃，防止二进制文件/超长行占用内存）
+    private static final int MAX_LINE_CHARS = 64 * 1024;
+
+    private final Path path;
+    private final ExceptionBlockExtractor extractor;
+    private final ByteBuffer byteBuffer = ByteBuffer.allocateDirect(READ_BUFFER_BYTES);
+    private final CharBuffer charBuffer = CharBuffer.allocate(READ_BUFFER_BYTES);
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final StringBuilder partialLine = new StringBuilder();
+
+    private FileChannel channel;
+    // 当前打开文件的标识（inode等，文件系统不支持时为null）与创建时间
+    private Object fileKey;
+    private long creationTime;
+    private long position;
+    // 下次打开文件时的起始位置（-1表示文件末尾）
+    private long openPosition;
+    // 最近一次poll时文件不存在
+    private boolean missing;
+    private long lastDataAt = System.currentTimeMillis();
+    private long rotations;
+    private long truncations;
+
+    /**
+     * @param path          日志文件
+     * @param fromEnd       是否从文件当前末尾开始读取（启动时已存在的文件）
+     * @param maxBlockLines 单个异常块最大行数
+     * @param blockConsumer 异常块回调
+     */
+    public LogFileTailer(Path path, boolean fromEnd, int maxBlockLines, Consumer<String> blockConsumer) {
+        this.path = path;
+        this.openPosition = fromEnd ? -1 : 0;
+        this.extractor = new ExceptionBlockExtractor(maxBlockLines, blockConsumer);
+    }
+
+    /**
+     * 读取新增内容（处理轮转与截断）
+     *
+     * @return 本次是否读到新内容
+     * @throws IOException 读取异常
+     */
+    public boolean poll() throws IOException {
+        BasicFileAttributes attributes = readAttributes();
+        missing = attributes == null;
+        if (channel != null && attributes != null && isSameFile(attributes)) {
+            long size = channel.size();
+            if (size < position) {
+                truncations++;
+                log.info("[LogFileTailer] 文件被截断，从头读取：{}（{} → {}字节）", path, position, size);
+                resetDecoding();
+                position = 0;
+            }
+            return readToEnd();
+        }
+        boolean read = false;
+        if (channel != null) {
+            // 文件被轮转/删除：读完旧文件剩余内容再关闭
+            read = readToEnd();
+            if (partialLine.length() > 0) {
+                finishLine();
+            }
+            extractor.flush();
+            closeChannel();
+            if (attributes != null) {
+                rotations++;
+                log.info("[LogFileTailer] 文件已轮转，从头读取新文件：{}", path);
+            }
+            openPosition = 0;
+        }
+        if (attributes == null) {
+            return read;
+        }
+        openChannel(attributes);
+        return readToEnd() || read;
+    }
+
+    /**
+     * 持续一段时间没有新内容时，结束正在拼接的异常块
+     *
+     * @param idleMillis 空闲阈值（毫秒）
+     */
+    public void flushIfIdle(long idleMillis) {
+        if (System.currentTimeMillis() - lastDataAt >= idleMillis) {
+            extractor.flush();
+        }
+    }
+
+    /**
+     * 文件已被删除/移走，且旧文件剩余内容已读完并关闭
+     */
+    public boolean isFileGone() {
+        return missing && channel == null;
+    }
+
+    /**
+     * 当前打开文件的标识（用于识别轮转出的旧文件，避免重复读取）
+     */
+    public Object getFileKey() {
+        return fileKey;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    public long getRotations() {
+        return rotations;
+    }
+
+    public long getTruncations() {
+        return truncations;
+    }
+
+    public long getLineCount() {
+        return extractor.getLineCount();
+    }
+
+    public long getBlockCount() {
+        return extractor.getBlockCount();
+    }
+
+    public void close() {
+        extractor.flush();
+        closeChannel();
+    }
+
+    private BasicFileAttributes readAttributes() throws IOException {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private boolean isSameFile(BasicFileAttributes attributes) {
+        if (fileKey != null || attributes.fileKey() != null) {
+            return Objects.equals(fileKey, attributes.fileKey());
+        }
+        // 无inode的文件系统退化为比较创建时间
+        return creationTime == attributes.creationTime().toMillis();
+    }
+
+    private void openChannel(BasicFileAttributes attributes) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        fileKey = attributes.fileKey();
+        creationTime = attributes.creationTime().toMillis();
+        position = openPosition < 0 ? channel.size() : openPosition;
+        resetDecoding();
+    }
+
+    private void closeChannel() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.debug("[LogFileTailer] 关闭文件失败：{}，原因：{}", path, e.getMessage());
+        }
+        channel = null;
+        fileKey = null;
+    }
+
+    private boolean readToEnd() throws IOException {
+        boolean read = false;
+        int count;
+        while ((count = channel.read(byteBuffer, position)) > 0) {
+            position += count;
+            read = true;
+            byteBuffer.flip();
+            decoder.decode(byteBuffer, charBuffer, false);
+            // 未解码完的多字节字符保留到下次
+            byteBuffer.compact();
+            charBuffer.flip();
+            splitLines();
+            charBuffer.clear();
+        }
+        if (read) {
+            lastDataAt = System.currentTimeMillis();
+        }
+        return read;
+    }
+
+    private void splitLines() {
+        while (charBuffer.hasRemaining()) {
+            char c = charBuffer.get();
+            if (c == '\n') {
+                finishLine();
+            } else if (partialLine.length() < MAX_LINE_CHARS) {
+                partialLine.append(c);
+            }
+        }
+    }
+
+    private void finishLine() {
+        int length = partialLine.length();
+        if (length > 0 && partialLine.charAt(length - 1) == '\r') {
+            partialLine.setLength(length - 1);
+        }
+        extractor.accept(partialLine.toString());
+        partialLine.setLength(0);
+    }
+
+    /**
+     * 重新从某个位置读取时，丢弃半行与解码器状态，并结束正在拼接的异常块
+     */
+    private void resetDecoding() {
+        partialLine.setLength(0);
+        byteBuffer.clear();
+        charBuffer.clear();
+        decoder.reset();
+        extractor.flush();
+    }
+}
@@ -0,0 +1,136 @@
+package com.lizy.loganalysishelper.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 消息正文编解码：按存储模式把正文压缩和/或移到堆外，需要时再还原
+ * 大段调用栈/Markdown回答压缩率通常在4~10倍
+ */
+public final class MessageBodyCodec {
+    private static final int BUFFER_SIZE = 4096;
+
+    private MessageBodyCodec() {
+    }
+
+    /**
+     * 编码消息正文
+     *
+     * @param content 原文
+     * @param mode    存储模式（HEAP时不应调用）
+     * @return 编码后的正文
+     */
+    public static EncodedBody encode(String content, MessageStorageMode mode) {
+        byte[] raw = content.getBytes(StandardCharsets.UTF_8);
+        byte[] stored = mode.isCompressed() ? deflate(raw) : raw;
+        if (mode.isOffHeap()) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(stored.length);
+            buffer.put(stored);
+            buffer.flip();
+            return new EncodedBody(null, buffer, mode.isCompressed(), raw.length);
+        }
+        return new EncodedBody(stored, null, mode.isCompressed(), raw.length);
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(raw.length / 4, 64));
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * 解压为指定长度的原文；压缩数据被截断/损坏（如从持久化存储恢复的残缺正文）时抛出IllegalStateException
+     */
+    static byte[] inflate(byte[] compressed, int rawLength) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] raw = new byte[rawLength];
+            int offset = 0;
+            while (offset < rawLength && !inflater.finished()) {
+                int inflated = inflater.inflate(raw, offset, rawLength - offset);
+                // 输入已耗尽仍未解压完（或需要预设字典），继续循环不会再有进展
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("消息正文解压失败：压缩数据不完整，已解压"
+                            + offset + "/" + rawLength + "字节");
+                }
+                offset += inflated;
+            }
+            if (offset < rawLength) {
+                throw new IllegalStateException("消息正文解压失败：解压结果长度不足，已解压" + offset + "/" + rawLength + "字节");
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("消息正文解压失败", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * 编码后的消息正文（不可变，线程安全）
+     */
+    public static final class EncodedBody {
+        // 堆内存储（与offHeap二选一）
+        private final byte[] heap;
+        // 堆外存储（只读视图按需复制，原buffer位置不变）
+        private final ByteBuffer offHeap;
+        private final boolean compressed;
+        // 原文UTF-8字节数
+        private final int rawLength;
+
+        private EncodedBody(byte[] heap, ByteBuffer offHeap, boolean compressed, int rawLength) {
+            this.heap = heap;
+            this.offHeap = offHeap;
+            this.compressed = compressed;
+            this.rawLength = rawLength;
+        }
+
+        /**
+         * 还原原文
+         */
+        public String decode() {
+            byte[] stored;
+            if (offHeap != null) {
+                stored = new byte[offHeap.remaining()];
+                offHeap.duplicate().get(stored);
+            } else {
+                stored = heap;
+            }
+            byte[] raw = compressed ? inflate(stored, rawLength) : stored;
+            return new String(raw, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * 堆内占用字节数
+         */
+        public int heapBytes() {
+            return heap == null ? 0 : heap.length;
+        }
+
+        /**
+         * 堆外占用字节数
+         */
+        public int offHeapBytes() {
+            return offHeap == null ? 0 : offHeap.capacity();
+        }
+
+        public int rawLength() {
+            return rawLength;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.lizy.loganalysishelper.util;
+
+/**
+ * 会话消息正文存储模式
+ */
+public enum MessageStorageMode {
+    // 堆内原文（String）
+    HEAP,
+    // 堆内压缩（Deflate压缩后的byte[]）
+    COMPRESSED,
+    // 堆外原文（DirectByteBuffer存UTF-8字节）
+    OFF_HEAP,
+    // 堆外压缩（Deflate压缩后存DirectByteBuffer）
+    COMPRESSED_OFF_HEAP;
+
+    public boolean isCompressed() {
+        return this == COMPRESSED || this == COMPRESSED_OFF_HEAP;
+    }
+
+    public boolean isOffHeap() {
+        return this == OFF_HEAP || this == COMPRESSED_OFF_HEAP;
+    }
+}
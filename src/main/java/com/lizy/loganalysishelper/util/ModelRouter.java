@@ -0,0 +1,245 @@
+package com.lizy.loganalysishelper.util;
+
+import com.lizy.loganalysishelper.config.ModelRouterProperties;
+import com.lizy.loganalysishelper.entity.ParsedThrowable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 多模型路由器：按输入复杂度选择模型，结合各模型近期延迟做SLO降级
+ * 1. 复杂度评分：调用栈帧数、Caused by层数、Suppressed数、Prompt token数，追问按系数折减
+ * 2. 档位匹配：按maxScore从小到大，首个能承接该评分的档位
+ * 3. SLO降级：档位近期P95超过SLO时改走降级档位（保留少量探测流量，延迟恢复后自动回切）
+ */
+@Component
+public class ModelRouter {
+    private static final Logger log = LoggerFactory.getLogger(ModelRouter.class);
+
+    @Value("${qwen.model:qwen-turbo}")
+    private String defaultModel;
+
+    @Autowired
+    private ModelRouterProperties properties;
+
+    // 按maxScore排序后的档位
+    private List<ModelRouterProperties.Tier> tiers;
+    // 各模型的延迟与选择统计
+    private final Map<String, ModelStats> modelStats = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        tiers = new ArrayList<>();
+        for (ModelRouterProperties.Tier tier : properties.getTiers()) {
+            if (StringUtils.hasText(tier.getModel())) {
+                tiers.add(tier);
+            }
+        }
+        tiers.sort(Comparator.comparingDouble(ModelRouterProperties.Tier::getMaxScore));
+        // 预先创建各模型统计，便于指标在首次调用前即可导出
+        stats(defaultModel);
+        for (ModelRouterProperties.Tier tier : tiers) {
+            stats(tier.getModel());
+        }
+        if (isRouting()) {
+            log.info("[ModelRouter] 多模型路由已启用，档位：{}", tiers.size());
+        }
+    }
+
+    /**
+     * 选择本次调用的模型
+     *
+     * @param traceId      追踪ID
+     * @param parsed       结构化异常（追问为null）
+     * @param firstRound   是否首轮分析
+     * @param promptTokens Prompt估算token数
+     * @return 模型名称
+     */
+    public String route(String traceId, ParsedThrowable parsed, boolean firstRound, int promptTokens) {
+        if (!isRouting()) {
+            stats(defaultModel).selections.incrementAndGet();
+            return defaultModel;
+        }
+        double score = complexityScore(parsed, firstRound, promptTokens);
+        int primary = tiers.size() - 1;
+        for (int i = 0; i < tiers.size(); i++) {
+            if (score <= tiers.get(i).getMaxScore()) {
+                primary = i;
+                break;
+            }
+        }
+
+        // 沿降级链寻找未超出SLO的档位，全部超出时仍使用首选档位
+        int chosen = primary;
+        if (isSloBreached(tiers.get(primary)) && ThreadLocalRandom.current().nextDouble() >= properties.getProbeRatio()) {
+            Set<Integer> visited = new HashSet<>();
+            visited.add(primary);
+            int next = fallbackIndex(primary);
+            while (next >= 0 && visited.add(next)) {
+                if (!isSloBreached(tiers.get(next))) {
+                    chosen = next;
+                    break;
+                }
+                next = fallbackIndex(next);
+            }
+        }
+
+        String model = tiers.get(chosen).getModel();
+        ModelStats selected = stats(model);
+        selected.selections.incrementAndGet();
+        if (chosen != primary) {
+            selected.fallbacks.incrementAndGet();
+            log.info("[ModelRouter-{}] 模型{}延迟超出SLO，降级到{}（复杂度评分：{}）",
+                    traceId, tiers.get(primary).getModel(), model, String.format("%.2f", score));
+        } else {
+            log.debug("[ModelRouter-{}] 复杂度评分：{}，选择模型：{}", traceId, String.format("%.2f", score), model);
+        }
+        return model;
+    }
+
+    /**
+     * 记录一次调用结果（含重试的完整耗时）
+     *
+     * @param model     模型名称
+     * @param latencyMs 耗时（毫秒）
+     * @param success   是否成功
+     */
+    public void record(String model, long latencyMs, boolean success) {
+        ModelStats stats = stats(model);
+        if (success) {
+            stats.latency.record(latencyMs);
+        } else {
+            stats.failures.incrementAndGet();
+        }
+    }
+
+    /**
+     * 各模型的选择次数、降级次数与延迟分位数
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", isRouting());
+        Map<String, Object> models = new LinkedHashMap<>();
+        for (Map.Entry<String, ModelStats> entry : modelStats.entrySet()) {
+            ModelStats stats = entry.getValue();
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("selections", stats.selections.get());
+            item.put("fallbacks", stats.fallbacks.get());
+            item.put("failures", stats.failures.get());
+            item.put("latencySamples", stats.latency.count());
+            item.put("latencyP50Ms", stats.latency.quantile(0.5));
+            item.put("latencyP95Ms", stats.latency.quantile(0.95));
+            ModelRouterProperties.Tier tier = findTier(entry.getKey());
+            if (tier != null) {
+                item.put("latencySloMs", tier.getLatencySloMs());
+                item.put("sloBreached", isSloBreached(tier));
+            }
+            models.put(entry.getKey(), item);
+        }
+        result.put("models", models);
+        return result;
+    }
+
+    /**
+     * 各模型的统计快照（供指标导出）
+     */
+    public Map<String, ModelStats> modelStats() {
+        return modelStats;
+    }
+
+    private boolean isRouting() {
+        return properties.isEnabled() && !tiers.isEmpty();
+    }
+
+    private double complexityScore(ParsedThrowable parsed, boolean firstRound, int promptTokens) {
+        double score = promptTokens / 1000.0 * properties.getKiloTokenWeight();
+        if (parsed != null) {
+            List<ParsedThrowable> chain = parsed.causeChain();
+            int suppressed = 0;
+            for (ParsedThrowable throwable : chain) {
+                suppressed += throwable.getSuppressed().size();
+            }
+            score += parsed.totalFrameCount() * properties.getFrameWeight()
+                    + (chain.size() - 1) * properties.getCauseWeight()
+                    + suppressed * properties.getSuppressedWeight();
+        }
+        return firstRound ? score : score * properties.getFollowUpFactor();
+    }
+
+    private boolean isSloBreached(ModelRouterProperties.Tier tier) {
+        if (tier.getLatencySloMs() <= 0) {
+            return false;
+        }
+        LatencyTracker latency = stats(tier.getModel()).latency;
+        return latency.size() >= properties.getSloMinSamples() && latency.quantile(0.95) > tier.getLatencySloMs();
+    }
+
+    private int fallbackIndex(int index) {
+        String fallback = tiers.get(index).getFallback();
+        if (StringUtils.hasText(fallback)) {
+            for (int i = 0; i < tiers.size(); i++) {
+                if (fallback.equals(tiers.get(i).getModel())) {
+                    return i;
+                }
+            }
+        }
+        if (index + 1 < tiers.size()) {
+            return index + 1;
+        }
+        return index - 1;
+    }
+
+    private ModelRouterProperties.Tier findTier(String model) {
+        for (ModelRouterProperties.Tier tier : tiers) {
+            if (tier.getModel().equals(model)) {
+                return tier;
+            }
+        }
+        return null;
+    }
+
+    private ModelStats stats(String model) {
+        return modelStats.computeIfAbsent(model, key -> new ModelStats());
+    }
+
+    /**
+     * 单个模型的统计
+     */
+    public static class ModelStats {
+        private final LatencyTracker latency = new LatencyTracker(512, 16);
+        private final AtomicLong selections = new AtomicLong();
+        private final AtomicLong fallbacks = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+
+        public LatencyTracker getLatency() {
+            return latency;
+        }
+
+        public long getSelections() {
+            return selections.get();
+        }
+
+        public long getFallbacks() {
+            return fallbacks.get();
+        }
+
+        public long getFailures() {
+            return failures.get();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.lizy.loganalysishelper.util;
+
+import com.lizy.loganalysishelper.entity.SessionSnapshot;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * 不持久化（qwen.session.store.type=none）：会话仅保存在内存LRU中，重启即丢失
+ */
+public class NoopSessionStore implements SessionStore {
+
+    @Override
+    public Map<String, SessionSnapshot> loadAll() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public SessionSnapshot load(String sessionId) {
+        return null;
+    }
+
+    @Override
+    public void save(SessionSnapshot snapshot) {
+    }
+
+    @Override
+    public void delete(String sessionId) {
+    }
+
+    @Override
+    public int size() {
+        return 0;
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        return Collections.singletonMap("type", "none");
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,65 @@
+package com.lizy.loganalysishelper.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 预编译的Prompt模板（启动时按占位符切分，渲染时只引用输入，不做String.format整体复制）
+ * 语法与原String.format用法保持一致：%s 为输入占位符（最多一个），%% 为百分号，%n 为换行
+ */
+public final class PromptTemplate {
+    // 占位符之前/之后的字面量（无占位符时suffix为null）
+    private final String prefix;
+    private final String suffix;
+
+    private PromptTemplate(String prefix, String suffix) {
+        this.prefix = prefix;
+        this.suffix = suffix;
+    }
+
+    /**
+     * 编译模板
+     *
+     * @param template 模板文本
+     * @return 编译结果
+     * @throws IllegalArgumentException 含多个%s或不支持的格式符
+     */
+    public static PromptTemplate compile(String template) {
+        List<String> parts = new ArrayList<>(2);
+        StringBuilder literal = new StringBuilder(template.length());
+        for (int i = 0; i < template.length(); i++) {
+            char c = template.charAt(i);
+            if (c != '%') {
+                literal.append(c);
+                continue;
+            }
+            char next = i + 1 < template.length() ? template.charAt(i + 1) : 0;
+            if (next == '%') {
+                literal.append('%');
+            } else if (next == 'n') {
+                literal.append(System.lineSeparator());
+            } else if (next == 's' && parts.isEmpty()) {
+                parts.add(literal.toString());
+                literal.setLength(0);
+            } else {
+                throw new IllegalArgumentException("Prompt模板仅支持一个%s占位符及%%、%n，位置：" + i);
+            }
+            i++;
+        }
+        parts.add(literal.toString());
+        return parts.size() == 1 ? new PromptTemplate(parts.get(0), null) : new PromptTemplate(parts.get(0), parts.get(1));
+    }
+
+    /**
+     * 渲染模板（输入按引用放入，不复制）
+     */
+    public PromptText render(String input) {
+        List<String> segments = new ArrayList<>(3);
+        segments.add(prefix);
+        if (suffix != null) {
+            segments.add(input);
+            segments.add(suffix);
+        }
+        return new PromptText(segments);
+    }
+}
@@ -0,0 +1,116 @@
+package com.lizy.loganalysishelper.util;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 分段Prompt文本（模板片段、历史上下文、用户输入按原对象引用，不拼接成一个大字符串）
+ * 请求体序列化时逐段写出，避免大日志在格式化/拼接阶段被整体复制
+ */
+public final class PromptText {
+    private final List<String> segments;
+    private final int length;
+
+    PromptText(List<String> segments) {
+        List<String> nonEmpty = new ArrayList<>(segments.size());
+        int total = 0;
+        for (String segment : segments) {
+            if (segment != null && !segment.isEmpty()) {
+                nonEmpty.add(segment);
+                total += segment.length();
+            }
+        }
+        this.segments = Collections.unmodifiableList(nonEmpty);
+        this.length = total;
+    }
+
+    /**
+     * 单段文本（无模板场景）
+     */
+    public static PromptText of(String text) {
+        return new PromptText(Collections.singletonList(text));
+    }
+
+    /**
+     * 在开头追加一段文本（如历史对话上下文），返回新对象
+     */
+    public PromptText prepend(String text) {
+        List<String> joined = new ArrayList<>(segments.size() + 1);
+        joined.add(text);
+        joined.addAll(segments);
+        return new PromptText(joined);
+    }
+
+    /**
+     * 字符数
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * 估算token数（逐段统计，不拼接）
+     */
+    public int estimateTokens() {
+        return TokenEstimator.estimate(segments);
+    }
+
+    /**
+     * 按段顺序读取的Reader（供JsonGenerator流式写出字符串值）
+     */
+    public Reader reader() {
+        return new SegmentReader(segments);
+    }
+
+    /**
+     * 拼接为完整字符串（仅调试/兼容场景使用，会复制全部内容）
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(length);
+        for (String segment : segments) {
+            builder.append(segment);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 依次读取各段的Reader（String.getChars直接拷入调用方缓冲区）
+     */
+    private static final class SegmentReader extends Reader {
+        private final List<String> segments;
+        private int segmentIndex;
+        private int offset;
+
+        SegmentReader(List<String> segments) {
+            this.segments = segments;
+        }
+
+        @Override
+        public int read(char[] buffer, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            int copied = 0;
+            while (copied < len && segmentIndex < segments.size()) {
+                String segment = segments.get(segmentIndex);
+                int count = Math.min(len - copied, segment.length() - offset);
+                segment.getChars(offset, offset + count, buffer, off + copied);
+                copied += count;
+                offset += count;
+                if (offset == segment.length()) {
+                    segmentIndex++;
+                    offset = 0;
+                }
+            }
+            return copied == 0 ? -1 : copied;
+        }
+
+        @Override
+        public void close() {
+            // 无底层资源
+        }
+    }
+}
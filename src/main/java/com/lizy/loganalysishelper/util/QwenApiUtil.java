@@ -3,9 +3,10 @@ package com.lizy.loganalysishelper.util;
 import com.lizy.loganalysishelper.entity.ConversationMessage;
 import com.lizy.loganalysishelper.entity.ConversationSession;
 import com.lizy.loganalysishelper.entity.LogAnalysisResponse;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.lizy.loganalysishelper.entity.ParsedThrowable;
+import lombok.Data;
 import okhttp3.*;
+import okio.BufferedSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -14,10 +15,25 @@ import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -45,14 +61,26 @@ public class QwenApiUtil {
     private String apiUrl;
 
     @Value("${qwen.model:qwen-turbo}")
-    private String model;
+    private String defaultModel;
 
-    // 重试配置
-    @Value("${qwen.retry.count:2}")
-    private int retryCount;
+    // 相同异常并发请求合并（Single-Flight）配置
+    @Value("${qwen.single-flight.enabled:true}")
+    private boolean singleFlightEnabled;
 
-    @Value("${qwen.retry.delay:1000}")
-    private long retryDelay;
+    @Value("${qwen.single-flight.wait-timeout-ms:120000}")
+    private long singleFlightWaitTimeoutMs;
+
+    // 同步首轮共享加载的线程上限（每个加载占用一个线程，超出直接拒绝，不排队）
+    @Value("${qwen.single-flight.max-loads:64}")
+    private int singleFlightMaxLoads;
+
+    // 单次Prompt的token预算（超出时压缩历史上下文）
+    @Value("${qwen.context.token-budget:3000}")
+    private int promptTokenBudget;
+
+    // 异步模式：同时进行中的大模型调用上限（超出直接拒绝，不排队）
+    @Value("${qwen.async.max-outstanding:64}")
+    private int asyncMaxOutstanding;
 
     // Prompt模板配置（外置，便于修改，无需改代码）
     @Value("${qwen.prompt.first:你是资深Java开发专家，负责分析Java异常日志，请严格按照以下固定格式输出分析结果：\\n## 错误原因\\n（需包含：异常类型 + 触发位置（类名+方法+行号） + 核心触发原因）\\n## 解决方案（分步骤，附带可直接运行的代码示例）\\n1. 定位文件：[异常所在文件路径+行号]\\n2. 代码修复：[完整的修复代码片段，包含注释]\\n3. 验证方法：[如何验证修复生效的具体步骤]\\n## 预防措施\\n（至少2条可落地的开发规范/编码建议）\\n\\n待分析的Java异常日志：%s\\n强制要求：\\n1. 严格遵循上述三级标题格式，无任何额外开场白/结束语\\n2. 代码示例符合Java 8+规范，注释清晰\\n3. 分析结果必须精准到具体行号和触发原因，禁止泛泛而谈}")
@@ -61,17 +89,47 @@ public class QwenApiUtil {
     @Value("${qwen.prompt.follow:你是资深Java开发专家，基于上述历史对话上下文，回答用户的当前追问：\\n核心规则：\\n1. 优先性：先精准回答当前追问的核心问题，不要重复历史分析的完整内容\\n2. 精简性：仅补充与当前问题强相关的历史信息（不超过2句话）\\n3. 格式性：无需遵循固定标题格式，用自然语言简洁作答，可附带简短代码示例\\n4. 禁止性：绝对禁止重复历史对话中已完整输出的“错误原因/解决方案/预防措施”全文\\n\\n用户当前追问：%s\\n强制要求：回答仅聚焦当前问题，字数控制在200字以内，直击核心}")
     private String followRoundPromptTemplate;
 
+    // Prompt布局：flat（历史上下文+模板拼成单条user消息）/ messages（固定system消息+原生user/assistant多轮消息）
+    @Value("${qwen.prompt.layout:flat}")
+    private String promptLayout;
+
+    // messages布局的system消息（所有会话、所有轮次逐字节相同，作为服务端前缀缓存的公共前缀）
+    @Value("${qwen.prompt.system:你是资深Java开发专家，负责分析Java异常日志并回答后续追问。\n\n用户发送Java异常日志时，请严格按照以下固定格式输出分析结果：\n## 错误原因\n（需包含：异常类型 + 触发位置（类名+方法+行号） + 核心触发原因）\n## 解决方案（分步骤，附带可直接运行的代码示例）\n1. 定位文件：[异常所在文件路径+行号]\n2. 代码修复：[完整的修复代码片段，包含注释]\n3. 验证方法：[如何验证修复生效的具体步骤]\n## 预防措施\n（至少2条可落地的开发规范/编码建议）\n强制要求：\n1. 严格遵循上述三级标题格式，无任何额外开场白/结束语\n2. 代码示例符合Java 8+规范，注释清晰\n3. 分析结果必须精准到具体行号和触发原因，禁止泛泛而谈\n\n用户针对已有分析追问时：\n1. 优先性：先精准回答当前追问的核心问题，不要重复历史分析的完整内容\n2. 精简性：仅补充与当前问题强相关的历史信息（不超过2句话）\n3. 格式性：无需遵循固定标题格式，用自然语言简洁作答，可附带简短代码示例\n4. 禁止性：绝对禁止重复历史对话中已完整输出的“错误原因/解决方案/预防措施”全文\n5. 回答仅聚焦当前问题，字数控制在200字以内，直击核心}")
+    private String systemPrompt;
+
+    // 启动时预编译的Prompt模板（渲染时不整体复制输入）
+    private PromptTemplate firstRoundPrompt;
+    private PromptTemplate followRoundPrompt;
+    private boolean messagesLayout;
+
+    // ========== 运行时组件（启动时按配置初始化） ==========
+
+    // 大模型调用线程池（Single-Flight共享加载在此执行，与Tomcat请求线程隔离；启动时按配置创建，有界且不排队）
+    private ExecutorService upstreamExecutor;
+
+    // 异步模式进行中调用许可（启动时按配置初始化）
+    private Semaphore asyncPermits;
+
+    // 首轮分析合并器（key为异常指纹，value为优化后的分析结果）
+    private SingleFlight<String> firstRoundFlight;
+
     // ========== 静态配置 ==========
-    // OkHttp客户端（带重试拦截器）
-    private static final OkHttpClient OK_HTTP_CLIENT = new OkHttpClient.Builder()
-            .connectTimeout(30, TimeUnit.SECONDS)
-            .readTimeout(60, TimeUnit.SECONDS)
-            .writeTimeout(60, TimeUnit.SECONDS)
-            .retryOnConnectionFailure(true) // 底层连接失败重试
-            .build();
 
-    // JSON工具（线程安全，全局单例）
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    // 调用模式（指标标签）
+    private static final String MODE_SYNC = "sync";
+    private static final String MODE_ASYNC = "async";
+    private static final String MODE_STREAM = "stream";
+    // 阶段名（指标标签 / Server-Timing）
+    private static final String STAGE_VALIDATION = "validation";
+    private static final String STAGE_UPSTREAM = "upstream";
+    private static final String STAGE_FIRST_TOKEN = "first_token";
+    private static final String STAGE_QUEUE = "queue";
+    // Prompt布局（指标标签）
+    private static final String LAYOUT_FLAT = "flat";
+    private static final String LAYOUT_MESSAGES = "messages";
+    // SSE流式响应：错误事件前携带实际状态码的注释行前缀 / 结束标记
+    private static final String SSE_STATUS_PREFIX = ":HTTP_STATUS/";
+    private static final String SSE_DONE = "[DONE]";
 
     // 冗余换行/空格清理正则
     private static final Pattern REDUNDANT_SPACE_PATTERN = Pattern.compile("\\n{3,}|\\s{2,}");
@@ -80,6 +138,33 @@ public class QwenApiUtil {
     @Autowired
     private ConversationMemoryManager conversationMemoryManager;
 
+    @Autowired
+    private AnalysisResultCache analysisResultCache;
+
+    @Autowired
+    private LocalRuleEngine localRuleEngine;
+
+    @Autowired
+    private QwenHttpClient qwenHttpClient;
+
+    @Autowired
+    private ModelRouter modelRouter;
+
+    @Autowired
+    private AnalysisMetrics analysisMetrics;
+
+    @Autowired
+    private StackTraceReducer stackTraceReducer;
+
+    @Autowired
+    private SimilarTraceIndex similarTraceIndex;
+
+    @Autowired
+    private UpstreamScheduler upstreamScheduler;
+
+    @Autowired
+    private ExceptionFrequencyTracker exceptionFrequencyTracker;
+
     // ========== 启动校验（提前发现配置问题） ==========
     @PostConstruct
     public void validateConfig() {
@@ -87,7 +172,56 @@ public class QwenApiUtil {
             log.error("[QwenApiUtil] 通义千问API密钥未配置（qwen.api-key），请检查application.yml");
             throw new IllegalStateException("通义千问API密钥未配置");
         }
-        log.info("[QwenApiUtil] 配置校验通过，模型：{}，重试次数：{}", model, retryCount);
+        asyncPermits = new Semaphore(Math.max(asyncMaxOutstanding, 1));
+        upstreamExecutor = newUpstreamExecutor(Math.max(singleFlightMaxLoads, 1));
+        firstRoundFlight = new SingleFlight<>(upstreamExecutor);
+        firstRoundPrompt = PromptTemplate.compile(firstRoundPromptTemplate);
+        followRoundPrompt = PromptTemplate.compile(followRoundPromptTemplate);
+        if (LAYOUT_MESSAGES.equalsIgnoreCase(promptLayout)) {
+            messagesLayout = true;
+        } else if (!LAYOUT_FLAT.equalsIgnoreCase(promptLayout)) {
+            throw new IllegalStateException("qwen.prompt.layout仅支持flat/messages：" + promptLayout);
+        }
+        log.info("[QwenApiUtil] 配置校验通过，默认模型：{}，Prompt布局：{}", defaultModel, layout());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (upstreamExecutor != null) {
+            upstreamExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * 创建同步共享加载线程池：线程数有上限，直接交接不排队
+     * 线程全部占用时抛出RejectedExecutionException（映射为429），等待者超时放弃的加载仍占用线程直到上游调用结束，
+     * 上限同时约束了这部分线程与调度许可的占用
+     */
+    private static ExecutorService newUpstreamExecutor(int maxLoads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxLoads, maxLoads, 60L, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), new ThreadFactory() {
+            private final AtomicInteger index = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "qwen-upstream-" + index.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        }, new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * 创建单次分析上下文（traceId：毫秒时间戳 + 64位随机数，并发下不重复，且不走全局Random的锁竞争）
+     */
+    AnalysisContext newContext() {
+        AnalysisContext context = new AnalysisContext();
+        context.setStartTime(System.currentTimeMillis());
+        context.setTraceId("TRACE_" + context.getStartTime() + "_" + Long.toHexString(ThreadLocalRandom.current().nextLong()));
+        context.setTimer(new StageTimer());
+        return context;
     }
 
     /**
@@ -98,170 +232,909 @@ public class QwenApiUtil {
      * @return 结构化的分析响应结果
      */
     public LogAnalysisResponse analyzeJavaLog(String exceptionLog, String sessionId) {
-        long startTime = System.currentTimeMillis();
-        String traceId = "TRACE_" + System.currentTimeMillis() + "_" + (int) (Math.random() * 10000);
+        return analyzeJavaLog(exceptionLog, sessionId, null);
+    }
+
+    /**
+     * 多轮对话版Java日志分析（指定调用方，按调用方配额调度大模型调用）
+     *
+     * @param exceptionLog 输入内容（首次为异常日志，后续为追问内容）
+     * @param sessionId    会话ID（为空时自动生成）
+     * @param clientId     调用方标识（为空时归为匿名调用方）
+     * @return 结构化的分析响应结果
+     */
+    public LogAnalysisResponse analyzeJavaLog(String exceptionLog, String sessionId, String clientId) {
+        AnalysisContext context = newContext();
+        context.setClientId(clientId);
+        String traceId = context.getTraceId();
 
         try {
-            log.info("[QwenApiUtil-{}] 开始处理日志分析请求，sessionId：{}，输入内容：{}",
-                    traceId, sessionId, truncateContent(exceptionLog));
+            // 1~7. 输入校验、会话判断、缓存查询、调用栈精简、Prompt构建、模型路由
+            prepareAnalysis(context, exceptionLog, sessionId);
+            if (context.getEarlyResponse() != null) {
+                return finish(context, MODE_SYNC, context.getEarlyResponse());
+            }
 
-            // 1. 基础输入校验（所有轮次通用）
-            if (!StringUtils.hasText(exceptionLog)) {
-                log.warn("[QwenApiUtil-{}] 输入内容为空，返回400错误", traceId);
-                return LogAnalysisResponse.error(400, "错误：输入内容为空，请重新输入");
+            // 8. 调度排队后调用大模型并优化结果（首轮相同指纹的并发请求合并为一次调用）
+            String optimizedResult;
+            if (context.getFingerprint() != null && singleFlightEnabled) {
+                optimizedResult = awaitSharedAnalysis(context);
+            } else {
+                optimizedResult = callAndOptimize(context);
             }
-            String cleanInput = exceptionLog.trim();
 
-            // 2. 会话上下文判断（首次/非首次对话）
-            ConversationSession session = conversationMemoryManager.getOrCreateSession(sessionId);
-            boolean isFirstRound = session.getMessageHistory().isEmpty();
-            log.debug("[QwenApiUtil-{}] 对话轮次判断：{}，会话ID：{}", traceId, isFirstRound ? "首次" : "追问", session.getSessionId());
+            // 9~10. 存储对话、耗时统计
+            return finish(context, MODE_SYNC, completeAnalysis(context, optimizedResult));
 
-            // 3. 动态格式校验（仅首次对话强制要求异常日志）
-            if (isFirstRound && !cleanInput.contains("java.lang.")) {
+        } catch (RejectedExecutionException e) {
+            log.warn("[QwenApiUtil-{}] 大模型调用排队被拒绝：{}", traceId, e.getMessage());
+            return finish(context, MODE_SYNC, LogAnalysisResponse.error(429, "当前分析请求过多，请稍后重试"));
+        } catch (CircuitBreaker.OpenException e) {
+            log.warn("[QwenApiUtil-{}] 大模型服务熔断中，快速失败", traceId);
+            return finish(context, MODE_SYNC, LogAnalysisResponse.error(503, e.getMessage()));
+        } catch (Exception e) {
+            long costTime = System.currentTimeMillis() - context.getStartTime();
+            log.error("[QwenApiUtil-{}] 日志分析处理异常，耗时：{}ms，原因：{}",
+                    traceId, costTime, e.getMessage(), e);
+            return finish(context, MODE_SYNC, LogAnalysisResponse.error(500, "日志分析异常：" + e.getMessage()));
+        }
+    }
+
+    /**
+     * 异步版日志分析：全程不阻塞调用线程，重试通过调度器延迟触发
+     * 进行中的大模型调用达到上限时快速失败（429），避免无界排队
+     *
+     * @param exceptionLog 输入内容（首次为异常日志，后续为追问内容）
+     * @param sessionId    会话ID（为空时自动生成）
+     * @param clientId     调用方标识（为空时归为匿名调用方）
+     * @return 分析响应结果的Future（总是正常完成，异常已转换为错误响应）
+     */
+    public CompletableFuture<LogAnalysisResponse> analyzeJavaLogAsync(String exceptionLog, String sessionId, String clientId) {
+        AnalysisContext context = newContext();
+        context.setClientId(clientId);
+        String traceId = context.getTraceId();
+
+        try {
+            prepareAnalysis(context, exceptionLog, sessionId);
+        } catch (Exception e) {
+            log.error("[QwenApiUtil-{}] 异步分析预处理异常，原因：{}", traceId, e.getMessage(), e);
+            return CompletableFuture.completedFuture(
+                    finish(context, MODE_ASYNC, LogAnalysisResponse.error(500, "日志分析异常：" + e.getMessage())));
+        }
+        if (context.getEarlyResponse() != null) {
+            return CompletableFuture.completedFuture(finish(context, MODE_ASYNC, context.getEarlyResponse()));
+        }
+
+        String fingerprint = context.getFingerprint();
+        long waitStart = System.nanoTime();
+        CompletableFuture<String> upstream;
+        if (fingerprint != null && singleFlightEnabled) {
+            upstream = firstRoundFlight.executeAsync(fingerprint, () -> callAndOptimizeAsync(context));
+        } else {
+            upstream = callAndOptimizeAsync(context);
+        }
+        CompletableFuture<LogAnalysisResponse> response = upstream.handle((optimizedResult, e) -> {
+            recordCoalescedWait(context, waitStart);
+            if (e == null) {
+                return finish(context, MODE_ASYNC, completeAnalysis(context, optimizedResult));
+            }
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            long costTime = System.currentTimeMillis() - context.getStartTime();
+            if (cause instanceof RejectedExecutionException) {
+                log.warn("[QwenApiUtil-{}] 大模型调用已达上限，快速拒绝：{}", traceId, cause.getMessage());
+                return finish(context, MODE_ASYNC, LogAnalysisResponse.error(429, "当前分析请求过多，请稍后重试"));
+            }
+            if (cause instanceof CircuitBreaker.OpenException) {
+                log.warn("[QwenApiUtil-{}] 大模型服务熔断中，快速失败", traceId);
+                return finish(context, MODE_ASYNC, LogAnalysisResponse.error(503, cause.getMessage()));
+            }
+            log.error("[QwenApiUtil-{}] 异步日志分析异常，耗时：{}ms，原因：{}", traceId, costTime, cause.getMessage(), cause);
+            return finish(context, MODE_ASYNC, LogAnalysisResponse.error(500, "日志分析异常：" + cause.getMessage()));
+        });
+        // 调用方放弃等待（如异步请求超时）时向上游传递取消：没有其他等待者时退出排队/取消进行中的调用
+        response.whenComplete((result, e) -> {
+            if (response.isCancelled()) {
+                upstream.cancel(true);
+            }
+        });
+        return response;
+    }
+
+    /**
+     * 流式日志分析（SSE）：逐段推送大模型增量输出，完成后整体优化并写入会话
+     * 基于OkHttp异步调用，不占用Tomcat请求线程；流式输出一旦开始不再重试
+     *
+     * @param exceptionLog 输入内容（首次为异常日志，后续为追问内容）
+     * @param sessionId    会话ID（为空时自动生成）
+     * @param clientId     调用方标识（为空时归为匿名调用方）
+     * @param listener     流式输出监听器
+     * @return 取消句柄（客户端断开时调用，退出排队或终止上游调用）
+     */
+    public Runnable streamJavaLog(String exceptionLog, String sessionId, String clientId, AnalysisStreamListener listener) {
+        AnalysisContext context = newContext();
+        context.setClientId(clientId);
+        String traceId = context.getTraceId();
+
+        try {
+            prepareAnalysis(context, exceptionLog, sessionId);
+        } catch (Exception e) {
+            log.error("[QwenApiUtil-{}] 流式分析预处理异常，原因：{}", traceId, e.getMessage(), e);
+            listener.onError(finish(context, MODE_STREAM, LogAnalysisResponse.error(500, "日志分析异常：" + e.getMessage())));
+            return () -> { };
+        }
+        LogAnalysisResponse earlyResponse = context.getEarlyResponse();
+        if (earlyResponse != null) {
+            finish(context, MODE_STREAM, earlyResponse);
+            // 校验失败直接报错，缓存命中则一次性推送完整结果
+            if (earlyResponse.getCode() != 200) {
+                listener.onError(earlyResponse);
+                return () -> { };
+            }
+            try {
+                listener.onToken(earlyResponse.getAnalysisResult());
+                listener.onComplete(earlyResponse);
+            } catch (IOException e) {
+                log.warn("[QwenApiUtil-{}] 客户端已断开，缓存结果推送失败：{}", traceId, e.getMessage());
+            }
+            return () -> { };
+        }
+
+        // 排队等待调用许可，拿到许可后再发起流式调用；取消时退出排队或终止进行中的调用
+        AtomicBoolean cancelled = new AtomicBoolean();
+        AtomicReference<Call> callRef = new AtomicReference<>();
+        CompletableFuture<UpstreamScheduler.Permit> permitFuture = acquirePermit(context);
+        permitFuture.whenComplete((permit, e) -> {
+            if (e != null) {
+                if (!permitFuture.isCancelled()) {
+                    log.warn("[QwenApiUtil-{}] 大模型调用排队被拒绝：{}", traceId, e.getMessage());
+                    listener.onError(finish(context, MODE_STREAM, LogAnalysisResponse.error(429, "当前分析请求过多，请稍后重试")));
+                }
+                return;
+            }
+            recordQueueWait(context, permit);
+            Call call = startStream(context, listener, permit);
+            if (call != null) {
+                callRef.set(call);
+                if (cancelled.get()) {
+                    call.cancel();
+                }
+            }
+        });
+        return () -> {
+            cancelled.set(true);
+            permitFuture.cancel(true);
+            Call call = callRef.get();
+            if (call != null) {
+                call.cancel();
+            }
+        };
+    }
+
+    /**
+     * 发起流式调用（调用结束时归还调度许可）
+     *
+     * @return 进行中的调用；熔断中时返回null（已回调onError）
+     */
+    private Call startStream(AnalysisContext context, AnalysisStreamListener listener, UpstreamScheduler.Permit permit) {
+        String traceId = context.getTraceId();
+        Request request = buildQwenRequest(context.getModel(), context.getPrompt(), true);
+        long callStart = System.nanoTime();
+        try {
+            return qwenHttpClient.enqueueStream(request, new QwenHttpClient.StreamCallback() {
+                @Override
+                public void onFailure(Call failedCall, IOException e) {
+                    permit.release();
+                    if (failedCall.isCanceled()) {
+                        log.info("[QwenApiUtil-{}] 客户端断开，流式调用已取消", traceId);
+                        return;
+                    }
+                    recordUpstream(context, callStart, false);
+                    log.error("[QwenApiUtil-{}] 流式调用失败，原因：{}", traceId, e.getMessage(), e);
+                    listener.onError(finish(context, MODE_STREAM, LogAnalysisResponse.error(500, "日志分析异常：" + e.getMessage())));
+                }
+
+                @Override
+                public boolean onResponse(Call streamCall, Response response) {
+                    try (Response closeable = response) {
+                        if (!closeable.isSuccessful()) {
+                            permit.release();
+                            recordUpstream(context, callStart, false);
+                            log.warn("[QwenApiUtil-{}] 流式调用失败，状态码：{}", traceId, closeable.code());
+                            listener.onError(finish(context, MODE_STREAM,
+                                    LogAnalysisResponse.error(500, "大模型调用失败，状态码：" + closeable.code())));
+                            return false;
+                        }
+                        String fullText = readStreamResponse(closeable, listener, context, callStart);
+                        permit.release();
+                        recordUpstream(context, callStart, true);
+                        String optimizedResult = optimizeAndCache(context, fullText);
+                        LogAnalysisResponse finalResponse = finish(context, MODE_STREAM, completeAnalysis(context, optimizedResult));
+                        if (finalResponse.getCode() == 200) {
+                            listener.onComplete(finalResponse);
+                        } else {
+                            listener.onError(finalResponse);
+                        }
+                        return true;
+                    } catch (StreamErrorException e) {
+                        permit.release();
+                        recordUpstream(context, callStart, false);
+                        log.warn("[QwenApiUtil-{}] 流式调用返回错误事件，状态码：{}，错误码：{}，原因：{}",
+                                traceId, e.getStatus(), e.getCode(), e.getMessage());
+                        listener.onError(finish(context, MODE_STREAM, LogAnalysisResponse.error(
+                                e.getStatus() == 429 ? 429 : 500,
+                                "大模型调用失败（状态码：" + e.getStatus() + "，错误码：" + e.getCode() + "）：" + e.getMessage())));
+                        return !qwenHttpClient.isUpstreamFault(e.getStatus());
+                    } catch (IOException e) {
+                        permit.release();
+                        streamCall.cancel();
+                        log.warn("[QwenApiUtil-{}] 流式分析中断，原因：{}", traceId, e.getMessage());
+                        listener.onError(finish(context, MODE_STREAM, LogAnalysisResponse.error(500, "日志分析异常：" + e.getMessage())));
+                        return true;
+                    }
+                }
+            });
+        } catch (CircuitBreaker.OpenException e) {
+            permit.release();
+            log.warn("[QwenApiUtil-{}] 大模型服务熔断中，流式分析快速失败", traceId);
+            listener.onError(finish(context, MODE_STREAM, LogAnalysisResponse.error(503, e.getMessage())));
+            return null;
+        }
+    }
+
+    /**
+     * 分析预处理：输入校验、会话判断、指纹与频率统计、缓存查询/相似异常复用、调用栈精简、Prompt构建、模型路由（各阶段耗时记录到context.timer）
+     * 执行后context.earlyResponse非空表示无需调用大模型，直接返回
+     */
+    private void prepareAnalysis(AnalysisContext context, String exceptionLog, String sessionId) {
+        String traceId = context.getTraceId();
+        StageTimer timer = context.getTimer();
+        log.info("[QwenApiUtil-{}] 开始处理日志分析请求，sessionId：{}，输入内容：{}",
+                traceId, sessionId, truncateContent(exceptionLog));
+
+        // 1. 基础输入校验（所有轮次通用）
+        long stageStart = System.nanoTime();
+        if (!StringUtils.hasText(exceptionLog)) {
+            log.warn("[QwenApiUtil-{}] 输入内容为空，返回400错误", traceId);
+            context.setEarlyResponse(LogAnalysisResponse.error(400, "错误：输入内容为空，请重新输入"));
+            timer.stop(STAGE_VALIDATION, stageStart);
+            return;
+        }
+        String cleanInput = exceptionLog.trim();
+        context.setCleanInput(cleanInput);
+        timer.stop(STAGE_VALIDATION, stageStart);
+
+        // 2. 会话上下文判断（首次/非首次对话）
+        stageStart = System.nanoTime();
+        ConversationSession session = conversationMemoryManager.getOrCreateSession(sessionId);
+        boolean isFirstRound = session.getMessageHistory().isEmpty();
+        context.setSession(session);
+        timer.stop("session", stageStart);
+        log.debug("[QwenApiUtil-{}] 对话轮次判断：{}，会话ID：{}", traceId, isFirstRound ? "首次" : "追问", session.getSessionId());
+
+        // 3. 动态格式校验（仅首次对话强制要求异常日志，以能否解析出异常结构为准）
+        if (isFirstRound) {
+            stageStart = System.nanoTime();
+            ParsedThrowable parsed = StackTraceParser.parse(cleanInput);
+            timer.stop(STAGE_VALIDATION, stageStart);
+            if (parsed == null) {
                 log.warn("[QwenApiUtil-{}] 首次对话输入非有效Java异常日志，返回400错误", traceId);
-                return LogAnalysisResponse.error(
+                context.setEarlyResponse(LogAnalysisResponse.error(
                         400,
-                        "错误：首次分析请输入有效的Java异常日志（需包含java.lang.关键字，如java.lang.NullPointerException）"
-                );
+                        "错误：首次分析请输入有效的Java异常日志（需包含异常类型，如java.lang.NullPointerException）"
+                ));
+                return;
             }
+            context.setParsed(parsed);
 
-            // 4. 分层Prompt构建（配置化模板）
-            String contextText = session.buildContextText();
-            String promptTemplate = isFirstRound ? firstRoundPromptTemplate : followRoundPromptTemplate;
-            String finalPrompt = String.format(promptTemplate, cleanInput);
-            // 拼接上下文（仅非首次需要，避免首次上下文为空时冗余）
-            if (!isFirstRound) {
-                finalPrompt = contextText + finalPrompt;
+            // 3.1 计算指纹并记录出现频率（本地规则作答、缓存命中的异常同样计入）
+            stageStart = System.nanoTime();
+            String fingerprint = ExceptionFingerprint.fingerprint(cleanInput);
+            context.setFingerprint(fingerprint);
+            exceptionFrequencyTracker.record(fingerprint, parsed.getExceptionType());
+            timer.stop("fingerprint", stageStart);
+
+            // 3.2 本地规则快速作答（已知的常见异常无需调用大模型）
+            stageStart = System.nanoTime();
+            String ruleAnswer = localRuleEngine.match(parsed);
+            timer.stop("rules", stageStart);
+            if (ruleAnswer != null) {
+                persistRound(context, ruleAnswer);
+                context.setEarlyResponse(LogAnalysisResponse.success(ruleAnswer));
+                return;
+            }
+        }
+
+        // 4. 首轮查询指纹缓存（相同异常重复粘贴时直接返回，不再调用大模型）
+        if (isFirstRound) {
+            stageStart = System.nanoTime();
+            String fingerprint = context.getFingerprint();
+            String cachedResult = analysisResultCache.isEnabled() ? analysisResultCache.get(fingerprint) : null;
+            timer.stop("cache", stageStart);
+            if (cachedResult != null) {
+                // 磁盘缓存命中（如重启后）时补登记到相似异常索引
+                similarTraceIndex.add(fingerprint, context.getParsed());
+                persistRound(context, cachedResult);
+                log.info("[QwenApiUtil-{}] 命中分析结果缓存，指纹：{}，耗时：{}ms",
+                        traceId, fingerprint, System.currentTimeMillis() - context.getStartTime());
+                context.setEarlyResponse(LogAnalysisResponse.success(cachedResult));
+                return;
             }
-            log.debug("[QwenApiUtil-{}] 最终Prompt长度：{}字符", traceId, finalPrompt.length());
 
-            // 5. 调用大模型（带重试）
-            String analysisResult = callQwenApiWithRetry(finalPrompt, traceId);
-            if (!StringUtils.hasText(analysisResult)) {
-                log.error("[QwenApiUtil-{}] 大模型返回空结果", traceId);
-                return LogAnalysisResponse.error(500, "大模型分析失败，未返回有效结果");
+            // 4.1 相似异常复用（行号偏移、异常信息不同、调用路径略有差异的同一问题）
+            if (similarTraceIndex.isEnabled()) {
+                stageStart = System.nanoTime();
+                SimilarTraceIndex.SimilarAnalysis similar = similarTraceIndex.findSimilar(context.getParsed());
+                timer.stop("similar", stageStart);
+                analysisMetrics.recordSimilarLookup(similar != null);
+                if (similar != null) {
+                    // 以当前指纹写入缓存（不含相似度说明），同一异常再次出现时直接精确命中
+                    analysisResultCache.put(fingerprint, similar.getResult());
+                    persistRound(context, similar.getResponse());
+                    log.info("[QwenApiUtil-{}] 复用相似异常的分析结果，相似度：{}，历史指纹：{}，耗时：{}ms", traceId,
+                            String.format("%.3f", similar.getSimilarity()), similar.getFingerprint(),
+                            System.currentTimeMillis() - context.getStartTime());
+                    context.setEarlyResponse(LogAnalysisResponse.success(similar.getResponse()));
+                    return;
+                }
             }
+        }
 
-            // 6. 响应结果优化（清理冗余空格/换行）
-            String optimizedResult = optimizeResponse(analysisResult);
-            log.info("[QwenApiUtil-{}] 大模型分析成功，结果长度：{}字符", traceId, optimizedResult.length());
+        // 5. 调用栈预精简（折叠框架帧/递归帧，只作用于Prompt，会话与指纹仍使用原文）
+        String promptInput = cleanInput;
+        if (stackTraceReducer.isEnabled()) {
+            stageStart = System.nanoTime();
+            StackTraceReducer.ReducedTrace reduced = stackTraceReducer.reduce(cleanInput);
+            timer.stop("reduce", stageStart);
+            if (reduced.isReduced()) {
+                promptInput = reduced.getText();
+                context.setReduction(reduced);
+                analysisMetrics.recordReduction(reduced.getOriginalTokens(), reduced.getReducedTokens());
+                log.info("[QwenApiUtil-{}] 调用栈预精简：{}，递归折叠{}帧，框架折叠{}帧", traceId,
+                        reduced.describe(), reduced.getFoldedFrames(), reduced.getCollapsedFrames());
+            }
+        }
 
-            // 7. 存储当前对话到会话上下文
-            conversationMemoryManager.addMessageToSession(sessionId, ConversationMessage.user(cleanInput));
-            conversationMemoryManager.addMessageToSession(sessionId, ConversationMessage.assistant(optimizedResult));
+        // 6. Prompt构建
+        // flat：分层模板（配置化模板，输入与上下文按段引用，序列化请求体时才逐段写出），上下文拼在开头
+        // messages：固定system消息 + 原样历史消息 + 当前输入，同一会话后续轮次的请求前缀逐字节不变
+        stageStart = System.nanoTime();
+        ChatPrompt finalPrompt;
+        int promptTokens;
+        if (messagesLayout) {
+            finalPrompt = buildChatPrompt(traceId, session, promptInput);
+            promptTokens = finalPrompt.estimateTokens();
+        } else {
+            PromptText flatPrompt = (isFirstRound ? firstRoundPrompt : followRoundPrompt).render(promptInput);
+            promptTokens = flatPrompt.estimateTokens();
+            // 拼接上下文（仅非首次需要，避免首次上下文为空时冗余），上下文在剩余token预算内压缩
+            if (!isFirstRound) {
+                int requestTokens = promptTokens;
+                ContextCompactor.CompactedContext compacted =
+                        session.buildCompactedContext(promptTokenBudget - requestTokens);
+                log.info("[QwenApiUtil-{}] Prompt token估算：压缩前{}，压缩后{}（预算{}）", traceId,
+                        requestTokens + compacted.getOriginalTokens(), requestTokens + compacted.getCompactedTokens(),
+                        promptTokenBudget);
+                flatPrompt = flatPrompt.prepend(compacted.getText());
+                promptTokens = requestTokens + compacted.getCompactedTokens();
+            }
+            finalPrompt = ChatPrompt.of(flatPrompt);
+        }
+        context.setPrompt(finalPrompt);
+        context.setPromptTokens(promptTokens);
+        timer.stop("prompt", stageStart);
+        log.debug("[QwenApiUtil-{}] 最终Prompt长度：{}字符，消息数：{}", traceId, finalPrompt.length(),
+                finalPrompt.getMessages().size());
 
-            // 8. 耗时统计
-            long costTime = System.currentTimeMillis() - startTime;
-            log.info("[QwenApiUtil-{}] 日志分析处理完成，耗时：{}ms，sessionId：{}", traceId, costTime, sessionId);
+        // 7. 按输入复杂度与各模型近期延迟选择模型
+        stageStart = System.nanoTime();
+        context.setModel(modelRouter.route(traceId, context.getParsed(), isFirstRound, promptTokens));
+        timer.stop("route", stageStart);
+        analysisMetrics.recordPrompt(context.getModel(), finalPrompt.length(), promptTokens);
+    }
 
-            return LogAnalysisResponse.success(optimizedResult);
+    /**
+     * 构建messages布局的多消息Prompt：system消息 + 历史消息 + 当前输入
+     * 历史用户消息按与当轮相同的方式精简调用栈（确定性结果，与当时发送的内容一致）；
+     * 只有超出token预算时才由旧到新压缩历史消息，仍超出则丢弃最早的整轮（此时前缀缓存只能命中system消息）
+     *
+     * @param traceId     追踪ID
+     * @param session     会话
+     * @param promptInput 当前输入（已精简调用栈）
+     * @return 多消息Prompt
+     */
+    private ChatPrompt buildChatPrompt(String traceId, ConversationSession session, String promptInput) {
+        List<ConversationMessage> history = session.getMessageHistory();
+        List<String> roles = new ArrayList<>(history.size());
+        List<String> contents = new ArrayList<>(history.size());
+        for (ConversationMessage message : history) {
+            roles.add(message.getRole());
+            contents.add(ChatPrompt.ROLE_USER.equals(message.getRole())
+                    ? reduceForPrompt(message.getContent()) : message.getContent());
+        }
+        int historyBudget = promptTokenBudget - TokenEstimator.estimate(systemPrompt) - TokenEstimator.estimate(promptInput);
+        int originalTokens = TokenEstimator.estimate(contents);
+        int historyTokens = originalTokens;
+        for (int i = 0; i < contents.size() && historyTokens > historyBudget; i++) {
+            contents.set(i, ContextCompactor.compactMessage(roles.get(i), contents.get(i)));
+            historyTokens = TokenEstimator.estimate(contents);
+        }
+        // 按整轮（用户+回答）丢弃，保证历史以用户消息开头
+        int from = 0;
+        while (historyTokens > historyBudget && from + 2 <= contents.size()) {
+            from += 2;
+            historyTokens = TokenEstimator.estimate(contents.subList(from, contents.size()));
+        }
+        if (historyTokens != originalTokens) {
+            log.info("[QwenApiUtil-{}] 历史消息token估算：压缩前{}，压缩后{}（预算{}），丢弃最早{}条", traceId,
+                    originalTokens, historyTokens, historyBudget, from);
+        }
 
-        } catch (Exception e) {
-            long costTime = System.currentTimeMillis() - startTime;
-            log.error("[QwenApiUtil-{}] 日志分析处理异常，耗时：{}ms，原因：{}",
-                    traceId, costTime, e.getMessage(), e);
-            return LogAnalysisResponse.error(500, "日志分析异常：" + e.getMessage());
+        ChatPrompt.Builder builder = ChatPrompt.builder().add(ChatPrompt.ROLE_SYSTEM, systemPrompt);
+        for (int i = from; i < contents.size(); i++) {
+            builder.add(roles.get(i), contents.get(i));
         }
+        return builder.add(ChatPrompt.ROLE_USER, promptInput).build();
     }
 
     /**
-     * 调用通义千问API（带重试机制）
+     * 按Prompt精简规则处理用户输入（未启用或无可折叠帧时返回原文）
+     */
+    private String reduceForPrompt(String input) {
+        if (!stackTraceReducer.isEnabled()) {
+            return input;
+        }
+        StackTraceReducer.ReducedTrace reduced = stackTraceReducer.reduce(input);
+        return reduced.isReduced() ? reduced.getText() : input;
+    }
+
+    private String layout() {
+        return messagesLayout ? LAYOUT_MESSAGES : LAYOUT_FLAT;
+    }
+
+    /**
+     * 分析收尾：存储当前对话到会话上下文并统计耗时
      *
-     * @param prompt  构建好的Prompt
-     * @param traceId 追踪ID
-     * @return 大模型返回的文本结果
+     * @param context         分析上下文
+     * @param optimizedResult 优化后的分析结果
+     * @return 结构化的分析响应结果
+     */
+    private LogAnalysisResponse completeAnalysis(AnalysisContext context, String optimizedResult) {
+        String traceId = context.getTraceId();
+        if (!StringUtils.hasText(optimizedResult)) {
+            log.error("[QwenApiUtil-{}] 大模型返回空结果", traceId);
+            return LogAnalysisResponse.error(500, "大模型分析失败，未返回有效结果");
+        }
+        log.info("[QwenApiUtil-{}] 大模型分析成功，结果长度：{}字符", traceId, optimizedResult.length());
+
+        // 9. 存储当前对话到会话上下文
+        String sessionId = context.getSession().getSessionId();
+        persistRound(context, optimizedResult);
+
+        // 10. 耗时统计
+        long costTime = System.currentTimeMillis() - context.getStartTime();
+        log.info("[QwenApiUtil-{}] 日志分析处理完成，耗时：{}ms，sessionId：{}", traceId, costTime, sessionId);
+
+        return LogAnalysisResponse.success(optimizedResult);
+    }
+
+    /**
+     * 保存本轮对话（用户输入 + 回答）到会话
+     */
+    private void persistRound(AnalysisContext context, String answer) {
+        long stageStart = System.nanoTime();
+        conversationMemoryManager.addRoundToSession(context.getSession().getSessionId(), context.getCleanInput(), answer);
+        context.getTimer().stop("persist", stageStart);
+    }
+
+    /**
+     * 分析结束：附带traceId、分阶段耗时与调用栈精简比例（由响应头返回），并记录指标
+     *
+     * @param context  分析上下文
+     * @param mode     调用模式：sync/async/stream
+     * @param response 最终响应
+     * @return 原响应
+     */
+    private LogAnalysisResponse finish(AnalysisContext context, String mode, LogAnalysisResponse response) {
+        response.setTraceId(context.getTraceId());
+        response.setServerTiming(context.getTimer().toServerTiming());
+        if (context.getReduction() != null) {
+            response.setPromptReduction(context.getReduction().describe());
+        }
+        analysisMetrics.recordRequest(mode, response.getCode(), context.getTimer());
+        return response;
+    }
+
+    /**
+     * 调用大模型并优化结果，首轮结果写入指纹缓存
+     *
+     * @param context 分析上下文（模型、Prompt、指纹）
+     * @return 优化后的分析结果（大模型无结果时为空串）
      * @throws IOException 网络/序列化异常
      */
-    private String callQwenApiWithRetry(String prompt, String traceId) throws IOException {
-        // 构建请求体
-        Request request = buildQwenRequest(prompt);
-        // 重试逻辑
-        int currentRetry = 0;
-        while (currentRetry <= retryCount) {
-            try (Response response = OK_HTTP_CLIENT.newCall(request).execute()) {
-                if (response.isSuccessful()) {
-                    return parseQwenResponse(response, traceId);
-                } else {
-                    currentRetry++;
-                    log.warn("[QwenApiUtil-{}] 大模型调用失败，状态码：{}，重试次数：{}/{}",
-                            traceId, response.code(), currentRetry, retryCount);
-                    if (currentRetry > retryCount) {
-                        throw new IOException("大模型调用失败，状态码：" + response.code() + "，重试次数耗尽");
-                    }
-                    // 重试延迟
-                    TimeUnit.MILLISECONDS.sleep(retryDelay);
+    private String callAndOptimize(AnalysisContext context) throws IOException {
+        UpstreamScheduler.Permit permit = awaitPermit(context);
+        long callStart = System.nanoTime();
+        String analysisResult;
+        try {
+            analysisResult = callQwenApiWithRetry(context);
+        } catch (IOException e) {
+            recordUpstream(context, callStart, false);
+            throw e;
+        } finally {
+            permit.release();
+        }
+        recordUpstream(context, callStart, true);
+        return optimizeAndCache(context, analysisResult);
+    }
+
+    /**
+     * 申请大模型调用许可（排队单位为会话，追问优先）
+     */
+    private CompletableFuture<UpstreamScheduler.Permit> acquirePermit(AnalysisContext context) {
+        return upstreamScheduler.acquire(context.getClientId(), context.getSession().getSessionId(),
+                context.getParsed() == null, context.getPromptTokens());
+    }
+
+    /**
+     * 阻塞等待大模型调用许可，并记录排队耗时
+     *
+     * @throws RejectedExecutionException 排队已满/排队超时
+     * @throws IOException                等待被中断
+     */
+    private UpstreamScheduler.Permit awaitPermit(AnalysisContext context) throws IOException {
+        CompletableFuture<UpstreamScheduler.Permit> future = acquirePermit(context);
+        try {
+            UpstreamScheduler.Permit permit = future.get();
+            recordQueueWait(context, permit);
+            return permit;
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IOException("等待大模型调用许可被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * 异步调用大模型并优化结果（占用一个进行中调用许可，完成后释放）
+     *
+     * @param context 分析上下文（模型、Prompt、指纹）
+     * @return 优化后的分析结果Future；许可耗尽时以RejectedExecutionException失败
+     */
+    private CompletableFuture<String> callAndOptimizeAsync(AnalysisContext context) {
+        if (!asyncPermits.tryAcquire()) {
+            CompletableFuture<String> result = new CompletableFuture<>();
+            result.completeExceptionally(new RejectedExecutionException("进行中的大模型调用已达上限"));
+            return result;
+        }
+        Request request = buildQwenRequest(context.getModel(), context.getPrompt());
+        CompletableFuture<UpstreamScheduler.Permit> permitFuture = acquirePermit(context);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        AtomicReference<CompletableFuture<String>> callRef = new AtomicReference<>();
+        CompletableFuture<String> upstream = permitFuture.thenCompose(permit -> {
+            recordQueueWait(context, permit);
+            long callStart = System.nanoTime();
+            CompletableFuture<String> call;
+            try {
+                call = qwenHttpClient.executeAsync(request, context.getTraceId(),
+                        response -> parseQwenResponse(response, context));
+            } catch (RuntimeException e) {
+                permit.release();
+                throw e;
+            }
+            callRef.set(call);
+            // 拿到许可的同时调用方已取消
+            if (cancelled.get()) {
+                call.cancel(true);
+            }
+            return call.whenComplete((analysisResult, e) -> {
+                permit.release();
+                if (!call.isCancelled()) {
+                    recordUpstream(context, callStart, e == null);
                 }
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                log.error("[QwenApiUtil-{}] 重试被中断", traceId, e);
-                throw new IOException("重试被中断", e);
+            });
+        });
+        CompletableFuture<String> result = upstream.whenComplete((analysisResult, e) -> asyncPermits.release())
+                .thenApply(analysisResult -> optimizeAndCache(context, analysisResult));
+        // 被取消时退出调度队列，已发出的调用一并取消（同时释放调度许可与进行中调用许可）
+        result.whenComplete((analysisResult, e) -> {
+            if (!result.isCancelled()) {
+                return;
+            }
+            cancelled.set(true);
+            permitFuture.cancel(true);
+            CompletableFuture<String> call = callRef.get();
+            if (call != null) {
+                call.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 记录大模型调用排队耗时（调度关闭时不记录）
+     */
+    private void recordQueueWait(AnalysisContext context, UpstreamScheduler.Permit permit) {
+        if (permit.getPriority() != null) {
+            context.getTimer().add(STAGE_QUEUE, permit.getWaitNanos());
+            analysisMetrics.recordSchedulerWait(permit.getPriority(), permit.getWaitNanos());
+        }
+    }
+
+    /**
+     * 记录上游调用耗时（往返耗时不含响应解析），并反馈给模型路由
+     */
+    private void recordUpstream(AnalysisContext context, long callStart, boolean success) {
+        long elapsed = System.nanoTime() - callStart;
+        StageTimer timer = context.getTimer();
+        timer.add(STAGE_UPSTREAM, elapsed - timer.get("parse"));
+        modelRouter.record(context.getModel(), TimeUnit.NANOSECONDS.toMillis(elapsed), success);
+    }
+
+    /**
+     * 合并等待他人发起的共享调用时，记录等待耗时（自身未发起上游调用）
+     */
+    private void recordCoalescedWait(AnalysisContext context, long waitStart) {
+        if (context.getFingerprint() != null && context.getTimer().get(STAGE_UPSTREAM) == 0) {
+            context.getTimer().stop("coalesced_wait", waitStart);
+        }
+    }
+
+    /**
+     * 优化响应结果并写入指纹缓存，同时登记到相似异常索引
+     */
+    private String optimizeAndCache(AnalysisContext context, String analysisResult) {
+        long stageStart = System.nanoTime();
+        // 响应结果优化（清理冗余空格/换行）
+        String optimizedResult = optimizeResponse(analysisResult);
+        context.getTimer().stop("optimize", stageStart);
+        analysisMetrics.recordResponse(context.getModel(), optimizedResult.length());
+        if (context.getFingerprint() != null && StringUtils.hasText(optimizedResult)) {
+            analysisResultCache.put(context.getFingerprint(), optimizedResult);
+            similarTraceIndex.add(context.getFingerprint(), context.getParsed());
+        }
+        return optimizedResult;
+    }
+
+    /**
+     * 等待共享的首轮分析结果（相同指纹进行中时不再重复调用大模型）
+     * 超时/中断只作用于当前等待者，共享调用继续为其他等待者服务
+     *
+     * @param context 分析上下文（指纹、模型、Prompt）
+     * @return 优化后的分析结果
+     * @throws IOException 调用失败/等待超时/等待被中断
+     */
+    private String awaitSharedAnalysis(AnalysisContext context) throws IOException {
+        String traceId = context.getTraceId();
+        String fingerprint = context.getFingerprint();
+        long waitStart = System.nanoTime();
+        CompletableFuture<String> result = firstRoundFlight.execute(fingerprint, () -> callAndOptimize(context));
+        try {
+            return result.get(singleFlightWaitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            result.cancel(true);
+            log.warn("[QwenApiUtil-{}] 等待共享分析结果超时（{}ms），指纹：{}", traceId, singleFlightWaitTimeoutMs, fingerprint);
+            throw new IOException("等待大模型分析结果超时", e);
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IOException("等待大模型分析结果被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
             }
+            // 调度拒绝（429）等运行时异常原样抛出，由调用方映射响应码
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        } finally {
+            recordCoalescedWait(context, waitStart);
         }
-        return "";
+    }
+
+    /**
+     * 调用通义千问API（带重试/熔断/对冲）
+     *
+     * @param context 分析上下文（模型、Prompt）
+     * @return 大模型返回的文本结果
+     * @throws IOException 网络/序列化异常
+     */
+    private String callQwenApiWithRetry(AnalysisContext context) throws IOException {
+        // 重试/熔断/对冲由QwenHttpClient统一处理
+        return qwenHttpClient.execute(buildQwenRequest(context.getModel(), context.getPrompt()), context.getTraceId(),
+                response -> parseQwenResponse(response, context));
     }
 
     /**
      * 构建通义千问API请求
      *
+     * @param model  模型名称
      * @param prompt Prompt内容
      * @return OkHttp Request
-     * @throws IOException 序列化异常
-     */
-    private Request buildQwenRequest(String prompt) throws IOException {
-        // 构建请求参数
-        Map<String, Object> requestBodyMap = new HashMap<>(4);
-        requestBodyMap.put("model", model);
-
-        Map<String, Object> messageMap = new HashMap<>(2);
-        messageMap.put("role", "user");
-        messageMap.put("content", prompt);
-
-        Map<String, Object> inputMap = new HashMap<>(1);
-        inputMap.put("messages", new Object[]{messageMap});
-        requestBodyMap.put("input", inputMap);
-
-        Map<String, Object> parametersMap = new HashMap<>(3);
-        parametersMap.put("result_format", "text");
-        parametersMap.put("temperature", 0.2);
-        parametersMap.put("top_p", 0.7);
-        requestBodyMap.put("parameters", parametersMap);
-
-        // 构建请求
-        MediaType mediaType = MediaType.parse("application/json; charset=utf-8");
-        RequestBody requestBody = RequestBody.create(mediaType, objectMapper.writeValueAsString(requestBodyMap));
-        return new Request.Builder()
+     */
+    Request buildQwenRequest(String model, PromptText prompt) {
+        return buildQwenRequest(model, ChatPrompt.of(prompt), false);
+    }
+
+    /**
+     * 构建通义千问API请求（多消息）
+     *
+     * @param model  模型名称
+     * @param prompt 按顺序的消息
+     * @return OkHttp Request
+     */
+    Request buildQwenRequest(String model, ChatPrompt prompt) {
+        return buildQwenRequest(model, prompt, false);
+    }
+
+    /**
+     * 构建通义千问API请求（可选SSE流式增量输出）
+     * 请求体在发送时由JsonGenerator直接写入连接，不预先生成JSON字符串
+     *
+     * @param model  模型名称
+     * @param prompt 按顺序的消息
+     * @param stream 是否开启流式增量输出
+     * @return OkHttp Request
+     */
+    Request buildQwenRequest(String model, ChatPrompt prompt, boolean stream) {
+        Request.Builder builder = new Request.Builder()
                 .url(apiUrl)
                 .addHeader("Authorization", "Bearer " + apiKey)
                 .addHeader("Content-Type", "application/json")
-                .post(requestBody)
-                .build();
+                .post(QwenJsonCodec.requestBody(model, prompt, stream));
+        if (stream) {
+            builder.addHeader("X-DashScope-SSE", "enable")
+                    .addHeader("Accept", "text/event-stream");
+        }
+        return builder.build();
     }
 
     /**
-     * 解析通义千问API响应
+     * 解析通义千问API响应（同时记录解析耗时与usage中的token消耗）
      *
      * @param response 响应对象
-     * @param traceId  追踪ID
+     * @param context  分析上下文
      * @return 解析后的文本结果
      * @throws IOException 解析异常
      */
-    private String parseQwenResponse(Response response, String traceId) throws IOException {
+    String parseQwenResponse(Response response, AnalysisContext context) throws IOException {
+        String traceId = context.getTraceId();
+        long stageStart = System.nanoTime();
         try (ResponseBody responseBody = response.body()) {
             if (responseBody == null) {
                 log.error("[QwenApiUtil-{}] 大模型响应体为空", traceId);
                 return "";
             }
-            String responseStr = responseBody.string();
-            log.debug("[QwenApiUtil-{}] 大模型原始响应：{}", traceId, truncateContent(responseStr));
-
-            JsonNode jsonNode = objectMapper.readTree(responseStr);
-            if (jsonNode.has("output") && jsonNode.get("output").has("text")) {
-                return jsonNode.get("output").get("text").asText().trim();
+            // 流式解析：只取output.text与usage，不把响应体读成完整字符串
+            QwenJsonCodec.Result result = QwenJsonCodec.readResult(responseBody.byteStream());
+            recordUsage(context, result);
+            if (result.getText() != null) {
+                log.debug("[QwenApiUtil-{}] 大模型原始响应：{}", traceId, truncateContent(result.getText()));
+                return result.getText().trim();
             } else {
-                log.error("[QwenApiUtil-{}] 大模型响应格式异常，无output.text字段，响应：{}", traceId, responseStr);
+                log.error("[QwenApiUtil-{}] 大模型响应格式异常，无output.text字段，code：{}，message：{}",
+                        traceId, result.getCode(), result.getMessage());
                 throw new IOException("大模型响应格式异常，未找到output.text字段");
             }
+        } finally {
+            context.getTimer().stop("parse", stageStart);
+        }
+    }
+
+    /**
+     * 记录响应usage中的实际token消耗与前缀缓存命中情况
+     */
+    private void recordUsage(AnalysisContext context, QwenJsonCodec.Result result) {
+        if (result.hasUsage()) {
+            analysisMetrics.recordUsage(context.getModel(), result.getInputTokens(), result.getOutputTokens(),
+                    result.getCachedTokens());
+            analysisMetrics.recordPromptCache(layout(), result.getInputTokens(), result.getCachedTokens());
+            if (result.getCachedTokens() > 0) {
+                log.debug("[QwenApiUtil-{}] 命中服务端前缀缓存：{}/{} token", context.getTraceId(),
+                        result.getCachedTokens(), result.getInputTokens());
+            }
+        }
+    }
+
+    /**
+     * 逐行读取SSE流式响应，推送每个增量片段并拼接完整结果
+     *
+     * @param response  流式响应
+     * @param listener  流式输出监听器
+     * @param context   分析上下文
+     * @param callStart 上游调用发起时的System.nanoTime()（用于统计首字耗时）
+     * @return 拼接后的完整结果
+     * @throws StreamErrorException 流中返回了错误事件（event:error，data含code/message，无output.text）
+     * @throws IOException          读取异常/客户端断开
+     */
+    private String readStreamResponse(Response response, AnalysisStreamListener listener,
+                                      AnalysisContext context, long callStart) throws IOException {
+        String traceId = context.getTraceId();
+        ResponseBody responseBody = response.body();
+        if (responseBody == null) {
+            log.error("[QwenApiUtil-{}] 大模型流式响应体为空", traceId);
+            return "";
+        }
+        StringBuilder fullText = new StringBuilder();
+        // 每个事件的usage均为累计值，只记录最后一个
+        QwenJsonCodec.Result lastEvent = null;
+        // 错误事件前的注释行“:HTTP_STATUS/429”携带实际状态码（响应本身为200）
+        int eventStatus = 500;
+        BufferedSource source = responseBody.source();
+        String line;
+        while ((line = source.readUtf8Line()) != null) {
+            if (line.startsWith(SSE_STATUS_PREFIX)) {
+                eventStatus = parseEventStatus(line.substring(SSE_STATUS_PREFIX.length()).trim());
+                continue;
+            }
+            // SSE格式：仅处理 data: 行，忽略 id:/event:/空行
+            if (!line.startsWith("data:")) {
+                continue;
+            }
+            String data = line.substring(5).trim();
+            // 兼容OpenAI风格的结束标记（DashScope以连接关闭结束，无该标记）
+            if (SSE_DONE.equals(data)) {
+                break;
+            }
+            QwenJsonCodec.Result event = QwenJsonCodec.readResult(data);
+            if (StringUtils.hasText(event.getCode())) {
+                throw new StreamErrorException(eventStatus >= 400 ? eventStatus : 500, event.getCode(), event.getMessage());
+            }
+            lastEvent = event;
+            String token = event.getText();
+            if (token == null || token.isEmpty()) {
+                continue;
+            }
+            if (fullText.length() == 0) {
+                context.getTimer().stop(STAGE_FIRST_TOKEN, callStart);
+                analysisMetrics.recordFirstToken(layout(), context.getModel(), context.getTimer().get(STAGE_FIRST_TOKEN));
+                log.info("[QwenApiUtil-{}] 流式首个片段到达，首字耗时：{}ms（距请求开始{}ms）", traceId,
+                        TimeUnit.NANOSECONDS.toMillis(context.getTimer().get(STAGE_FIRST_TOKEN)),
+                        System.currentTimeMillis() - context.getStartTime());
+            }
+            fullText.append(token);
+            listener.onToken(token);
+        }
+        if (lastEvent != null) {
+            recordUsage(context, lastEvent);
+        }
+        return fullText.toString().trim();
+    }
+
+    private static int parseEventStatus(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return 500;
+        }
+    }
+
+    /**
+     * 流式响应中的错误事件
+     */
+    private static final class StreamErrorException extends IOException {
+        private final int status;
+        private final String code;
+
+        StreamErrorException(int status, String code, String message) {
+            super(StringUtils.hasText(message) ? message : code);
+            this.status = status;
+            this.code = code;
+        }
+
+        int getStatus() {
+            return status;
+        }
+
+        String getCode() {
+            return code;
         }
     }
 
@@ -271,7 +1144,7 @@ public class QwenApiUtil {
      * @param response 原始响应结果
      * @return 优化后的结果
      */
-    private String optimizeResponse(String response) {
+    String optimizeResponse(String response) {
         // 1. 空值校验
         if (!StringUtils.hasText(response)) {
             return "";
@@ -293,6 +1166,34 @@ public class QwenApiUtil {
         return result.toString();
     }
 
+    /**
+     * 单次分析的上下文（预处理阶段产出，供调用与收尾阶段使用；包级可见，供 src/jmh 基准测试构造）
+     */
+    @Data
+    static class AnalysisContext {
+        private String traceId;
+        private long startTime;
+        // 分阶段耗时
+        private StageTimer timer;
+        private String cleanInput;
+        private ConversationSession session;
+        // 结构化异常（仅首轮）
+        private ParsedThrowable parsed;
+        // 异常指纹（仅首轮）
+        private String fingerprint;
+        // 调用栈预精简结果（有帧被折叠时非空）
+        private StackTraceReducer.ReducedTrace reduction;
+        private ChatPrompt prompt;
+        // Prompt估算token数（调度排队成本）
+        private int promptTokens;
+        // 调用方标识（调度配额）
+        private String clientId;
+        // 路由选中的模型
+        private String model;
+        // 非空表示无需调用大模型（校验失败/命中缓存/复用相似异常）
+        private LogAnalysisResponse earlyResponse;
+    }
+
     /**
      * 截断超长内容（避免日志刷屏）
      *
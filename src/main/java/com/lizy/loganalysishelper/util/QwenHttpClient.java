@@ -0,0 +1,554 @@
+package com.lizy.loganalysishelper.util;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 大模型HTTP调用客户端（重试 + 熔断 + 对冲请求）
+ * 1. 重试：只重试网络异常与可重试状态码（429/5xx等），指数退避+随机抖动，遵循Retry-After
+ * 2. 熔断：上游失败率超过阈值后快速失败，冷却后放行少量探测请求
+ * 3. 对冲：调用耗时超过近期P95仍未返回时再发一次相同请求，取先成功者并取消另一方
+ * 全程基于OkHttp异步调用，重试通过调度器延迟触发，不阻塞任何线程
+ */
+@Component
+public class QwenHttpClient {
+    private static final Logger log = LoggerFactory.getLogger(QwenHttpClient.class);
+
+    // 重试次数（不含首次调用）
+    @Value("${qwen.retry.count:2}")
+    private int retryCount;
+    // 退避基础延迟（毫秒），第N次重试约为 base * 2^(N-1)
+    @Value("${qwen.retry.delay:1000}")
+    private long retryBaseDelayMs;
+    // 单次退避最大延迟（毫秒），Retry-After超过该值时放弃重试
+    @Value("${qwen.retry.max-delay-ms:10000}")
+    private long retryMaxDelayMs;
+    // 可重试的HTTP状态码
+    @Value("${qwen.retry.retryable-statuses:408,429,500,502,503,504}")
+    private Set<Integer> retryableStatuses;
+
+    @Value("${qwen.circuit-breaker.enabled:true}")
+    private boolean circuitBreakerEnabled;
+    @Value("${qwen.circuit-breaker.window-size:20}")
+    private int breakerWindowSize;
+    @Value("${qwen.circuit-breaker.minimum-calls:10}")
+    private int breakerMinimumCalls;
+    @Value("${qwen.circuit-breaker.failure-rate-threshold:0.5}")
+    private double breakerFailureRateThreshold;
+    @Value("${qwen.circuit-breaker.open-ms:30000}")
+    private long breakerOpenMs;
+    @Value("${qwen.circuit-breaker.half-open-permits:2}")
+    private int breakerHalfOpenPermits;
+
+    @Value("${qwen.hedge.enabled:false}")
+    private boolean hedgeEnabled;
+    // 触发对冲的延迟分位点
+    @Value("${qwen.hedge.quantile:0.95}")
+    private double hedgeQuantile;
+    // 对冲最小等待时间（毫秒）
+    @Value("${qwen.hedge.min-delay-ms:500}")
+    private long hedgeMinDelayMs;
+    // 样本数达到该值后才开始对冲
+    @Value("${qwen.hedge.min-samples:20}")
+    private int hedgeMinSamples;
+    // 对冲请求占总调用的最大比例（上游整体变慢时避免流量翻倍）
+    @Value("${qwen.hedge.max-ratio:0.1}")
+    private double hedgeMaxRatio;
+
+    // 连接池/调度器/超时见UpstreamHttpConfig
+    @Autowired
+    private OkHttpClient okHttpClient;
+
+    @Autowired
+    private UpstreamConnectionManager connectionManager;
+
+    private CircuitBreaker circuitBreaker;
+    // 成功调用的耗时样本（用于计算对冲阈值）
+    private final LatencyTracker latencyTracker = new LatencyTracker(1024, 32);
+
+    // 重试/对冲调度器（延迟触发不占用任何请求线程）
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "qwen-retry-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 统计
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * 响应处理器（仅对最终成功的响应调用）
+     */
+    public interface ResponseHandler<T> {
+        T handle(Response response) throws IOException;
+    }
+
+    /**
+     * 流式调用回调（响应体在onResponse内读完）
+     */
+    public interface StreamCallback {
+        void onFailure(Call call, IOException e);
+
+        /**
+         * 收到响应（含非2xx）
+         *
+         * @return 上游是否正常：流中返回了错误事件时为false，计入熔断失败
+         */
+        boolean onResponse(Call call, Response response);
+    }
+
+    @PostConstruct
+    public void init() {
+        circuitBreaker = new CircuitBreaker(breakerWindowSize, breakerMinimumCalls, breakerFailureRateThreshold,
+                breakerOpenMs, breakerHalfOpenPermits);
+        log.info("[QwenHttpClient] 初始化完成，重试次数：{}，可重试状态码：{}，熔断：{}，对冲：{}",
+                retryCount, retryableStatuses, circuitBreakerEnabled, hedgeEnabled);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 同步调用（阻塞当前线程直到成功或重试耗尽）
+     *
+     * @param request 请求
+     * @param traceId 追踪ID
+     * @param handler 成功响应处理器
+     * @return 处理结果
+     * @throws IOException 调用失败/熔断中/被中断
+     */
+    public <T> T execute(Request request, String traceId, ResponseHandler<T> handler) throws IOException {
+        CompletableFuture<T> result = executeAsync(request, traceId, handler);
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IOException("大模型调用被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * 异步调用（取消返回的Future会同时取消进行中的HTTP调用）
+     *
+     * @param request 请求
+     * @param traceId 追踪ID
+     * @param handler 成功响应处理器
+     * @return 结果Future；熔断中以CircuitBreaker.OpenException失败
+     */
+    public <T> CompletableFuture<T> executeAsync(Request request, String traceId, ResponseHandler<T> handler) {
+        calls.incrementAndGet();
+        Exchange<T> exchange = new Exchange<>(request, traceId, handler);
+        exchange.result.whenComplete((value, e) -> {
+            if (e != null) {
+                failures.incrementAndGet();
+            }
+            Attempt<T> current = exchange.current;
+            if (current != null) {
+                current.cancel(current.winner);
+            }
+        });
+        attempt(exchange, 0);
+        return exchange.result;
+    }
+
+    /**
+     * 发起流式调用（只做熔断检查与结果记录，流式输出开始后不重试/不对冲）
+     * 2xx响应在流读完后才记录结果：DashScope的错误可能以HTTP 200 + event:error帧返回
+     *
+     * @param request  流式请求
+     * @param callback 回调
+     * @return 调用句柄（用于取消）
+     * @throws CircuitBreaker.OpenException 熔断中
+     */
+    public Call enqueueStream(Request request, StreamCallback callback) throws CircuitBreaker.OpenException {
+        if (!acquirePermit()) {
+            throw new CircuitBreaker.OpenException("大模型服务暂时不可用（熔断中），请稍后重试");
+        }
+        Call call = okHttpClient.newCall(request);
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call failedCall, IOException e) {
+                if (failedCall.isCanceled()) {
+                    releasePermit();
+                } else {
+                    recordOutcome(false);
+                }
+                callback.onFailure(failedCall, e);
+            }
+
+            @Override
+            public void onResponse(Call streamCall, Response response) {
+                if (!response.isSuccessful()) {
+                    recordOutcome(!isUpstreamFault(response.code()));
+                    callback.onResponse(streamCall, response);
+                    return;
+                }
+                boolean healthy = false;
+                try {
+                    healthy = callback.onResponse(streamCall, response);
+                } finally {
+                    recordOutcome(healthy);
+                }
+            }
+        });
+        return call;
+    }
+
+    /**
+     * 调用统计（含连接池/调度器状态）
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("calls", calls.get());
+        stats.put("failures", failures.get());
+        stats.put("retries", retries.get());
+        stats.put("hedgeEnabled", hedgeEnabled);
+        stats.put("hedges", hedges.get());
+        stats.put("hedgeWins", hedgeWins.get());
+        stats.put("latencySamples", latencyTracker.size());
+        stats.put("latencyP50Ms", latencyTracker.quantile(0.5));
+        stats.put("latencyP95Ms", latencyTracker.quantile(0.95));
+        stats.put("hedgeDelayMs", hedgeDelay());
+        stats.put("circuitBreakerEnabled", circuitBreakerEnabled);
+        stats.put("circuitBreaker", circuitBreaker.stats());
+        stats.put("connections", connectionManager.stats());
+        return stats;
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    public long getRetries() {
+        return retries.get();
+    }
+
+    public long getHedges() {
+        return hedges.get();
+    }
+
+    public long getHedgeWins() {
+        return hedgeWins.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public CircuitBreaker.State getCircuitState() {
+        return circuitBreaker.getState();
+    }
+
+    private <T> void attempt(Exchange<T> exchange, int retry) {
+        if (exchange.result.isDone()) {
+            return;
+        }
+        if (!acquirePermit()) {
+            log.warn("[QwenHttpClient-{}] 大模型服务熔断中，快速失败", exchange.traceId);
+            exchange.result.completeExceptionally(
+                    new CircuitBreaker.OpenException("大模型服务暂时不可用（熔断中），请稍后重试"));
+            return;
+        }
+        Attempt<T> attempt = new Attempt<>(exchange, retry);
+        exchange.current = attempt;
+        attempt.pending.incrementAndGet();
+        launch(attempt, false);
+        long delay = hedgeDelay();
+        if (delay > 0) {
+            attempt.hedgeTimer = scheduler.schedule(() -> hedge(attempt), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 对冲：首个调用超过阈值仍未返回时，再发一次相同请求
+     */
+    private <T> void hedge(Attempt<T> attempt) {
+        // 先占位再检查，保证与失败回调的"最后一个调用结束"判断不冲突
+        attempt.pending.incrementAndGet();
+        if (attempt.settled.get() || hedges.get() + 1 > calls.get() * hedgeMaxRatio || !acquirePermit()) {
+            onCallFailed(attempt, null);
+            return;
+        }
+        hedges.incrementAndGet();
+        log.info("[QwenHttpClient-{}] 调用超过{}ms未返回，发起对冲请求", attempt.exchange.traceId, hedgeDelay());
+        launch(attempt, true);
+    }
+
+    private <T> void launch(Attempt<T> attempt, boolean hedged) {
+        Exchange<T> exchange = attempt.exchange;
+        Call call = okHttpClient.newCall(exchange.request);
+        synchronized (attempt.calls) {
+            attempt.calls.add(call);
+        }
+        long start = System.currentTimeMillis();
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call failedCall, IOException e) {
+                if (failedCall.isCanceled()) {
+                    releasePermit();
+                    onCallFailed(attempt, null);
+                    return;
+                }
+                recordOutcome(false);
+                log.warn("[QwenHttpClient-{}] 大模型调用网络异常：{}", exchange.traceId, e.getMessage());
+                onCallFailed(attempt, new Failure("大模型调用失败：" + e.getMessage(), true, -1, e));
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (Response closeable = response) {
+                    int code = closeable.code();
+                    if (closeable.isSuccessful()) {
+                        recordOutcome(true);
+                        latencyTracker.record(System.currentTimeMillis() - start);
+                        if (!attempt.settled.compareAndSet(false, true)) {
+                            return;
+                        }
+                        attempt.winner = call;
+                        if (hedged) {
+                            hedgeWins.incrementAndGet();
+                        }
+                        attempt.cancel(call);
+                        try {
+                            exchange.result.complete(exchange.handler.handle(closeable));
+                        } catch (IOException | RuntimeException e) {
+                            exchange.result.completeExceptionally(e);
+                        }
+                        return;
+                    }
+                    // 4xx（限流除外）说明请求本身有问题，上游是健康的
+                    recordOutcome(!isUpstreamFault(code));
+                    onCallFailed(attempt, new Failure("大模型调用失败，状态码：" + code,
+                            retryableStatuses.contains(code), retryAfterMs(closeable), null));
+                }
+            }
+        });
+    }
+
+    /**
+     * 单个调用失败（failure为null表示调用被取消/对冲未发出）
+     * 同一轮的所有调用都结束后才决定是否重试
+     */
+    private <T> void onCallFailed(Attempt<T> attempt, Failure failure) {
+        if (failure != null) {
+            attempt.lastFailure = failure;
+        }
+        if (attempt.pending.decrementAndGet() > 0 || !attempt.settled.compareAndSet(false, true)) {
+            return;
+        }
+        if (attempt.hedgeTimer != null) {
+            attempt.hedgeTimer.cancel(false);
+        }
+        Exchange<T> exchange = attempt.exchange;
+        Failure last = attempt.lastFailure;
+        if (exchange.result.isDone() || last == null) {
+            return;
+        }
+        int nextRetry = attempt.retry + 1;
+        if (!last.retryable) {
+            log.warn("[QwenHttpClient-{}] {}，不可重试", exchange.traceId, last.message);
+            exchange.result.completeExceptionally(last.toException(""));
+            return;
+        }
+        if (nextRetry > retryCount) {
+            log.warn("[QwenHttpClient-{}] {}，重试次数：{}/{}", exchange.traceId, last.message, attempt.retry, retryCount);
+            exchange.result.completeExceptionally(last.toException("，重试次数耗尽"));
+            return;
+        }
+        long delay = backoffDelay(nextRetry, last.retryAfterMs);
+        if (delay < 0) {
+            log.warn("[QwenHttpClient-{}] {}，Retry-After（{}ms）超过最大退避时间，放弃重试",
+                    exchange.traceId, last.message, last.retryAfterMs);
+            exchange.result.completeExceptionally(last.toException("，上游要求等待时间过长"));
+            return;
+        }
+        retries.incrementAndGet();
+        log.warn("[QwenHttpClient-{}] {}，{}ms后重试，重试次数：{}/{}",
+                exchange.traceId, last.message, delay, nextRetry, retryCount);
+        scheduler.schedule(() -> attempt(exchange, nextRetry), delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 指数退避 + 抖动（在[exp/2, exp]内随机），Retry-After作为下限
+     *
+     * @return 延迟毫秒数；Retry-After超过最大延迟时返回-1
+     */
+    private long backoffDelay(int retry, long retryAfterMs) {
+        if (retryAfterMs > retryMaxDelayMs) {
+            return -1;
+        }
+        long exp = Math.min(retryMaxDelayMs, retryBaseDelayMs << Math.min(retry - 1, 20));
+        long jittered = exp / 2 + ThreadLocalRandom.current().nextLong(exp / 2 + 1);
+        return Math.max(jittered, retryAfterMs);
+    }
+
+    /**
+     * 解析Retry-After（秒数或HTTP日期）
+     *
+     * @return 等待毫秒数，无该响应头时返回-1
+     */
+    private long retryAfterMs(Response response) {
+        String value = response.header("Retry-After");
+        if (value == null || value.trim().isEmpty()) {
+            return -1;
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            Date date = response.headers().getDate("Retry-After");
+            return date == null ? -1 : Math.max(date.getTime() - System.currentTimeMillis(), 0);
+        }
+    }
+
+    private long hedgeDelay() {
+        if (!hedgeEnabled || latencyTracker.size() < hedgeMinSamples) {
+            return -1;
+        }
+        return Math.max(hedgeMinDelayMs, latencyTracker.quantile(hedgeQuantile));
+    }
+
+    /**
+     * 状态码是否说明上游故障（限流、5xx及配置为可重试的状态码如408；其余4xx为请求本身的问题）
+     * 可重试即认定为上游暂时不可用，需同样计入熔断失败，否则持续408时熔断永远不会打开
+     */
+    public boolean isUpstreamFault(int code) {
+        return code == 429 || code >= 500 || retryableStatuses.contains(code);
+    }
+
+    private boolean acquirePermit() {
+        return !circuitBreakerEnabled || circuitBreaker.tryAcquire();
+    }
+
+    private void releasePermit() {
+        if (circuitBreakerEnabled) {
+            circuitBreaker.release();
+        }
+    }
+
+    private void recordOutcome(boolean success) {
+        if (!circuitBreakerEnabled) {
+            return;
+        }
+        if (success) {
+            circuitBreaker.recordSuccess();
+        } else {
+            circuitBreaker.recordFailure();
+        }
+    }
+
+    /**
+     * 一次逻辑调用（含所有重试）
+     */
+    private static class Exchange<T> {
+        private final Request request;
+        private final String traceId;
+        private final ResponseHandler<T> handler;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        // 当前轮次（重试时替换）
+        private volatile Attempt<T> current;
+
+        private Exchange(Request request, String traceId, ResponseHandler<T> handler) {
+            this.request = request;
+            this.traceId = traceId;
+            this.handler = handler;
+        }
+    }
+
+    /**
+     * 一轮调用（首个请求 + 可能的对冲请求）
+     */
+    private static class Attempt<T> {
+        private final Exchange<T> exchange;
+        private final int retry;
+        private final List<Call> calls = new ArrayList<>(2);
+        // 尚未结束的调用数
+        private final AtomicInteger pending = new AtomicInteger();
+        // 本轮结果已确定（有调用成功，或全部失败）
+        private final AtomicBoolean settled = new AtomicBoolean();
+        private volatile ScheduledFuture<?> hedgeTimer;
+        private volatile Call winner;
+        private volatile Failure lastFailure;
+
+        private Attempt(Exchange<T> exchange, int retry) {
+            this.exchange = exchange;
+            this.retry = retry;
+        }
+
+        private void cancel(Call except) {
+            if (hedgeTimer != null) {
+                hedgeTimer.cancel(false);
+            }
+            List<Call> snapshot;
+            synchronized (calls) {
+                snapshot = new ArrayList<>(calls);
+            }
+            for (Call call : snapshot) {
+                if (call != except) {
+                    call.cancel();
+                }
+            }
+        }
+    }
+
+    /**
+     * 单个调用的失败信息
+     */
+    private static class Failure {
+        private final String message;
+        private final boolean retryable;
+        private final long retryAfterMs;
+        private final IOException cause;
+
+        private Failure(String message, boolean retryable, long retryAfterMs, IOException cause) {
+            this.message = message;
+            this.retryable = retryable;
+            this.retryAfterMs = retryAfterMs;
+            this.cause = cause;
+        }
+
+        private IOException toException(String suffix) {
+            return new IOException(message + suffix, cause);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.lizy.loganalysishelper.util;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 通义千问请求/响应的流式JSON编解码（Jackson Streaming API）
+ * 1. 请求：JsonGenerator直接写入OkHttp请求体的sink，Prompt各段经Reader逐块转义写出，不生成中间Map树与完整JSON字符串；
+ *    Content-Length由一次只计数不保存的序列化得出（chunked发送时结束块单独写出，会与Nagle/延迟ACK叠加出数十毫秒延迟）
+ * 2. 响应：JsonParser边读边解析，只提取output.text、usage（含命中前缀缓存的token数）与错误信息，其余字段跳过，不读成完整字符串/JsonNode树
+ */
+public final class QwenJsonCodec {
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+    // 线程安全，可全局复用
+    private static final JsonFactory JSON_FACTORY = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    private QwenJsonCodec() {
+    }
+
+    /**
+     * 构建请求体（单条user消息）
+     *
+     * @param model  模型名称
+     * @param prompt Prompt文本
+     * @param stream 是否开启流式增量输出
+     * @return 流式写出的请求体
+     */
+    public static RequestBody requestBody(String model, PromptText prompt, boolean stream) {
+        return requestBody(model, ChatPrompt.of(prompt), stream);
+    }
+
+    /**
+     * 构建请求体（每次writeTo重新生成，支持重试/对冲重复发送）
+     *
+     * @param model  模型名称
+     * @param prompt 按顺序的消息
+     * @param stream 是否开启流式增量输出
+     * @return 流式写出的请求体
+     */
+    public static RequestBody requestBody(String model, ChatPrompt prompt, boolean stream) {
+        return new RequestBody() {
+            // 首次计算后缓存（重试/对冲复用同一请求体）
+            private long contentLength = -1;
+
+            @Override
+            public MediaType contentType() {
+                return JSON;
+            }
+
+            @Override
+            public long contentLength() throws IOException {
+                if (contentLength < 0) {
+                    CountingOutputStream counter = new CountingOutputStream();
+                    writeRequest(counter, model, prompt, stream);
+                    contentLength = counter.count;
+                }
+                return contentLength;
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                writeRequest(sink.outputStream(), model, prompt, stream);
+            }
+        };
+    }
+
+    static void writeRequest(OutputStream out, String model, ChatPrompt prompt, boolean stream) throws IOException {
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeStringField("model", model);
+
+            generator.writeObjectFieldStart("input");
+            generator.writeArrayFieldStart("messages");
+            for (ChatPrompt.Message message : prompt.getMessages()) {
+                PromptText content = message.getContent();
+                generator.writeStartObject();
+                generator.writeStringField("role", message.getRole());
+                generator.writeFieldName("content");
+                generator.writeString(content.reader(), content.length());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+
+            generator.writeObjectFieldStart("parameters");
+            generator.writeStringField("result_format", "text");
+            generator.writeNumberField("temperature", 0.2);
+            generator.writeNumberField("top_p", 0.7);
+            if (stream) {
+                // 增量输出：每个SSE事件只包含新生成的片段
+                generator.writeBooleanField("incremental_output", true);
+            }
+            generator.writeEndObject();
+
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * 解析响应（完整响应体或单个SSE事件的data）
+     *
+     * @param in 响应JSON输入流
+     * @return 解析结果（无output.text时text为null）
+     * @throws IOException 非JSON对象/读取异常
+     */
+    public static Result readResult(InputStream in) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(in)) {
+            return readResult(parser);
+        }
+    }
+
+    /**
+     * 解析单个SSE事件的data内容
+     */
+    public static Result readResult(String json) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            return readResult(parser);
+        }
+    }
+
+    private static Result readResult(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("大模型响应不是JSON对象");
+        }
+        Result result = new Result();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("output".equals(field) && value == JsonToken.START_OBJECT) {
+                readOutput(parser, result);
+            } else if ("usage".equals(field) && value == JsonToken.START_OBJECT) {
+                readUsage(parser, result);
+            } else if ("code".equals(field) && value.isScalarValue()) {
+                result.code = parser.getValueAsString();
+            } else if ("message".equals(field) && value.isScalarValue()) {
+                result.message = parser.getValueAsString();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return result;
+    }
+
+    private static void readOutput(JsonParser parser, Result result) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("text".equals(field) && value == JsonToken.VALUE_STRING) {
+                result.text = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private static void readUsage(JsonParser parser, Result result) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("input_tokens".equals(field) && value.isNumeric()) {
+                result.usage = true;
+                result.inputTokens = parser.getLongValue();
+            } else if ("output_tokens".equals(field) && value.isNumeric()) {
+                result.usage = true;
+                result.outputTokens = parser.getLongValue();
+            } else if ("prompt_tokens_details".equals(field) && value == JsonToken.START_OBJECT) {
+                readPromptTokensDetails(parser, result);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * usage.prompt_tokens_details：cached_tokens为命中服务端前缀缓存的输入token数
+     */
+    private static void readPromptTokensDetails(JsonParser parser, Result result) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("cached_tokens".equals(field) && value.isNumeric()) {
+                result.cachedTokens = parser.getLongValue();
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * 只统计字节数、不保存内容的输出流
+     */
+    private static final class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+    /**
+     * 响应解析结果
+     */
+    public static final class Result {
+        private String text;
+        private boolean usage;
+        private long inputTokens;
+        private long outputTokens;
+        private long cachedTokens;
+        private String code;
+        private String message;
+
+        public String getText() {
+            return text;
+        }
+
+        public boolean hasUsage() {
+            return usage;
+        }
+
+        public long getInputTokens() {
+            return inputTokens;
+        }
+
+        public long getOutputTokens() {
+            return outputTokens;
+        }
+
+        /**
+         * 命中服务端前缀缓存的输入token数（包含在inputTokens内）
+         */
+        public long getCachedTokens() {
+            return cachedTokens;
+        }
+
+        public String getCode() {
+            return code;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+}
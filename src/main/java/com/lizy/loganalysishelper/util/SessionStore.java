@@ -0,0 +1,53 @@
+package com.lizy.loganalysishelper.util;
+
+import com.lizy.loganalysishelper.entity.SessionSnapshot;
+
+import java.util.Map;
+
+/**
+ * 会话持久化存储（ConversationMemoryManager的内存LRU之后的一层）
+ * 1. 启动时loadAll恢复会话；内存淘汰后再次访问时通过load按需加载
+ * 2. 每轮对话结束save一次完整快照，会话过期时delete
+ * 实现需线程安全；共享型后端（如Redis/数据库）实现本接口即可在多个实例间共享会话
+ */
+public interface SessionStore {
+
+    /**
+     * 加载全部有效会话（启动恢复）
+     *
+     * @return sessionId -> 会话快照
+     */
+    Map<String, SessionSnapshot> loadAll();
+
+    /**
+     * 按ID加载会话
+     *
+     * @return 不存在返回null
+     */
+    SessionSnapshot load(String sessionId);
+
+    /**
+     * 保存会话完整快照（覆盖旧值）
+     */
+    void save(SessionSnapshot snapshot);
+
+    /**
+     * 删除会话
+     */
+    void delete(String sessionId);
+
+    /**
+     * 已存储的会话数
+     */
+    int size();
+
+    /**
+     * 存储统计
+     */
+    Map<String, Object> stats();
+
+    /**
+     * 关闭存储，释放资源
+     */
+    void close();
+}
@@ -0,0 +1,442 @@
+package com.lizy.loganalysishelper.util;
+
+import com.lizy.loganalysishelper.config.LocalRuleProperties;
+import com.lizy.loganalysishelper.entity.ParsedThrowable;
+import com.lizy.loganalysishelper.entity.StackFrame;
+import lombok.Data;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 相似异常索引（MinHash + LSH，纯本地计算）：指纹缓存只能精确命中，同一问题行号偏移、异常信息不同、调用路径略有差异时
+ * 在已分析过的异常中查找最相似的一个，相似度达到阈值即复用其分析结果，不再调用大模型
+ * 1. 特征：异常链各层类型 + 归一化调用栈帧（类名.方法名，不含行号）+ 相邻帧对（保留调用顺序）
+ * 2. 候选：128个MinHash签名分为16段（每段8个），任一段相同即为候选（相似度0.8时召回约95%，0.5时仅约6%进入校验）
+ * 3. 校验：根因类型必须相同，候选按特征集合的精确Jaccard相似度取最高者
+ * 4. 复用：业务代码帧行号与历史异常不同时按当前日志修正，返回给用户时注明相似度
+ * 索引只存特征与指纹，分析结果仍从AnalysisResultCache读取（缓存过期即视为未命中）
+ * 相似度说明只加在响应上，不写入缓存，避免复用结果再被复用时说明层层叠加
+ */
+@Component
+public class SimilarTraceIndex {
+    private static final Logger log = LoggerFactory.getLogger(SimilarTraceIndex.class);
+    // MinHash签名长度 = 分段数 × 每段行数
+    private static final int BANDS = 16;
+    private static final int ROWS = 8;
+    private static final int SIGNATURE_LENGTH = BANDS * ROWS;
+    // 每个MinHash函数：(a·x + b) >>> 33（a为奇数，multiply-add-shift）
+    private static final long[] MULTIPLIERS = new long[SIGNATURE_LENGTH];
+    private static final long[] ADDENDS = new long[SIGNATURE_LENGTH];
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    // 复用结果中修正行号时，每个异常最多记录的业务代码帧数
+    private static final int MAX_APP_FRAMES = 32;
+    private static final String NOTICE_PREFIX = "> 该异常与已分析过的异常调用栈相似度为";
+
+    static {
+        long seed = 0x5DEECE66DL;
+        for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+            seed += 0x9E3779B97F4A7C15L;
+            MULTIPLIERS[i] = mix64(seed) | 1L;
+            seed += 0x9E3779B97F4A7C15L;
+            ADDENDS[i] = mix64(seed);
+        }
+    }
+
+    @Value("${qwen.similar.enabled:true}")
+    private boolean enabled;
+
+    @Value("${qwen.similar.threshold:0.8}")
+    private double threshold;
+
+    @Value("${qwen.similar.max-entries:10000}")
+    private int maxEntries;
+
+    @Value("${qwen.similar.max-frames:256}")
+    private int maxFrames;
+
+    @Autowired
+    private AnalysisResultCache analysisResultCache;
+
+    @Autowired
+    private LocalRuleProperties ruleProperties;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // 环形槽位（满时覆盖最早写入的条目）
+    private IndexEntry[] slots;
+    private int nextSlot;
+    private final Map<String, Integer> slotByFingerprint = new HashMap<>();
+    // LSH分段桶：分段键 → 槽位列表
+    private final Map<Long, List<Integer>> buckets = new HashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong candidates = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        slots = new IndexEntry[Math.max(maxEntries, 1)];
+        log.info("[SimilarTraceIndex] 相似异常索引启用：{}，相似度阈值：{}，容量：{}", isEnabled(), threshold, slots.length);
+    }
+
+    /**
+     * 分析结果缓存关闭时无可复用的结果，索引随之关闭
+     */
+    public boolean isEnabled() {
+        return enabled && analysisResultCache.isEnabled();
+    }
+
+    /**
+     * 登记已分析的异常（同一指纹重复登记时忽略）
+     *
+     * @param fingerprint 异常指纹（分析结果在缓存中的键）
+     * @param parsed      结构化异常
+     */
+    public void add(String fingerprint, ParsedThrowable parsed) {
+        if (!isEnabled() || fingerprint == null || parsed == null) {
+            return;
+        }
+        lock.readLock().lock();
+        try {
+            if (slotByFingerprint.containsKey(fingerprint)) {
+                return;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        IndexEntry entry = new IndexEntry(fingerprint, parsed.rootCause().getExceptionType(), features(parsed), appLocations(parsed));
+        lock.writeLock().lock();
+        try {
+            if (slotByFingerprint.containsKey(fingerprint)) {
+                return;
+            }
+            int slot = nextSlot;
+            nextSlot = (nextSlot + 1) % slots.length;
+            IndexEntry evicted = slots[slot];
+            if (evicted != null) {
+                slotByFingerprint.remove(evicted.fingerprint);
+                for (long key : evicted.bandKeys) {
+                    List<Integer> bucket = buckets.get(key);
+                    if (bucket != null) {
+                        bucket.remove(Integer.valueOf(slot));
+                        if (bucket.isEmpty()) {
+                            buckets.remove(key);
+                        }
+                    }
+                }
+            }
+            slots[slot] = entry;
+            slotByFingerprint.put(fingerprint, slot);
+            for (long key : entry.bandKeys) {
+                buckets.computeIfAbsent(key, k -> new ArrayList<>(2)).add(slot);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 查找相似度达到阈值的已分析异常，并取出（修正后的）分析结果
+     *
+     * @param parsed 当前结构化异常
+     * @return 可复用的分析；无足够相似的异常或其结果已过期时返回null
+     */
+    public SimilarAnalysis findSimilar(ParsedThrowable parsed) {
+        if (!isEnabled() || parsed == null) {
+            return null;
+        }
+        long[] features = features(parsed);
+        long[] bandKeys = bandKeys(signature(features));
+        String rootCauseType = parsed.rootCause().getExceptionType();
+
+        IndexEntry best = null;
+        double bestSimilarity = 0;
+        lock.readLock().lock();
+        try {
+            BitSet seen = new BitSet(slots.length);
+            for (long key : bandKeys) {
+                List<Integer> bucket = buckets.get(key);
+                if (bucket == null) {
+                    continue;
+                }
+                for (int i = 0; i < bucket.size(); i++) {
+                    int slot = bucket.get(i);
+                    if (seen.get(slot)) {
+                        continue;
+                    }
+                    seen.set(slot);
+                    IndexEntry entry = slots[slot];
+                    if (!entry.rootCauseType.equals(rootCauseType)) {
+                        continue;
+                    }
+                    double similarity = jaccard(features, entry.features);
+                    if (similarity > bestSimilarity) {
+                        best = entry;
+                        bestSimilarity = similarity;
+                    }
+                }
+            }
+            candidates.addAndGet(seen.cardinality());
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (best == null || bestSimilarity < threshold) {
+            misses.incrementAndGet();
+            return null;
+        }
+        String result = analysisResultCache.get(best.fingerprint);
+        if (result == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        SimilarAnalysis analysis = new SimilarAnalysis();
+        analysis.setFingerprint(best.fingerprint);
+        analysis.setSimilarity(bestSimilarity);
+        analysis.setResult(adapt(result, best, parsed));
+        analysis.setResponse(String.format("%s%d%%（根因类型相同），以下复用其分析结果，业务代码行号已按当前日志修正%n%n%s",
+                NOTICE_PREFIX, Math.round(bestSimilarity * 100), analysis.getResult()));
+        return analysis;
+    }
+
+    /**
+     * 索引统计
+     */
+    public Map<String, Object> stats() {
+        long hit = hits.get();
+        long miss = misses.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", isEnabled());
+        stats.put("threshold", threshold);
+        lock.readLock().lock();
+        try {
+            stats.put("entries", slotByFingerprint.size());
+            stats.put("buckets", buckets.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+        stats.put("hits", hit);
+        stats.put("misses", miss);
+        stats.put("hitRate", hit + miss == 0 ? 0.0 : (double) hit / (hit + miss));
+        stats.put("avgCandidates", hit + miss == 0 ? 0.0 : (double) candidates.get() / (hit + miss));
+        return stats;
+    }
+
+    /**
+     * 复用历史结果：业务代码帧（同类同方法）行号不同时按当前日志修正
+     */
+    private String adapt(String result, IndexEntry entry, ParsedThrowable parsed) {
+        String adapted = stripNotice(result);
+        for (Map.Entry<String, String> location : appLocations(parsed).entrySet()) {
+            String previous = entry.appLocations.get(location.getKey());
+            if (previous != null && !previous.equals(location.getValue())) {
+                // 行号后不能紧跟数字，避免Foo.java:4误替换Foo.java:42
+                adapted = Pattern.compile(Pattern.quote(previous) + "(?!\\d)").matcher(adapted)
+                        .replaceAll(Matcher.quoteReplacement(location.getValue()));
+            }
+        }
+        return adapted;
+    }
+
+    /**
+     * 去掉开头的相似度说明（兼容此前连同说明一起写入磁盘缓存的结果）
+     */
+    private static String stripNotice(String result) {
+        String stripped = result;
+        while (stripped.startsWith(NOTICE_PREFIX)) {
+            int end = stripped.indexOf('\n');
+            if (end < 0) {
+                return stripped;
+            }
+            stripped = stripped.substring(end + 1).replaceFirst("^\\s+", "");
+        }
+        return stripped;
+    }
+
+    /**
+     * 提取特征并哈希为有序去重的long数组（直接对类名/方法名字符哈希，不拼接字符串）
+     */
+    private long[] features(ParsedThrowable parsed) {
+        List<ParsedThrowable> chain = parsed.causeChain();
+        int capacity = 0;
+        for (ParsedThrowable throwable : chain) {
+            capacity += 1 + 2 * Math.min(throwable.getFrames().size(), maxFrames);
+        }
+        long[] hashes = new long[capacity];
+        int count = 0;
+        for (ParsedThrowable throwable : chain) {
+            hashes[count++] = mix64(hash(FNV_OFFSET ^ 'T', throwable.getExceptionType()));
+            long previous = 0;
+            List<StackFrame> frames = throwable.getFrames();
+            for (int i = 0; i < frames.size() && i < maxFrames; i++) {
+                StackFrame frame = frames.get(i);
+                long current = hash(hash(FNV_OFFSET ^ 'F',
+                        ExceptionFingerprint.normalizeGeneratedName(frame.getClassName())), frame.getMethodName());
+                hashes[count++] = mix64(current);
+                if (i > 0) {
+                    // 相邻帧对（调用方向）
+                    hashes[count++] = mix64(previous * FNV_PRIME + current);
+                }
+                previous = current;
+            }
+        }
+        Arrays.sort(hashes, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || hashes[i] != hashes[distinct - 1]) {
+                hashes[distinct++] = hashes[i];
+            }
+        }
+        return Arrays.copyOf(hashes, distinct);
+    }
+
+    /**
+     * 业务代码帧位置：类名.方法名 → 文件名:行号（同一方法出现多次时取最靠近栈顶的一次）
+     */
+    private Map<String, String> appLocations(ParsedThrowable parsed) {
+        Map<String, String> locations = new HashMap<>();
+        for (ParsedThrowable throwable : parsed.causeChain()) {
+            for (StackFrame frame : throwable.getFrames()) {
+                if (locations.size() >= MAX_APP_FRAMES) {
+                    return locations;
+                }
+                if (frame.getFileName() != null && frame.getLineNumber() >= 0 && isAppFrame(frame)) {
+                    locations.putIfAbsent(frameKey(frame), frame.getFileName() + ":" + frame.getLineNumber());
+                }
+            }
+        }
+        return locations;
+    }
+
+    private boolean isAppFrame(StackFrame frame) {
+        for (String appPackage : ruleProperties.getAppPackages()) {
+            if (frame.getClassName().startsWith(appPackage)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String frameKey(StackFrame frame) {
+        return ExceptionFingerprint.normalizeGeneratedName(frame.getClassName()) + "." + frame.getMethodName();
+    }
+
+    private static int[] signature(long[] features) {
+        int[] signature = new int[SIGNATURE_LENGTH];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        for (long feature : features) {
+            for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+                int value = (int) ((feature * MULTIPLIERS[i] + ADDENDS[i]) >>> 33);
+                if (value < signature[i]) {
+                    signature[i] = value;
+                }
+            }
+        }
+        return signature;
+    }
+
+    private static long[] bandKeys(int[] signature) {
+        long[] keys = new long[BANDS];
+        for (int band = 0; band < BANDS; band++) {
+            long key = band;
+            for (int row = 0; row < ROWS; row++) {
+                key = mix64(key * 31 + signature[band * ROWS + row]);
+            }
+            keys[band] = key;
+        }
+        return keys;
+    }
+
+    /**
+     * 两个有序特征数组的精确Jaccard相似度
+     */
+    private static double jaccard(long[] a, long[] b) {
+        int i = 0;
+        int j = 0;
+        int intersection = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                intersection++;
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        int union = a.length + b.length - intersection;
+        return union == 0 ? 0 : intersection / (double) union;
+    }
+
+    /**
+     * 在已有哈希值上继续累加字符串（FNV-1a，段之间以'.'分隔）
+     */
+    private static long hash(long hash, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return (hash ^ '.') * FNV_PRIME;
+    }
+
+    /**
+     * SplitMix64终混函数
+     */
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * 索引条目
+     */
+    private static final class IndexEntry {
+        private final String fingerprint;
+        private final String rootCauseType;
+        private final long[] features;
+        private final long[] bandKeys;
+        private final Map<String, String> appLocations;
+
+        IndexEntry(String fingerprint, String rootCauseType, long[] features, Map<String, String> appLocations) {
+            this.fingerprint = fingerprint;
+            this.rootCauseType = rootCauseType;
+            this.features = features;
+            this.bandKeys = bandKeys(signature(features));
+            this.appLocations = appLocations;
+        }
+    }
+
+    /**
+     * 相似异常的可复用分析
+     */
+    @Data
+    public static class SimilarAnalysis {
+        // 被复用的历史异常指纹
+        private String fingerprint;
+        // Jaccard相似度
+        private double similarity;
+        // 修正后的分析结果（不含相似度说明，以当前指纹写入缓存）
+        private String result;
+        // 返回给用户的结果（开头注明相似度）
+        private String response;
+    }
+}
@@ -0,0 +1,195 @@
+package com.lizy.loganalysishelper.util;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 单飞（Single-Flight）合并器：相同key的并发请求只执行一次加载，所有等待者共享同一结果
+ * 1. 首个请求在执行器中发起真正的加载，后续请求直接挂到同一个共享Future上
+ * 2. 每个等待者拿到的是共享Future的独立视图，单个等待者超时/取消不会影响其他人
+ * 3. 异步加载的所有等待者都取消后，取消加载本身（退出排队/终止上游调用）
+ * 4. 加载完成（成功或失败）后立即移除key，后续请求重新发起加载
+ *
+ * @param <T> 结果类型
+ */
+public class SingleFlight<T> {
+    // 进行中的共享加载
+    private final Map<String, Flight<T>> inFlight = new ConcurrentHashMap<>();
+    // 执行真正加载的线程池（与等待者线程隔离）
+    private final Executor executor;
+
+    // 统计：发起的加载次数 / 合并掉的请求数
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    public SingleFlight(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * 提交加载任务（相同key进行中时直接复用）
+     *
+     * @param key    合并key（如异常指纹）
+     * @param loader 真正的加载逻辑
+     * @return 当前等待者专属的结果视图（可单独取消/超时）
+     */
+    public CompletableFuture<T> execute(String key, Callable<T> loader) {
+        Flight<T> created = new Flight<>();
+        Flight<T> existing = join(key, created);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return view(key, existing);
+        }
+        loads.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                try {
+                    created.shared.complete(loader.call());
+                } catch (Throwable e) {
+                    created.shared.completeExceptionally(e);
+                } finally {
+                    inFlight.remove(key, created);
+                }
+            });
+        } catch (RuntimeException e) {
+            // 执行器拒绝：唤醒已挂上的等待者，避免永久阻塞
+            inFlight.remove(key, created);
+            created.shared.completeExceptionally(e);
+        }
+        return view(key, created);
+    }
+
+    /**
+     * 提交异步加载任务（加载逻辑本身返回Future，不占用执行器线程）
+     *
+     * @param key    合并key（如异常指纹）
+     * @param loader 发起异步加载的逻辑
+     * @return 当前等待者专属的结果视图（可单独取消/超时，全部等待者取消时一并取消加载）
+     */
+    public CompletableFuture<T> executeAsync(String key, Supplier<CompletableFuture<T>> loader) {
+        Flight<T> created = new Flight<>();
+        Flight<T> existing = join(key, created);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return view(key, existing);
+        }
+        loads.incrementAndGet();
+        CompletableFuture<T> source;
+        try {
+            source = loader.get();
+        } catch (RuntimeException e) {
+            source = new CompletableFuture<>();
+            source.completeExceptionally(e);
+        }
+        boolean abandoned = created.attach(source);
+        source.whenComplete((result, e) -> {
+            inFlight.remove(key, created);
+            if (e != null) {
+                created.shared.completeExceptionally(e);
+            } else {
+                created.shared.complete(result);
+            }
+        });
+        if (abandoned) {
+            // 发起加载期间等待者已全部取消（当时源Future尚未登记，无法由等待者取消）
+            inFlight.remove(key, created);
+            source.cancel(true);
+        }
+        return view(key, created);
+    }
+
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    public long getLoads() {
+        return loads.get();
+    }
+
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    /**
+     * 登记为等待者：有进行中的加载时加入并返回它，否则登记created并返回null（由调用方发起加载）
+     */
+    private Flight<T> join(String key, Flight<T> created) {
+        created.join();
+        while (true) {
+            Flight<T> existing = inFlight.putIfAbsent(key, created);
+            if (existing == null) {
+                return null;
+            }
+            if (existing.join()) {
+                return existing;
+            }
+            // 已被全部等待者放弃（正在取消），不再挂靠
+            inFlight.remove(key, existing);
+        }
+    }
+
+    private CompletableFuture<T> view(String key, Flight<T> flight) {
+        CompletableFuture<T> view = flight.shared.thenApply(Function.identity());
+        view.whenComplete((result, e) -> {
+            if (view.isCancelled() && flight.leave()) {
+                inFlight.remove(key, flight);
+                flight.source.cancel(true);
+            }
+        });
+        return view;
+    }
+
+    /**
+     * 一次共享加载
+     */
+    private static class Flight<T> {
+        private final CompletableFuture<T> shared = new CompletableFuture<>();
+        // 异步加载的源Future（同步加载为null，不可取消）
+        private volatile CompletableFuture<T> source;
+        // 尚未取消的等待者数
+        private int waiters;
+        private boolean abandoned;
+
+        synchronized boolean join() {
+            if (abandoned) {
+                return false;
+            }
+            waiters++;
+            return true;
+        }
+
+        /**
+         * 登记异步加载的源Future
+         *
+         * @return 等待者是否已全部取消（调用方应取消源Future）
+         */
+        synchronized boolean attach(CompletableFuture<T> source) {
+            this.source = source;
+            if (waiters == 0 && !source.isDone()) {
+                abandoned = true;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * 等待者取消
+         *
+         * @return 是否为最后一个等待者且加载可取消（调用方应取消源Future）
+         */
+        synchronized boolean leave() {
+            waiters--;
+            if (waiters == 0 && source != null && !shared.isDone()) {
+                abandoned = true;
+                return true;
+            }
+            return false;
+        }
+    }
+}
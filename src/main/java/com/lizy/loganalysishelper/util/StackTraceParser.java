@@ -0,0 +1,180 @@
+package com.lizy.loganalysishelper.util;
+
+import com.lizy.loganalysishelper.entity.ParsedThrowable;
+import com.lizy.loganalysishelper.entity.StackFrame;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Java异常调用栈解析器：把原始异常日志解析为结构化异常（异常链、调用栈帧、Suppressed）
+ * 通过缩进区分嵌套层级（Suppressed比所属异常多一层缩进），缩进丢失时退化为挂到顶层异常
+ */
+public final class StackTraceParser {
+    // 异常首行：[Exception in thread "xx"] 全限定异常名[: 信息]
+    private static final Pattern HEADER_PATTERN = Pattern.compile(
+            "^(?:Exception in thread \"[^\"]*\" )?((?:[a-zA-Z_$][\\w$]*\\.)+[A-Z][\\w$]*(?:Exception|Error|Throwable))(?::\\s?(.*))?$");
+    // 行内任意位置的异常名（日志行中间嵌入异常时兜底使用）
+    private static final Pattern INLINE_TYPE_PATTERN = Pattern.compile(
+            "\\b((?:[a-zA-Z_$][\\w$]*\\.)+[A-Z][\\w$]*(?:Exception|Error|Throwable))\\b(?::\\s?(.*))?");
+    // 调用栈帧：at [模块/]类名.方法名(源文件:行号)
+    private static final Pattern FRAME_PATTERN = Pattern.compile(
+            "^at\\s+(?:[\\w.$-]+(?:@[\\w.-]+)?/)?([^\\s(]+)\\.([^.\\s(]+)\\(([^)]*)\\)");
+    private static final Pattern OMITTED_PATTERN = Pattern.compile("^\\.\\.\\. (\\d+) (?:more|common frames omitted)");
+    private static final String CAUSED_BY = "Caused by:";
+    private static final String SUPPRESSED = "Suppressed:";
+    // 异常信息最多拼接的续行数（多行message）
+    private static final int MAX_MESSAGE_LINES = 5;
+
+    private StackTraceParser() {
+    }
+
+    /**
+     * 解析异常日志
+     *
+     * @param exceptionLog 原始异常日志（可包含异常前后的普通日志行）
+     * @return 顶层异常；未识别到任何异常时返回null
+     */
+    public static ParsedThrowable parse(String exceptionLog) {
+        if (exceptionLog == null || exceptionLog.isEmpty()) {
+            return null;
+        }
+        String[] lines = exceptionLog.split("\\r?\\n");
+        ParsedThrowable root = null;
+        ParsedThrowable current = null;
+        // 每个缩进层级上最近的异常（用于挂接Caused by/Suppressed）
+        Map<Integer, ParsedThrowable> levels = new HashMap<>();
+        int messageLines = 0;
+
+        for (String rawLine : lines) {
+            String line = rawLine.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            int indent = indentOf(rawLine);
+
+            if (root == null) {
+                Matcher header = HEADER_PATTERN.matcher(line);
+                if (header.matches()) {
+                    root = newThrowable(header.group(1), header.group(2));
+                    current = root;
+                    levels.put(0, root);
+                }
+                continue;
+            }
+
+            Matcher frame = FRAME_PATTERN.matcher(line);
+            if (frame.find()) {
+                current.getFrames().add(parseFrame(frame));
+                messageLines = MAX_MESSAGE_LINES;
+                continue;
+            }
+            Matcher omitted = OMITTED_PATTERN.matcher(line);
+            if (omitted.find()) {
+                current.setFramesOmitted(Integer.parseInt(omitted.group(1)));
+                continue;
+            }
+            if (line.startsWith(CAUSED_BY) || line.startsWith(SUPPRESSED)) {
+                boolean suppressed = line.startsWith(SUPPRESSED);
+                String body = line.substring(suppressed ? SUPPRESSED.length() : CAUSED_BY.length()).trim();
+                Matcher header = HEADER_PATTERN.matcher(body);
+                if (!header.matches()) {
+                    continue;
+                }
+                ParsedThrowable parsed = newThrowable(header.group(1), header.group(2));
+                if (suppressed) {
+                    ParsedThrowable owner = levels.get(indent - 1);
+                    (owner == null ? root : owner).getSuppressed().add(parsed);
+                } else {
+                    ParsedThrowable owner = levels.get(indent);
+                    ParsedThrowable tail = (owner == null ? current : owner).rootCause();
+                    tail.setCause(parsed);
+                }
+                levels.put(indent, parsed);
+                // 更深层级的记录已失效
+                levels.keySet().removeIf(level -> level > indent);
+                current = parsed;
+                messageLines = 0;
+                continue;
+            }
+            // 异常首行之后、首个帧之前的文本视为多行异常信息
+            if (messageLines < MAX_MESSAGE_LINES && current.getFrames().isEmpty()) {
+                current.setMessage(current.getMessage() == null ? line : current.getMessage() + "\n" + line);
+                messageLines++;
+            }
+        }
+
+        if (root == null) {
+            // 兜底：异常嵌在普通日志行中间（如 "ERROR xxx - 调用失败 java.net.ConnectException: ..."）
+            Matcher inline = INLINE_TYPE_PATTERN.matcher(exceptionLog);
+            if (inline.find()) {
+                root = newThrowable(inline.group(1), inline.group(2));
+            }
+        }
+        return root;
+    }
+
+    /**
+     * 调用栈帧行中的类名（供调用栈精简按包归类）
+     *
+     * @param line 去除首尾空白后的日志行
+     * @return 类全限定名；非调用栈帧行返回null
+     */
+    static String frameClassName(String line) {
+        if (!line.startsWith("at")) {
+            return null;
+        }
+        Matcher frame = FRAME_PATTERN.matcher(line);
+        return frame.find() ? frame.group(1) : null;
+    }
+
+    private static ParsedThrowable newThrowable(String type, String message) {
+        ParsedThrowable throwable = new ParsedThrowable();
+        throwable.setExceptionType(type);
+        if (message != null && !message.trim().isEmpty()) {
+            throwable.setMessage(message.trim());
+        }
+        return throwable;
+    }
+
+    private static StackFrame parseFrame(Matcher frame) {
+        StackFrame stackFrame = new StackFrame();
+        stackFrame.setClassName(frame.group(1));
+        stackFrame.setMethodName(frame.group(2));
+        String source = frame.group(3);
+        int colon = source.lastIndexOf(':');
+        if (colon > 0) {
+            stackFrame.setFileName(source.substring(0, colon));
+            try {
+                stackFrame.setLineNumber(Integer.parseInt(source.substring(colon + 1).trim()));
+            } catch (NumberFormatException e) {
+                stackFrame.setLineNumber(-1);
+            }
+        } else if (!source.isEmpty() && !"Unknown Source".equals(source)) {
+            // Native Method / <generated> 等
+            stackFrame.setFileName(source);
+        }
+        return stackFrame;
+    }
+
+    /**
+     * 缩进层级：每个制表符或每4个空格算一级
+     */
+    private static int indentOf(String rawLine) {
+        int tabs = 0;
+        int spaces = 0;
+        for (int i = 0; i < rawLine.length(); i++) {
+            char c = rawLine.charAt(i);
+            if (c == '\t') {
+                tabs++;
+            } else if (c == ' ') {
+                spaces++;
+            } else {
+                break;
+            }
+        }
+        return tabs + spaces / 4;
+    }
+}
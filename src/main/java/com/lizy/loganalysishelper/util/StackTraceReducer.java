@@ -0,0 +1,326 @@
+package com.lizy.loganalysishelper.util;
+
+import com.lizy.loganalysishelper.config.LocalRuleProperties;
+import com.lizy.loganalysishelper.config.TraceReductionProperties;
+import lombok.Data;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 调用栈预精简：构建Prompt前去掉对分析无用的帧，只影响发送给大模型的内容（会话与缓存指纹仍使用原文）
+ * 每段连续调用栈帧依次处理：
+ * 1. 递归折叠：连续重复的帧序列（如StackOverflowError）只保留一次，并注明重复次数
+ * 2. 框架帧折叠：连续的Spring/Tomcat/反射/CGLIB等框架帧按包归类折叠为一行
+ * 始终保留：异常首行/Caused by/Suppressed/"... N more"等非帧行、每段栈顶帧、业务代码帧、业务代码直接调用的框架帧
+ */
+@Component
+public class StackTraceReducer {
+    private static final Logger log = LoggerFactory.getLogger(StackTraceReducer.class);
+
+    @Autowired
+    private TraceReductionProperties properties;
+
+    @Autowired
+    private LocalRuleProperties ruleProperties;
+
+    @PostConstruct
+    public void init() {
+        log.info("[StackTraceReducer] 调用栈预精简启用：{}，框架包前缀数：{}，业务包前缀：{}",
+                properties.isEnabled(), properties.getFrameworkPackages().size(), ruleProperties.getAppPackages());
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * 精简异常日志中的调用栈
+     *
+     * @param content 原始输入
+     * @return 精简结果（无可精简内容时text即原文）
+     */
+    public ReducedTrace reduce(String content) {
+        ReducedTrace result = new ReducedTrace();
+        String[] lines = content.split("\\r?\\n");
+        StringBuilder reduced = new StringBuilder(content.length());
+        List<String> frameLines = new ArrayList<>();
+        List<String> frameClasses = new ArrayList<>();
+        for (String line : lines) {
+            String className = StackTraceParser.frameClassName(line.trim());
+            if (className != null) {
+                frameLines.add(line);
+                frameClasses.add(className);
+                continue;
+            }
+            reduceSection(frameLines, frameClasses, reduced, result);
+            reduced.append(line).append('\n');
+        }
+        reduceSection(frameLines, frameClasses, reduced, result);
+
+        result.setOriginalTokens(TokenEstimator.estimate(content));
+        if (result.getKeptFrames() == result.getOriginalFrames()) {
+            // 没有折叠任何帧，直接使用原文
+            result.setText(content);
+            result.setReducedTokens(result.getOriginalTokens());
+        } else {
+            result.setText(reduced.toString().trim());
+            result.setReducedTokens(TokenEstimator.estimate(result.getText()));
+        }
+        return result;
+    }
+
+    /**
+     * 处理一段连续的调用栈帧并清空缓冲
+     */
+    private void reduceSection(List<String> frameLines, List<String> frameClasses,
+                               StringBuilder reduced, ReducedTrace result) {
+        if (frameLines.isEmpty()) {
+            return;
+        }
+        result.setOriginalFrames(result.getOriginalFrames() + frameLines.size());
+        List<Entry> entries = foldCycles(frameLines, frameClasses, result);
+        collapseFrameworkFrames(entries, reduced, result);
+        frameLines.clear();
+        frameClasses.clear();
+    }
+
+    /**
+     * 递归折叠：在每个位置寻找连续重复次数最多（节省帧数最多）的帧序列周期
+     */
+    private List<Entry> foldCycles(List<String> frameLines, List<String> frameClasses, ReducedTrace result) {
+        int count = frameLines.size();
+        // 帧文本转为整数ID，循环比较只比较ID
+        int[] ids = new int[count];
+        Map<String, Integer> idOf = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            String key = frameLines.get(i).trim();
+            Integer id = idOf.get(key);
+            if (id == null) {
+                id = idOf.size();
+                idOf.put(key, id);
+            }
+            ids[i] = id;
+        }
+
+        int minRepeats = Math.max(properties.getMinCycleRepeats(), 2);
+        List<Entry> entries = new ArrayList<>(count);
+        int pos = 0;
+        while (pos < count) {
+            int bestPeriod = 0;
+            int bestRepeats = 1;
+            int maxPeriod = Math.min(properties.getMaxCyclePeriod(), (count - pos) / minRepeats);
+            for (int period = 1; period <= maxPeriod; period++) {
+                int repeats = 1;
+                while (pos + (repeats + 1) * period <= count && sameBlock(ids, pos, pos + repeats * period, period)) {
+                    repeats++;
+                }
+                if (repeats >= minRepeats && (repeats - 1) * period > (bestRepeats - 1) * bestPeriod) {
+                    bestPeriod = period;
+                    bestRepeats = repeats;
+                }
+            }
+            if (bestPeriod == 0) {
+                entries.add(Entry.frame(frameLines.get(pos), frameClasses.get(pos)));
+                pos++;
+                continue;
+            }
+            for (int i = pos; i < pos + bestPeriod; i++) {
+                entries.add(Entry.frame(frameLines.get(i), frameClasses.get(i)));
+            }
+            int folded = (bestRepeats - 1) * bestPeriod;
+            entries.add(Entry.marker(indentOf(frameLines.get(pos)) + "... above " + bestPeriod
+                    + " frame(s) repeated " + (bestRepeats - 1) + " more times, " + folded + " frames folded"));
+            result.setFoldedFrames(result.getFoldedFrames() + folded);
+            pos += bestRepeats * bestPeriod;
+        }
+        return entries;
+    }
+
+    private static boolean sameBlock(int[] ids, int first, int second, int length) {
+        for (int i = 0; i < length; i++) {
+            if (ids[first + i] != ids[second + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 框架帧折叠：不需保留的连续框架帧达到阈值时，按包归类输出为一行摘要
+     */
+    private void collapseFrameworkFrames(List<Entry> entries, StringBuilder reduced, ReducedTrace result) {
+        int size = entries.size();
+        boolean[] collapsible = new boolean[size];
+        int frameIndex = 0;
+        for (int i = 0; i < size; i++) {
+            Entry entry = entries.get(i);
+            if (entry.className == null) {
+                continue;
+            }
+            boolean top = frameIndex++ < properties.getKeepTopFrames();
+            // 下一帧（调用方）是业务代码时，本帧是业务代码直接调用的框架入口，保留
+            Entry caller = i + 1 < size ? entries.get(i + 1) : null;
+            boolean calledByApp = caller != null && caller.className != null && isAppFrame(caller.className);
+            collapsible[i] = !top && !calledByApp && !isAppFrame(entry.className) && isFrameworkFrame(entry.className);
+        }
+
+        int i = 0;
+        while (i < size) {
+            int end = i;
+            while (end < size && collapsible[end]) {
+                end++;
+            }
+            int runLength = end - i;
+            if (runLength >= Math.max(properties.getMinCollapseFrames(), 1)) {
+                reduced.append(summarize(entries.subList(i, end))).append('\n');
+                result.setCollapsedFrames(result.getCollapsedFrames() + runLength);
+                i = end;
+                continue;
+            }
+            int stop = runLength == 0 ? i + 1 : end;
+            for (; i < stop; i++) {
+                Entry entry = entries.get(i);
+                reduced.append(entry.line).append('\n');
+                if (entry.className != null) {
+                    result.setKeptFrames(result.getKeptFrames() + 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * 折叠摘要：... 42 framework frames collapsed: org.springframework.web(18), org.apache.catalina(20), sun.reflect(4)
+     */
+    private String summarize(List<Entry> run) {
+        Map<String, Integer> packages = new LinkedHashMap<>();
+        for (Entry entry : run) {
+            packages.merge(packagePrefix(entry.className), 1, Integer::sum);
+        }
+        StringBuilder summary = new StringBuilder(indentOf(run.get(0).line))
+                .append("... ").append(run.size()).append(" framework frames collapsed: ");
+        boolean first = true;
+        for (Map.Entry<String, Integer> item : packages.entrySet()) {
+            if (!first) {
+                summary.append(", ");
+            }
+            summary.append(item.getKey()).append('(').append(item.getValue()).append(')');
+            first = false;
+        }
+        return summary.toString();
+    }
+
+    private String packagePrefix(String className) {
+        int end = -1;
+        for (int level = 0; level < Math.max(properties.getPackageDepth(), 1); level++) {
+            int next = className.indexOf('.', end + 1);
+            if (next < 0) {
+                break;
+            }
+            end = next;
+        }
+        return end < 0 ? className : className.substring(0, end);
+    }
+
+    private boolean isAppFrame(String className) {
+        for (String appPackage : ruleProperties.getAppPackages()) {
+            if (className.startsWith(appPackage)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isFrameworkFrame(String className) {
+        // 动态代理/CGLIB生成类
+        if (className.contains("$$") || className.startsWith("com.sun.proxy.") || className.startsWith("jdk.proxy")) {
+            return true;
+        }
+        for (String frameworkPackage : properties.getFrameworkPackages()) {
+            if (className.startsWith(frameworkPackage)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String indentOf(String line) {
+        int end = 0;
+        while (end < line.length() && Character.isWhitespace(line.charAt(end))) {
+            end++;
+        }
+        return line.substring(0, end);
+    }
+
+    /**
+     * 一行调用栈内容（帧或折叠说明）
+     */
+    private static final class Entry {
+        private final String line;
+        // 帧所属类名，折叠说明为null
+        private final String className;
+
+        private Entry(String line, String className) {
+            this.line = line;
+            this.className = className;
+        }
+
+        static Entry frame(String line, String className) {
+            return new Entry(line, className);
+        }
+
+        static Entry marker(String line) {
+            return new Entry(line, null);
+        }
+    }
+
+    /**
+     * 精简结果
+     */
+    @Data
+    public static class ReducedTrace {
+        // 精简后的文本
+        private String text;
+        // 精简前/后估算token数
+        private int originalTokens;
+        private int reducedTokens;
+        // 原始帧数
+        private int originalFrames;
+        // 原样保留的帧数
+        private int keptFrames;
+        // 递归折叠掉的帧数
+        private int foldedFrames;
+        // 按包折叠掉的框架帧数
+        private int collapsedFrames;
+
+        /**
+         * 是否有帧被折叠
+         */
+        public boolean isReduced() {
+            return keptFrames < originalFrames;
+        }
+
+        /**
+         * 精简比例（精简后/精简前token数）
+         */
+        public double ratio() {
+            return originalTokens == 0 ? 1.0 : reducedTokens / (double) originalTokens;
+        }
+
+        /**
+         * 响应头/日志展示：tokens=5234->812; ratio=0.155; frames=310->24
+         */
+        public String describe() {
+            return String.format("tokens=%d->%d; ratio=%.3f; frames=%d->%d",
+                    originalTokens, reducedTokens, ratio(), originalFrames, keptFrames);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.lizy.loganalysishelper.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单次请求的分阶段耗时（纳秒），按阶段首次出现的顺序输出
+ * 各阶段可能在不同线程记录（如异步回调），方法均加锁
+ */
+public class StageTimer {
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Long> stages = new LinkedHashMap<>();
+
+    /**
+     * 记录阶段耗时（同名阶段累加）
+     *
+     * @param stage      阶段名
+     * @param stageStart 阶段开始时的System.nanoTime()
+     */
+    public void stop(String stage, long stageStart) {
+        add(stage, System.nanoTime() - stageStart);
+    }
+
+    public synchronized void add(String stage, long nanos) {
+        stages.merge(stage, Math.max(nanos, 0), Long::sum);
+    }
+
+    public synchronized long get(String stage) {
+        Long nanos = stages.get(stage);
+        return nanos == null ? 0 : nanos;
+    }
+
+    public long elapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    public synchronized Map<String, Long> snapshot() {
+        return new LinkedHashMap<>(stages);
+    }
+
+    /**
+     * 输出为Server-Timing响应头格式（毫秒，保留3位小数），浏览器开发者工具可直接展示
+     * 如：validation;dur=0.215, session;dur=0.031, upstream;dur=812.400, total;dur=813.9
+     */
+    public String toServerTiming() {
+        StringBuilder header = new StringBuilder();
+        for (Map.Entry<String, Long> entry : snapshot().entrySet()) {
+            header.append(entry.getKey()).append(";dur=").append(toMillis(entry.getValue())).append(", ");
+        }
+        return header.append("total;dur=").append(toMillis(elapsedNanos())).toString();
+    }
+
+    private static String toMillis(long nanos) {
+        return String.format("%.3f", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+}
@@ -0,0 +1,59 @@
+package com.lizy.loganalysishelper.util;
+
+import java.util.List;
+
+/**
+ * Token数估算（无需调用分词器，误差在±20%以内，足够用于Prompt预算控制）
+ * 规则：中日韩字符约1字1 token；其余字符约4字符1 token
+ */
+public final class TokenEstimator {
+
+    private TokenEstimator() {
+    }
+
+    /**
+     * 估算文本token数
+     *
+     * @param text 文本
+     * @return 估算的token数
+     */
+    public static int estimate(CharSequence text) {
+        if (text == null || text.length() == 0) {
+            return 0;
+        }
+        int cjkChars = countCjk(text);
+        return cjkChars + (text.length() - cjkChars + 3) / 4;
+    }
+
+    /**
+     * 估算多段文本的总token数（与拼接后估算结果一致）
+     *
+     * @param parts 文本段
+     * @return 估算的token数
+     */
+    public static int estimate(List<? extends CharSequence> parts) {
+        int cjkChars = 0;
+        int otherChars = 0;
+        for (CharSequence part : parts) {
+            if (part == null) {
+                continue;
+            }
+            int cjk = countCjk(part);
+            cjkChars += cjk;
+            otherChars += part.length() - cjk;
+        }
+        return otherChars == 0 && cjkChars == 0 ? 0 : cjkChars + (otherChars + 3) / 4;
+    }
+
+    private static int countCjk(CharSequence text) {
+        int cjkChars = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 0x2E80 && c <= 0x9FFF || c >= 0xAC00 && c <= 0xD7AF || c >= 0xF900 && c <= 0xFAFF
+                    || c >= 0xFF00 && c <= 0xFFEF) {
+                cjkChars++;
+            }
+        }
+        return cjkChars;
+    }
+}
@@ -0,0 +1,193 @@
+package com.lizy.loganalysishelper.util;
+
+import com.lizy.loganalysishelper.config.UpstreamHttpProperties;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 大模型连接管理：启动预热、空闲保温、连接池/调度器状态
+ * 1. 预热：启动后先发一个HEAD探测请求完成DNS/TCP/TLS并得知协商的协议，HTTP/1.1时再并发探测补足预热连接数
+ * 2. 保温：按间隔检查，有调用进行中时跳过（真实流量已在使用连接），空闲时发探测请求刷新连接的空闲计时，
+ *    被服务端关闭或保活到期的连接同时被重建，首个请求不再承担建连耗时
+ * 探测请求不经过重试/熔断，任意HTTP响应（含4xx）都说明连接可用
+ */
+@Component
+public class UpstreamConnectionManager {
+    private static final Logger log = LoggerFactory.getLogger(UpstreamConnectionManager.class);
+
+    @Value("${qwen.api-url:https://dashscope.aliyuncs.com/api/v1/services/aigc/text-generation/generation}")
+    private String apiUrl;
+
+    @Autowired
+    private OkHttpClient upstreamOkHttpClient;
+
+    @Autowired
+    private UpstreamHttpProperties properties;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "qwen-connection-probe");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicLong probes = new AtomicLong();
+    private final AtomicLong probeFailures = new AtomicLong();
+    private final AtomicLong skippedProbes = new AtomicLong();
+    // 最近一次探测协商的协议（未探测成功前为null）
+    private volatile Protocol protocol;
+    // 最近一次探测耗时（毫秒），冷连接时包含DNS/TCP/TLS耗时
+    private volatile long lastProbeMs = -1;
+
+    @PostConstruct
+    public void init() {
+        UpstreamHttpProperties.Warmup warmup = properties.getWarmup();
+        if (!warmup.isEnabled()) {
+            return;
+        }
+        // 不阻塞应用启动
+        scheduler.execute(this::warmUp);
+        if (warmup.getProbeIntervalMs() > 0) {
+            scheduler.scheduleWithFixedDelay(this::probeIfIdle, warmup.getProbeIntervalMs(),
+                    warmup.getProbeIntervalMs(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        upstreamOkHttpClient.dispatcher().executorService().shutdown();
+        upstreamOkHttpClient.connectionPool().evictAll();
+    }
+
+    /**
+     * 启动预热：首个探测同步执行以得知协议，HTTP/1.1时并发补足连接数（其中一个复用首个连接）
+     */
+    private void warmUp() {
+        long start = System.nanoTime();
+        Call call = newProbeCall();
+        try (Response response = call.execute()) {
+            onProbeResponse(response, start);
+        } catch (IOException e) {
+            probeFailures.incrementAndGet();
+            log.warn("[UpstreamConnectionManager] 连接预热失败，首个请求将自行建连，原因：{}", e.getMessage());
+            return;
+        }
+        int connections = protocol == Protocol.HTTP_2 ? 1 : properties.getWarmup().getConnections();
+        if (connections > 1) {
+            probe(connections);
+        }
+        log.info("[UpstreamConnectionManager] 连接预热完成，协议：{}，首次建连耗时：{}ms，预热连接数：{}",
+                protocol, lastProbeMs, connections);
+    }
+
+    /**
+     * 定期保温：有调用进行中时跳过
+     */
+    private void probeIfIdle() {
+        if (upstreamOkHttpClient.dispatcher().runningCallsCount() > 0) {
+            skippedProbes.incrementAndGet();
+            return;
+        }
+        probe(protocol == Protocol.HTTP_2 ? 1 : properties.getWarmup().getConnections());
+    }
+
+    /**
+     * 并发发出count个探测请求（HTTP/1.1下每个请求占用一个连接，空闲连接不足时新建）
+     */
+    private void probe(int count) {
+        for (int i = 0; i < count; i++) {
+            long start = System.nanoTime();
+            newProbeCall().enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    probeFailures.incrementAndGet();
+                    log.debug("[UpstreamConnectionManager] 连接探测失败：{}", e.getMessage());
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) {
+                    try (Response closeable = response) {
+                        onProbeResponse(closeable, start);
+                    }
+                }
+            });
+        }
+    }
+
+    private Call newProbeCall() {
+        Call call = upstreamOkHttpClient.newCall(new Request.Builder().url(apiUrl).head().build());
+        call.timeout().timeout(properties.getWarmup().getProbeTimeoutMs(), TimeUnit.MILLISECONDS);
+        return call;
+    }
+
+    private void onProbeResponse(Response response, long start) {
+        probes.incrementAndGet();
+        protocol = response.protocol();
+        lastProbeMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    /**
+     * 连接池与调度器状态（排队数大于0说明调度器并发上限已饱和）
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("http2Enabled", properties.isHttp2());
+        stats.put("protocol", protocol == null ? null : protocol.toString());
+        stats.put("connections", getConnectionCount());
+        stats.put("idleConnections", getIdleConnectionCount());
+        stats.put("maxIdleConnections", properties.getMaxIdleConnections());
+        stats.put("runningCalls", getRunningCalls());
+        stats.put("queuedCalls", getQueuedCalls());
+        stats.put("maxRequests", upstreamOkHttpClient.dispatcher().getMaxRequests());
+        stats.put("maxRequestsPerHost", upstreamOkHttpClient.dispatcher().getMaxRequestsPerHost());
+        stats.put("warmupEnabled", properties.getWarmup().isEnabled());
+        stats.put("probes", probes.get());
+        stats.put("probeFailures", probeFailures.get());
+        stats.put("skippedProbes", skippedProbes.get());
+        stats.put("lastProbeMs", lastProbeMs);
+        return stats;
+    }
+
+    public int getConnectionCount() {
+        return upstreamOkHttpClient.connectionPool().connectionCount();
+    }
+
+    public int getIdleConnectionCount() {
+        return upstreamOkHttpClient.connectionPool().idleConnectionCount();
+    }
+
+    public int getRunningCalls() {
+        return upstreamOkHttpClient.dispatcher().runningCallsCount();
+    }
+
+    public int getQueuedCalls() {
+        return upstreamOkHttpClient.dispatcher().queuedCallsCount();
+    }
+
+    public long getProbes() {
+        return probes.get();
+    }
+
+    public long getProbeFailures() {
+        return probeFailures.get();
+    }
+}
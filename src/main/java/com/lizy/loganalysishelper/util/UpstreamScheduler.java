@@ -0,0 +1,463 @@
+package com.lizy.loganalysishelper.util;
+
+import com.lizy.loganalysishelper.config.SchedulerProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 大模型调用调度器：位于分析流程与HTTP客户端之间，控制同时进行中的调用数，并决定排队请求的发出顺序
+ * 1. 调用方令牌桶：每个调用方（X-Client-Id）按配额补充令牌，令牌不足的请求留在队列中，不影响其他调用方
+ * 2. 会话间加权公平排队（Start-time Fair Queuing）：虚拟完成时间 = max(系统虚拟时间, 会话上次完成时间) + token数/权重，
+ * 同一会话的连续请求排在其他会话之后，大量新会话（批量粘贴）不会把已有会话饿死
+ * 3. 追问优先：追问权重更高（默认4），同等token数下虚拟完成时间更早；首轮分析仍按比例推进，不会被饿死
+ * 4. 有界排队：队列总数/单个调用方排队数/排队时长均有上限，超出以RejectedExecutionException失败（映射为429）
+ */
+@Component
+public class UpstreamScheduler {
+    private static final Logger log = LoggerFactory.getLogger(UpstreamScheduler.class);
+    // 未携带调用方标识时使用的调用方
+    public static final String ANONYMOUS_CLIENT = "anonymous";
+    // 优先级（指标标签）
+    public static final String PRIORITY_FOLLOW_UP = "follow_up";
+    public static final String PRIORITY_FIRST = "first";
+    // 拒绝原因（指标标签）
+    public static final String REJECT_QUEUE_FULL = "queue_full";
+    public static final String REJECT_CLIENT_QUEUE_FULL = "client_queue_full";
+    public static final String REJECT_TIMEOUT = "timeout";
+
+    // 按虚拟完成时间排序，相同时先到先出
+    private static final Comparator<Ticket> ORDER = Comparator.<Ticket>comparingDouble(t -> t.finishTag)
+            .thenComparingLong(t -> t.sequence);
+
+    @Autowired
+    private SchedulerProperties properties;
+
+    // 令牌补充唤醒与排队超时（单线程，只做调度不执行调用）
+    private final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread thread = new Thread(r, "qwen-upstream-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 以下状态均在this锁内访问
+    private final TreeSet<Ticket> queue = new TreeSet<>(ORDER);
+    private final Map<String, Flow> flows = new HashMap<>();
+    private Map<String, TokenBucket> buckets;
+    private double virtualTime;
+    private int inFlight;
+    private long sequence;
+    private ScheduledFuture<?> wakeup;
+    private long wakeupAt;
+    // 统计
+    private long dispatched;
+    private long cancelled;
+    private final Map<String, Long> rejections = new LinkedHashMap<>();
+    private final Map<String, long[]> waits = new LinkedHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        timer.setRemoveOnCancelPolicy(true);
+        int maxClients = Math.max(properties.getMaxClients(), 1);
+        // 按访问顺序淘汰最久未使用的调用方（仍有排队请求的调用方保留）
+        buckets = new LinkedHashMap<String, TokenBucket>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TokenBucket> eldest) {
+                return size() > maxClients && eldest.getValue().queued == 0;
+            }
+        };
+        rejections.put(REJECT_QUEUE_FULL, 0L);
+        rejections.put(REJECT_CLIENT_QUEUE_FULL, 0L);
+        rejections.put(REJECT_TIMEOUT, 0L);
+        waits.put(PRIORITY_FOLLOW_UP, new long[2]);
+        waits.put(PRIORITY_FIRST, new long[2]);
+        log.info("[UpstreamScheduler] 初始化完成，启用：{}，最大并发：{}，队列容量：{}，默认配额：{}次/分钟（突发{}），追问权重：{}",
+                properties.isEnabled(), properties.getMaxConcurrent(), properties.getQueueCapacity(),
+                properties.getRatePerMinute(), properties.getBurst(), properties.getFollowUpWeight());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+        List<Ticket> pending;
+        synchronized (this) {
+            pending = new ArrayList<>(queue);
+            queue.clear();
+        }
+        pending.forEach(ticket -> ticket.future.completeExceptionally(new RejectedExecutionException("服务正在关闭")));
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * 申请一次大模型调用许可
+     * 返回的Future被取消时自动退出队列；拿到许可后必须在调用结束时release
+     *
+     * @param clientId        调用方标识（为空时归为anonymous）
+     * @param sessionId       会话ID（公平排队的单位）
+     * @param followUp        是否追问
+     * @param estimatedTokens Prompt估算token数（排队成本）
+     * @return 许可Future；排队已满/排队超时以RejectedExecutionException失败
+     */
+    public CompletableFuture<Permit> acquire(String clientId, String sessionId, boolean followUp, int estimatedTokens) {
+        if (!properties.isEnabled()) {
+            return CompletableFuture.completedFuture(Permit.NOOP);
+        }
+        String client = clientId == null || clientId.isEmpty() ? ANONYMOUS_CLIENT : clientId;
+        Ticket ticket;
+        List<Ticket> ready;
+        synchronized (this) {
+            TokenBucket bucket = bucket(client);
+            String rejectReason = null;
+            if (queue.size() >= properties.getQueueCapacity()) {
+                rejectReason = REJECT_QUEUE_FULL;
+            } else if (bucket.queued >= properties.getMaxQueuedPerClient()) {
+                rejectReason = REJECT_CLIENT_QUEUE_FULL;
+            }
+            if (rejectReason != null) {
+                rejections.merge(rejectReason, 1L, Long::sum);
+                log.warn("[UpstreamScheduler] 拒绝排队（{}），调用方：{}，队列深度：{}", rejectReason, client, queue.size());
+                CompletableFuture<Permit> rejected = new CompletableFuture<>();
+                rejected.completeExceptionally(new RejectedExecutionException(REJECT_QUEUE_FULL.equals(rejectReason)
+                        ? "大模型调用排队已满" : "当前调用方排队请求过多"));
+                return rejected;
+            }
+            Flow flow = flows.computeIfAbsent(sessionId == null ? "" : sessionId, key -> new Flow());
+            double weight = followUp ? Math.max(properties.getFollowUpWeight(), 0.01) : 1.0;
+            ticket = new Ticket();
+            ticket.client = client;
+            ticket.bucket = bucket;
+            ticket.flow = flow;
+            ticket.priority = followUp ? PRIORITY_FOLLOW_UP : PRIORITY_FIRST;
+            ticket.startTag = Math.max(virtualTime, flow.lastFinish);
+            ticket.finishTag = ticket.startTag + Math.max(estimatedTokens, 1) / weight;
+            ticket.sequence = sequence++;
+            ticket.enqueuedAt = System.nanoTime();
+            flow.lastFinish = ticket.finishTag;
+            flow.queued++;
+            bucket.queued++;
+            queue.add(ticket);
+            ready = dispatch(ticket.enqueuedAt);
+        }
+        if (!ticket.future.isDone()) {
+            ticket.timeout = timer.schedule(() -> expire(ticket), properties.getMaxWaitMs(), TimeUnit.MILLISECONDS);
+            // 调用方放弃等待（客户端断开/等待超时）时退出队列
+            ticket.future.whenComplete((permit, e) -> {
+                if (ticket.future.isCancelled()) {
+                    cancel(ticket);
+                }
+            });
+        }
+        complete(ready);
+        return ticket.future;
+    }
+
+    /**
+     * 排队中的请求数
+     */
+    public synchronized int queueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * 进行中的调用数
+     */
+    public synchronized int inFlight() {
+        return inFlight;
+    }
+
+    /**
+     * 按原因统计的排队拒绝次数
+     *
+     * @param reason 拒绝原因：queue_full/client_queue_full/timeout
+     */
+    public synchronized long rejectedCount(String reason) {
+        return rejections.getOrDefault(reason, 0L);
+    }
+
+    /**
+     * 调度统计（并发、队列深度、各优先级平均排队耗时、拒绝次数）
+     */
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", properties.isEnabled());
+        stats.put("maxConcurrent", properties.getMaxConcurrent());
+        stats.put("inFlight", inFlight);
+        stats.put("queueDepth", queue.size());
+        stats.put("activeSessions", flows.size());
+        stats.put("clients", buckets.size());
+        stats.put("dispatched", dispatched);
+        stats.put("cancelled", cancelled);
+        stats.put("rejected", new LinkedHashMap<>(rejections));
+        Map<String, Object> avgWaitMs = new LinkedHashMap<>();
+        for (Map.Entry<String, long[]> entry : waits.entrySet()) {
+            long[] wait = entry.getValue();
+            avgWaitMs.put(entry.getKey(), wait[0] == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(wait[1] / wait[0]));
+        }
+        stats.put("avgWaitMs", avgWaitMs);
+        Map<String, Integer> queuedByClient = new LinkedHashMap<>();
+        for (Map.Entry<String, TokenBucket> entry : buckets.entrySet()) {
+            if (entry.getValue().queued > 0) {
+                queuedByClient.put(entry.getKey(), entry.getValue().queued);
+            }
+        }
+        stats.put("queuedByClient", queuedByClient);
+        return stats;
+    }
+
+    /**
+     * 按虚拟完成时间从小到大发出请求，跳过令牌不足的调用方；全部因令牌不足无法发出时，定时在最早补充令牌时重试
+     * 需在this锁内调用，返回的许可在锁外完成
+     */
+    private List<Ticket> dispatch(long now) {
+        List<Ticket> ready = Collections.emptyList();
+        long earliestToken = Long.MAX_VALUE;
+        Iterator<Ticket> iterator = queue.iterator();
+        while (inFlight < properties.getMaxConcurrent() && iterator.hasNext()) {
+            Ticket ticket = iterator.next();
+            long tokenWait = ticket.bucket.tryTake(now);
+            if (tokenWait > 0) {
+                earliestToken = Math.min(earliestToken, tokenWait);
+                continue;
+            }
+            iterator.remove();
+            unqueue(ticket);
+            inFlight++;
+            dispatched++;
+            virtualTime = Math.max(virtualTime, ticket.startTag);
+            if (ready.isEmpty()) {
+                ready = new ArrayList<>();
+            }
+            ready.add(ticket);
+        }
+        if (queue.isEmpty()) {
+            // 空闲时重置会话状态（新的繁忙期所有会话从当前虚拟时间开始）
+            flows.clear();
+        } else if (flows.size() > properties.getQueueCapacity() * 4) {
+            flows.values().removeIf(flow -> flow.queued == 0 && flow.lastFinish <= virtualTime);
+        }
+        if (earliestToken != Long.MAX_VALUE && inFlight < properties.getMaxConcurrent()) {
+            scheduleWakeup(now, earliestToken);
+        }
+        return ready;
+    }
+
+    private void scheduleWakeup(long now, long delayNanos) {
+        long at = now + delayNanos;
+        if (wakeup != null && !wakeup.isDone() && wakeupAt - at <= 0) {
+            return;
+        }
+        if (wakeup != null) {
+            wakeup.cancel(false);
+        }
+        wakeupAt = at;
+        wakeup = timer.schedule(this::onWakeup, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void onWakeup() {
+        List<Ticket> ready;
+        synchronized (this) {
+            wakeup = null;
+            ready = dispatch(System.nanoTime());
+        }
+        complete(ready);
+    }
+
+    private void onRelease() {
+        List<Ticket> ready;
+        synchronized (this) {
+            inFlight--;
+            ready = dispatch(System.nanoTime());
+        }
+        complete(ready);
+    }
+
+    /**
+     * 在锁外交付许可（Future的回调可能直接发起调用）；调用方已放弃时立即归还
+     */
+    private void complete(List<Ticket> ready) {
+        for (Ticket ticket : ready) {
+            if (ticket.timeout != null) {
+                ticket.timeout.cancel(false);
+            }
+            long waitNanos = System.nanoTime() - ticket.enqueuedAt;
+            Permit permit = new Permit(this, ticket.priority, waitNanos);
+            synchronized (this) {
+                long[] wait = waits.get(ticket.priority);
+                wait[0]++;
+                wait[1] += waitNanos;
+            }
+            if (!ticket.future.complete(permit)) {
+                permit.release();
+            }
+        }
+    }
+
+    private void expire(Ticket ticket) {
+        synchronized (this) {
+            if (!queue.remove(ticket)) {
+                return;
+            }
+            unqueue(ticket);
+            rollback(ticket);
+            rejections.merge(REJECT_TIMEOUT, 1L, Long::sum);
+        }
+        log.warn("[UpstreamScheduler] 排队超时（{}ms），调用方：{}", properties.getMaxWaitMs(), ticket.client);
+        ticket.future.completeExceptionally(new RejectedExecutionException("大模型调用排队超时"));
+    }
+
+    private void cancel(Ticket ticket) {
+        synchronized (this) {
+            if (!queue.remove(ticket)) {
+                return;
+            }
+            unqueue(ticket);
+            rollback(ticket);
+            cancelled++;
+        }
+        if (ticket.timeout != null) {
+            ticket.timeout.cancel(false);
+        }
+    }
+
+    private void unqueue(Ticket ticket) {
+        ticket.flow.queued--;
+        ticket.bucket.queued--;
+    }
+
+    /**
+     * 未发出就退出队列的请求不计入会话的已用份额
+     */
+    private void rollback(Ticket ticket) {
+        if (ticket.flow.lastFinish == ticket.finishTag) {
+            ticket.flow.lastFinish = ticket.startTag;
+        }
+    }
+
+    private TokenBucket bucket(String client) {
+        TokenBucket bucket = buckets.get(client);
+        if (bucket == null) {
+            SchedulerProperties.ClientQuota quota = properties.getClients().get(client);
+            double ratePerMinute = quota != null ? quota.getRatePerMinute() : properties.getRatePerMinute();
+            int burst = quota != null ? quota.getBurst() : properties.getBurst();
+            bucket = new TokenBucket(ratePerMinute, burst);
+            buckets.put(client, bucket);
+        }
+        return bucket;
+    }
+
+    /**
+     * 大模型调用许可（release幂等）
+     */
+    public static class Permit {
+        static final Permit NOOP = new Permit(null, null, 0);
+
+        private final UpstreamScheduler scheduler;
+        private final String priority;
+        private final long waitNanos;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Permit(UpstreamScheduler scheduler, String priority, long waitNanos) {
+            this.scheduler = scheduler;
+            this.priority = priority;
+            this.waitNanos = waitNanos;
+        }
+
+        /**
+         * 优先级：follow_up/first（调度关闭时为null）
+         */
+        public String getPriority() {
+            return priority;
+        }
+
+        /**
+         * 排队耗时（纳秒）
+         */
+        public long getWaitNanos() {
+            return waitNanos;
+        }
+
+        public void release() {
+            if (scheduler != null && released.compareAndSet(false, true)) {
+                scheduler.onRelease();
+            }
+        }
+    }
+
+    private static class Ticket {
+        private final CompletableFuture<Permit> future = new CompletableFuture<>();
+        private String client;
+        private TokenBucket bucket;
+        private Flow flow;
+        private String priority;
+        private double startTag;
+        private double finishTag;
+        private long sequence;
+        private long enqueuedAt;
+        private volatile ScheduledFuture<?> timeout;
+    }
+
+    /**
+     * 会话（公平排队单位）：上次请求的虚拟完成时间与排队数
+     */
+    private static class Flow {
+        private double lastFinish;
+        private int queued;
+    }
+
+    /**
+     * 调用方令牌桶（rate≤0表示不限速）
+     */
+    private static class TokenBucket {
+        private final double tokensPerNano;
+        private final double capacity;
+        private double tokens;
+        private long lastRefill = System.nanoTime();
+        private int queued;
+
+        TokenBucket(double ratePerMinute, int burst) {
+            this.tokensPerNano = ratePerMinute / TimeUnit.MINUTES.toNanos(1);
+            this.capacity = Math.max(burst, 1);
+            this.tokens = capacity;
+        }
+
+        /**
+         * 尝试取一个令牌
+         *
+         * @return 0表示已取到，否则为距离下一个令牌的纳秒数
+         */
+        long tryTake(long now) {
+            if (tokensPerNano <= 0) {
+                return 0;
+            }
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+            lastRefill = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return Math.max((long) Math.ceil((1 - tokens) / tokensPerNano), 1);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.lizy.loganalysishelper.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 分析结果两级缓存：内存LRU淘汰后从磁盘回填、TTL过期、重启后磁盘命中、磁盘定期清理与文件数上限
+ */
+class AnalysisResultCacheTest {
+    @TempDir
+    Path cacheDir;
+
+    private final List<AnalysisResultCache> caches = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        caches.forEach(AnalysisResultCache::shutdown);
+    }
+
+    @Test
+    void evictedMemoryEntryIsServedFromDisk() {
+        AnalysisResultCache cache = newCache(2, 60, 0);
+        cache.put("fp-a", "结果A");
+        cache.put("fp-b", "结果B");
+        cache.get("fp-a");
+        // 内存容量为2，fp-b为最久未访问
+        cache.put("fp-c", "结果C");
+
+        assertEquals("结果B", cache.get("fp-b"));
+        assertEquals(1, cache.getDiskHits());
+        assertEquals("结果C", cache.get("fp-c"));
+        assertEquals("结果B", cache.get("fp-b"));
+        assertEquals(1, cache.getDiskHits());
+        assertEquals(3, cache.getMemoryHits());
+    }
+
+    @Test
+    void expiredEntryIsDroppedFromMemoryAndDisk() throws InterruptedException {
+        AnalysisResultCache cache = newCache(10, 0, 0);
+        cache.put("fp-a", "结果A");
+        TimeUnit.MILLISECONDS.sleep(5);
+
+        assertNull(cache.get("fp-a"));
+        assertEquals(1, cache.getMisses());
+        assertFalse(Files.exists(cacheDir.resolve("fp-a.json")));
+    }
+
+    @Test
+    void survivesRestartThroughDisk() {
+        newCache(10, 60, 0).put("fp-a", "## 错误原因\n订单为空");
+
+        AnalysisResultCache restarted = newCache(10, 60, 0);
+
+        assertEquals("## 错误原因\n订单为空", restarted.peek("fp-a"));
+        assertEquals(0, restarted.getDiskHits());
+        assertEquals("## 错误原因\n订单为空", restarted.get("fp-a"));
+        assertEquals("## 错误原因\n订单为空", restarted.get("fp-a"));
+        assertEquals(1, restarted.getDiskHits());
+        assertEquals(1, restarted.getMemoryHits());
+    }
+
+    @Test
+    void sweepDeletesExpiredFilesAndTrimsToMaxFiles() throws IOException {
+        AnalysisResultCache cache = newCache(10, 60, 2);
+        long now = System.currentTimeMillis();
+        for (String fingerprint : Arrays.asList("expired", "oldest", "older", "newest")) {
+            cache.put(fingerprint, "结果");
+        }
+        Path leftover = Files.createFile(cacheDir.resolve("leftover123.tmp"));
+        setModified("expired.json", now - TimeUnit.HOURS.toMillis(2));
+        setModified(leftover.getFileName().toString(), now - TimeUnit.HOURS.toMillis(2));
+        setModified("oldest.json", now - TimeUnit.MINUTES.toMillis(30));
+        setModified("older.json", now - TimeUnit.MINUTES.toMillis(20));
+
+        cache.sweepDisk();
+
+        assertEquals(Arrays.asList("newest.json", "older.json"), listFiles());
+        assertEquals(3L, cache.stats().get("diskDeletes"));
+    }
+
+    private void setModified(String fileName, long millis) throws IOException {
+        Files.setLastModifiedTime(cacheDir.resolve(fileName), FileTime.fromMillis(millis));
+    }
+
+    private List<String> listFiles() throws IOException {
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            return files.map(file -> file.getFileName().toString()).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private AnalysisResultCache newCache(int memoryMaxEntries, long ttlMinutes, int diskMaxFiles) {
+        AnalysisResultCache cache = new AnalysisResultCache();
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "memoryMaxEntries", memoryMaxEntries);
+        ReflectionTestUtils.setField(cache, "ttlMinutes", ttlMinutes);
+        ReflectionTestUtils.setField(cache, "diskDir", cacheDir.toString());
+        ReflectionTestUtils.setField(cache, "diskMaxFiles", diskMaxFiles);
+        cache.init();
+        caches.add(cache);
+        return cache;
+    }
+}
@@ -0,0 +1,111 @@
+package com.lizy.loganalysishelper.util;
+
+import com.lizy.loganalysishelper.entity.BulkAnalysisItem;
+import com.lizy.loganalysishelper.entity.BulkAnalysisReport;
+import com.lizy.loganalysishelper.entity.LogAnalysisResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 日志文件批量分析：去重计数、超时后报告不受仍在进行的分析影响、未开始的分析被跳过、批次会话互不冲突
+ */
+class BulkLogAnalyzerTest {
+    private static final String LOG = "2024-05-01 10:00:00 ERROR 订单处理失败\n"
+            + trace("OrderNotFoundException") + trace("OrderNotFoundException")
+            + trace("StockShortageException") + trace("CouponExpiredException");
+
+    private final QwenApiUtil qwenApiUtil = mock(QwenApiUtil.class);
+    private BulkLogAnalyzer analyzer;
+
+    @BeforeEach
+    void setUp() {
+        analyzer = new BulkLogAnalyzer();
+        ReflectionTestUtils.setField(analyzer, "concurrency", 1);
+        ReflectionTestUtils.setField(analyzer, "maxDistinct", 200);
+        ReflectionTestUtils.setField(analyzer, "maxBlockLines", 300);
+        ReflectionTestUtils.setField(analyzer, "timeoutMinutes", 30L);
+        ReflectionTestUtils.setField(analyzer, "qwenApiUtil", qwenApiUtil);
+        analyzer.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        analyzer.shutdown();
+    }
+
+    @Test
+    void analyzesDistinctExceptionsOrderedByOccurrences() throws Exception {
+        when(qwenApiUtil.analyzeJavaLog(anyString(), anyString(), any())).thenReturn(LogAnalysisResponse.success("结果"));
+
+        BulkAnalysisReport report = analyze().get(10, TimeUnit.SECONDS);
+
+        assertEquals(3, report.getDistinctExceptions());
+        assertEquals(4, report.getTotalExceptions());
+        BulkAnalysisItem top = report.getItems().get(0);
+        assertEquals("com.example.order.OrderNotFoundException", top.getExceptionType());
+        assertEquals(2, top.getOccurrences());
+        report.getItems().forEach(item -> assertEquals(200, item.getAnalysis().getCode()));
+    }
+
+    @Test
+    void timedOutReportIsSnapshotAndPendingWorkIsSkipped() throws Exception {
+        ReflectionTestUtils.setField(analyzer, "timeoutMinutes", 0L);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(qwenApiUtil.analyzeJavaLog(anyString(), anyString(), any())).thenAnswer(invocation -> {
+            started.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return LogAnalysisResponse.success("超时后才完成");
+        });
+
+        BulkAnalysisReport report = analyze().get(10, TimeUnit.SECONDS);
+        started.await(1, TimeUnit.SECONDS);
+        release.countDown();
+        analyzer.shutdown();
+        TimeUnit.MILLISECONDS.sleep(200);
+
+        // 已返回的报告不会被超时后完成的分析修改
+        report.getItems().forEach(item -> assertEquals(503, item.getAnalysis().getCode()));
+        // 并发度为1：只有已开始的一个分析调用了大模型，其余被跳过
+        verify(qwenApiUtil, atMost(1)).analyzeJavaLog(anyString(), anyString(), any());
+    }
+
+    @Test
+    void batchesUploadedTogetherUseDistinctSessions() throws Exception {
+        when(qwenApiUtil.analyzeJavaLog(anyString(), anyString(), any())).thenReturn(LogAnalysisResponse.success("结果"));
+
+        BulkAnalysisReport first = analyze().get(10, TimeUnit.SECONDS);
+        BulkAnalysisReport second = analyze().get(10, TimeUnit.SECONDS);
+
+        assertNotEquals(first.getItems().get(0).getSessionId(), second.getItems().get(0).getSessionId());
+    }
+
+    private CompletableFuture<BulkAnalysisReport> analyze() throws IOException {
+        return analyzer.analyze(new ByteArrayInputStream(LOG.getBytes(StandardCharsets.UTF_8)), "app.log", "test");
+    }
+
+    private static String trace(String exceptionName) {
+        return "com.example.order." + exceptionName + ": order 42\n"
+                + "\tat com.example.order.OrderService.load(OrderService.java:42)\n"
+                + "\tat com.example.order.OrderController.get(OrderController.java:17)\n"
+                + "2024-05-01 10:00:01 INFO 继续处理\n";
+    }
+}
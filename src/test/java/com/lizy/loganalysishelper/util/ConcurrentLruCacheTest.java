@@ -0,0 +1,95 @@
+package com.lizy.loganalysishelper.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 并发LRU缓存：按条目数/字节数从最久未访问端淘汰，get改变访问顺序而peek不改变，权重增长触发淘汰
+ */
+class ConcurrentLruCacheTest {
+    private final List<String> evicted = new ArrayList<>();
+
+    @Test
+    void evictsLeastRecentlyUsedByCount() {
+        ConcurrentLruCache<String, String> cache = newCache(3, Long.MAX_VALUE);
+        cache.put("a", "A", 1);
+        cache.put("b", "B", 1);
+        cache.put("c", "C", 1);
+        // a变为最近访问；peek不影响顺序，b仍是最久未访问
+        cache.get("a");
+        cache.peek("b");
+
+        cache.put("d", "D", 1);
+        cache.getOrCreate("e", key -> "E", 1);
+
+        assertEquals(Arrays.asList("b", "c"), evicted);
+        assertNull(cache.peek("b"));
+        assertNotNull(cache.peek("a"));
+        assertEquals(3, cache.size());
+        assertEquals(2, cache.evictionCount());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedByBytes() {
+        ConcurrentLruCache<String, String> cache = newCache(100, 100);
+        cache.put("a", "A", 40);
+        cache.put("b", "B", 40);
+        cache.get("a");
+
+        cache.put("c", "C", 40);
+
+        assertEquals(Collections.singletonList("b"), evicted);
+        assertEquals(80, cache.totalBytes());
+
+        // 单条目超过字节上限时淘汰其余条目，但保留自身
+        cache.put("huge", "H", 500);
+        assertEquals(Arrays.asList("b", "a", "c"), evicted);
+        assertEquals(1, cache.size());
+        assertEquals(500, cache.totalBytes());
+    }
+
+    @Test
+    void growingWeightEvictsOthersButNotItself() {
+        ConcurrentLruCache<String, String> cache = newCache(100, 100);
+        cache.getOrCreate("a", key -> "A", 10);
+        cache.getOrCreate("b", key -> "B", 10);
+        cache.getOrCreate("c", key -> "C", 10);
+
+        // 会话内容增长：更新权重同时标记为最近访问，从最久未访问端腾出空间
+        cache.updateWeight("a", 85);
+        assertEquals(Collections.singletonList("b"), evicted);
+        assertEquals(95, cache.totalBytes());
+
+        cache.updateWeight("c", 30);
+        assertEquals(Arrays.asList("b", "a"), evicted);
+        assertEquals(30, cache.totalBytes());
+        assertEquals(2, cache.evictionCount());
+    }
+
+    @Test
+    void replaceAndRemoveKeepBytesConsistent() {
+        ConcurrentLruCache<String, String> cache = newCache(10, 1000);
+        cache.put("a", "A1", 100);
+        cache.put("a", "A2", 30);
+        assertEquals("A2", cache.get("a"));
+        assertEquals(30, cache.totalBytes());
+
+        assertEquals("A2", cache.remove("a"));
+        assertNull(cache.remove("a"));
+        assertEquals(0, cache.totalBytes());
+        assertEquals(0, cache.size());
+        assertEquals(Collections.emptyList(), evicted);
+    }
+
+    private ConcurrentLruCache<String, String> newCache(int maxCount, long maxBytes) {
+        return new ConcurrentLruCache<>(maxCount, maxBytes, (key, value) -> evicted.add(key));
+    }
+}
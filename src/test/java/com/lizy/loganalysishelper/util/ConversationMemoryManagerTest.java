@@ -0,0 +1,106 @@
+package com.lizy.loganalysishelper.util;
+
+import com.lizy.loganalysishelper.entity.ConversationSession;
+import com.lizy.loganalysishelper.entity.SessionSnapshot;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 会话过期清理与持久化存储的配合：已被LRU淘汰的过期会话、按需加载时遇到的过期快照都要从存储中删除
+ */
+class ConversationMemoryManagerTest {
+    private final InMemorySessionStore store = new InMemorySessionStore();
+    private ConversationMemoryManager manager;
+
+    @AfterEach
+    void tearDown() {
+        if (manager != null) {
+            manager.shutdown();
+        }
+    }
+
+    @Test
+    void expiredSessionEvictedFromMemoryIsDeletedFromStore() throws Exception {
+        // 过期时间为0：会话在下一次清理（tick为200ms）时到期
+        manager = newManager(1, 0, 200);
+        manager.addRoundToSession("evicted", "java.lang.IllegalStateException: boom", "## 错误原因");
+        // 最大会话数为1，创建第二个会话时淘汰第一个（仍留在存储中）
+        manager.addRoundToSession("latest", "java.lang.IllegalStateException: boom", "## 错误原因");
+        assertEquals(1, manager.evictionCount());
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (store.size() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertNull(store.load("evicted"));
+        assertNull(store.load("latest"));
+        assertTrue(manager.expirationCount() >= 2);
+    }
+
+    @Test
+    void evictedSessionIsReloadedFromStoreUntilItExpires() {
+        manager = newManager(1, 30);
+        manager.addRoundToSession("first", "java.lang.IllegalStateException: boom", "## 错误原因");
+        manager.addRoundToSession("second", "java.lang.IllegalStateException: boom", "## 错误原因");
+
+        ConversationSession reloaded = manager.getOrCreateSession("first");
+        assertEquals(2, reloaded.getMessageHistory().size());
+    }
+
+    @Test
+    void expiredSnapshotFoundOnLoadIsDeleted() {
+        manager = newManager(100, 30);
+        SessionSnapshot stale = new SessionSnapshot();
+        stale.setSessionId("stale");
+        stale.setLastActiveTime(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1));
+        SessionSnapshot.Message message = new SessionSnapshot.Message();
+        message.setRole("user");
+        message.setContent("java.lang.IllegalStateException: boom");
+        stale.getMessages().add(message);
+        store.save(stale);
+
+        ConversationSession session = manager.getOrCreateSession("stale");
+
+        assertNotNull(session);
+        assertTrue(session.getMessageHistory().isEmpty());
+        assertNull(store.load("stale"));
+    }
+
+    @Test
+    void expiredSnapshotsAreDeletedOnStartup() {
+        SessionSnapshot stale = new SessionSnapshot();
+        stale.setSessionId("stale");
+        stale.setLastActiveTime(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1));
+        store.save(stale);
+
+        manager = newManager(100, 30);
+
+        assertEquals(0, store.size());
+        assertEquals(0, manager.sessionCount());
+    }
+
+    private ConversationMemoryManager newManager(int maxCount, long expireMinutes) {
+        return newManager(maxCount, expireMinutes, 10);
+    }
+
+    private ConversationMemoryManager newManager(int maxCount, long expireMinutes, long tickMs) {
+        ConversationMemoryManager created = new ConversationMemoryManager();
+        ReflectionTestUtils.setField(created, "expireMinutes", expireMinutes);
+        ReflectionTestUtils.setField(created, "maxSessionCount", maxCount);
+        ReflectionTestUtils.setField(created, "maxSessionBytes", 64L * 1024 * 1024);
+        ReflectionTestUtils.setField(created, "tickMs", tickMs);
+        ReflectionTestUtils.setField(created, "storageMode", MessageStorageMode.COMPRESSED);
+        ReflectionTestUtils.setField(created, "storageMinChars", 512);
+        ReflectionTestUtils.setField(created, "sessionStore", store);
+        created.init();
+        return created;
+    }
+}
@@ -0,0 +1,58 @@
+package com.lizy.loganalysishelper.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * 异常指纹：时间戳、线程名、对象哈希、异常信息、动态生成类名不影响指纹，异常类型与调用位置变化时指纹不同
+ */
+class ExceptionFingerprintTest {
+
+    @Test
+    void ignoresTimestampsThreadNamesAndObjectHashes() {
+        String first = "2024-05-01 10:00:00.123 ERROR [http-nio-8080-exec-1] c.e.OrderController - 下单失败\n"
+                + "java.lang.IllegalStateException: order com.example.Order@1a2b3c4d locked by 12345\n"
+                + "\tat com.example.order.OrderService.lambda$place$0(OrderService.java:42)\n"
+                + "\tat com.example.order.OrderService$$Lambda$123/0x0000000800c4b440.apply(Unknown Source)\n"
+                + "\tat com.example.order.OrderService$$EnhancerBySpringCGLIB$$8f2a1c.place(<generated>)\n"
+                + "\tat sun.reflect.GeneratedMethodAccessor57.invoke(Unknown Source)\n"
+                + "\t... 48 more";
+        String second = "2024-06-18 23:59:59,999 ERROR [http-nio-8080-exec-7] c.e.OrderController - 下单失败\n"
+                + "java.lang.IllegalStateException: order com.example.Order@77aa01ff locked by 67890\n"
+                + "\tat com.example.order.OrderService.lambda$place$0(OrderService.java:42)\n"
+                + "\tat com.example.order.OrderService$$Lambda$311/0x0000000801a0c8f0.apply(Unknown Source)\n"
+                + "\tat com.example.order.OrderService$$EnhancerBySpringCGLIB$$03bc77.place(<generated>)\n"
+                + "\tat sun.reflect.GeneratedMethodAccessor102.invoke(Unknown Source)\n"
+                + "\t... 51 more";
+
+        assertEquals(ExceptionFingerprint.fingerprint(first), ExceptionFingerprint.fingerprint(second));
+        assertEquals(64, ExceptionFingerprint.fingerprint(first).length());
+    }
+
+    @Test
+    void normalizesUnstructuredLogWithoutExceptionType() {
+        String first = "2024-05-01 10:00:00.123 [pool-2-thread-3] 订单 1a2b3c4d 同步失败，对象@5e6f7a8b，请求号 1500";
+        String second = "2024-05-02T08:15:30 [pool-9-thread-1] 订单 1a2b3c4d 同步失败，对象@0c0d0e0f，请求号 2750";
+
+        assertEquals(ExceptionFingerprint.normalize(first), ExceptionFingerprint.normalize(second));
+        assertEquals(ExceptionFingerprint.fingerprint(first), ExceptionFingerprint.fingerprint(second));
+    }
+
+    @Test
+    void distinguishesExceptionTypeCauseAndLocation() {
+        String base = "java.lang.IllegalStateException: 库存不足\n"
+                + "\tat com.example.stock.StockService.lock(StockService.java:18)\n"
+                + "Caused by: java.sql.SQLException: 连接断开\n"
+                + "\tat com.example.stock.StockDao.update(StockDao.java:30)";
+
+        String fingerprint = ExceptionFingerprint.fingerprint(base);
+
+        assertNotEquals(fingerprint, ExceptionFingerprint.fingerprint(base.replace("StockService.java:18", "StockService.java:19")));
+        assertNotEquals(fingerprint, ExceptionFingerprint.fingerprint(base.replace("java.sql.SQLException", "java.net.SocketException")));
+        assertNotEquals(fingerprint, ExceptionFingerprint.fingerprint(base.replace("IllegalStateException", "IllegalArgumentException")));
+        // 异常信息不参与指纹
+        assertEquals(fingerprint, ExceptionFingerprint.fingerprint(base.replace("库存不足", "库存不足，商品ID：42")));
+    }
+}
@@ -0,0 +1,137 @@
+package com.lizy.loganalysishelper.util;
+
+import com.lizy.loganalysishelper.entity.ExceptionFrequency;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 异常频率统计：高频异常按次数倒序、候选表满时更高频的异常替换最低频候选、时间片滑出窗口后不再计入
+ */
+class ExceptionFrequencyTrackerTest {
+    // 与5分钟/1小时/1天的时间片边界对齐，便于推算滑出时间
+    private static final long START = TimeUnit.DAYS.toMillis(20_000);
+
+    private final AtomicLong now = new AtomicLong(START);
+    private AnalysisResultCache analysisResultCache;
+    private ExceptionFrequencyTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        analysisResultCache = mock(AnalysisResultCache.class);
+        tracker = newTracker(8);
+    }
+
+    @Test
+    void ordersHeavyHittersByCount() {
+        record("fp-a", 5);
+        record("fp-b", 3);
+        record("fp-c", 1);
+        when(analysisResultCache.peek("fp-a")).thenReturn("## 错误原因\n订单为空");
+
+        Map<String, List<ExceptionFrequency>> top = tracker.topExceptions(10);
+
+        assertEquals(Arrays.asList("5m", "1h", "1d"), top.keySet().stream().collect(Collectors.toList()));
+        for (List<ExceptionFrequency> window : top.values()) {
+            assertEquals(Arrays.asList("fp-a", "fp-b", "fp-c"), fingerprints(window));
+            assertEquals(Arrays.asList(5L, 3L, 1L), counts(window));
+        }
+        ExceptionFrequency first = top.get("5m").get(0);
+        assertEquals("java.lang.IllegalStateException", first.getExceptionType());
+        assertEquals("## 错误原因\n订单为空", first.getAnalysis());
+        assertNull(top.get("5m").get(1).getAnalysis());
+        assertEquals(Collections.singletonList("fp-a"), fingerprints(tracker.topExceptions(1).get("1h")));
+        assertEquals(9, tracker.getRecorded());
+    }
+
+    @Test
+    void higherCountReplacesLowestCandidateWhenFull() {
+        tracker = newTracker(2);
+        record("fp-a", 5);
+        record("fp-b", 3);
+        // 估计值不超过最低候选，不进入候选表
+        record("fp-c", 3);
+        assertEquals(Arrays.asList("fp-a", "fp-b"), fingerprints(tracker.topExceptions(10).get("5m")));
+
+        record("fp-c", 3);
+
+        List<ExceptionFrequency> top = tracker.topExceptions(10).get("5m");
+        assertEquals(Arrays.asList("fp-c", "fp-a"), fingerprints(top));
+        assertEquals(Arrays.asList(6L, 5L), counts(top));
+    }
+
+    @Test
+    void countsSlideOutOfEachWindow() {
+        record("fp-old", 4);
+        // 5分钟窗口为10片×30秒：起始时间片在5分钟后滑出
+        now.set(START + TimeUnit.MINUTES.toMillis(6));
+        record("fp-new", 2);
+
+        Map<String, List<ExceptionFrequency>> top = tracker.topExceptions(10);
+        assertEquals(Collections.singletonList("fp-new"), fingerprints(top.get("5m")));
+        assertEquals(Arrays.asList("fp-old", "fp-new"), fingerprints(top.get("1h")));
+
+        // 1小时窗口为12片×5分钟：起始时间片滑出，6分钟时的记录仍在窗口内
+        now.set(START + TimeUnit.HOURS.toMillis(1));
+        top = tracker.topExceptions(10);
+        assertTrue(top.get("5m").isEmpty());
+        assertEquals(Collections.singletonList("fp-new"), fingerprints(top.get("1h")));
+        assertEquals(Arrays.asList("fp-old", "fp-new"), fingerprints(top.get("1d")));
+
+        // 1天窗口为24片×1小时；新记录触发时间片轮换，释放已滑出的候选槽位
+        now.set(START + TimeUnit.DAYS.toMillis(1));
+        record("fp-latest", 1);
+        top = tracker.topExceptions(10);
+        for (List<ExceptionFrequency> window : top.values()) {
+            assertEquals(Collections.singletonList("fp-latest"), fingerprints(window));
+        }
+        assertEquals(1, candidates("1d"));
+    }
+
+    private void record(String fingerprint, int times) {
+        for (int i = 0; i < times; i++) {
+            tracker.record(fingerprint, "java.lang.IllegalStateException");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private int candidates(String window) {
+        Map<String, Map<String, Object>> windows = (Map<String, Map<String, Object>>) tracker.stats().get("windows");
+        return (Integer) windows.get(window).get("candidates");
+    }
+
+    private ExceptionFrequencyTracker newTracker(int topK) {
+        ExceptionFrequencyTracker created = new ExceptionFrequencyTracker();
+        ReflectionTestUtils.setField(created, "enabled", true);
+        ReflectionTestUtils.setField(created, "depth", 4);
+        ReflectionTestUtils.setField(created, "width", 1024);
+        ReflectionTestUtils.setField(created, "topK", topK);
+        ReflectionTestUtils.setField(created, "analysisResultCache", analysisResultCache);
+        ReflectionTestUtils.setField(created, "clock", (LongSupplier) now::get);
+        created.init();
+        return created;
+    }
+
+    private static List<String> fingerprints(List<ExceptionFrequency> items) {
+        return items.stream().map(ExceptionFrequency::getFingerprint).collect(Collectors.toList());
+    }
+
+    private static List<Long> counts(List<ExceptionFrequency> items) {
+        return items.stream().map(ExceptionFrequency::getCount).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,177 @@
+package com.lizy.loganalysishelper.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 测试用的本地大模型服务：按入队顺序返回预设响应（状态码、响应头、延迟、JSON或SSE帧），队列为空时返回默认成功响应
+ */
+public class FakeUpstreamServer implements AutoCloseable {
+    private static final String PATH = "/api/v1/services/aigc/text-generation/generation";
+    private static final String DEFAULT_BODY = "{\"output\":{\"text\":\"## 错误原因\\n默认结果\"},"
+            + "\"usage\":{\"input_tokens\":10,\"output_tokens\":5}}";
+
+    private final ConcurrentLinkedQueue<FakeResponse> responses = new ConcurrentLinkedQueue<>();
+    // 每个非HEAD请求到达时的System.nanoTime()
+    private final List<Long> requestTimes = new CopyOnWriteArrayList<>();
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public FakeUpstreamServer start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 64);
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "fake-upstream");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext(PATH, this::handle);
+        server.start();
+        return this;
+    }
+
+    public String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + PATH;
+    }
+
+    public FakeUpstreamServer enqueue(FakeResponse... items) {
+        responses.addAll(Arrays.asList(items));
+        return this;
+    }
+
+    public int requestCount() {
+        return requestTimes.size();
+    }
+
+    public List<Long> requestTimes() {
+        return new ArrayList<>(requestTimes);
+    }
+
+    public void reset() {
+        responses.clear();
+        requestTimes.clear();
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            requestTimes.add(System.nanoTime());
+            drain(exchange.getRequestBody());
+            FakeResponse response = responses.poll();
+            if (response == null) {
+                response = FakeResponse.json(200, DEFAULT_BODY);
+            }
+            if (response.delayMs > 0) {
+                TimeUnit.MILLISECONDS.sleep(response.delayMs);
+            }
+            for (Map.Entry<String, String> header : response.headers.entrySet()) {
+                exchange.getResponseHeaders().set(header.getKey(), header.getValue());
+            }
+            if (response.sseLines != null) {
+                exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+                exchange.sendResponseHeaders(response.status, 0);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    for (String line : response.sseLines) {
+                        out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+                        out.flush();
+                    }
+                }
+            } else {
+                byte[] body = response.body.getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(response.status, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // 客户端已取消（对冲/超时）
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[8192];
+        while (in.read(buffer) >= 0) {
+            // 丢弃请求体
+        }
+    }
+
+    /**
+     * 预设响应
+     */
+    public static final class FakeResponse {
+        private final int status;
+        private final String body;
+        private final List<String> sseLines;
+        private final Map<String, String> headers = new LinkedHashMap<>();
+        private long delayMs;
+
+        private FakeResponse(int status, String body, List<String> sseLines) {
+            this.status = status;
+            this.body = body;
+            this.sseLines = sseLines;
+        }
+
+        public static FakeResponse json(int status, String body) {
+            return new FakeResponse(status, body, null);
+        }
+
+        public static FakeResponse text(String text) {
+            return json(200, "{\"output\":{\"text\":\"" + text + "\"},\"usage\":{\"input_tokens\":10,\"output_tokens\":5}}");
+        }
+
+        public static FakeResponse status(int status) {
+            return json(status, "{\"code\":\"Fake" + status + "\",\"message\":\"injected " + status + "\"}");
+        }
+
+        /**
+         * SSE响应（逐行写出并flush，写完即关闭连接）
+         */
+        public static FakeResponse sse(String... lines) {
+            return new FakeResponse(200, null, Collections.unmodifiableList(Arrays.asList(lines)));
+        }
+
+        public FakeResponse header(String name, String value) {
+            headers.put(name, value);
+            return this;
+        }
+
+        public FakeResponse delay(long millis) {
+            this.delayMs = millis;
+            return this;
+        }
+    }
+}
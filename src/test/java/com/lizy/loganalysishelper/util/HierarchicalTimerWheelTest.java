@@ -0,0 +1,73 @@
+package com.lizy.loganalysishelper.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 分层时间轮：各层边界处的下沉（cascade）后任务在到期tick准时触发，既不提前也不延后
+ */
+class HierarchicalTimerWheelTest {
+    private static final long TICK_MS = 10;
+
+    @Test
+    void firesEachTaskExactlyAtItsTickAcrossLevelBoundaries() {
+        // 起点不与任何层的边界对齐
+        long startTick = 1_000_037;
+        HierarchicalTimerWheel<Long> wheel = new HierarchicalTimerWheel<>(TICK_MS, startTick * TICK_MS);
+        List<Long> delays = Arrays.asList(1L, 26L, 27L, 63L, 64L, 65L, 91L, 128L, 4_095L, 4_096L, 4_097L,
+                4_123L, 8_192L, 262_143L, 262_144L, 262_145L, 300_000L);
+        for (long delay : delays) {
+            wheel.schedule(delay, (startTick + delay) * TICK_MS);
+        }
+        assertEquals(delays.size(), wheel.size());
+
+        Map<Long, Long> firedAt = new HashMap<>();
+        long lastDelay = Collections.max(delays);
+        for (long tick = startTick + 1; tick <= startTick + lastDelay; tick++) {
+            for (Long delay : wheel.advance(tick * TICK_MS)) {
+                firedAt.put(delay, tick - startTick);
+            }
+        }
+
+        for (long delay : delays) {
+            assertEquals(Long.valueOf(delay), firedAt.get(delay), "延迟" + delay + "个tick的任务触发时间");
+        }
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void advancingInLargeStepsFiresEverythingDue() {
+        HierarchicalTimerWheel<String> wheel = new HierarchicalTimerWheel<>(TICK_MS, 0);
+        wheel.schedule("level0", 50 * TICK_MS);
+        wheel.schedule("level1", 5_000 * TICK_MS);
+        wheel.schedule("level2", 70_000 * TICK_MS);
+        wheel.schedule("level3", 500_000 * TICK_MS);
+
+        assertEquals(Collections.singletonList("level0"), wheel.advance(4_999 * TICK_MS));
+        assertEquals(Collections.singletonList("level1"), wheel.advance(69_999 * TICK_MS + 9));
+        assertTrue(wheel.advance(499_999 * TICK_MS).contains("level2"));
+        assertEquals(Collections.singletonList("level3"), wheel.advance(500_000 * TICK_MS));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void overdueTaskFiresOnNextTick() {
+        HierarchicalTimerWheel<String> wheel = new HierarchicalTimerWheel<>(TICK_MS, 100 * TICK_MS);
+        wheel.schedule("overdue", 90 * TICK_MS);
+        wheel.schedule("now", 100 * TICK_MS);
+
+        List<String> fired = new ArrayList<>(wheel.advance(101 * TICK_MS));
+        Collections.sort(fired);
+
+        assertEquals(Arrays.asList("now", "overdue"), fired);
+    }
+}
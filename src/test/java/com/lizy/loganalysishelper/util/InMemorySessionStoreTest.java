@@ -0,0 +1,67 @@
+package com.lizy.loganalysishelper.util;
+
+import com.lizy.loganalysishelper.entity.SessionSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 内存KV会话存储：序列化往返、整份拷贝语义
+ */
+class InMemorySessionStoreTest {
+
+    @Test
+    void roundTripsSnapshotsAsIndependentCopies() {
+        InMemorySessionStore store = new InMemorySessionStore();
+        SessionSnapshot saved = snapshot("s1", 1000L, "java.lang.IllegalStateException: boom", "## 错误原因");
+        store.save(saved);
+
+        SessionSnapshot loaded = store.load("s1");
+        assertEquals(saved, loaded);
+        assertNotSame(saved, loaded);
+
+        // 读写均为整份拷贝：修改已保存/已读取的对象不影响存储内容
+        saved.getMessages().clear();
+        loaded.setLastActiveTime(2000L);
+        SessionSnapshot reloaded = store.load("s1");
+        assertEquals(2, reloaded.getMessages().size());
+        assertEquals(1000L, reloaded.getLastActiveTime());
+        assertEquals("## 错误原因", reloaded.getMessages().get(1).getContent());
+    }
+
+    @Test
+    void overwritesLoadsAllAndDeletes() {
+        InMemorySessionStore store = new InMemorySessionStore();
+        store.save(snapshot("s1", 1000L, "first"));
+        store.save(snapshot("s2", 1000L, "second"));
+        store.save(snapshot("s1", 3000L, "first", "follow-up"));
+
+        Map<String, SessionSnapshot> all = store.loadAll();
+        assertEquals(2, all.size());
+        assertEquals(3000L, all.get("s1").getLastActiveTime());
+        assertEquals(2, all.get("s1").getMessages().size());
+
+        store.delete("s2");
+        assertNull(store.load("s2"));
+        assertEquals(1, store.size());
+        assertEquals(1, store.stats().get("sessions"));
+    }
+
+    private static SessionSnapshot snapshot(String sessionId, long lastActiveTime, String... contents) {
+        SessionSnapshot snapshot = new SessionSnapshot();
+        snapshot.setSessionId(sessionId);
+        snapshot.setLastActiveTime(lastActiveTime);
+        for (int i = 0; i < contents.length; i++) {
+            SessionSnapshot.Message message = new SessionSnapshot.Message();
+            message.setRole(i % 2 == 0 ? "user" : "assistant");
+            message.setContent(contents[i]);
+            message.setTimestamp(lastActiveTime);
+            snapshot.getMessages().add(message);
+        }
+        return snapshot;
+    }
+}
@@ -0,0 +1,204 @@
+package com.lizy.loganalysishelper.util;
+
+import com.lizy.loganalysishelper.entity.SessionSnapshot;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 追加写日志会话存储：重启恢复、撕裂写/CRC损坏截断、压缩
+ */
+class JournalSessionStoreTest {
+    private static final long EXPIRE_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+    @TempDir
+    Path dir;
+
+    private JournalSessionStore store;
+
+    @AfterEach
+    void closeStore() {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    @Test
+    void recoversSessionsAfterReopen() throws IOException {
+        store = open();
+        store.save(snapshot("s1", "first"));
+        store.save(snapshot("s2", "second"));
+        store.save(snapshot("s1", "first-updated"));
+        store.delete("s2");
+        store.close();
+
+        store = open();
+        assertEquals(1, store.size());
+        assertEquals("first-updated", lastContent(store.load("s1")));
+        assertNull(store.load("s2"));
+        assertEquals(1, store.loadAll().size());
+    }
+
+    @Test
+    void truncatesTornTailAndKeepsEarlierRecords() throws IOException {
+        store = open();
+        store.save(snapshot("s1", "kept"));
+        long validEnd = journalBytes();
+        store.save(snapshot("s2", "torn"));
+        long tornEnd = journalBytes();
+        store.close();
+        store = null;
+
+        // 模拟崩溃时只写入了后一条记录的前半部分：后半部分仍为0
+        try (RandomAccessFile file = new RandomAccessFile(journal().toFile(), "rw")) {
+            long half = validEnd + (tornEnd - validEnd) / 2;
+            file.seek(half);
+            file.write(new byte[(int) (tornEnd - half)]);
+        }
+
+        store = open();
+        assertEquals(1, store.size());
+        assertEquals("kept", lastContent(store.load("s1")));
+        assertNull(store.load("s2"));
+        assertEquals(validEnd, journalBytes());
+
+        // 截断点之后继续写入，再次重启仍可完整恢复
+        store.save(snapshot("s3", "after-recovery"));
+        store.close();
+        store = open();
+        assertEquals(2, store.size());
+        assertEquals("after-recovery", lastContent(store.load("s3")));
+    }
+
+    @Test
+    void truncatesAtRecordWithCrcMismatch() throws IOException {
+        store = open();
+        store.save(snapshot("s1", "kept"));
+        long firstEnd = journalBytes();
+        store.save(snapshot("s2", "corrupted"));
+        store.save(snapshot("s3", "after-corruption"));
+        store.close();
+        store = null;
+
+        // 翻转第二条记录正文中的一个字节（长度完整、CRC不匹配）
+        try (RandomAccessFile file = new RandomAccessFile(journal().toFile(), "rw")) {
+            long position = firstEnd + 40;
+            file.seek(position);
+            int value = file.read();
+            file.seek(position);
+            file.write(value ^ 0xFF);
+        }
+
+        store = open();
+        // 损坏记录及其之后的记录都被丢弃
+        assertEquals(1, store.size());
+        assertEquals("kept", lastContent(store.load("s1")));
+        assertNull(store.load("s2"));
+        assertNull(store.load("s3"));
+        assertEquals(firstEnd, journalBytes());
+    }
+
+    @Test
+    void compactionKeepsLatestRecordsAndReleasesOldMappings() throws IOException {
+        store = open();
+        for (int i = 0; i < 20; i++) {
+            store.save(snapshot("s1", "round-" + i));
+        }
+        store.save(snapshot("s2", "other"));
+        long before = journalBytes();
+
+        store.compact();
+
+        assertEquals(1L, store.stats().get("compactions"));
+        assertTrue(journalBytes() < before);
+        assertEquals("round-19", lastContent(store.load("s1")));
+        assertEquals("other", lastContent(store.load("s2")));
+        // 被替换的旧日志不再映射在进程中（Linux下以"(deleted)"出现在/proc/self/maps）
+        Path maps = Paths.get("/proc/self/maps");
+        assumeTrue(Files.isReadable(maps));
+        String journalPath = journal().toAbsolutePath().toString();
+        List<String> stale = Files.readAllLines(maps).stream()
+                .filter(line -> line.contains(journalPath) && line.contains("(deleted)"))
+                .collect(Collectors.toList());
+        assertTrue(stale.isEmpty(), stale.toString());
+
+        store.close();
+        store = open();
+        assertEquals("round-19", lastContent(store.load("s1")));
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    void failedReplacementKeepsOriginalJournalUsable() throws IOException {
+        store = new JournalSessionStore(dir.toString(), 1, EXPIRE_MILLIS, 0, 60_000, 60) {
+            @Override
+            void replaceJournal(Path source, Path target) throws IOException {
+                throw new IOException("injected move failure");
+            }
+        };
+        for (int i = 0; i < 20; i++) {
+            store.save(snapshot("s1", "round-" + i));
+        }
+        long before = journalBytes();
+
+        IOException e = assertThrows(IOException.class, () -> store.compact());
+
+        assertEquals("injected move failure", e.getMessage());
+        assertEquals(0L, store.stats().get("compactions"));
+        assertEquals(before, journalBytes());
+        assertEquals("round-19", lastContent(store.load("s1")));
+        assertFalse(Files.exists(dir.resolve("sessions.journal.compact")));
+        // 原日志重新打开后可继续写入，重启后完整恢复
+        store.save(snapshot("s2", "after-failure"));
+        store.close();
+        store = open();
+        assertEquals("round-19", lastContent(store.load("s1")));
+        assertEquals("after-failure", lastContent(store.load("s2")));
+    }
+
+    private JournalSessionStore open() throws IOException {
+        // 压缩门槛0MB：测试中手动触发压缩；后台刷盘/压缩间隔足够长，不干扰断言
+        return new JournalSessionStore(dir.toString(), 1, EXPIRE_MILLIS, 0, 60_000, 60);
+    }
+
+    private Path journal() {
+        return dir.resolve("sessions.journal");
+    }
+
+    private long journalBytes() {
+        return ((Number) store.stats().get("journalBytes")).longValue();
+    }
+
+    private static SessionSnapshot snapshot(String sessionId, String content) {
+        SessionSnapshot snapshot = new SessionSnapshot();
+        snapshot.setSessionId(sessionId);
+        snapshot.setLastActiveTime(System.currentTimeMillis());
+        SessionSnapshot.Message message = new SessionSnapshot.Message();
+        message.setRole("user");
+        message.setContent(content);
+        message.setTimestamp(snapshot.getLastActiveTime());
+        snapshot.getMessages().add(message);
+        return snapshot;
+    }
+
+    private static String lastContent(SessionSnapshot snapshot) {
+        List<SessionSnapshot.Message> messages = snapshot.getMessages();
+        return messages.get(messages.size() - 1).getContent();
+    }
+}
@@ -0,0 +1,85 @@
+package com.lizy.loganalysishelper.util;
+
+import com.lizy.loganalysishelper.config.LocalRuleProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 本地规则：按application.yml中的默认规则匹配（业务代码NPE要求栈顶帧在业务包内、下游连接超时匹配异常链任意一层）
+ */
+class LocalRuleEngineTest {
+    private LocalRuleEngine engine;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        StandardEnvironment environment = new StandardEnvironment();
+        new YamlPropertySourceLoader().load("application", new ClassPathResource("application.yml"))
+                .forEach(environment.getPropertySources()::addLast);
+        LocalRuleProperties properties = new Binder(ConfigurationPropertySources.get(environment))
+                .bind("qwen.rules", LocalRuleProperties.class).get();
+        assertEquals(2, properties.getItems().size());
+
+        engine = new LocalRuleEngine();
+        ReflectionTestUtils.setField(engine, "ruleProperties", properties);
+        engine.init();
+    }
+
+    @Test
+    void answersNullPointerInAppCode() {
+        String answer = engine.match(StackTraceParser.parse("java.lang.NullPointerException\n"
+                + "\tat com.lizy.order.OrderService.pay(OrderService.java:42)\n"
+                + "\tat org.springframework.web.servlet.FrameworkServlet.service(FrameworkServlet.java:897)"));
+
+        assertNotNull(answer);
+        assertTrue(answer.startsWith("## 错误原因\njava.lang.NullPointerException：业务代码 "
+                + "com.lizy.order.OrderService.pay(OrderService.java:42)"), answer);
+        assertTrue(answer.contains("## 预防措施"));
+    }
+
+    @Test
+    void skipsNullPointerOutsideAppCode() {
+        // 栈顶帧在框架内（top-frame-in-app），交给大模型分析
+        assertNull(engine.match(StackTraceParser.parse("java.lang.NullPointerException\n"
+                + "\tat org.springframework.beans.BeanWrapperImpl.getValue(BeanWrapperImpl.java:120)\n"
+                + "\tat com.lizy.order.OrderService.pay(OrderService.java:42)")));
+        // 没有调用栈帧时同样无法判断
+        assertNull(engine.match(StackTraceParser.parse("java.lang.NullPointerException: order is null")));
+    }
+
+    @Test
+    void answersConnectTimeoutAnywhereInCauseChain() {
+        String answer = engine.match(StackTraceParser.parse(
+                "org.springframework.web.client.ResourceAccessException: I/O error on POST request\n"
+                + "\tat org.springframework.web.client.RestTemplate.doExecute(RestTemplate.java:785)\n"
+                + "\tat com.lizy.order.PaymentClient.charge(PaymentClient.java:31)\n"
+                + "Caused by: java.net.SocketTimeoutException: connect timed out\n"
+                + "\tat java.net.PlainSocketImpl.socketConnect(Native Method)\n"
+                + "\tat com.lizy.order.PaymentClient.charge(PaymentClient.java:31)\n"
+                + "\t... 1 more"));
+
+        assertNotNull(answer);
+        assertTrue(answer.startsWith("## 错误原因\njava.net.SocketTimeoutException（connect timed out）："
+                + "调用下游HTTP服务时连接/读取超时，触发位置：com.lizy.order.PaymentClient.charge(PaymentClient.java:31)"),
+                answer);
+    }
+
+    @Test
+    void leavesOtherExceptionsToModel() {
+        assertNull(engine.match(StackTraceParser.parse("java.lang.IllegalStateException: 库存不足\n"
+                + "\tat com.lizy.order.StockService.lock(StockService.java:18)")));
+        assertNull(engine.match(null));
+    }
+}
@@ -0,0 +1,71 @@
+package com.lizy.loganalysishelper.util;
+
+import com.lizy.loganalysishelper.config.LogIngestProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 日志目录监听：按日期命名轮转时，已删除文件的读取器被移除，不随天数增长
+ */
+class LogDirectoryWatcherTest {
+    @TempDir
+    Path dir;
+
+    private LogDirectoryWatcher watcher;
+
+    @AfterEach
+    void tearDown() {
+        if (watcher != null) {
+            watcher.shutdown();
+        }
+    }
+
+    @Test
+    void dropsTailersOfDeletedFiles() throws Exception {
+        LogIngestProperties properties = new LogIngestProperties();
+        properties.setEnabled(true);
+        properties.setDirs(Collections.singletonList(dir.toString()));
+        properties.setPollIntervalMs(20);
+        watcher = new LogDirectoryWatcher();
+        ReflectionTestUtils.setField(watcher, "properties", properties);
+        ReflectionTestUtils.setField(watcher, "qwenApiUtil", mock(QwenApiUtil.class));
+        ReflectionTestUtils.setField(watcher, "conversationMemoryManager", mock(ConversationMemoryManager.class));
+        watcher.init();
+
+        for (int day = 1; day <= 3; day++) {
+            Path file = dir.resolve("app-2024-05-0" + day + ".log");
+            Files.write(file, "INFO 启动完成\n".getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            awaitTrue(() -> trackedFiles() == 1);
+            // 保留策略删除前一天的日志
+            Files.delete(file);
+            awaitTrue(() -> trackedFiles() == 0);
+        }
+    }
+
+    private int trackedFiles() {
+        return (Integer) watcher.stats().get("trackedFiles");
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        // 部分平台的WatchService为轮询实现（约2秒一次），留足等待时间
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(15);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "等待条件超时");
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.lizy.loganalysishelper.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 日志文件增量读取：追加、半行、UTF-8多字节字符跨读取边界、轮转、截断、删除
+ */
+class LogFileTailerTest {
+    @TempDir
+    Path dir;
+
+    private final List<String> blocks = new ArrayList<>();
+    private LogFileTailer tailer;
+
+    @AfterEach
+    void closeTailer() {
+        if (tailer != null) {
+            tailer.close();
+        }
+    }
+
+    @Test
+    void readsAppendedContentAndKeepsPartialLines() throws IOException {
+        Path file = dir.resolve("app.log");
+        append(file, "INFO 启动完成\n");
+        tailer = newTailer(file, false);
+        assertTrue(tailer.poll());
+
+        // 写到一半的行不提前交给提取器
+        append(file, trace("OrderNotFoundException").substring(0, 30));
+        tailer.poll();
+        tailer.flushIfIdle(0);
+        assertTrue(blocks.isEmpty());
+
+        append(file, trace("OrderNotFoundException").substring(30) + "INFO 继续处理\n");
+        tailer.poll();
+        assertEquals(Arrays.asList(trace("OrderNotFoundException").trim()), blocks);
+        assertFalse(tailer.poll());
+    }
+
+    @Test
+    void startsAtEndForExistingFiles() throws IOException {
+        Path file = dir.resolve("app.log");
+        append(file, trace("HistoricalException") + "INFO 历史日志\n");
+        tailer = newTailer(file, true);
+        tailer.poll();
+
+        append(file, trace("FreshException") + "INFO 新日志\n");
+        tailer.poll();
+
+        assertEquals(1, blocks.size());
+        assertTrue(blocks.get(0).startsWith("com.example.order.FreshException"));
+    }
+
+    @Test
+    void decodesMultiByteCharacterSplitAcrossReads() throws IOException {
+        Path file = dir.resolve("app.log");
+        tailer = newTailer(file, false);
+        byte[] header = "com.example.order.OrderNotFoundException: 订单不存在\n".getBytes(StandardCharsets.UTF_8);
+        // 在"订"（3字节）中间切开
+        int split = "com.example.order.OrderNotFoundException: ".length() + 1;
+        appendBytes(file, Arrays.copyOfRange(header, 0, split));
+        tailer.poll();
+        appendBytes(file, Arrays.copyOfRange(header, split, header.length));
+        append(file, "\tat com.example.order.OrderService.load(OrderService.java:42)\nINFO 继续处理\n");
+        tailer.poll();
+
+        assertEquals(1, blocks.size());
+        assertTrue(blocks.get(0).startsWith("com.example.order.OrderNotFoundException: 订单不存在\n"), blocks.get(0));
+    }
+
+    @Test
+    void finishesRotatedFileThenReadsNewFileFromStart() throws IOException {
+        Path file = dir.resolve("app.log");
+        append(file, "INFO 启动完成\n");
+        tailer = newTailer(file, false);
+        tailer.poll();
+
+        // 轮转前最后写入的内容在rename之后才被读到
+        append(file, trace("BeforeRotationException"));
+        Files.move(file, dir.resolve("app.log.1"));
+        append(file, trace("AfterRotationException") + "INFO 新文件\n");
+        tailer.poll();
+
+        assertEquals(1, tailer.getRotations());
+        assertEquals(2, blocks.size());
+        assertTrue(blocks.get(0).startsWith("com.example.order.BeforeRotationException"));
+        assertTrue(blocks.get(1).startsWith("com.example.order.AfterRotationException"));
+    }
+
+    @Test
+    void rereadsTruncatedFileFromStart() throws IOException {
+        Path file = dir.resolve("app.log");
+        append(file, "INFO 很长的一段启动日志，用于让截断后的文件比之前短\n" + trace("BeforeTruncateException") + "INFO 结束\n");
+        tailer = newTailer(file, false);
+        tailer.poll();
+        assertEquals(1, blocks.size());
+
+        // copytruncate：原文件清空后继续写入
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(0);
+        }
+        append(file, trace("AfterTruncateException") + "INFO\n");
+        tailer.poll();
+
+        assertEquals(1, tailer.getTruncations());
+        assertEquals(2, blocks.size());
+        assertTrue(blocks.get(1).startsWith("com.example.order.AfterTruncateException"));
+    }
+
+    @Test
+    void reportsDeletedFileAfterDrainingIt() throws IOException {
+        Path file = dir.resolve("app.log");
+        append(file, "INFO 启动完成\n");
+        tailer = newTailer(file, false);
+        tailer.poll();
+        assertFalse(tailer.isFileGone());
+
+        append(file, trace("LastWordsException"));
+        Files.delete(file);
+        tailer.poll();
+
+        assertTrue(tailer.isFileGone());
+        assertEquals(1, blocks.size());
+        assertTrue(blocks.get(0).startsWith("com.example.order.LastWordsException"));
+    }
+
+    private LogFileTailer newTailer(Path file, boolean fromEnd) {
+        return new LogFileTailer(file, fromEnd, 300, blocks::add);
+    }
+
+    private static void append(Path file, String content) throws IOException {
+        appendBytes(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void appendBytes(Path file, byte[] bytes) throws IOException {
+        Files.write(file, bytes, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private static String trace(String exceptionName) {
+        return "com.example.order." + exceptionName + ": order 42\n"
+                + "\tat com.example.order.OrderService.load(OrderService.java:42)\n"
+                + "\tat com.example.order.OrderController.get(OrderController.java:17)\n";
+    }
+}
@@ -0,0 +1,73 @@
+package com.lizy.loganalysishelper.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+/**
+ * 消息正文编解码：各存储模式往返、残缺压缩数据快速失败
+ */
+class MessageBodyCodecTest {
+    private static final String CONTENT = repeat("java.lang.IllegalStateException: 订单状态异常\n"
+            + "\tat com.example.order.OrderService.pay(OrderService.java:42)\n", 50);
+
+    @Test
+    void roundTripsInEveryStorageMode() {
+        for (MessageStorageMode mode : MessageStorageMode.values()) {
+            if (mode == MessageStorageMode.HEAP) {
+                continue;
+            }
+            MessageBodyCodec.EncodedBody body = MessageBodyCodec.encode(CONTENT, mode);
+            assertEquals(CONTENT, body.decode(), mode.name());
+            assertEquals(CONTENT.getBytes(StandardCharsets.UTF_8).length, body.rawLength());
+        }
+    }
+
+    @Test
+    void truncatedCompressedBodyFailsInsteadOfSpinning() {
+        byte[] raw = CONTENT.getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = deflate(raw);
+        byte[] truncated = Arrays.copyOf(compressed, compressed.length / 2);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () ->
+                assertThrows(IllegalStateException.class, () -> MessageBodyCodec.inflate(truncated, raw.length)));
+    }
+
+    @Test
+    void shorterThanDeclaredLengthFails() {
+        byte[] raw = CONTENT.getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = deflate(raw);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () ->
+                assertThrows(IllegalStateException.class, () -> MessageBodyCodec.inflate(compressed, raw.length + 10)));
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater();
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    private static String repeat(String text, int times) {
+        StringBuilder builder = new StringBuilder(text.length() * times);
+        for (int i = 0; i < times; i++) {
+            builder.append(text);
+        }
+        return builder.toString();
+    }
+}
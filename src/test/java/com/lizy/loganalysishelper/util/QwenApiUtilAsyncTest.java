@@ -0,0 +1,136 @@
+package com.lizy.loganalysishelper.util;
+
+import com.lizy.loganalysishelper.entity.LogAnalysisResponse;
+import com.lizy.loganalysishelper.util.FakeUpstreamServer.FakeResponse;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 异步分析的取消传递：排队中的请求退出调度队列、进行中的调用被终止、合并等待者之一取消不影响其他人；
+ * 同步共享加载超出线程上限时快速拒绝
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+        "qwen.api-key=sk-test",
+        "qwen.session.store.type=none",
+        "qwen.cache.enabled=false",
+        "qwen.similar.enabled=false",
+        "qwen.router.enabled=false",
+        "qwen.scheduler.max-concurrent=1",
+        "qwen.single-flight.max-loads=1",
+        "qwen.retry.count=0",
+        "qwen.http.warmup.enabled=false",
+        "qwen.ingest.enabled=false"
+})
+class QwenApiUtilAsyncTest {
+    private static final FakeUpstreamServer UPSTREAM = startUpstream();
+
+    @Autowired
+    private QwenApiUtil qwenApiUtil;
+
+    @Autowired
+    private UpstreamScheduler upstreamScheduler;
+
+    @DynamicPropertySource
+    static void upstreamUrl(DynamicPropertyRegistry registry) {
+        registry.add("qwen.api-url", UPSTREAM::url);
+    }
+
+    @AfterAll
+    static void stopUpstream() {
+        UPSTREAM.close();
+    }
+
+    @BeforeEach
+    void resetUpstream() {
+        UPSTREAM.reset();
+    }
+
+    @Test
+    void cancellationLeavesQueueAndAbortsRunningCall() throws Exception {
+        UPSTREAM.enqueue(FakeResponse.text("慢请求").delay(3000));
+        CompletableFuture<LogAnalysisResponse> running = qwenApiUtil.analyzeJavaLogAsync(
+                trace("InventoryLockException"), null, "test");
+        awaitTrue(() -> UPSTREAM.requestCount() == 1);
+
+        // 并发上限为1，第二个请求在调度队列中排队
+        CompletableFuture<LogAnalysisResponse> queued = qwenApiUtil.analyzeJavaLogAsync(
+                trace("CouponExpiredException"), null, "test");
+        awaitTrue(() -> upstreamScheduler.queueDepth() == 1);
+
+        queued.cancel(true);
+        awaitTrue(() -> upstreamScheduler.queueDepth() == 0);
+        assertEquals(1, upstreamScheduler.inFlight());
+
+        long start = System.currentTimeMillis();
+        running.cancel(true);
+        awaitTrue(() -> upstreamScheduler.inFlight() == 0);
+        assertTrue(System.currentTimeMillis() - start < 2000, "进行中的调用未被取消");
+        assertEquals(1, UPSTREAM.requestCount());
+    }
+
+    @Test
+    void cancellingOneCoalescedWaiterKeepsSharedCall() throws Exception {
+        UPSTREAM.enqueue(FakeResponse.text("共享结果").delay(500));
+        CompletableFuture<LogAnalysisResponse> first = qwenApiUtil.analyzeJavaLogAsync(
+                trace("AddressInvalidException"), null, "test");
+        CompletableFuture<LogAnalysisResponse> second = qwenApiUtil.analyzeJavaLogAsync(
+                trace("AddressInvalidException"), null, "test");
+
+        first.cancel(true);
+        LogAnalysisResponse response = second.get(10, TimeUnit.SECONDS);
+
+        assertEquals(200, response.getCode());
+        assertTrue(response.getAnalysisResult().contains("共享结果"));
+        assertEquals(1, UPSTREAM.requestCount());
+    }
+
+    @Test
+    void syncLoadsBeyondLimitAreRejected() throws Exception {
+        UPSTREAM.enqueue(FakeResponse.text("慢请求").delay(1000));
+        CompletableFuture<LogAnalysisResponse> running = CompletableFuture.supplyAsync(
+                () -> qwenApiUtil.analyzeJavaLog(trace("PaymentTimeoutException"), null, "test"));
+        awaitTrue(() -> UPSTREAM.requestCount() == 1);
+
+        // 共享加载线程上限为1，不同指纹的第二个同步请求直接拒绝，不新建线程
+        LogAnalysisResponse rejected = qwenApiUtil.analyzeJavaLog(trace("StockShortageException"), null, "test");
+
+        assertEquals(429, rejected.getCode());
+        assertEquals(200, running.get(10, TimeUnit.SECONDS).getCode());
+        assertEquals(1, UPSTREAM.requestCount());
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "等待条件超时");
+            Thread.sleep(10);
+        }
+    }
+
+    private static String trace(String exceptionName) {
+        return "com.example.order." + exceptionName + ": order 42\n"
+                + "\tat com.example.order.OrderService.load(OrderService.java:42)\n"
+                + "\tat com.example.order.OrderController.get(OrderController.java:17)";
+    }
+
+    private static FakeUpstreamServer startUpstream() {
+        try {
+            return new FakeUpstreamServer().start();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.lizy.loganalysishelper.util;
+
+import com.lizy.loganalysishelper.entity.LogAnalysisResponse;
+import com.lizy.loganalysishelper.util.FakeUpstreamServer.FakeResponse;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 流式分析（SSE）对接本地模拟服务：增量片段、无[DONE]结束、错误事件
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+        "qwen.api-key=sk-test",
+        "qwen.session.store.type=none",
+        "qwen.cache.enabled=false",
+        "qwen.similar.enabled=false",
+        "qwen.router.enabled=false",
+        "qwen.scheduler.rate-per-minute=0",
+        "qwen.http.warmup.enabled=false",
+        "qwen.ingest.enabled=false"
+})
+class QwenApiUtilStreamTest {
+    private static final FakeUpstreamServer UPSTREAM = startUpstream();
+
+    @Autowired
+    private QwenApiUtil qwenApiUtil;
+
+    @Autowired
+    private QwenHttpClient qwenHttpClient;
+
+    @DynamicPropertySource
+    static void upstreamUrl(DynamicPropertyRegistry registry) {
+        registry.add("qwen.api-url", UPSTREAM::url);
+    }
+
+    @AfterAll
+    static void stopUpstream() {
+        UPSTREAM.close();
+    }
+
+    @BeforeEach
+    void resetUpstream() {
+        UPSTREAM.reset();
+    }
+
+    @Test
+    void streamsTokenFramesUntilConnectionCloses() throws Exception {
+        // DashScope以连接关闭结束流，没有[DONE]标记
+        UPSTREAM.enqueue(FakeResponse.sse(
+                "id:1", "event:result", ":HTTP_STATUS/200",
+                "data:{\"output\":{\"text\":\"## 错误原因\\n\"}}", "",
+                "id:2", "event:result", ":HTTP_STATUS/200",
+                "data:{\"output\":{\"text\":\"订单不存在\"},\"usage\":{\"input_tokens\":20,\"output_tokens\":6}}", ""));
+        RecordingListener listener = new RecordingListener();
+
+        qwenApiUtil.streamJavaLog(trace("OrderNotFoundException"), null, "test", listener);
+        LogAnalysisResponse response = listener.await();
+
+        assertEquals(200, response.getCode());
+        assertEquals(Arrays.asList("## 错误原因\n", "订单不存在"), listener.tokens);
+        assertTrue(response.getAnalysisResult().contains("订单不存在"));
+        assertEquals(1, UPSTREAM.requestCount());
+    }
+
+    @Test
+    void stopsAtDoneMarker() throws Exception {
+        UPSTREAM.enqueue(FakeResponse.sse(
+                "data:{\"output\":{\"text\":\"## 错误原因\\n库存不足\"}}", "",
+                "data: [DONE]", ""));
+        RecordingListener listener = new RecordingListener();
+
+        qwenApiUtil.streamJavaLog(trace("StockShortageException"), null, "test", listener);
+        LogAnalysisResponse response = listener.await();
+
+        assertEquals(200, response.getCode());
+        assertEquals(Arrays.asList("## 错误原因\n库存不足"), listener.tokens);
+    }
+
+    @Test
+    void errorFrameFailsStreamWithUpstreamStatusAndMessage() throws Exception {
+        long failuresBefore = windowFailures();
+        UPSTREAM.enqueue(FakeResponse.sse(
+                "id:1", "event:error", ":HTTP_STATUS/429",
+                "data:{\"code\":\"Throttling.RateQuota\",\"message\":\"Requests rate limit exceeded\",\"request_id\":\"r-1\"}",
+                ""));
+        RecordingListener listener = new RecordingListener();
+
+        qwenApiUtil.streamJavaLog(trace("PaymentTimeoutException"), null, "test", listener);
+        LogAnalysisResponse response = listener.await();
+
+        assertEquals(429, response.getCode());
+        assertTrue(response.getMsg().contains("Throttling.RateQuota"), response.getMsg());
+        assertTrue(response.getMsg().contains("Requests rate limit exceeded"), response.getMsg());
+        assertTrue(listener.tokens.isEmpty());
+        // 熔断器在回调返回后记录结果
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (windowFailures() == failuresBefore && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(failuresBefore + 1, windowFailures());
+    }
+
+    @SuppressWarnings("unchecked")
+    private long windowFailures() {
+        Map<String, Object> breaker = (Map<String, Object>) qwenHttpClient.stats().get("circuitBreaker");
+        return ((Number) breaker.get("windowFailures")).longValue();
+    }
+
+    private static String trace(String exceptionName) {
+        return "com.example.order." + exceptionName + ": order 42\n"
+                + "\tat com.example.order.OrderService.load(OrderService.java:42)\n"
+                + "\tat com.example.order.OrderController.get(OrderController.java:17)";
+    }
+
+    private static FakeUpstreamServer startUpstream() {
+        try {
+            return new FakeUpstreamServer().start();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class RecordingListener implements AnalysisStreamListener {
+        private final List<String> tokens = new CopyOnWriteArrayList<>();
+        private final CompletableFuture<LogAnalysisResponse> result = new CompletableFuture<>();
+
+        @Override
+        public void onToken(String token) {
+            tokens.add(token);
+        }
+
+        @Override
+        public void onComplete(LogAnalysisResponse response) {
+            result.complete(response);
+        }
+
+        @Override
+        public void onError(LogAnalysisResponse response) {
+            result.complete(response);
+        }
+
+        LogAnalysisResponse await() throws Exception {
+            return result.get(10, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.lizy.loganalysishelper.util;
+
+import com.lizy.loganalysishelper.util.FakeUpstreamServer.FakeResponse;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 重试/熔断/对冲对接本地模拟服务：400不重试、5xx退避重试、遵循Retry-After、熔断打开与半开恢复、408计入熔断失败、慢请求触发对冲
+ */
+class QwenHttpClientTest {
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+
+    private static FakeUpstreamServer upstream;
+    private static OkHttpClient okHttpClient;
+
+    private QwenHttpClient client;
+
+    @BeforeAll
+    static void startUpstream() throws IOException {
+        upstream = new FakeUpstreamServer().start();
+        okHttpClient = new OkHttpClient.Builder()
+                .connectTimeout(5, TimeUnit.SECONDS)
+                .readTimeout(10, TimeUnit.SECONDS)
+                .build();
+    }
+
+    @AfterAll
+    static void stopUpstream() {
+        upstream.close();
+        okHttpClient.dispatcher().executorService().shutdown();
+        okHttpClient.connectionPool().evictAll();
+    }
+
+    @BeforeEach
+    void setUp() {
+        upstream.reset();
+        client = newClient();
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.shutdown();
+    }
+
+    @Test
+    void doesNotRetryClientError() {
+        upstream.enqueue(FakeResponse.status(400));
+
+        IOException e = assertThrows(IOException.class, () -> call());
+
+        assertTrue(e.getMessage().contains("400"), e.getMessage());
+        assertEquals(1, upstream.requestCount());
+        assertEquals(0, client.getRetries());
+        // 请求本身的问题不计入熔断失败
+        assertEquals(CircuitBreaker.State.CLOSED, client.getCircuitState());
+    }
+
+    @Test
+    void retriesServiceUnavailableWithBackoff() throws IOException {
+        upstream.enqueue(FakeResponse.status(503), FakeResponse.status(503), FakeResponse.text("恢复"));
+
+        assertTrue(call().contains("恢复"));
+        assertEquals(3, upstream.requestCount());
+        assertEquals(2, client.getRetries());
+    }
+
+    @Test
+    void givesUpWhenRetriesAreExhausted() {
+        upstream.enqueue(FakeResponse.status(503), FakeResponse.status(503), FakeResponse.status(503));
+
+        IOException e = assertThrows(IOException.class, () -> call());
+
+        assertTrue(e.getMessage().contains("重试次数耗尽"), e.getMessage());
+        assertEquals(3, upstream.requestCount());
+    }
+
+    @Test
+    void honoursRetryAfter() throws IOException {
+        upstream.enqueue(FakeResponse.status(429).header("Retry-After", "1"), FakeResponse.text("限流解除"));
+
+        assertTrue(call().contains("限流解除"));
+        List<Long> times = upstream.requestTimes();
+        assertEquals(2, times.size());
+        // 退避基础延迟只有20ms，间隔达到1秒说明采用了Retry-After
+        long gapMs = TimeUnit.NANOSECONDS.toMillis(times.get(1) - times.get(0));
+        assertTrue(gapMs >= 950, "重试间隔：" + gapMs + "ms");
+    }
+
+    @Test
+    void failsFastWhenRetryAfterExceedsMaxDelay() {
+        upstream.enqueue(FakeResponse.status(429).header("Retry-After", "60"));
+
+        IOException e = assertThrows(IOException.class, () -> call());
+
+        assertTrue(e.getMessage().contains("等待时间过长"), e.getMessage());
+        assertEquals(1, upstream.requestCount());
+    }
+
+    @Test
+    void opensBreakerAndRecoversThroughHalfOpen() throws Exception {
+        ReflectionTestUtils.setField(client, "retryCount", 0);
+        upstream.enqueue(FakeResponse.status(503), FakeResponse.status(503),
+                FakeResponse.status(503), FakeResponse.status(503));
+        for (int i = 0; i < 4; i++) {
+            assertThrows(IOException.class, () -> call());
+        }
+        assertEquals(CircuitBreaker.State.OPEN, client.getCircuitState());
+
+        // 熔断中快速失败，请求不到达上游
+        assertThrows(CircuitBreaker.OpenException.class, () -> call());
+        assertEquals(4, upstream.requestCount());
+
+        // 冷却后进入半开，探测失败重新打开
+        TimeUnit.MILLISECONDS.sleep(250);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, client.getCircuitState());
+        upstream.enqueue(FakeResponse.status(503));
+        assertThrows(IOException.class, () -> call());
+        assertEquals(CircuitBreaker.State.OPEN, client.getCircuitState());
+
+        // 再次冷却后探测成功，恢复正常
+        TimeUnit.MILLISECONDS.sleep(250);
+        assertTrue(call().contains("默认结果"));
+        assertEquals(CircuitBreaker.State.CLOSED, client.getCircuitState());
+        assertEquals(6, upstream.requestCount());
+    }
+
+    @Test
+    void countsRequestTimeoutAsBreakerFailure() {
+        ReflectionTestUtils.setField(client, "retryCount", 0);
+        // OkHttp对408自带一次透明重试，每次调用到达上游两次
+        for (int i = 0; i < 8; i++) {
+            upstream.enqueue(FakeResponse.status(408));
+        }
+        for (int i = 0; i < 4; i++) {
+            assertThrows(IOException.class, () -> call());
+        }
+
+        // 408可重试，说明上游暂时不可用，与5xx一样计入熔断失败
+        assertEquals(CircuitBreaker.State.OPEN, client.getCircuitState());
+        assertThrows(CircuitBreaker.OpenException.class, () -> call());
+        assertEquals(8, upstream.requestCount());
+    }
+
+    @Test
+    void hedgesSlowCall() throws IOException {
+        ReflectionTestUtils.setField(client, "hedgeEnabled", true);
+        ReflectionTestUtils.setField(client, "hedgeMinSamples", 3);
+        ReflectionTestUtils.setField(client, "hedgeMinDelayMs", 100L);
+        ReflectionTestUtils.setField(client, "hedgeMaxRatio", 1.0);
+        // 积累耗时样本
+        for (int i = 0; i < 3; i++) {
+            call();
+        }
+        upstream.reset();
+        upstream.enqueue(FakeResponse.text("慢请求").delay(3000), FakeResponse.text("对冲请求"));
+
+        long start = System.currentTimeMillis();
+        String result = call();
+        long elapsedMs = System.currentTimeMillis() - start;
+
+        assertTrue(result.contains("对冲请求"), result);
+        assertTrue(elapsedMs < 2000, "耗时：" + elapsedMs + "ms");
+        assertEquals(2, upstream.requestCount());
+        assertEquals(1, client.getHedges());
+        assertEquals(1, client.getHedgeWins());
+    }
+
+    private String call() throws IOException {
+        Request request = new Request.Builder()
+                .url(upstream.url())
+                .post(RequestBody.create(JSON, "{\"model\":\"qwen-turbo\"}"))
+                .build();
+        return client.execute(request, "TRACE_TEST", response -> response.body().string());
+    }
+
+    private static QwenHttpClient newClient() {
+        QwenHttpClient client = new QwenHttpClient();
+        ReflectionTestUtils.setField(client, "okHttpClient", okHttpClient);
+        ReflectionTestUtils.setField(client, "retryCount", 2);
+        ReflectionTestUtils.setField(client, "retryBaseDelayMs", 20L);
+        ReflectionTestUtils.setField(client, "retryMaxDelayMs", 5000L);
+        ReflectionTestUtils.setField(client, "retryableStatuses",
+                new HashSet<>(Arrays.asList(408, 429, 500, 502, 503, 504)));
+        ReflectionTestUtils.setField(client, "circuitBreakerEnabled", true);
+        ReflectionTestUtils.setField(client, "breakerWindowSize", 4);
+        ReflectionTestUtils.setField(client, "breakerMinimumCalls", 4);
+        ReflectionTestUtils.setField(client, "breakerFailureRateThreshold", 0.5);
+        ReflectionTestUtils.setField(client, "breakerOpenMs", 200L);
+        ReflectionTestUtils.setField(client, "breakerHalfOpenPermits", 1);
+        ReflectionTestUtils.setField(client, "hedgeEnabled", false);
+        ReflectionTestUtils.setField(client, "hedgeQuantile", 0.95);
+        ReflectionTestUtils.setField(client, "hedgeMinDelayMs", 500L);
+        ReflectionTestUtils.setField(client, "hedgeMinSamples", 20);
+        ReflectionTestUtils.setField(client, "hedgeMaxRatio", 0.1);
+        client.init();
+        return client;
+    }
+}
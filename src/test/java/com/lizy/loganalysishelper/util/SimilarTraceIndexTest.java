@@ -0,0 +1,110 @@
+package com.lizy.loganalysishelper.util;
+
+import com.lizy.loganalysishelper.config.LocalRuleProperties;
+import com.lizy.loganalysishelper.entity.ParsedThrowable;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 相似异常复用：行号修正、相似度说明只出现在响应中（复用结果再被复用时不叠加）
+ */
+class SimilarTraceIndexTest {
+    private static final String NOTICE = "> 该异常与已分析过的异常调用栈相似度为";
+
+    @TempDir
+    Path cacheDir;
+
+    private AnalysisResultCache cache;
+    private SimilarTraceIndex index;
+
+    @BeforeEach
+    void setUp() {
+        cache = new AnalysisResultCache();
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "memoryMaxEntries", 100);
+        ReflectionTestUtils.setField(cache, "ttlMinutes", 60L);
+        ReflectionTestUtils.setField(cache, "diskDir", cacheDir.toString());
+        cache.init();
+
+        LocalRuleProperties ruleProperties = new LocalRuleProperties();
+        ruleProperties.setAppPackages(Collections.singletonList("com.example."));
+        index = new SimilarTraceIndex();
+        ReflectionTestUtils.setField(index, "enabled", true);
+        ReflectionTestUtils.setField(index, "threshold", 0.8);
+        ReflectionTestUtils.setField(index, "maxEntries", 100);
+        ReflectionTestUtils.setField(index, "maxFrames", 256);
+        ReflectionTestUtils.setField(index, "analysisResultCache", cache);
+        ReflectionTestUtils.setField(index, "ruleProperties", ruleProperties);
+        index.init();
+    }
+
+    @Test
+    void adaptsLineNumbersAndKeepsNoticeOutOfCachedResult() {
+        cache.put("fp-a", "## 错误原因\nOrderService.java:42 未判空");
+        index.add("fp-a", trace(42));
+
+        SimilarTraceIndex.SimilarAnalysis similar = index.findSimilar(trace(43));
+
+        assertNotNull(similar);
+        assertEquals("fp-a", similar.getFingerprint());
+        assertEquals("## 错误原因\nOrderService.java:43 未判空", similar.getResult());
+        assertTrue(similar.getResponse().startsWith(NOTICE), similar.getResponse());
+        assertTrue(similar.getResponse().endsWith(similar.getResult()));
+    }
+
+    @Test
+    void reusedResultDoesNotStackNotices() {
+        cache.put("fp-a", "## 错误原因\nOrderService.java:42 未判空");
+        index.add("fp-a", trace(42));
+        // 与QwenApiUtil一致：复用结果以当前指纹写入缓存，精确命中时再登记到索引
+        SimilarTraceIndex.SimilarAnalysis first = index.findSimilar(trace(43));
+        cache.put("fp-b", first.getResult());
+        index.add("fp-b", trace(43));
+        cache.put("fp-c", index.findSimilar(trace(44)).getResult());
+        index.add("fp-c", trace(44));
+
+        SimilarTraceIndex.SimilarAnalysis last = index.findSimilar(trace(45));
+
+        assertEquals(1, occurrences(last.getResponse(), NOTICE), last.getResponse());
+        assertFalse(cache.get("fp-b").contains(NOTICE));
+        assertFalse(cache.get("fp-c").contains(NOTICE));
+    }
+
+    @Test
+    void stripsNoticeFromPreviouslyCachedResult() {
+        // 修复前连同相似度说明写入磁盘缓存的结果
+        cache.put("fp-a", NOTICE + "91%（根因类型相同），以下复用其分析结果，业务代码行号已按当前日志修正\n\n"
+                + "## 错误原因\nOrderService.java:42 未判空");
+        index.add("fp-a", trace(42));
+
+        SimilarTraceIndex.SimilarAnalysis similar = index.findSimilar(trace(43));
+
+        assertEquals("## 错误原因\nOrderService.java:43 未判空", similar.getResult());
+        assertEquals(1, occurrences(similar.getResponse(), NOTICE));
+    }
+
+    private static ParsedThrowable trace(int line) {
+        return StackTraceParser.parse("java.lang.NullPointerException: order is null\n"
+                + "\tat com.example.order.OrderService.pay(OrderService.java:" + line + ")\n"
+                + "\tat com.example.order.OrderController.pay(OrderController.java:17)\n"
+                + "\tat org.springframework.web.servlet.FrameworkServlet.service(FrameworkServlet.java:897)\n");
+    }
+
+    private static int occurrences(String text, String part) {
+        int count = 0;
+        for (int i = text.indexOf(part); i >= 0; i = text.indexOf(part, i + part.length())) {
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,81 @@
+package com.lizy.loganalysishelper.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 单飞合并：等待者独立取消，全部取消后取消异步加载
+ */
+class SingleFlightTest {
+    private final SingleFlight<String> flight = new SingleFlight<>(Runnable::run);
+
+    @Test
+    void cancellingOneWaiterKeepsLoadForOthers() {
+        CompletableFuture<String> source = new CompletableFuture<>();
+        CompletableFuture<String> first = flight.executeAsync("fp", () -> source);
+        CompletableFuture<String> second = flight.executeAsync("fp", () -> new CompletableFuture<>());
+
+        first.cancel(true);
+        source.complete("结果");
+
+        assertFalse(source.isCancelled());
+        assertEquals("结果", second.join());
+        assertEquals(1, flight.getLoads());
+        assertEquals(1, flight.getCoalesced());
+    }
+
+    @Test
+    void cancellingAllWaitersCancelsLoad() {
+        CompletableFuture<String> source = new CompletableFuture<>();
+        CompletableFuture<String> first = flight.executeAsync("fp", () -> source);
+        CompletableFuture<String> second = flight.executeAsync("fp", () -> new CompletableFuture<>());
+
+        first.cancel(true);
+        second.cancel(true);
+
+        assertTrue(source.isCancelled());
+        assertEquals(0, flight.inFlightCount());
+    }
+
+    @Test
+    void waiterCancelledWhileLoadStartsDoesNotLeakFlight() {
+        CompletableFuture<String> source = new CompletableFuture<>();
+        CompletableFuture<String> first = flight.executeAsync("fp", () -> {
+            // 源Future登记前已有等待者挂上并取消
+            flight.executeAsync("fp", () -> new CompletableFuture<>()).cancel(true);
+            return source;
+        });
+
+        assertFalse(source.isCancelled());
+        first.cancel(true);
+
+        assertTrue(source.isCancelled());
+        assertEquals(0, flight.inFlightCount());
+    }
+
+    @Test
+    void newRequestAfterAbandonedLoadStartsFreshLoad() {
+        CompletableFuture<String> abandoned = new CompletableFuture<>();
+        flight.executeAsync("fp", () -> abandoned).cancel(true);
+        AtomicInteger loads = new AtomicInteger();
+        CompletableFuture<String> fresh = new CompletableFuture<>();
+
+        CompletableFuture<String> result = flight.executeAsync("fp", () -> {
+            loads.incrementAndGet();
+            return fresh;
+        });
+        fresh.complete("新结果");
+
+        assertTrue(abandoned.isCancelled());
+        assertNotSame(abandoned, fresh);
+        assertEquals(1, loads.get());
+        assertEquals("新结果", result.join());
+    }
+}
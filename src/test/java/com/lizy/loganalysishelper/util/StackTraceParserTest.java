@@ -0,0 +1,123 @@
+package com.lizy.loganalysishelper.util;
+
+import com.lizy.loganalysishelper.entity.ParsedThrowable;
+import com.lizy.loganalysishelper.entity.StackFrame;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 调用栈解析：线程前缀、按缩进挂接Caused by/Suppressed、"... N more"、缩进丢失时的兜底
+ */
+class StackTraceParserTest {
+
+    @Test
+    void parsesThreadPrefixAndFrames() {
+        ParsedThrowable parsed = StackTraceParser.parse("2024-05-01 10:00:00 ERROR 任务执行失败\n"
+                + "Exception in thread \"pool-1-thread-3\" java.lang.IllegalStateException: 库存不足\n"
+                + "\tat com.example.stock.StockService.lock(StockService.java:42)\n"
+                + "\tat java.lang.Thread.run(Thread.java:750)\n"
+                + "\tat sun.reflect.NativeMethodAccessorImpl.invoke0(Native Method)");
+
+        assertEquals("java.lang.IllegalStateException", parsed.getExceptionType());
+        assertEquals("库存不足", parsed.getMessage());
+        assertEquals(3, parsed.getFrames().size());
+        StackFrame top = parsed.getFrames().get(0);
+        assertEquals("com.example.stock.StockService", top.getClassName());
+        assertEquals("lock", top.getMethodName());
+        assertEquals("StockService.java", top.getFileName());
+        assertEquals(42, top.getLineNumber());
+        assertEquals("Native Method", parsed.getFrames().get(2).getFileName());
+        assertEquals(-1, parsed.getFrames().get(2).getLineNumber());
+    }
+
+    @Test
+    void nestsCausedByAndSuppressedByIndentation() {
+        ParsedThrowable parsed = StackTraceParser.parse(
+                "Exception in thread \"main\" java.lang.IllegalStateException: 关闭失败\n"
+                + "\tat com.example.App.close(App.java:30)\n"
+                + "\tat com.example.App.main(App.java:12)\n"
+                + "\tSuppressed: java.io.IOException: 流关闭失败\n"
+                + "\t\tat com.example.io.Stream.close(Stream.java:8)\n"
+                + "\t\t... 1 more\n"
+                + "\tCaused by: java.net.SocketException: 连接重置\n"
+                + "\t\tat java.net.SocketInputStream.read(SocketInputStream.java:210)\n"
+                + "\t\t... 2 more\n"
+                + "Caused by: java.sql.SQLException: 连接断开\n"
+                + "\tat com.example.dao.OrderDao.query(OrderDao.java:55)\n"
+                + "\t... 2 more\n"
+                + "Caused by: java.net.ConnectException: Connection refused\n"
+                + "\tat java.net.PlainSocketImpl.socketConnect(Native Method)\n"
+                + "\t... 3 more");
+
+        assertEquals(3, parsed.causeChain().size());
+        assertEquals("java.sql.SQLException", parsed.getCause().getExceptionType());
+        assertEquals(2, parsed.getCause().getFramesOmitted());
+        ParsedThrowable root = parsed.rootCause();
+        assertEquals("java.net.ConnectException", root.getExceptionType());
+        assertEquals("Connection refused", root.getMessage());
+        assertEquals(3, root.getFramesOmitted());
+
+        // Suppressed挂在顶层异常上，其Caused by挂在Suppressed上，而不是顶层异常链上
+        assertEquals(1, parsed.getSuppressed().size());
+        ParsedThrowable suppressed = parsed.getSuppressed().get(0);
+        assertEquals("java.io.IOException", suppressed.getExceptionType());
+        assertEquals(1, suppressed.getFrames().size());
+        assertEquals(1, suppressed.getFramesOmitted());
+        assertEquals("java.net.SocketException", suppressed.getCause().getExceptionType());
+        assertEquals(2, suppressed.getCause().getFramesOmitted());
+        assertEquals(2, parsed.getFrames().size());
+        assertEquals(0, parsed.getFramesOmitted());
+        assertEquals(6, parsed.totalFrameCount());
+    }
+
+    @Test
+    void suppressedOfCauseAttachesToCause() {
+        ParsedThrowable parsed = StackTraceParser.parse("java.lang.RuntimeException: 外层\n"
+                + "\tat com.example.App.run(App.java:10)\n"
+                + "Caused by: java.io.UncheckedIOException: 内层\n"
+                + "\tat com.example.App.read(App.java:20)\n"
+                + "\tSuppressed: java.io.IOException: 关闭失败\n"
+                + "\t\tat com.example.App.close(App.java:30)\n"
+                + "\t... 1 more");
+
+        assertEquals(0, parsed.getSuppressed().size());
+        assertEquals(1, parsed.getCause().getSuppressed().size());
+        // "... 1 more"与Suppressed同级缩进，仍记在最近解析的异常上
+        assertEquals("java.io.IOException", parsed.getCause().getSuppressed().get(0).getExceptionType());
+    }
+
+    @Test
+    void fallsBackToTopLevelWhenIndentationIsLost() {
+        ParsedThrowable parsed = StackTraceParser.parse("java.lang.IllegalStateException: 外层\n"
+                + "at com.example.App.run(App.java:10)\n"
+                + "Caused by: java.lang.NullPointerException\n"
+                + "at com.example.App.load(App.java:40)\n"
+                + "... 3 common frames omitted\n"
+                + "Suppressed: java.io.IOException: 关闭失败\n"
+                + "at com.example.App.close(App.java:30)");
+
+        assertEquals(1, parsed.getSuppressed().size());
+        assertEquals("java.io.IOException", parsed.getSuppressed().get(0).getExceptionType());
+        assertEquals(1, parsed.getSuppressed().get(0).getFrames().size());
+        assertEquals("java.lang.NullPointerException", parsed.getCause().getExceptionType());
+        assertNull(parsed.getCause().getMessage());
+        assertEquals(3, parsed.getCause().getFramesOmitted());
+    }
+
+    @Test
+    void parsesMultiLineMessageAndInlineException() {
+        ParsedThrowable multiLine = StackTraceParser.parse("org.example.ValidationException: 参数校验失败\n"
+                + "字段name不能为空\n"
+                + "\tat com.example.Validator.check(Validator.java:5)");
+        assertEquals("参数校验失败\n字段name不能为空", multiLine.getMessage());
+
+        ParsedThrowable inline = StackTraceParser.parse(
+                "10:00:00 ERROR OrderClient - 调用失败 java.net.ConnectException: Connection refused");
+        assertEquals("java.net.ConnectException", inline.getExceptionType());
+        assertEquals("Connection refused", inline.getMessage());
+
+        assertNull(StackTraceParser.parse("INFO 启动完成"));
+    }
+}
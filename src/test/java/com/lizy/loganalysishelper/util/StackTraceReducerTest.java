@@ -0,0 +1,120 @@
+package com.lizy.loganalysishelper.util;
+
+import com.lizy.loganalysishelper.config.LocalRuleProperties;
+import com.lizy.loganalysishelper.config.TraceReductionProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 调用栈预精简：递归帧折叠、框架帧按包折叠，业务帧/栈顶帧/业务直接调用的框架帧/Caused by/"... N more"原样保留
+ */
+class StackTraceReducerTest {
+    private StackTraceReducer reducer;
+
+    @BeforeEach
+    void setUp() {
+        TraceReductionProperties properties = new TraceReductionProperties();
+        properties.setFrameworkPackages(Arrays.asList("org.springframework.", "org.apache.catalina.",
+                "org.apache.tomcat.", "sun.reflect.", "java.lang.reflect."));
+        LocalRuleProperties ruleProperties = new LocalRuleProperties();
+        ruleProperties.setAppPackages(Collections.singletonList("com.example."));
+        reducer = new StackTraceReducer();
+        ReflectionTestUtils.setField(reducer, "properties", properties);
+        ReflectionTestUtils.setField(reducer, "ruleProperties", ruleProperties);
+    }
+
+    @Test
+    void foldsRecursiveCycle() {
+        StringBuilder trace = new StringBuilder("java.lang.StackOverflowError\n");
+        for (int i = 0; i < 50; i++) {
+            trace.append("\tat com.example.tree.Node.depth(Node.java:10)\n")
+                    .append("\tat com.example.tree.Node.visit(Node.java:20)\n");
+        }
+        trace.append("\tat com.example.tree.TreeService.walk(TreeService.java:5)");
+
+        StackTraceReducer.ReducedTrace reduced = reducer.reduce(trace.toString());
+
+        assertEquals("java.lang.StackOverflowError\n"
+                + "\tat com.example.tree.Node.depth(Node.java:10)\n"
+                + "\tat com.example.tree.Node.visit(Node.java:20)\n"
+                + "\t... above 2 frame(s) repeated 49 more times, 98 frames folded\n"
+                + "\tat com.example.tree.TreeService.walk(TreeService.java:5)", reduced.getText());
+        assertEquals(101, reduced.getOriginalFrames());
+        assertEquals(3, reduced.getKeptFrames());
+        assertEquals(98, reduced.getFoldedFrames());
+        assertTrue(reduced.getReducedTokens() < reduced.getOriginalTokens());
+    }
+
+    @Test
+    void collapsesFrameworkFramesAndKeepsAppFramesAndStructure() {
+        String trace = "java.lang.IllegalStateException: 下单失败\n"
+                + "\tat com.example.order.OrderService.place(OrderService.java:42)\n"
+                + "\tat sun.reflect.NativeMethodAccessorImpl.invoke0(Native Method)\n"
+                + "\tat sun.reflect.NativeMethodAccessorImpl.invoke(NativeMethodAccessorImpl.java:62)\n"
+                + "\tat java.lang.reflect.Method.invoke(Method.java:498)\n"
+                + "\tat org.springframework.aop.support.AopUtils.invokeJoinpointUsingReflection(AopUtils.java:344)\n"
+                + "\tat org.springframework.aop.framework.ReflectiveMethodInvocation.proceed(ReflectiveMethodInvocation.java:198)\n"
+                + "\tat com.example.order.OrderService$$EnhancerBySpringCGLIB$$1a2b.place(<generated>)\n"
+                + "\tat com.example.order.OrderController.place(OrderController.java:17)\n"
+                + "\tat org.springframework.web.method.support.InvocableHandlerMethod.doInvoke(InvocableHandlerMethod.java:205)\n"
+                + "\tat org.springframework.web.servlet.DispatcherServlet.doDispatch(DispatcherServlet.java:1070)\n"
+                + "\tat org.apache.catalina.core.ApplicationFilterChain.doFilter(ApplicationFilterChain.java:166)\n"
+                + "\tat org.apache.tomcat.util.net.NioEndpoint$SocketProcessor.doRun(NioEndpoint.java:1787)\n"
+                + "\tat java.lang.Thread.run(Thread.java:750)\n"
+                + "Caused by: java.sql.SQLException: 连接断开\n"
+                + "\tat org.springframework.jdbc.datasource.DataSourceUtils.fetchConnection(DataSourceUtils.java:159)\n"
+                + "\tat org.springframework.jdbc.datasource.DataSourceUtils.doGetConnection(DataSourceUtils.java:117)\n"
+                + "\tat org.springframework.jdbc.core.JdbcTemplate.execute(JdbcTemplate.java:376)\n"
+                + "\tat com.example.order.OrderDao.insert(OrderDao.java:30)\n"
+                + "\t... 12 more";
+
+        StackTraceReducer.ReducedTrace reduced = reducer.reduce(trace);
+
+        assertEquals("java.lang.IllegalStateException: 下单失败\n"
+                + "\tat com.example.order.OrderService.place(OrderService.java:42)\n"
+                // 栈顶两帧始终保留
+                + "\tat sun.reflect.NativeMethodAccessorImpl.invoke0(Native Method)\n"
+                + "\t... 3 framework frames collapsed: sun.reflect(1), java.lang.reflect(1), org.springframework.aop(1)\n"
+                // 业务代码（CGLIB代理）直接调用的框架帧保留
+                + "\tat org.springframework.aop.framework.ReflectiveMethodInvocation.proceed(ReflectiveMethodInvocation.java:198)\n"
+                + "\tat com.example.order.OrderService$$EnhancerBySpringCGLIB$$1a2b.place(<generated>)\n"
+                + "\tat com.example.order.OrderController.place(OrderController.java:17)\n"
+                + "\t... 4 framework frames collapsed: org.springframework.web(2), org.apache.catalina(1), org.apache.tomcat(1)\n"
+                + "\tat java.lang.Thread.run(Thread.java:750)\n"
+                + "Caused by: java.sql.SQLException: 连接断开\n"
+                // Caused by之后重新计算栈顶帧，其后的JdbcTemplate由业务代码直接调用，均保留
+                + "\tat org.springframework.jdbc.datasource.DataSourceUtils.fetchConnection(DataSourceUtils.java:159)\n"
+                + "\tat org.springframework.jdbc.datasource.DataSourceUtils.doGetConnection(DataSourceUtils.java:117)\n"
+                + "\tat org.springframework.jdbc.core.JdbcTemplate.execute(JdbcTemplate.java:376)\n"
+                + "\tat com.example.order.OrderDao.insert(OrderDao.java:30)\n"
+                + "\t... 12 more", reduced.getText());
+        assertEquals(17, reduced.getOriginalFrames());
+        assertEquals(10, reduced.getKeptFrames());
+        assertEquals(7, reduced.getCollapsedFrames());
+        assertEquals(0, reduced.getFoldedFrames());
+        assertEquals("frames=17->10", reduced.describe().substring(reduced.describe().indexOf("frames=")));
+    }
+
+    @Test
+    void returnsOriginalWhenNothingToReduce() {
+        String trace = "java.lang.NullPointerException\n"
+                + "\tat com.example.order.OrderService.pay(OrderService.java:42)\n"
+                + "\tat org.springframework.web.servlet.FrameworkServlet.service(FrameworkServlet.java:897)\n"
+                + "\tat org.apache.catalina.core.ApplicationFilterChain.doFilter(ApplicationFilterChain.java:166)";
+
+        StackTraceReducer.ReducedTrace reduced = reducer.reduce(trace);
+
+        assertFalse(reduced.isReduced());
+        assertSame(trace, reduced.getText());
+        assertEquals(1.0, reduced.ratio());
+    }
+}